@@ -1,6 +1,8 @@
 package owltools.gaf.inference;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,11 +13,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
 import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
@@ -31,8 +34,12 @@ import owltools.gaf.Bioentity;
 import owltools.gaf.ExtensionExpression;
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
+import owltools.gaf.inference.ClassificationService.Taxonomy;
 import owltools.graph.OWLGraphWrapper;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * This performs basic annotation inferences involving propagation between the 3
  * sub-ontologies in GO
@@ -50,6 +57,12 @@ import owltools.graph.OWLGraphWrapper;
  * predictions and are ignored for the new predictions. This has the effect that
  * even if there are 'old' predictions in the GAF, they still we be re-inferred
  * for the report.
+ * <br>
+ * The propagation rules are compiled into {@link BitSet}s over the classes of
+ * the inferred {@link Taxonomy}. The non-redundant subsets and the
+ * is_a/part_of closures are cached by class set, as the same sets recur for
+ * many bioentities. Bioentities are predicted in parallel; the order of the
+ * predictions follows the order of the bioentities.
  */
 public class BasicAnnotationPropagator extends AbstractAnnotationPredictor implements AnnotationPredictor {
 
@@ -63,9 +76,18 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 	private OWLReasoner reasoner = null;
 	private Map<String, Set<OWLClass>> propagationRules = null;
 	private Map<String, String> aspectMap = null;
+	
+	private static final int CACHE_SIZE = 100000;
+	private Taxonomy taxonomy = null;
+	private OWLObjectProperty partOf = null;
+	private Map<String, BitSet> compiledRules = null;
+	private final Map<Integer, BitSet> partOfLinks = new ConcurrentHashMap<Integer, BitSet>();
+	private final Cache<BitSet, BitSet> nonRedundantCache = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+	private final Cache<BitSet, BitSet> closureCache = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
 
 	private boolean isInitialized = false;
 	private final boolean throwExceptions;
+	private final ClassificationService classifier;
 
 	/**
 	 * Create instance.
@@ -75,17 +97,29 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 	 * @param throwExceptions
 	 */
 	public BasicAnnotationPropagator(GafDocument gafDocument, OWLGraphWrapper graph, boolean throwExceptions) {
+		this(gafDocument, graph, throwExceptions, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * Create instance, using a shared classification of the graph.
+	 * 
+	 * @param gafDocument
+	 * @param graph
+	 * @param throwExceptions
+	 * @param classifier
+	 */
+	public BasicAnnotationPropagator(GafDocument gafDocument, OWLGraphWrapper graph, boolean throwExceptions, ClassificationService classifier) {
 		super(gafDocument, graph);
 		this.throwExceptions = throwExceptions;
+		this.classifier = classifier;
 		isInitialized = init();
 	}
 	
 	private boolean init() {
 		LOG.info("Start preparing propagation rules");
 		OWLGraphWrapper graph = getGraph();
-		ElkReasonerFactory factory = new ElkReasonerFactory();
 		// assumes that all support ontologies have either been merged into or added as import
-		reasoner = factory.createReasoner(graph.getSourceOntology());
+		reasoner = classifier.acquire(graph.getSourceOntology(), getClass().getSimpleName());
 		if (reasoner.isConsistent() == false) {
 			LOG.error("The converted annotations and ontology have produced an inconsistent model.");
 			if (throwExceptions) {
@@ -93,7 +127,10 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 			}
 			return false;
 		}
+		taxonomy = classifier.getTaxonomy(graph.getSourceOntology(), getClass().getSimpleName());
+		partOf = graph.getOWLObjectPropertyByIdentifier("part_of");
 		propagationRules = createPropagationRules(graph, reasoner);
+		compiledRules = compilePropagationRules(propagationRules);
 		aspectMap = createDefaultAspectMap(graph);
 		LOG.info("Finished preparing propagation rules");
 		return true;
@@ -210,6 +247,24 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 		return Collections.unmodifiableMap(map);
 	}
 
+	private Map<String, BitSet> compilePropagationRules(Map<String, Set<OWLClass>> rules) {
+		Map<String, BitSet> compiled = new HashMap<String, BitSet>(rules.size() * 2);
+		int incomplete = 0;
+		for (Entry<String, Set<OWLClass>> rule : rules.entrySet()) {
+			BitSet targets = taxonomy.toBits(rule.getValue());
+			if (targets.cardinality() < rule.getValue().size()) {
+				incomplete += 1;
+			}
+			if (!targets.isEmpty()) {
+				compiled.put(rule.getKey(), targets);
+			}
+		}
+		if (incomplete > 0) {
+			LOG.warn("Ignoring propagation targets, which are not in the inferred class hierarchy, for "+incomplete+" classes");
+		}
+		return Collections.unmodifiableMap(compiled);
+	}
+	
 	/**
 	 * Modify the given set and remove uninformative classes.
 	 * 
@@ -625,9 +680,14 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 	
 	@Override
 	public List<Prediction> predictForBioEntities(Map<Bioentity, ? extends Collection<GeneAnnotation>> annMap) {
+		List<Entry<Bioentity, ? extends Collection<GeneAnnotation>>> entries = new ArrayList<Entry<Bioentity, ? extends Collection<GeneAnnotation>>>(annMap.entrySet());
+		// the collected list keeps the order of the entries
+		List<List<Prediction>> results = entries.parallelStream()
+				.map(entry -> predictForBioEntity(entry.getKey(), entry.getValue()))
+				.collect(Collectors.toList());
 		List<Prediction> allPredictions = new ArrayList<Prediction>();
-		for(Entry<Bioentity, ? extends Collection<GeneAnnotation>> entry : annMap.entrySet()) {
-			allPredictions.addAll(predictForBioEntity(entry.getKey(), entry.getValue()));
+		for (List<Prediction> predictions : results) {
+			allPredictions.addAll(predictions);
 		}
 		return allPredictions;
 	}
@@ -669,13 +729,14 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 			}
 
 			String cid = ann.getCls();
-			Set<OWLClass> linkedClasses = propagationRules.get(cid);
-			if (linkedClasses == null || linkedClasses.isEmpty()) {
+			BitSet linkedClasses = compiledRules.get(cid);
+			if (linkedClasses == null) {
 				// no nodes to propagate to
 				continue;
 			}
 			
-			for (OWLClass linkedClass : linkedClasses) {
+			for (int i = linkedClasses.nextSetBit(0); i >= 0; i = linkedClasses.nextSetBit(i + 1)) {
+				OWLClass linkedClass = taxonomy.classAt(i);
 				String aspect = aspectMap.get(getSubOntology(linkedClass));
 				Prediction p = createPrediction(linkedClass, aspect, cid, ann);
 				p.setReason(createReason(linkedClass, aspect, cid, evidenceCls, g));
@@ -686,19 +747,20 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 		List<Prediction> predictions = new ArrayList<Prediction>();
 		
 		for(String evidence : allPredictions.getEvidences()) {
-			Set<OWLClass> nonRedundantClasses = reduceToNonRedundant(allPredictions.getClasses(evidence), reasoner);
+			BitSet nonRedundantClasses = getNonRedundant(taxonomy.toBits(allPredictions.getClasses(evidence)));
 		
 			// only add the predictions, if they are more specialized
 			if (!nonRedundantClasses.isEmpty()) {
 				List<GeneAnnotation> annotationGroup = annotationsByEvidence.get(evidence);
 				if (annotationGroup != null && !annotationGroup.isEmpty()) {
-					for(OWLClass cls : nonRedundantClasses) {
+					for (int i = nonRedundantClasses.nextSetBit(0); i >= 0; i = nonRedundantClasses.nextSetBit(i + 1)) {
+						OWLClass cls = taxonomy.classAt(i);
 						List<Prediction> currentPredictions = allPredictions.getPredictions(evidence, cls);
 						if (currentPredictions.isEmpty() == false) {
 							String aspect = currentPredictions.get(0).getGeneAnnotation().getAspect();
-							Set<OWLClass> existing = getIsaPartofSuperClassClosureAndAspect(annotationGroup, aspect);
+							BitSet existing = getIsaPartofSuperClassClosureAndAspect(annotationGroup, aspect);
 							
-							if (existing.contains(cls) == false) {
+							if (existing.get(i) == false) {
 								// the cls is more specific than any existing annotation
 								// add to the predictions
 								predictions.addAll(currentPredictions);
@@ -707,7 +769,8 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 					}
 				}
 				else {
-					for(OWLClass cls : nonRedundantClasses) {
+					for (int i = nonRedundantClasses.nextSetBit(0); i >= 0; i = nonRedundantClasses.nextSetBit(i + 1)) {
+						OWLClass cls = taxonomy.classAt(i);
 						List<Prediction> currentPredictions = allPredictions.getPredictions(evidence, cls);
 						if (predictions.isEmpty() == false) {
 							predictions.addAll(currentPredictions);
@@ -746,7 +809,32 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 		return sb.toString();
 	}
 	
-	private Set<OWLClass> getIsaPartofSuperClassClosureAndAspect(Collection<GeneAnnotation> annotations, String aspect) {
+	/**
+	 * Remove all classes, which are (inferred) super classes of another class
+	 * in the set. Same as {@link #reduceToNonRedundant(Set, OWLReasoner)}.
+	 * 
+	 * @param classes indexes in the taxonomy
+	 * @return non redundant indexes, must not be modified
+	 */
+	private BitSet getNonRedundant(BitSet classes) {
+		BitSet nonRedundant = nonRedundantCache.getIfPresent(classes);
+		if (nonRedundant == null) {
+			// the super class closures are small, unlike the sub class closures near the root
+			nonRedundant = (BitSet) classes.clone();
+			for (int i = classes.nextSetBit(0); i >= 0; i = classes.nextSetBit(i + 1)) {
+				nonRedundant.andNot(taxonomy.superClassBits(i));
+			}
+			nonRedundantCache.put(classes, nonRedundant);
+		}
+		return nonRedundant;
+	}
+	
+	/**
+	 * @param annotations
+	 * @param aspect
+	 * @return indexes of the is_a/part_of closure in the taxonomy, must not be modified
+	 */
+	private BitSet getIsaPartofSuperClassClosureAndAspect(Collection<GeneAnnotation> annotations, String aspect) {
 		OWLGraphWrapper g = getGraph();
 		Set<OWLClass> classes = new HashSet<OWLClass>();
 		for (GeneAnnotation ann : annotations) {
@@ -759,9 +847,73 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 			}
 		}
 		if (classes.isEmpty()) {
-			return Collections.emptySet();
+			return new BitSet();
+		}
+		BitSet annotated = taxonomy.toBits(classes);
+		if (annotated.cardinality() < classes.size()) {
+			// unknown or unsatisfiable classes, the reasoner is not thread-safe
+			synchronized (reasoner) {
+				return taxonomy.toBits(getIsaPartofSuperClassClosure(classes, g, reasoner));
+			}
 		}
-		return getIsaPartofSuperClassClosure(classes, g, reasoner);
+		BitSet closure = closureCache.getIfPresent(annotated);
+		if (closure == null) {
+			closure = computeIsaPartofSuperClassClosure(annotated);
+			closureCache.put(annotated, closure);
+		}
+		return closure;
+	}
+	
+	/**
+	 * Same as {@link #getIsaPartofSuperClassClosure(Collection, OWLGraphWrapper, OWLReasoner)},
+	 * using the taxonomy.
+	 * 
+	 * @param annotated
+	 * @return closure
+	 */
+	private BitSet computeIsaPartofSuperClassClosure(BitSet annotated) {
+		BitSet closure = new BitSet();
+		for (int i = annotated.nextSetBit(0); i >= 0; i = annotated.nextSetBit(i + 1)) {
+			closure.set(i);
+			closure.or(taxonomy.superClassBits(i));
+		}
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for (int i = closure.nextSetBit(0); i >= 0; i = closure.nextSetBit(i + 1)) {
+			queue.add(Integer.valueOf(i));
+		}
+		while (queue.isEmpty() == false) {
+			BitSet links = getPartOfLinks(queue.removeFirst().intValue());
+			for (int j = links.nextSetBit(0); j >= 0; j = links.nextSetBit(j + 1)) {
+				if (closure.get(j) == false) {
+					closure.set(j);
+					// only look for more superClasses
+					BitSet superClasses = taxonomy.superClassBits(j);
+					for (int k = superClasses.nextSetBit(0); k >= 0; k = superClasses.nextSetBit(k + 1)) {
+						if (closure.get(k) == false) {
+							closure.set(k);
+							queue.add(Integer.valueOf(k));
+						}
+					}
+				}
+			}
+		}
+		return closure;
+	}
+	
+	private BitSet getPartOfLinks(int i) {
+		Integer key = Integer.valueOf(i);
+		BitSet links = partOfLinks.get(key);
+		if (links == null) {
+			if (partOf == null) {
+				links = new BitSet();
+			}
+			else {
+				Set<OWLObjectProperty> properties = Collections.singleton(partOf);
+				links = taxonomy.toBits(getDirectLinkedClasses(taxonomy.classAt(i), properties, getGraph(), null));
+			}
+			partOfLinks.put(key, links);
+		}
+		return links;
 	}
 	
 	protected static Set<OWLClass> getIsaPartofSuperClassClosure(Collection<OWLClass> annotations, OWLGraphWrapper graph, OWLReasoner r) {
@@ -850,7 +1002,8 @@ public class BasicAnnotationPropagator extends AbstractAnnotationPredictor imple
 	@Override
 	public void dispose() {
 		if (reasoner != null) {
-			reasoner.dispose();
+			classifier.release(getGraph().getSourceOntology());
+			reasoner = null;
 		}
 	}
 
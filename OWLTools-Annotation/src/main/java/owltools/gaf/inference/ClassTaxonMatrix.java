@@ -16,8 +16,8 @@ import org.semanticweb.owlapi.model.OWLClass;
 import owltools.graph.OWLGraphWrapper;
 
 /**
- * Matrix representing the applicability of classes and taxa. Uses the
- * {@link TaxonConstraintsEngine} to infer the taxon constraints.
+ * Matrix representing the applicability of classes and taxa. Uses a
+ * {@link TaxonConstraintIndex} to infer the taxon constraints.
  * 
  * Use the static methods to create and write instances.
  */
@@ -99,7 +99,7 @@ public class ClassTaxonMatrix {
 	public static ClassTaxonMatrix create(OWLGraphWrapper graph, Collection<OWLClass> classes, Collection<OWLClass> taxa) {
 		LOG.info("Start creating class-taxon-matrix for: "+graph.getOntologyId()+" with "+classes.size()+" classes and "+taxa.size()+" taxa");
 		ClassTaxonMatrix matrix = new ClassTaxonMatrix(classes.size(), taxa.size());
-		TaxonConstraintsEngine engine = new TaxonConstraintsEngine(graph);
+		TaxonConstraintIndex index = new TaxonConstraintIndex(graph, classes, taxa);
 		
 		// sort classes to guarantee a sorted output
 		List<OWLClass> sortedOWLClasses = new ArrayList<OWLClass>(classes);
@@ -110,7 +110,7 @@ public class ClassTaxonMatrix {
 		
 		for (OWLClass owlClass : sortedOWLClasses) {
 			for (OWLClass taxon : sortedTaxa) {
-				boolean applicable = engine.isClassApplicable(owlClass, taxon);
+				boolean applicable = index.isClassApplicable(owlClass, taxon);
 				matrix.add(applicable, owlClass, taxon);
 			}
 		}
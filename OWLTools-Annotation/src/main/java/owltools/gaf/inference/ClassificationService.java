@@ -0,0 +1,448 @@
+package owltools.gaf.inference;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.InconsistentOntologyException;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+
+/**
+ * Classifies each ontology once, and shares the reasoner and a read-only
+ * {@link Taxonomy} between all consumers of a run, e.g. the rules of an
+ * {@link owltools.gaf.rules.AnnotationRulesEngine}.
+ * <p>
+ * Reasoners are reference counted: each {@link #acquire(OWLOntology, String)}
+ * must be followed by a {@link #release(OWLOntology)}. While the service is open,
+ * a released reasoner is kept for the next consumer; after {@link #close()},
+ * reasoners are disposed as soon as they are no longer used.
+ * <p>
+ * Safe for use from several threads.
+ */
+public class ClassificationService implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ClassificationService.class);
+
+	private final OWLReasonerFactory factory;
+	private final Map<OWLOntology, Entry> entries = new IdentityHashMap<OWLOntology, Entry>();
+	private final Map<String, Usage> usages = new LinkedHashMap<String, Usage>();
+	private boolean isClosed = false;
+
+	private static final class Entry {
+		OWLReasoner reasoner = null;
+		int references = 0;
+		long classificationMillis = 0;
+		Taxonomy taxonomy = null;
+	}
+
+	private static final class Usage {
+		int queries = 0;
+		int classifications = 0;
+		long savedMillis = 0;
+	}
+
+	/**
+	 * Create a service using ELK.
+	 */
+	public ClassificationService() {
+		this(new ElkReasonerFactory());
+	}
+
+	/**
+	 * @param factory
+	 */
+	public ClassificationService(OWLReasonerFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Create a service which does not keep reasoners between consumers, for
+	 * consumers created without a shared service.
+	 *
+	 * @return service
+	 */
+	public static ClassificationService createUnshared() {
+		ClassificationService service = new ClassificationService();
+		service.isClosed = true;
+		return service;
+	}
+
+	/**
+	 * Retrieve the classified reasoner for the ontology, and increase its
+	 * reference count. The reasoner must not be disposed by the consumer.
+	 *
+	 * @param ontology
+	 * @param consumer name for the statistics
+	 * @return reasoner
+	 * @see #release(OWLOntology)
+	 */
+	public OWLReasoner acquire(OWLOntology ontology, String consumer) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(ontology);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(ontology, entry);
+			}
+			entry.references += 1;
+		}
+		boolean isReused;
+		long millis;
+		synchronized (entry) {
+			isReused = entry.reasoner != null;
+			if (!isReused) {
+				LOG.info("Classifying ontology for: "+consumer);
+				long start = System.currentTimeMillis();
+				entry.reasoner = factory.createReasoner(ontology);
+				try {
+					entry.reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+				} catch (InconsistentOntologyException e) {
+					// consumers check the consistency
+					LOG.warn("Inconsistent ontology for: "+consumer);
+				}
+				entry.classificationMillis = System.currentTimeMillis() - start;
+			}
+			millis = entry.classificationMillis;
+		}
+		record(consumer, isReused, millis);
+		return entry.reasoner;
+	}
+
+	/**
+	 * Decrease the reference count of the reasoner for the ontology.
+	 *
+	 * @param ontology
+	 */
+	public synchronized void release(OWLOntology ontology) {
+		Entry entry = entries.get(ontology);
+		if (entry == null || entry.references <= 0) {
+			return;
+		}
+		entry.references -= 1;
+		if (isClosed) {
+			disposeUnused(entry);
+		}
+	}
+
+	/**
+	 * Dispose the reasoner for the ontology, as soon as it is no longer used,
+	 * e.g. for a temporary ontology.
+	 *
+	 * @param ontology
+	 */
+	public synchronized void evict(OWLOntology ontology) {
+		Entry entry = entries.get(ontology);
+		if (entry != null) {
+			disposeUnused(entry);
+			entry.taxonomy = null;
+			if (entry.references == 0) {
+				entries.remove(ontology);
+			}
+		}
+	}
+
+	private void disposeUnused(Entry entry) {
+		if (entry.references == 0 && entry.reasoner != null) {
+			entry.reasoner.dispose();
+			entry.reasoner = null;
+		}
+	}
+
+	/**
+	 * Retrieve the taxonomy of the ontology, classifying it if necessary.
+	 *
+	 * @param ontology
+	 * @param consumer name for the statistics
+	 * @return taxonomy
+	 */
+	public Taxonomy getTaxonomy(OWLOntology ontology, String consumer) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(ontology);
+		}
+		if (entry != null) {
+			Taxonomy taxonomy;
+			long millis;
+			synchronized (entry) {
+				taxonomy = entry.taxonomy;
+				millis = entry.classificationMillis;
+			}
+			if (taxonomy != null) {
+				record(consumer, true, millis);
+				return taxonomy;
+			}
+		}
+		OWLReasoner reasoner = acquire(ontology, consumer);
+		try {
+			synchronized (this) {
+				entry = entries.get(ontology);
+			}
+			synchronized (entry) {
+				if (entry.taxonomy == null) {
+					entry.taxonomy = new Taxonomy(ontology, reasoner);
+				}
+				return entry.taxonomy;
+			}
+		}
+		finally {
+			release(ontology);
+		}
+	}
+
+	private synchronized void record(String consumer, boolean isReused, long millis) {
+		Usage usage = usages.get(consumer);
+		if (usage == null) {
+			usage = new Usage();
+			usages.put(consumer, usage);
+		}
+		usage.queries += 1;
+		if (isReused) {
+			usage.savedMillis += millis;
+		}
+		else {
+			usage.classifications += 1;
+		}
+	}
+
+	/**
+	 * @return number of queries, classifications, and the classification time
+	 *         saved by re-using a classification, for each consumer
+	 */
+	public synchronized String getReport() {
+		StringBuilder sb = new StringBuilder();
+		long total = 0;
+		for (Map.Entry<String, Usage> e : usages.entrySet()) {
+			Usage usage = e.getValue();
+			sb.append(e.getKey()).append(": ").append(usage.queries).append(" queries, ");
+			sb.append(usage.classifications).append(" classifications, ");
+			sb.append(usage.savedMillis).append(" ms saved\n");
+			total += usage.savedMillis;
+		}
+		sb.append("total: ").append(total).append(" ms saved");
+		return sb.toString();
+	}
+
+	/**
+	 * Dispose all reasoners which are not used; the others are disposed when
+	 * released.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!usages.isEmpty()) {
+			LOG.info("Classification usage:\n"+getReport());
+		}
+		isClosed = true;
+		for (Entry entry : entries.values()) {
+			disposeUnused(entry);
+		}
+	}
+
+	/**
+	 * Read-only snapshot of the inferred class hierarchy of an ontology. Only
+	 * satisfiable named classes, other than owl:Thing, are included.
+	 * <p>
+	 * Only the direct super and sub classes are stored, as sorted arrays of
+	 * indexes, so the memory use is linear in the size of the hierarchy;
+	 * the closures are computed on demand.
+	 * <p>
+	 * Safe for use from several threads.
+	 */
+	public static class Taxonomy {
+
+		private static final int[] NONE = new int[0];
+
+		private final OWLClass[] classes;
+		private final Map<OWLClass, Integer> indexes;
+		private final int[][] directSuperClasses;
+		private final int[][] directSubClasses;
+
+		Taxonomy(OWLOntology ontology, OWLReasoner reasoner) {
+			Set<OWLClass> unsatisfiable = reasoner.getUnsatisfiableClasses().getEntities();
+			List<OWLClass> list = new ArrayList<OWLClass>();
+			for (OWLClass c : ontology.getClassesInSignature(Imports.INCLUDED)) {
+				if (!c.isBuiltIn() && !unsatisfiable.contains(c)) {
+					list.add(c);
+				}
+			}
+			Collections.sort(list);
+			classes = list.toArray(new OWLClass[list.size()]);
+			indexes = new HashMap<OWLClass, Integer>(classes.length * 2);
+			for (int i = 0; i < classes.length; i++) {
+				indexes.put(classes[i], Integer.valueOf(i));
+			}
+			directSuperClasses = new int[classes.length][];
+			int[] subClassCounts = new int[classes.length];
+			BitSet bits = new BitSet(classes.length);
+			for (int i = 0; i < classes.length; i++) {
+				bits.clear();
+				for (OWLClass sup : reasoner.getSuperClasses(classes[i], true).getFlattened()) {
+					Integer j = indexes.get(sup);
+					if (j != null) {
+						bits.set(j.intValue());
+					}
+				}
+				directSuperClasses[i] = bits.isEmpty() ? NONE : bits.stream().toArray();
+				for (int j : directSuperClasses[i]) {
+					subClassCounts[j] += 1;
+				}
+			}
+			directSubClasses = new int[classes.length][];
+			for (int j = 0; j < classes.length; j++) {
+				directSubClasses[j] = subClassCounts[j] == 0 ? NONE : new int[subClassCounts[j]];
+				subClassCounts[j] = 0;
+			}
+			// sub classes are added in increasing order
+			for (int i = 0; i < classes.length; i++) {
+				for (int j : directSuperClasses[i]) {
+					directSubClasses[j][subClassCounts[j]++] = i;
+				}
+			}
+		}
+
+		/**
+		 * @param i
+		 * @param direct
+		 * @return indexes of the classes reachable from i, excluding i, unless in a cycle
+		 */
+		private static BitSet closure(int i, int[][] direct) {
+			BitSet closure = new BitSet();
+			int[] stack = new int[16];
+			int size = 0;
+			stack[size++] = i;
+			while (size > 0) {
+				int k = stack[--size];
+				for (int j : direct[k]) {
+					if (closure.get(j) == false) {
+						closure.set(j);
+						if (size == stack.length) {
+							stack = Arrays.copyOf(stack, size * 2);
+						}
+						stack[size++] = j;
+					}
+				}
+			}
+			return closure;
+		}
+
+		/**
+		 * @param c
+		 * @return true if c is in the taxonomy
+		 */
+		public boolean contains(OWLClass c) {
+			return indexes.containsKey(c);
+		}
+
+		/**
+		 * @param c
+		 * @return inferred strict super classes of c, as returned by
+		 *         {@link OWLReasoner#getSuperClasses(org.semanticweb.owlapi.model.OWLClassExpression, boolean)}
+		 */
+		public Set<OWLClass> getSuperClasses(OWLClass c) {
+			Integer i = indexes.get(c);
+			if (i == null) {
+				return Collections.emptySet();
+			}
+			return toClasses(superClassBits(i.intValue()));
+		}
+
+		/**
+		 * @param c
+		 * @return inferred strict sub classes of c, as returned by
+		 *         {@link OWLReasoner#getSubClasses(org.semanticweb.owlapi.model.OWLClassExpression, boolean)}
+		 */
+		public Set<OWLClass> getSubClasses(OWLClass c) {
+			Integer i = indexes.get(c);
+			if (i == null) {
+				return Collections.emptySet();
+			}
+			return toClasses(subClassBits(i.intValue()));
+		}
+
+		/**
+		 * @param sub
+		 * @param sup
+		 * @return true if sup is an inferred strict super class of sub
+		 */
+		public boolean isSubClassOf(OWLClass sub, OWLClass sup) {
+			Integer i = indexes.get(sub);
+			Integer j = indexes.get(sup);
+			if (i == null || j == null) {
+				return false;
+			}
+			return superClassBits(i.intValue()).get(j.intValue());
+		}
+
+		/**
+		 * @param c
+		 * @return index of c in the taxonomy or -1
+		 */
+		int indexOf(OWLClass c) {
+			Integer i = indexes.get(c);
+			return i == null ? -1 : i.intValue();
+		}
+
+		/**
+		 * @param i
+		 * @return class with the index
+		 */
+		OWLClass classAt(int i) {
+			return classes[i];
+		}
+
+		/**
+		 * @param i
+		 * @return indexes of the strict super classes, a new set
+		 */
+		BitSet superClassBits(int i) {
+			return closure(i, directSuperClasses);
+		}
+
+		/**
+		 * @param i
+		 * @return indexes of the strict sub classes, a new set
+		 */
+		BitSet subClassBits(int i) {
+			return closure(i, directSubClasses);
+		}
+
+		/**
+		 * @param classes
+		 * @return indexes of the classes, classes not in the taxonomy are ignored
+		 */
+		BitSet toBits(Collection<OWLClass> classes) {
+			BitSet bits = new BitSet(this.classes.length);
+			for (OWLClass c : classes) {
+				Integer i = indexes.get(c);
+				if (i != null) {
+					bits.set(i.intValue());
+				}
+			}
+			return bits;
+		}
+
+		Set<OWLClass> toClasses(BitSet bits) {
+			Set<OWLClass> result = new HashSet<OWLClass>(bits.cardinality() * 2);
+			for (int k = bits.nextSetBit(0); k >= 0; k = bits.nextSetBit(k + 1)) {
+				result.add(classes[k]);
+			}
+			return result;
+		}
+	}
+}
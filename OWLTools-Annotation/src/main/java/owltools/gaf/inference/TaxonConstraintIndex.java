@@ -0,0 +1,308 @@
+package owltools.gaf.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDisjointClassesAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectSomeValuesFrom;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * Precomputed applicability of classes for taxa, with the same results as
+ * {@link TaxonConstraintsEngine#isClassApplicable(OWLClass, OWLClass)}.
+ * <p>
+ * The taxa are numbered once. For each class, the never_in_taxon and
+ * only_in_taxon constraints of the class and its ancestors are collected, and
+ * turned into a {@link BitSet} of the taxa for which the class is not applicable.
+ * Classes with the same constraints share the same {@link BitSet}, so each check
+ * is a single lookup.
+ * <p>
+ * The given classes are indexed in parallel when creating the index, other
+ * classes when first checked. Taxa which are not indexed are checked with a
+ * {@link TaxonConstraintsEngine}. Safe for use from several threads, as long as
+ * the ontology is not modified.
+ */
+public class TaxonConstraintIndex {
+
+	private static final Logger LOG = Logger.getLogger(TaxonConstraintIndex.class);
+
+	private final OWLGraphWrapper graph;
+	private final OWLClass[] taxa;
+	private final Map<OWLClass, Integer> taxonIndex;
+	// reflexive ancestors of each indexed taxon
+	private final List<Set<OWLObject>> taxonAncestors;
+
+	private final Map<OWLClass, BitSet> classViolations = new ConcurrentHashMap<OWLClass, BitSet>();
+	private final Map<Constraints, BitSet> constraintViolations = new ConcurrentHashMap<Constraints, BitSet>();
+	private final Map<OWLClass, BitSet> descendants = new ConcurrentHashMap<OWLClass, BitSet>();
+	private final Map<OWLClass, BitSet> onlyInValid = new ConcurrentHashMap<OWLClass, BitSet>();
+
+	private volatile TaxonConstraintsEngine engine = null;
+
+	/**
+	 * never_in_taxon and only_in_taxon constraints of a class and its ancestors
+	 */
+	private static final class Constraints {
+		final Set<OWLClass> neverIn = new HashSet<OWLClass>();
+		final Set<OWLClass> onlyIn = new HashSet<OWLClass>();
+
+		@Override
+		public int hashCode() {
+			return 31 * neverIn.hashCode() + onlyIn.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Constraints))
+				return false;
+			Constraints other = (Constraints) obj;
+			return neverIn.equals(other.neverIn) && onlyIn.equals(other.onlyIn);
+		}
+	}
+
+	/**
+	 * @param graph
+	 * @param classes classes to index now, others are indexed when first checked
+	 * @param taxa
+	 */
+	public TaxonConstraintIndex(OWLGraphWrapper graph, Collection<OWLClass> classes, Collection<OWLClass> taxa) {
+		this.graph = graph;
+		List<OWLClass> sortedTaxa = new ArrayList<OWLClass>(new HashSet<OWLClass>(taxa));
+		Collections.sort(sortedTaxa);
+		this.taxa = sortedTaxa.toArray(new OWLClass[sortedTaxa.size()]);
+		this.taxonIndex = new HashMap<OWLClass, Integer>(this.taxa.length * 2);
+		for (int i = 0; i < this.taxa.length; i++) {
+			taxonIndex.put(this.taxa[i], Integer.valueOf(i));
+		}
+		LOG.info("Start creating taxon constraint index with "+classes.size()+" classes and "+this.taxa.length+" taxa");
+		this.taxonAncestors = IntStream.range(0, this.taxa.length).parallel()
+				.mapToObj(i -> graph.getAncestorsReflexive(this.taxa[i]))
+				.collect(Collectors.toList());
+		classes.parallelStream().forEach(c -> getViolations(c));
+		LOG.info("Finished creating taxon constraint index with "+constraintViolations.size()+" distinct constraint sets");
+	}
+
+	/**
+	 * Create an index for all NCBITaxon classes in the graph.
+	 *
+	 * @param graph
+	 * @param classes classes to index now, others are indexed when first checked
+	 * @return index
+	 */
+	public static TaxonConstraintIndex create(OWLGraphWrapper graph, Collection<OWLClass> classes) {
+		List<OWLClass> taxa = new ArrayList<OWLClass>();
+		for (OWLClass c : graph.getAllOWLClasses()) {
+			String id = graph.getIdentifier(c);
+			if (id != null && id.startsWith("NCBITaxon:")) {
+				taxa.add(c);
+			}
+		}
+		return new TaxonConstraintIndex(graph, classes, taxa);
+	}
+
+	/**
+	 * @return indexed taxa, sorted
+	 */
+	public List<OWLClass> getTaxa() {
+		return Collections.unmodifiableList(Arrays.asList(taxa));
+	}
+
+	/**
+	 * @param taxon
+	 * @return true if checks for the taxon are lookups in the index
+	 */
+	public boolean isIndexed(OWLClass taxon) {
+		return taxonIndex.containsKey(taxon);
+	}
+
+	/**
+	 * @param cid
+	 * @param taxId
+	 * @return boolean
+	 * @see #isClassApplicable(OWLClass, OWLClass)
+	 */
+	public boolean isClassApplicable(String cid, String taxId) {
+		return isClassApplicable(graph.getOWLClassByIdentifier(cid),
+				graph.getOWLClassByIdentifier(taxId));
+	}
+
+	/**
+	 * returns true if c is applicable for taxon
+	 *
+	 * @param c
+	 * @param taxon
+	 * @return boolean
+	 */
+	public boolean isClassApplicable(OWLClass c, OWLClass taxon) {
+		Integer index = taxonIndex.get(taxon);
+		if (index == null) {
+			return getEngine().isClassApplicable(c, taxon);
+		}
+		return !getViolations(c).get(index.intValue());
+	}
+
+	@SuppressWarnings("deprecation")
+	private TaxonConstraintsEngine getEngine() {
+		TaxonConstraintsEngine e = engine;
+		if (e == null) {
+			e = new TaxonConstraintsEngine(graph);
+			engine = e;
+		}
+		return e;
+	}
+
+	private BitSet getViolations(OWLClass c) {
+		BitSet violations = classViolations.get(c);
+		if (violations == null) {
+			Constraints constraints = getConstraints(c);
+			violations = constraintViolations.get(constraints);
+			if (violations == null) {
+				violations = createViolations(constraints);
+				BitSet previous = constraintViolations.putIfAbsent(constraints, violations);
+				if (previous != null) {
+					violations = previous;
+				}
+			}
+			classViolations.put(c, violations);
+		}
+		return violations;
+	}
+
+	// same objects and constraints as TaxonConstraintsEngine.checkIsInvalidObject
+	private Constraints getConstraints(OWLClass c) {
+		Constraints constraints = new Constraints();
+		addConstraints(c, constraints);
+		for (OWLGraphEdge e : graph.getOutgoingEdgesClosure(c)) {
+			addConstraints(e.getTarget(), constraints);
+		}
+		return constraints;
+	}
+
+	private void addConstraints(OWLObject tgt, Constraints constraints) {
+		if (tgt instanceof OWLEntity) {
+			for (OWLAnnotationAssertionAxiom aaa : graph.getSourceOntology().getAnnotationAssertionAxioms(((OWLEntity)tgt).getIRI())) {
+				String rid = graph.getIdentifier(aaa.getProperty());
+				if ("RO:0002161".equals(rid) || "never_in_taxon".equals(rid) || "never in taxon".equals(rid)) {
+					addTaxon(graph.getOWLClass(aaa.getValue()), constraints.neverIn);
+				}
+			}
+		}
+		if (tgt instanceof OWLClass) {
+			for (OWLDisjointClassesAxiom dca : graph.getSourceOntology().getDisjointClassesAxioms((OWLClass) tgt)) {
+				for (OWLClassExpression ce : dca.getClassExpressionsMinus((OWLClass)tgt)) {
+					if (ce instanceof OWLObjectSomeValuesFrom) {
+						String rid = graph.getIdentifier(((OWLObjectSomeValuesFrom)ce).getProperty());
+						if ("RO:0002162".equals(rid) || "in_taxon".equals(rid) || "in taxon".equals(rid)) {
+							OWLClassExpression tc = ((OWLObjectSomeValuesFrom)ce).getFiller();
+							if (tc instanceof OWLClass) {
+								addTaxon((OWLClass) tc, constraints.neverIn);
+							}
+						}
+					}
+				}
+			}
+		}
+		for (OWLGraphEdge te : graph.getOutgoingEdges(tgt)) {
+			OWLObjectProperty tp = te.getSingleQuantifiedProperty().getProperty();
+			if (tp != null) {
+				String tpl = graph.getLabel(tp);
+				String tpid = graph.getIdentifier(tp);
+				// never_in_taxon may be encoded as a hasValue restriction
+				OWLClass restrTaxon;
+				if (te.getTarget() instanceof OWLClass) {
+					restrTaxon = (OWLClass) te.getTarget();
+				}
+				else {
+					restrTaxon = graph.getOWLClass(te.getTarget());
+				}
+				if ("only_in_taxon".equals(tpl) || "only in taxon".equals(tpl) || "RO:0002160".equals(tpid)) {
+					addTaxon(restrTaxon, constraints.onlyIn);
+				}
+				else if ("never_in_taxon".equals(tpl) || "never in taxon".equals(tpl) || "RO:0002161".equals(tpid)) {
+					addTaxon(restrTaxon, constraints.neverIn);
+				}
+			}
+		}
+	}
+
+	private static void addTaxon(OWLClass taxon, Set<OWLClass> taxa) {
+		if (taxon != null) {
+			taxa.add(taxon);
+		}
+	}
+
+	private BitSet createViolations(Constraints constraints) {
+		BitSet violations = new BitSet(taxa.length);
+		for (OWLClass neverIn : constraints.neverIn) {
+			// never_in_taxon: not applicable for the taxon and its descendants
+			violations.or(getDescendants(neverIn));
+		}
+		for (OWLClass onlyIn : constraints.onlyIn) {
+			// only_in_taxon: not applicable outside the taxon, its descendants and ancestors
+			BitSet invalid = new BitSet(taxa.length);
+			invalid.set(0, taxa.length);
+			invalid.andNot(getOnlyInValid(onlyIn));
+			violations.or(invalid);
+		}
+		return violations;
+	}
+
+	/**
+	 * @param taxon
+	 * @return indexed taxa having taxon as reflexive ancestor
+	 */
+	private BitSet getDescendants(OWLClass taxon) {
+		BitSet bits = descendants.get(taxon);
+		if (bits == null) {
+			bits = new BitSet(taxa.length);
+			for (int i = 0; i < taxa.length; i++) {
+				if (taxonAncestors.get(i).contains(taxon)) {
+					bits.set(i);
+				}
+			}
+			descendants.put(taxon, bits);
+		}
+		return bits;
+	}
+
+	/**
+	 * @param taxon
+	 * @return indexed taxa for which a class only_in_taxon taxon is applicable
+	 */
+	private BitSet getOnlyInValid(OWLClass taxon) {
+		BitSet bits = onlyInValid.get(taxon);
+		if (bits == null) {
+			bits = (BitSet) getDescendants(taxon).clone();
+			for (OWLObject ancestor : graph.getAncestors(taxon)) {
+				Integer index = taxonIndex.get(ancestor);
+				if (index != null) {
+					bits.set(index.intValue());
+				}
+			}
+			onlyInValid.put(taxon, bits);
+		}
+		return bits;
+	}
+}
@@ -16,6 +16,16 @@ import java.util.List;
  */
 public abstract class AbstractGafWriter  {
 
+	private int blockSize = ParallelRowWriter.DEFAULT_BLOCK_SIZE;
+
+	/**
+	 * @param blockSize number of annotations formatted by a single task in
+	 *            {@link #writeParallel(GafDocument, int)}
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
 	/**
 	 * Write a full GAF.
 	 * 
@@ -33,6 +43,49 @@ public abstract class AbstractGafWriter  {
 		}
 	}
 	
+	/**
+	 * Write a full GAF, formatting the annotations on several threads. The
+	 * annotations are formatted with the default column and row separators,
+	 * and written in blocks via {@link #print(String)}. Subclasses, which
+	 * change the format of a row, must override this method.
+	 * 
+	 * @param gdoc
+	 * @param threads
+	 */
+	public void writeParallel(GafDocument gdoc, int threads) {
+		try {
+			writeHeader(gdoc);
+			ParallelRowWriter rowWriter = new ParallelRowWriter(threads);
+			rowWriter.setBlockSize(blockSize);
+			rowWriter.write(gdoc.getGeneAnnotations(),
+					sb -> new RowBuilder(sb)::write, block -> print(block));
+		}
+		finally {
+			end();
+		}
+	}
+
+	/**
+	 * Formats single annotations into a buffer.
+	 */
+	private static class RowBuilder extends AbstractGafWriter {
+
+		private final StringBuilder sb;
+
+		RowBuilder(StringBuilder sb) {
+			this.sb = sb;
+		}
+
+		@Override
+		protected void print(String s) {
+			sb.append(s);
+		}
+
+		@Override
+		protected void end() {
+			// do nothing
+		}
+	}
 
 	/**
 	 * Write a header of a GAF, use the comments from the {@link GafDocument}.
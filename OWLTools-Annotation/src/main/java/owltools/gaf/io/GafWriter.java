@@ -12,6 +12,7 @@ import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 
+import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
 
 /**
@@ -47,6 +48,18 @@ public class GafWriter extends AbstractGafWriter implements Closeable {
 		}
 	}
 	
+	/**
+	 * @param file
+	 * @param gzip if true, compress the output on the fly
+	 */
+	public void setStream(File file, boolean gzip) {
+		try {
+			this.stream = new PrintStream(ParallelRowWriter.openOutputStream(file, gzip));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open file: "+file.getAbsolutePath(), e);
+		}
+	}
+	
 	protected void print(String s) {
 		stream.print(s);
 	}
@@ -94,6 +107,15 @@ public class GafWriter extends AbstractGafWriter implements Closeable {
 			// do nothing
 		}
 		
+		/**
+		 * Same as {@link #write(GafDocument)}, the lines are collected one
+		 * annotation at a time.
+		 */
+		@Override
+		public void writeParallel(GafDocument gdoc, int threads) {
+			write(gdoc);
+		}
+		
 		public List<String> getLines() {
 			return lines;
 		}
@@ -3,6 +3,7 @@ package owltools.gaf.io;
 import java.io.PrintWriter;
 import java.util.List;
 
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.lang3.StringUtils;
 
 import owltools.gaf.Bioentity;
@@ -14,6 +15,7 @@ public class GpadWriter {
 	
 	private final PrintWriter pw;
 	private final double version;
+	private int blockSize = ParallelRowWriter.DEFAULT_BLOCK_SIZE;
 
 	/**
 	 * @param pw
@@ -23,7 +25,13 @@ public class GpadWriter {
 		this.pw = pw;
 		this.version = version;
 	}
-
+	
+	/**
+	 * @param blockSize number of annotations formatted by a single task in writeParallel
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
 
 	/**
 	 * Write a full GAF.
@@ -42,6 +50,27 @@ public class GpadWriter {
 		}
 	}
 	
+	/**
+	 * Write a full GPAD, formatting the annotations on several threads with
+	 * the rows of this class.
+	 * 
+	 * @param gdoc
+	 * @param threads
+	 */
+	public void writeParallel(GafDocument gdoc, int threads) {
+		try {
+			writeHeader(gdoc);
+			ParallelRowWriter rowWriter = new ParallelRowWriter(threads);
+			rowWriter.setBlockSize(blockSize);
+			rowWriter.write(gdoc.getGeneAnnotations(), sb -> {
+				GpadWriter rowBuilder = new GpadWriter(new PrintWriter(new StringBuilderWriter(sb)), version);
+				return ann -> rowBuilder.write(ann);
+			}, block -> pw.write(block));
+		}
+		finally {
+			end();
+		}
+	}
 
 	/**
 	 * Write a header of a GAF, use the comments from the {@link GafDocument}.
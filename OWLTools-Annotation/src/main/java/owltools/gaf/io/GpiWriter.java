@@ -1,9 +1,11 @@
 package owltools.gaf.io;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.lang3.StringUtils;
 
 import owltools.gaf.Bioentity;
@@ -15,6 +17,7 @@ public class GpiWriter {
 
 	private final PrintWriter pw;
 	private final double version;
+	private int blockSize = ParallelRowWriter.DEFAULT_BLOCK_SIZE;
 
 	/**
 	 * @param pw
@@ -24,7 +27,13 @@ public class GpiWriter {
 		this.pw = pw;
 		this.version = version;
 	}
-
+	
+	/**
+	 * @param blockSize number of bioentities formatted by a single task in writeParallel
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
 
 	public void write(BioentityDocument document) {
 		try {
@@ -60,6 +69,59 @@ public class GpiWriter {
 		}
 	}
 	
+	/**
+	 * Write a full GPI, formatting the bioentities on several threads with
+	 * the rows of this class.
+	 * 
+	 * @param document
+	 * @param threads
+	 */
+	public void writeParallel(BioentityDocument document, int threads) {
+		try {
+			List<Bioentity> bioentities = document.getBioentities();
+			writeHeader(document.getComments(), bioentities);
+			writeRows(bioentities, threads);
+		}
+		finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Write a full GPI, formatting the bioentities on several threads with
+	 * the rows of this class.
+	 * 
+	 * @param bioentities
+	 * @param threads
+	 */
+	public void writeParallel(Collection<Bioentity> bioentities, int threads) {
+		try {
+			writeHeader(bioentities);
+			writeRows(bioentities, threads);
+		}
+		finally {
+			end();
+		}
+	}
+	
+	private void writeRows(Collection<Bioentity> bioentities, int threads) {
+		if (bioentities == null) {
+			return;
+		}
+		List<Bioentity> rows;
+		if (bioentities instanceof List) {
+			rows = (List<Bioentity>) bioentities;
+		}
+		else {
+			rows = new ArrayList<Bioentity>(bioentities);
+		}
+		ParallelRowWriter rowWriter = new ParallelRowWriter(threads);
+		rowWriter.setBlockSize(blockSize);
+		rowWriter.write(rows, sb -> {
+			GpiWriter rowBuilder = new GpiWriter(new PrintWriter(new StringBuilderWriter(sb)), version);
+			return bioentity -> rowBuilder.write(bioentity);
+		}, block -> pw.write(block));
+	}
 
 	/**
 	 * Write a header of a GPI.
@@ -0,0 +1,155 @@
+package owltools.gaf.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Formats rows, e.g. {@link owltools.gaf.GeneAnnotation}s, on several threads
+ * and hands the formatted text to a single consumer, in the order of the rows.
+ * <p>
+ * The rows are split into blocks. Each worker thread formats a block into its
+ * own reusable {@link StringBuilder}. Only a fixed number of blocks are pending,
+ * and the oldest block is always consumed first, so the output has the same
+ * order as the input and the memory use is bounded.
+ */
+public class ParallelRowWriter {
+
+	static final int DEFAULT_BLOCK_SIZE = 1000;
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final int threads;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	public ParallelRowWriter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads
+	 */
+	public ParallelRowWriter(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param blockSize number of rows formatted by a single task
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Format the rows and pass the formatted blocks to the consumer.
+	 *
+	 * @param rows
+	 * @param formatters creates, for each thread, the formatter of a row
+	 *            appending to the given buffer
+	 * @param out receives the formatted blocks in row order
+	 */
+	public <T> void write(List<T> rows, Function<StringBuilder, Consumer<T>> formatters, Consumer<String> out) {
+		if (rows == null || rows.isEmpty()) {
+			return;
+		}
+		if (threads <= 1 || rows.size() <= blockSize) {
+			RowBuffer<T> buffer = new RowBuffer<T>(formatters);
+			for (int start = 0; start < rows.size(); start += blockSize) {
+				out.accept(buffer.format(rows.subList(start, Math.min(start + blockSize, rows.size()))));
+			}
+			return;
+		}
+		final ThreadLocal<RowBuffer<T>> buffers = ThreadLocal.withInitial(() -> new RowBuffer<T>(formatters));
+		final int maxPending = threads * 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>(maxPending);
+			for (int start = 0; start < rows.size(); start += blockSize) {
+				final List<T> block = rows.subList(start, Math.min(start + blockSize, rows.size()));
+				if (pending.size() >= maxPending) {
+					out.accept(get(pending.removeFirst()));
+				}
+				pending.addLast(executor.submit(() -> buffers.get().format(block)));
+			}
+			while (pending.isEmpty() == false) {
+				out.accept(get(pending.removeFirst()));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static final class RowBuffer<T> {
+
+		private final StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+		private final Consumer<T> formatter;
+
+		RowBuffer(Function<StringBuilder, Consumer<T>> formatters) {
+			formatter = formatters.apply(sb);
+		}
+
+		String format(List<T> block) {
+			sb.setLength(0);
+			for (T row : block) {
+				formatter.accept(row);
+			}
+			return sb.toString();
+		}
+	}
+
+	private static String get(Future<String> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Open a buffered stream writing through a file channel.
+	 *
+	 * @param file
+	 * @param gzip if true, compress the output on the fly
+	 * @return stream
+	 * @throws IOException
+	 */
+	public static OutputStream openOutputStream(File file, boolean gzip) throws IOException {
+		OutputStream out = Channels.newOutputStream(FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+		if (gzip) {
+			out = new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * @param fileName
+	 * @return true, if the file name ends with '.gz'
+	 */
+	public static boolean isGzip(String fileName) {
+		return fileName != null && fileName.endsWith(".gz");
+	}
+}
@@ -9,6 +9,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.obolibrary.obo2owl.Obo2OWLConstants;
@@ -32,6 +37,16 @@ import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
 import owltools.graph.OWLGraphWrapper;
 
+/**
+ * Translates a {@link GafDocument} into OWL axioms in a target ontology.
+ * <p>
+ * By default, the axioms of each bioentity and annotation are added to the
+ * target ontology one by one. With {@link #setBulkTranslation(boolean)}, the
+ * annotations are translated in chunks by several threads, equal class
+ * expressions are shared, and all axioms are added with a single change to the
+ * target ontology. Overriding translate methods must then be safe for use from
+ * several threads; bioentities are always translated by a single thread.
+ */
 public class GAFOWLBridge {
 
 	private static final Logger LOG = Logger.getLogger(GAFOWLBridge.class);
@@ -47,6 +62,15 @@ public class GAFOWLBridge {
 	private boolean isGenerateIndividuals = true;
 	private boolean isBasicAboxMapping = true;
 	private boolean isSkipNotAnnotations = true;
+	private boolean isBulkTranslation = false;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	static final int DEFAULT_CHUNK_SIZE = 2000;
+
+	// bulk translation: axioms of the current thread, and shared class expressions
+	private final ThreadLocal<Set<OWLAxiom>> pendingAxioms = new ThreadLocal<Set<OWLAxiom>>();
+	private volatile Map<OWLClassExpression, OWLClassExpression> sharedExpressions = null;
 
 	public static IRI GAF_LINE_NUMBER_ANNOTATION_PROPERTY_IRI = IRI.create("http://gaf/line_number");
 
@@ -81,6 +105,18 @@ public class GAFOWLBridge {
 	}
 
 	private void addVocabMapDefaults() {
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		pendingAxioms.set(axioms);
+		try {
+			addVocabMaps();
+		}
+		finally {
+			pendingAxioms.remove();
+		}
+		addAxioms(axioms);
+	}
+
+	private void addVocabMaps() {
 		addVocabMap(Vocab.PART_OF, "BFO_0000050");
 		addVocabMap(Vocab.ACTIVELY_PARTICIPATES_IN, "RO_0002217", "actively participates in");
 		addVocabMap(Vocab.PROTOTYPICALLY, "RO_0002214", "has prototype"); // canonically?
@@ -153,17 +189,146 @@ public class GAFOWLBridge {
 		this.isSkipNotAnnotations = isSkipNotAnnotations;
 	}
 
+	public boolean isBulkTranslation() {
+		return isBulkTranslation;
+	}
+
+	/**
+	 * @param isBulkTranslation if true, translate annotations in parallel and
+	 *            add all axioms to the target ontology with a single change
+	 */
+	public void setBulkTranslation(boolean isBulkTranslation) {
+		this.isBulkTranslation = isBulkTranslation;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads number of threads for the bulk translation
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param chunkSize number of annotations translated by a single task in the bulk translation
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
 	/**
 	 * @param gafdoc
 	 * @return translated ontology
 	 */
 	public OWLOntology translate(GafDocument gafdoc) {
-		translateBioentities(gafdoc);
-		translateGeneAnnotations(gafdoc);
-
+		if (isBulkTranslation) {
+			translateBulk(gafdoc);
+		}
+		else {
+			translateBioentities(gafdoc);
+			translateGeneAnnotations(gafdoc);
+		}
 		return targetOntology;
 	}
 
+	private void translateBulk(GafDocument gafdoc) {
+		final Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		sharedExpressions = new ConcurrentHashMap<OWLClassExpression, OWLClassExpression>();
+		try {
+			// bioentities first, as subclasses may record them for the annotations
+			pendingAxioms.set(axioms);
+			try {
+				translateBioentities(gafdoc);
+			}
+			finally {
+				pendingAxioms.remove();
+			}
+
+			List<GeneAnnotation> annotations = gafdoc.getGeneAnnotations();
+			final int total = annotations.size();
+			LOG.info("Start bulk translating GeneAnnotations to OWL, count: "+total);
+			if (threads <= 1 || total <= chunkSize) {
+				axioms.addAll(translateChunk(annotations));
+			}
+			else {
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try {
+					List<Future<Set<OWLAxiom>>> chunks = new ArrayList<Future<Set<OWLAxiom>>>();
+					for (int start = 0; start < total; start += chunkSize) {
+						final List<GeneAnnotation> chunk = annotations.subList(start, Math.min(start + chunkSize, total));
+						chunks.add(executor.submit(() -> translateChunk(chunk)));
+					}
+					int done = 0;
+					for (Future<Set<OWLAxiom>> f : chunks) {
+						axioms.addAll(get(f));
+						done += 1;
+						LOG.info("GeneAnnotations to OWL progress: "+NumberFormat.getPercentInstance().format(done / (double) chunks.size()));
+					}
+				}
+				finally {
+					executor.shutdownNow();
+				}
+			}
+			LOG.info("Finished translating GeneAnnotations to OWL, shared class expressions: "+sharedExpressions.size());
+		}
+		finally {
+			sharedExpressions = null;
+		}
+		LOG.info("Adding "+axioms.size()+" axioms to the target ontology");
+		addAxioms(axioms);
+	}
+
+	private Set<OWLAxiom> translateChunk(List<GeneAnnotation> chunk) {
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		pendingAxioms.set(axioms);
+		try {
+			for (GeneAnnotation a : chunk) {
+				translateGeneAnnotation(a);
+			}
+		}
+		finally {
+			pendingAxioms.remove();
+		}
+		return axioms;
+	}
+
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * During a bulk translation, return the first equal class expression
+	 * created, so that annotations to the same class share it.
+	 * 
+	 * @param ce
+	 * @return shared or given class expression
+	 */
+	protected OWLClassExpression share(OWLClassExpression ce) {
+		Map<OWLClassExpression, OWLClassExpression> shared = sharedExpressions;
+		if (shared == null) {
+			return ce;
+		}
+		OWLClassExpression previous = shared.putIfAbsent(ce, ce);
+		return previous != null ? previous : ce;
+	}
+
 	private void translateGeneAnnotations(GafDocument gafdoc) {
 		List<GeneAnnotation> annotations = gafdoc.getGeneAnnotations();
 		int total = annotations.size();
@@ -239,7 +404,7 @@ public class GAFOWLBridge {
 		OWLObjectProperty geneAnnotationRelation = getGeneAnnotationRelation(a);
 		List<List<ExtensionExpression>> groups = a.getExtensionExpressions();
 		if (groups.isEmpty()) {
-			OWLObjectSomeValuesFrom r = fac.getOWLObjectSomeValuesFrom(geneAnnotationRelation, annotatedToClass);
+			OWLObjectSomeValuesFrom r = (OWLObjectSomeValuesFrom) share(fac.getOWLObjectSomeValuesFrom(geneAnnotationRelation, annotatedToClass));
 			GAFDescription desc = new GAFDescription(r, labelBuilder.toString());
 			return Collections.singletonList(desc);
 		}
@@ -268,7 +433,7 @@ public class GAFOWLBridge {
 					//LOG.info(" EXT:"+p+" "+filler);
 					ops.add(fac.getOWLObjectSomeValuesFrom(p, filler));
 				}
-				annotatedToClass = fac.getOWLObjectIntersectionOf(ops);
+				annotatedToClass = share(fac.getOWLObjectIntersectionOf(ops));
 			}
 
 
@@ -276,7 +441,7 @@ public class GAFOWLBridge {
 				labelBuilder.append(c16Label);
 			}
 
-			OWLObjectSomeValuesFrom r = fac.getOWLObjectSomeValuesFrom(geneAnnotationRelation, annotatedToClass);
+			OWLObjectSomeValuesFrom r = (OWLObjectSomeValuesFrom) share(fac.getOWLObjectSomeValuesFrom(geneAnnotationRelation, annotatedToClass));
 			results.add(new GAFDescription(r, labelBuilder.toString()));
 		}
 
@@ -495,10 +660,16 @@ public class GAFOWLBridge {
 	}
 
 	protected void addAxioms(Set<OWLAxiom> axioms) {
-		graph.getManager().addAxioms(targetOntology, axioms);
+		Set<OWLAxiom> pending = pendingAxioms.get();
+		if (pending != null) {
+			pending.addAll(axioms);
+		}
+		else {
+			graph.getManager().addAxioms(targetOntology, axioms);
+		}
 	}
 
 	private void addAxiom(OWLAxiom axiom) {
-		graph.getManager().addAxiom(targetOntology, axiom);
+		addAxioms(Collections.singleton(axiom));
 	}
 }
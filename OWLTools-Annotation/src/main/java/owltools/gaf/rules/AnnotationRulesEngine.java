@@ -195,31 +195,43 @@ public class AnnotationRulesEngine {
 				bridge.setBasicAboxMapping(false);
 				bridge.setBioentityMapping(BioentityMapping.NAMED_CLASS);
 				bridge.setSkipNotAnnotations(true);
+				bridge.setBulkTranslation(true);
+				// the OWL rules check the annotations together with the ontology
+				bridge.translate(doc);
 				translatedGraph = new OWLGraphWrapper(translated);
 			}
 			
-			if (hasOwlRules && translatedGraph != null) {
-				LOG.info("Start validation using OWL representation with "+owlRules.size()+" rules.");
-				for(AnnotationRule rule : owlRules) {
-					result.addViolations(rule.getRuleViolations(doc, translatedGraph));
+			try {
+				if (hasOwlRules && translatedGraph != null) {
+					LOG.info("Start validation using OWL representation with "+owlRules.size()+" rules.");
+					for(AnnotationRule rule : owlRules) {
+						result.addViolations(rule.getRuleViolations(doc, translatedGraph));
+					}
+					LOG.info("Finished validation in OWL.");
+				}
+			
+				if (hasInferenceRules && translatedGraph != null) {
+					LOG.info("Start prediction/inference of annotations.");
+					for(AnnotationRule rule : inferenceRules) {
+						result.addInferences(rule.getPredictedAnnotations(doc, translatedGraph));
+					}
+					LOG.info("Finished prediction/inference of new annotations. Found: "+result.predictions.size());
 				}
-				LOG.info("Finished validation in OWL.");
-			}
 			
-			if (hasInferenceRules && translatedGraph != null) {
-				LOG.info("Start prediction/inference of annotations.");
-				for(AnnotationRule rule : inferenceRules) {
-					result.addInferences(rule.getPredictedAnnotations(doc, translatedGraph));
+				if (hasExperimentalInferenceRules && translatedGraph != null) {
+					LOG.info("Start experimental prediction/inference of annotations.");
+					for(AnnotationRule rule : experimentalInferenceRules) {
+						result.addExperimentalInferences(rule.getPredictedAnnotations(doc, translatedGraph));
+					}
+					LOG.info("Finished experimental prediction/inference of new annotations. Found: "+result.experimentalPredictions.size());
 				}
-				LOG.info("Finished prediction/inference of new annotations. Found: "+result.predictions.size());
 			}
-			
-			if (hasExperimentalInferenceRules && translatedGraph != null) {
-				LOG.info("Start experimental prediction/inference of annotations.");
-				for(AnnotationRule rule : experimentalInferenceRules) {
-					result.addExperimentalInferences(rule.getPredictedAnnotations(doc, translatedGraph));
+			finally {
+				if (translatedGraph != null) {
+					// the translated ontology is only used for this document,
+					// also release its reasoner if a rule fails
+					rulesFactory.getClassificationService().evict(translatedGraph.getSourceOntology());
 				}
-				LOG.info("Finished experimental prediction/inference of new annotations. Found: "+result.experimentalPredictions.size());
 			}
 			
 		}catch(Exception ex){
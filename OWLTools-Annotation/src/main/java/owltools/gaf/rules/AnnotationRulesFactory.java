@@ -4,6 +4,7 @@ import java.util.List;
 
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
+import owltools.gaf.inference.ClassificationService;
 import owltools.graph.OWLGraphWrapper;
 
 public interface AnnotationRulesFactory {
@@ -58,5 +59,12 @@ public interface AnnotationRulesFactory {
 	 * @return graph or null
 	 */
 	public OWLGraphWrapper getGraph();
+	
+	/**
+	 * Get the classification service shared by the rules of this factory.
+	 * 
+	 * @return service
+	 */
+	public ClassificationService getClassificationService();
 
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
 import org.jdom.xpath.XPath;
 
+import owltools.gaf.inference.ClassificationService;
 import owltools.graph.OWLGraphWrapper;
 
 
@@ -45,6 +46,7 @@ public class AnnotationRulesFactoryImpl implements AnnotationRulesFactory {
 	private final List<AnnotationRule> experimentalInferenceRules;
 	private final String path;
 	private final OWLGraphWrapper graph;
+	private final ClassificationService classificationService;
 	
 	private boolean isInitalized = false;
 	
@@ -55,6 +57,7 @@ public class AnnotationRulesFactoryImpl implements AnnotationRulesFactory {
 	protected AnnotationRulesFactoryImpl(String path, OWLGraphWrapper graph){
 		this.path = path;
 		this.graph = graph;
+		this.classificationService = new ClassificationService();
 		annotationRules = new ArrayList<AnnotationRule>();
 		documentRules = new ArrayList<AnnotationRule>();
 		owlRules = new ArrayList<AnnotationRule>();
@@ -296,4 +299,9 @@ public class AnnotationRulesFactoryImpl implements AnnotationRulesFactory {
 		return graph;
 	}
 
+	@Override
+	public ClassificationService getClassificationService() {
+		return classificationService;
+	}
+
 }
@@ -9,7 +9,6 @@ import java.util.Set;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 import org.semanticweb.HermiT.Configuration;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAnnotationValue;
@@ -25,6 +24,8 @@ import org.semanticweb.owlapi.reasoner.ReasonerProgressMonitor;
 
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.gaf.owl.GAFOWLBridge;
 import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
 import owltools.graph.OWLGraphWrapper;
@@ -40,13 +41,38 @@ public class AnnotationTaxonRule extends AbstractAnnotationRule {
 	
 	private final OWLGraphWrapper graph;
 	private final Map<String, OWLObject> allOWLObjectsByAltId;
+	private final TaxonConstraintIndex taxonIndex;
+	private final ClassificationService classifier;
 	
 	/**
 	 * @param graph
 	 */
 	public AnnotationTaxonRule(OWLGraphWrapper graph) {
+		this(graph, null);
+	}
+	
+	/**
+	 * If a {@link TaxonConstraintIndex} is given, each annotation is checked 
+	 * with a lookup in the index, instead of translating the whole GAF to OWL 
+	 * and checking it with a reasoner.
+	 * 
+	 * @param graph
+	 * @param taxonIndex index for the graph, may be null
+	 */
+	public AnnotationTaxonRule(OWLGraphWrapper graph, TaxonConstraintIndex taxonIndex) {
+		this(graph, taxonIndex, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param graph
+	 * @param taxonIndex index for the graph, may be null
+	 * @param classifier shared classification of the translated annotations
+	 */
+	public AnnotationTaxonRule(OWLGraphWrapper graph, TaxonConstraintIndex taxonIndex, ClassificationService classifier) {
 		allOWLObjectsByAltId = graph.getAllOWLObjectsByAltId();
 		this.graph = graph;
+		this.taxonIndex = taxonIndex;
+		this.classifier = classifier;
 	}
 
 	@Override
@@ -82,13 +108,19 @@ public class AnnotationTaxonRule extends AbstractAnnotationRule {
 			}
 		}
 		
+		if (taxonIndex != null && cls instanceof OWLClass && tax instanceof OWLClass) {
+			if (!taxonIndex.isClassApplicable((OWLClass) cls, (OWLClass) tax)) {
+				AnnotationRuleViolation v = new AnnotationRuleViolation(getRuleId(), "Class "+annotationCls+" is not applicable for taxon "+taxonCls, a, ViolationType.Error);
+				return Collections.singleton(v);
+			}
+		}
 		
 		return Collections.emptySet();
 	}
 	
 	@Override
 	public boolean isOwlDocumentLevel() {
-		return true;
+		return taxonIndex == null;
 	}
 
 	@Override
@@ -97,9 +129,7 @@ public class AnnotationTaxonRule extends AbstractAnnotationRule {
 		
 //		OWLReasoner reasoner = createHermit(ontology);
 //		OWLReasoner reasoner = createMore(ontology);
-		Pair<OWLReasoner, OWLReasonerFactory> reasonerPair = createElk(ontology);
-		OWLReasoner reasoner = reasonerPair.getLeft();
-//		OWLReasonerFactory reasonerFactory = reasonerPair.getRight();
+		OWLReasoner reasoner = classifier.acquire(ontology, getClass().getSimpleName());
 		try {
 			boolean consistent = reasoner.isConsistent();
 			if (!consistent) {
@@ -157,7 +187,7 @@ public class AnnotationTaxonRule extends AbstractAnnotationRule {
 			return Collections.emptySet();
 		}
 		finally {
-			reasoner.dispose();
+			classifier.release(ontology);
 		}
 		
 	}
@@ -166,12 +196,6 @@ public class AnnotationTaxonRule extends AbstractAnnotationRule {
 		// do nothing
 	}
 
-	private Pair<OWLReasoner, OWLReasonerFactory> createElk(OWLOntology ontology) {
-		OWLReasonerFactory factory = new ElkReasonerFactory();
-		OWLReasoner reasoner = factory.createReasoner(ontology);
-		return Pair.of(reasoner, factory);
-	}
-
 	@SuppressWarnings("unused")
 	private Pair<OWLReasoner, OWLReasonerFactory> createHermit(final OWLOntology ontology) {
 		// use Hermit, as GO has inverse_of relations between part_of and has_part
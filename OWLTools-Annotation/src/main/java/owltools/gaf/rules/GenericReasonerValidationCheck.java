@@ -10,11 +10,13 @@ import org.semanticweb.elk.owlapi.ElkReasoner;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
+import owltools.gaf.inference.ClassificationService;
 import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
 import owltools.graph.OWLGraphWrapper;
 import owltools.io.OWLPrettyPrinter;
@@ -40,6 +42,18 @@ public class GenericReasonerValidationCheck extends AbstractAnnotationRule {
 	private static final Logger logger = Logger.getLogger(GenericReasonerValidationCheck.class);
 
 	private final OWLReasonerFactory factory = new ElkReasonerFactory();
+	private final ClassificationService classifier;
+	
+	public GenericReasonerValidationCheck() {
+		this(ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param classifier shared classification of the translated annotations
+	 */
+	public GenericReasonerValidationCheck(ClassificationService classifier) {
+		this.classifier = classifier;
+	}
 
 	@Override
 	public Set<AnnotationRuleViolation> getRuleViolations(GeneAnnotation a) {
@@ -64,7 +78,8 @@ public class GenericReasonerValidationCheck extends AbstractAnnotationRule {
 		if (logger.isDebugEnabled()) {
 			logger.debug("Create reasoner");
 		}
-		OWLReasoner reasoner = factory.createReasoner(graph.getSourceOntology());
+		final OWLOntology ontology = graph.getSourceOntology();
+		OWLReasoner reasoner = classifier.acquire(ontology, getClass().getSimpleName());
 		try {
 			if (logger.isDebugEnabled()) {
 				logger.debug("Check consistency");
@@ -124,7 +139,7 @@ public class GenericReasonerValidationCheck extends AbstractAnnotationRule {
 			return Collections.emptySet();
 		}
 		finally {
-			reasoner.dispose();
+			classifier.release(ontology);
 		}
 	}
 
@@ -9,14 +9,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLClass;
-import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import owltools.gaf.Bioentity;
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
 import owltools.gaf.eco.TraversingEcoMapper;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.ClassificationService.Taxonomy;
 import owltools.gaf.rules.AbstractAnnotationRule;
 import owltools.gaf.rules.AnnotationRuleViolation;
 import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
@@ -40,6 +40,15 @@ public class GOReciprocalAnnotationRule extends AbstractAnnotationRule {
 	private final Set<OWLClass> proteinBindingClasses;
 
 	public GOReciprocalAnnotationRule(OWLGraphWrapper graph, TraversingEcoMapper eco) {
+		this(graph, eco, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param graph
+	 * @param eco
+	 * @param classifier shared classification of the graph
+	 */
+	public GOReciprocalAnnotationRule(OWLGraphWrapper graph, TraversingEcoMapper eco, ClassificationService classifier) {
 		this.graph = graph;
 		evidences = eco.getAllValidEvidenceIds("IPI",  true);
 		
@@ -47,24 +56,10 @@ public class GOReciprocalAnnotationRule extends AbstractAnnotationRule {
 		if (proteinBindingCls == null) {
 			throw new RuntimeException("No class found for identifier: "+PROTEIN_BINDING_GO_ID);
 		}
-		ElkReasonerFactory factory = new ElkReasonerFactory();
-		OWLReasoner reasoner = null;
-		try {
-			reasoner = factory.createReasoner(graph.getSourceOntology());
-			proteinBindingClasses = new HashSet<OWLClass>();
-			proteinBindingClasses.add(proteinBindingCls);
-			Set<OWLClass> subClasses = reasoner.getSubClasses(proteinBindingCls, false).getFlattened();
-			for (OWLClass cls : subClasses) {
-				if (!cls.isBottomEntity() && !cls.isTopEntity()) {
-					proteinBindingClasses.add(cls);
-				}
-			}
-		}
-		finally {
-			if (reasoner != null) {
-				reasoner.dispose();
-			}
-		}
+		Taxonomy taxonomy = classifier.getTaxonomy(graph.getSourceOntology(), getClass().getSimpleName());
+		proteinBindingClasses = new HashSet<OWLClass>();
+		proteinBindingClasses.add(proteinBindingCls);
+		proteinBindingClasses.addAll(taxonomy.getSubClasses(proteinBindingCls));
 	}
 	
 	@Override
@@ -16,6 +16,7 @@ import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
 import owltools.gaf.inference.AnnotationPredictor;
 import owltools.gaf.inference.BasicAnnotationPropagator;
+import owltools.gaf.inference.ClassificationService;
 import owltools.gaf.inference.FoldBasedPredictor;
 import owltools.gaf.inference.Prediction;
 import owltools.gaf.rules.AbstractAnnotationRule;
@@ -35,10 +36,20 @@ public class GoAnnotationPredictionRule extends AbstractAnnotationRule {
 	private static boolean USE_BASIC_PROPAGATION_RULE = true;
 	
 	private final OWLGraphWrapper source;
+	private final ClassificationService classifier;
 
 	public GoAnnotationPredictionRule(OWLGraphWrapper source) {
+		this(source, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param source
+	 * @param classifier shared classification of the source
+	 */
+	public GoAnnotationPredictionRule(OWLGraphWrapper source, ClassificationService classifier) {
 		super();
 		this.source = source;
+		this.classifier = classifier;
 	}
 
 	@Override
@@ -80,7 +91,7 @@ public class GoAnnotationPredictionRule extends AbstractAnnotationRule {
 			LOG.info("Start creating predictions using basic propagation");
 			AnnotationPredictor predictor = null;
 			try {
-				predictor = new BasicAnnotationPropagator(gafDoc, source, false);
+				predictor = new BasicAnnotationPropagator(gafDoc, source, false, classifier);
 				if (predictor.isInitialized()) {
 					List<Prediction> basicPredictions = predictor.predictForBioEntities(allAnnotations);
 					if (basicPredictions != null) {
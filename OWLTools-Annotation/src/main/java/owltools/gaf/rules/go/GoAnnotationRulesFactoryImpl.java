@@ -11,6 +11,8 @@ import org.semanticweb.owlapi.model.OWLOntology;
 import owltools.gaf.eco.EcoMapperFactory;
 import owltools.gaf.eco.EcoMapperFactory.OntologyMapperPair;
 import owltools.gaf.eco.TraversingEcoMapper;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.gaf.rules.AnnotationRule;
 import owltools.gaf.rules.AnnotationRulesFactoryImpl;
 import owltools.gaf.rules.GenericReasonerValidationCheck;
@@ -48,6 +50,11 @@ public class GoAnnotationRulesFactoryImpl extends AnnotationRulesFactoryImpl {
 		this("http://www.geneontology.org/quality_control/annotation_checks/annotation_qc.xml",
 				"http://www.geneontology.org/doc/GO.xrf_abbs", graph, eco, taxonModule);
 	}
+	
+	public GoAnnotationRulesFactoryImpl(OWLGraphWrapper graph, TraversingEcoMapper eco, String taxonModule, TaxonConstraintIndex taxonIndex) {
+		this("http://www.geneontology.org/quality_control/annotation_checks/annotation_qc.xml",
+				"http://www.geneontology.org/doc/GO.xrf_abbs", graph, eco, taxonModule, taxonIndex);
+	}
 
 	@Override
 	protected void handleAdditionalRules(List<AnnotationRule> annotationRules, List<AnnotationRule> documentRules,
@@ -64,29 +71,42 @@ public class GoAnnotationRulesFactoryImpl extends AnnotationRulesFactoryImpl {
 	}
 
 	public GoAnnotationRulesFactoryImpl(String qcfile, String xrfabbslocation, OWLGraphWrapper graph, TraversingEcoMapper eco, String taxonModule) {
+		this(qcfile, xrfabbslocation, graph, eco, taxonModule, null);
+	}
+	
+	/**
+	 * @param qcfile
+	 * @param xrfabbslocation
+	 * @param graph
+	 * @param eco
+	 * @param taxonModule
+	 * @param taxonIndex if not null, taxon constraints are checked per annotation with this index
+	 */
+	public GoAnnotationRulesFactoryImpl(String qcfile, String xrfabbslocation, OWLGraphWrapper graph, TraversingEcoMapper eco, String taxonModule, TaxonConstraintIndex taxonIndex) {
 		super(qcfile, graph);
 		logger.info("Start preparing ontology checks");
+		final ClassificationService classifier = getClassificationService();
 		namedRules = new HashMap<String, AnnotationRule>();
 		namedRules.put(BasicChecksRule.PERMANENT_JAVA_ID,  new BasicChecksRule(xrfabbslocation, eco));
 //		String taxonModuleFile = null;
 //		if (createOntologyModules) {
 //			taxonModuleFile = "go-taxon-rule-unsatisfiable-module.owl";
 //		}
-		namedRules.put(GoAnnotationTaxonRule.PERMANENT_JAVA_ID, new GoAnnotationTaxonRule(graph, taxonModule));
+		namedRules.put(GoAnnotationTaxonRule.PERMANENT_JAVA_ID, new GoAnnotationTaxonRule(graph, taxonModule, taxonIndex, classifier));
 		namedRules.put(GoClassReferenceAnnotationRule.PERMANENT_JAVA_ID, new GoClassReferenceAnnotationRule(graph, "GO:","CL:"));
-		namedRules.put(GenericReasonerValidationCheck.PERMANENT_JAVA_ID, new GenericReasonerValidationCheck());
+		namedRules.put(GenericReasonerValidationCheck.PERMANENT_JAVA_ID, new GenericReasonerValidationCheck(classifier));
 		namedRules.put(GoNoISSProteinBindingRule.PERMANENT_JAVA_ID, new GoNoISSProteinBindingRule(eco));
 		namedRules.put(GoBindingCheckWithFieldRule.PERMANENT_JAVA_ID, new GoBindingCheckWithFieldRule(eco));
-		namedRules.put(GoIEPRestrictionsRule.PERMANENT_JAVA_ID, new GoIEPRestrictionsRule(graph, eco));
-		namedRules.put(GoIPICatalyticActivityRestrictionsRule.PERMANENT_JAVA_ID, new GoIPICatalyticActivityRestrictionsRule(graph, eco));
+		namedRules.put(GoIEPRestrictionsRule.PERMANENT_JAVA_ID, new GoIEPRestrictionsRule(graph, eco, classifier));
+		namedRules.put(GoIPICatalyticActivityRestrictionsRule.PERMANENT_JAVA_ID, new GoIPICatalyticActivityRestrictionsRule(graph, eco, classifier));
 		namedRules.put(GoICAnnotationRule.PERMANENT_JAVA_ID, new GoICAnnotationRule(eco));
 		namedRules.put(GoIDAAnnotationRule.PERMANENT_JAVA_ID, new GoIDAAnnotationRule(eco));
 		namedRules.put(GoIPIAnnotationRule.PERMANENT_JAVA_ID, new GoIPIAnnotationRule(eco));
 		namedRules.put(GoNDAnnotationRule.PERMANENT_JAVA_ID, new GoNDAnnotationRule(eco));
-		namedRules.put(GOReciprocalAnnotationRule.PERMANENT_JAVA_ID, new GOReciprocalAnnotationRule(graph, eco));
-		namedRules.put(GoMultipleTaxonRule.PERMANENT_JAVA_ID, new GoMultipleTaxonRule(graph));
+		namedRules.put(GOReciprocalAnnotationRule.PERMANENT_JAVA_ID, new GOReciprocalAnnotationRule(graph, eco, classifier));
+		namedRules.put(GoMultipleTaxonRule.PERMANENT_JAVA_ID, new GoMultipleTaxonRule(graph, classifier));
 		namedRules.put(GoNoHighLevelTermAnnotationRule.PERMANENT_JAVA_ID, new GoNoHighLevelTermAnnotationRule(graph, eco));
-		namedRules.put(GoAnnotationPredictionRule.PERMANENT_JAVA_ID, new GoAnnotationPredictionRule(graph));
+		namedRules.put(GoAnnotationPredictionRule.PERMANENT_JAVA_ID, new GoAnnotationPredictionRule(graph, classifier));
 		namedRules.put(GoAnnotationExperimentalPredictionRule.PERMANENT_JAVA_ID, new GoAnnotationExperimentalPredictionRule());
 		logger.info("Finished preparing ontology checks");
 	}
@@ -19,6 +19,8 @@ import org.semanticweb.owlapi.model.OWLException;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.gaf.rules.AnnotationTaxonRule;
 import owltools.graph.OWLGraphWrapper;
 import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
@@ -41,7 +43,27 @@ public class GoAnnotationTaxonRule extends AnnotationTaxonRule {
 	private final String unsatifiableModule;
 
 	public GoAnnotationTaxonRule(OWLGraphWrapper graph, String unsatifiableModule) {
-		super(graph);
+		this(graph, unsatifiableModule, null);
+	}
+	
+	/**
+	 * @param graph
+	 * @param unsatifiableModule
+	 * @param taxonIndex if not null, used instead of a reasoner
+	 * @see AnnotationTaxonRule#AnnotationTaxonRule(OWLGraphWrapper, TaxonConstraintIndex)
+	 */
+	public GoAnnotationTaxonRule(OWLGraphWrapper graph, String unsatifiableModule, TaxonConstraintIndex taxonIndex) {
+		this(graph, unsatifiableModule, taxonIndex, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param graph
+	 * @param unsatifiableModule
+	 * @param taxonIndex if not null, used instead of a reasoner
+	 * @param classifier shared classification of the translated annotations
+	 */
+	public GoAnnotationTaxonRule(OWLGraphWrapper graph, String unsatifiableModule, TaxonConstraintIndex taxonIndex, ClassificationService classifier) {
+		super(graph, taxonIndex, classifier);
 		this.unsatifiableModule = unsatifiableModule;
 		if (unsatifiableModule != null) {
 			File file = new File(unsatifiableModule);
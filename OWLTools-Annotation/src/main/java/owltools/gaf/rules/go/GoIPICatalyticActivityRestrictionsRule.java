@@ -4,14 +4,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLClass;
-import org.semanticweb.owlapi.reasoner.NodeSet;
-import org.semanticweb.owlapi.reasoner.OWLReasoner;
-import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 
 import owltools.gaf.GeneAnnotation;
 import owltools.gaf.eco.TraversingEcoMapper;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.ClassificationService.Taxonomy;
 import owltools.gaf.rules.AbstractAnnotationRule;
 import owltools.gaf.rules.AnnotationRuleViolation;
 import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
@@ -37,6 +35,15 @@ public class GoIPICatalyticActivityRestrictionsRule extends AbstractAnnotationRu
 	private final Set<String> classSubSet;
 
 	public GoIPICatalyticActivityRestrictionsRule(OWLGraphWrapper graph, TraversingEcoMapper eco) {
+		this(graph, eco, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param graph
+	 * @param eco
+	 * @param classifier shared classification of the graph
+	 */
+	public GoIPICatalyticActivityRestrictionsRule(OWLGraphWrapper graph, TraversingEcoMapper eco, ClassificationService classifier) {
 		this.message = MESSAGE;
 		this.violationType = ViolationType.Warning;
 		
@@ -45,23 +52,13 @@ public class GoIPICatalyticActivityRestrictionsRule extends AbstractAnnotationRu
 		classSubSet = new HashSet<String>();
 		
 		OWLClass rootClass = graph.getOWLClassByIdentifier("GO:0003824"); // catalytic activity
-		OWLReasonerFactory factory = new ElkReasonerFactory();
-		OWLReasoner reasoner = factory.createReasoner(graph.getSourceOntology());
-		try {
-			NodeSet<OWLClass> nodeSet = reasoner.getSubClasses(rootClass, false);
-			for(OWLClass cls : nodeSet.getFlattened()) {
-				if (cls.isBottomEntity() || cls.isTopEntity()) {
-					continue;
-				}
-				String oboId = graph.getIdentifier(cls);
-				if (oboId != null) {
-					classSubSet.add(oboId);
-				}
+		Taxonomy taxonomy = classifier.getTaxonomy(graph.getSourceOntology(), getClass().getSimpleName());
+		for(OWLClass cls : taxonomy.getSubClasses(rootClass)) {
+			String oboId = graph.getIdentifier(cls);
+			if (oboId != null) {
+				classSubSet.add(oboId);
 			}
 		}
-		finally {
-			reasoner.dispose();
-		}
 	}
 	
 	@Override
@@ -5,12 +5,12 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLObject;
-import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import owltools.gaf.GeneAnnotation;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.inference.ClassificationService.Taxonomy;
 import owltools.gaf.rules.AbstractAnnotationRule;
 import owltools.gaf.rules.AnnotationRuleViolation;
 import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
@@ -33,6 +33,14 @@ public class GoMultipleTaxonRule extends AbstractAnnotationRule {
 	private final Set<OWLClass> multiOrganismClasses;
 	
 	public GoMultipleTaxonRule(OWLGraphWrapper graph) {
+		this(graph, ClassificationService.createUnshared());
+	}
+	
+	/**
+	 * @param graph
+	 * @param classifier shared classification of the graph
+	 */
+	public GoMultipleTaxonRule(OWLGraphWrapper graph, ClassificationService classifier) {
 		this.graph = graph;
 		multiOrganismClasses = new HashSet<OWLClass>();
 		
@@ -41,24 +49,8 @@ public class GoMultipleTaxonRule extends AbstractAnnotationRule {
 			throw new RuntimeException("Could not find class for 'multi-organism process' id: "+GO_ID_MULTI_ORGANISM_PROCESS);
 		}
 		multiOrganismClasses.add(mop);
-		ElkReasonerFactory factory = new ElkReasonerFactory();
-		OWLReasoner reasoner = null;
-		try {
-			reasoner = factory.createReasoner(graph.getSourceOntology());
-			Set<OWLClass> subClasses = reasoner.getSubClasses(mop, false).getFlattened();
-			for (OWLClass owlClass : subClasses) {
-				if (owlClass.isBottomEntity() || owlClass.isTopEntity()) {
-					continue;
-				}
-				multiOrganismClasses.add(owlClass);
-			}
-			
-		}
-		finally {
-			if (reasoner != null) {
-				reasoner.dispose();
-			}
-		}
+		Taxonomy taxonomy = classifier.getTaxonomy(graph.getSourceOntology(), getClass().getSimpleName());
+		multiOrganismClasses.addAll(taxonomy.getSubClasses(mop));
 	}
 	
 	@Override
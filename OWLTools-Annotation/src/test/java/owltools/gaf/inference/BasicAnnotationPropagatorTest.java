@@ -4,11 +4,16 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.Test;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
@@ -18,6 +23,7 @@ import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import owltools.OWLToolsTestBasics;
+import owltools.gaf.Bioentity;
 import owltools.gaf.GafDocument;
 import owltools.gaf.GeneAnnotation;
 import owltools.gaf.io.GafWriter;
@@ -119,6 +125,148 @@ public class BasicAnnotationPropagatorTest extends OWLToolsTestBasics {
 		assertEquals(expectedLine, writtenLine);
 	}
 
+	@Test
+	public void testRepeatedPredictions() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLGraphWrapper g = pw.parseToOWLGraph(getResourceIRIString("lmajor_f2p_test_go_subset.obo"));
+		GafObjectsBuilder b = new GafObjectsBuilder();
+		GafDocument gafDocument = b.buildDocument(getResource("lmajor_f2p_test.gaf"));
+		
+		ClassificationService classifier = new ClassificationService();
+		try {
+			BasicAnnotationPropagator first = new BasicAnnotationPropagator(gafDocument, g, true, classifier);
+			List<Prediction> firstPredictions = first.getAllPredictions();
+			// cached closures and non-redundant sets
+			List<Prediction> cachedPredictions = first.getAllPredictions();
+			assertSameAsReasonerPredictions(first, gafDocument, g);
+			first.dispose();
+			BasicAnnotationPropagator second = new BasicAnnotationPropagator(gafDocument, g, true, classifier);
+			List<Prediction> secondPredictions = second.getAllPredictions();
+			second.dispose();
+			
+			assertEquals(1, firstPredictions.size());
+			assertEquals(render(firstPredictions), render(cachedPredictions));
+			assertEquals(render(firstPredictions), render(secondPredictions));
+			assertTrue(classifier.getReport(), classifier.getReport().contains("BasicAnnotationPropagator: 4 queries, 1 classifications"));
+		}
+		finally {
+			classifier.close();
+		}
+	}
+
+	/**
+	 * Compare the predictions with those of the reasoner-based path on the same bioentities.
+	 *
+	 * @param propagator
+	 * @param gafDocument
+	 * @param g
+	 */
+	private static void assertSameAsReasonerPredictions(BasicAnnotationPropagator propagator, GafDocument gafDocument, OWLGraphWrapper g) {
+		Map<Bioentity, List<GeneAnnotation>> annMap = new LinkedHashMap<Bioentity, List<GeneAnnotation>>();
+		for (GeneAnnotation ann : gafDocument.getGeneAnnotations()) {
+			List<GeneAnnotation> anns = annMap.get(ann.getBioentityObject());
+			if (anns == null) {
+				anns = new ArrayList<GeneAnnotation>();
+				annMap.put(ann.getBioentityObject(), anns);
+			}
+			anns.add(ann);
+		}
+
+		OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(g.getSourceOntology());
+		try {
+			Map<String, Set<OWLClass>> rules = propagator.createPropagationRules(g, reasoner);
+			Map<String, String> aspectMap = propagator.createDefaultAspectMap(g);
+			Set<String> expected = new TreeSet<String>();
+			for (List<GeneAnnotation> annotations : annMap.values()) {
+				expected.addAll(predictWithReasoner(annotations, rules, aspectMap, propagator, g, reasoner));
+			}
+			Set<String> actual = new TreeSet<String>();
+			for (Prediction prediction : propagator.predictForBioEntities(annMap)) {
+				actual.add(key(prediction.getGeneAnnotation(), prediction.getGeneAnnotation().getCls()));
+			}
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, actual);
+		}
+		finally {
+			reasoner.dispose();
+		}
+	}
+
+	/**
+	 * Predict using only the reasoner, with {@link BasicAnnotationPropagator#reduceToNonRedundant(Set, OWLReasoner)}
+	 * and {@link BasicAnnotationPropagator#getIsaPartofSuperClassClosure(java.util.Collection, OWLGraphWrapper, OWLReasoner)}.
+	 *
+	 * @param annotations
+	 * @param rules
+	 * @param aspectMap
+	 * @param propagator
+	 * @param g
+	 * @param reasoner
+	 * @return keys of the predictions
+	 */
+	private static Set<String> predictWithReasoner(List<GeneAnnotation> annotations, Map<String, Set<OWLClass>> rules,
+			Map<String, String> aspectMap, BasicAnnotationPropagator propagator, OWLGraphWrapper g, OWLReasoner reasoner) {
+		Map<String, List<GeneAnnotation>> annotationsByEvidence = new HashMap<String, List<GeneAnnotation>>();
+		Map<String, Map<OWLClass, GeneAnnotation>> linkedByEvidence = new HashMap<String, Map<OWLClass, GeneAnnotation>>();
+		for (GeneAnnotation ann : annotations) {
+			String evidence = ann.getShortEvidence();
+			if ("ND".equals(evidence) || (BasicAnnotationPropagator.SKIP_IEA && "IEA".equals(evidence)) || "GOC".equals(ann.getAssignedBy())) {
+				continue;
+			}
+			List<GeneAnnotation> group = annotationsByEvidence.get(evidence);
+			if (group == null) {
+				group = new ArrayList<GeneAnnotation>();
+				annotationsByEvidence.put(evidence, group);
+			}
+			group.add(ann);
+			Set<OWLClass> linkedClasses = rules.get(ann.getCls());
+			if (ann.hasQualifiers() || linkedClasses == null) {
+				continue;
+			}
+			Map<OWLClass, GeneAnnotation> linked = linkedByEvidence.get(evidence);
+			if (linked == null) {
+				linked = new HashMap<OWLClass, GeneAnnotation>();
+				linkedByEvidence.put(evidence, linked);
+			}
+			for (OWLClass linkedClass : linkedClasses) {
+				linked.put(linkedClass, ann);
+			}
+		}
+		Set<String> predictions = new HashSet<String>();
+		for (Entry<String, Map<OWLClass, GeneAnnotation>> entry : linkedByEvidence.entrySet()) {
+			Set<OWLClass> nonRedundant = BasicAnnotationPropagator.reduceToNonRedundant(entry.getValue().keySet(), reasoner);
+			for (OWLClass cls : nonRedundant) {
+				String aspect = aspectMap.get(propagator.getSubOntology(cls));
+				Set<OWLClass> existing = new HashSet<OWLClass>();
+				for (GeneAnnotation ann : annotationsByEvidence.get(entry.getKey())) {
+					OWLClass annotated = g.getOWLClassByIdentifierNoAltIds(ann.getCls());
+					if (aspect.equals(ann.getAspect()) && annotated != null) {
+						existing.add(annotated);
+					}
+				}
+				if (existing.isEmpty() || BasicAnnotationPropagator.getIsaPartofSuperClassClosure(existing, g, reasoner).contains(cls) == false) {
+					predictions.add(key(entry.getValue().get(cls), g.getIdentifier(cls)));
+				}
+			}
+		}
+		return predictions;
+	}
+
+	private static String key(GeneAnnotation ann, String cls) {
+		return ann.getBioentity()+"\t"+cls+"\t"+ann.getShortEvidence();
+	}
+
+	private static String render(List<Prediction> predictions) {
+		GafWriter writer = new GafWriter();
+		ByteArrayOutputStream out  = new ByteArrayOutputStream();
+		writer.setStream(new PrintStream(out));
+		for (Prediction prediction : predictions) {
+			writer.write(prediction.getGeneAnnotation());
+		}
+		out.flush();
+		return out.toString();
+	}
+
 	/**
 	 * @param g
 	 * @param gafDocument
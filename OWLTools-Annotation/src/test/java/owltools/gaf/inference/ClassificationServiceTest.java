@@ -0,0 +1,63 @@
+package owltools.gaf.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.OWLToolsTestBasics;
+import owltools.gaf.inference.ClassificationService.Taxonomy;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+public class ClassificationServiceTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSharedClassification() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		IRI iri = IRI.create(new File("src/test/resources/simple_taxon_check.owl").getCanonicalFile());
+		OWLGraphWrapper graph = new OWLGraphWrapper(pw.parseOWL(iri));
+		OWLOntology ontology = graph.getSourceOntology();
+
+		ClassificationService service = new ClassificationService();
+		OWLReasoner first = service.acquire(ontology, "first");
+		service.release(ontology);
+		OWLReasoner second = service.acquire(ontology, "second");
+		assertSame(first, second);
+
+		Taxonomy taxonomy = service.getTaxonomy(ontology, "second");
+		OWLClass vertebrate = cls(graph, "vertebrate");
+		Set<OWLClass> expected = second.getSubClasses(vertebrate, false).getFlattened();
+		expected.remove(graph.getDataFactory().getOWLNothing());
+		assertEquals(expected, taxonomy.getSubClasses(vertebrate));
+		assertTrue(taxonomy.isSubClassOf(cls(graph, "mouse"), cls(graph, "animal")));
+		assertFalse(taxonomy.isSubClassOf(cls(graph, "animal"), cls(graph, "mouse")));
+		assertTrue(taxonomy.getSuperClasses(cls(graph, "hair")).isEmpty());
+		assertSame(taxonomy, service.getTaxonomy(ontology, "third"));
+
+		String report = service.getReport();
+		assertTrue(report, report.contains("first: 1 queries, 1 classifications"));
+		assertTrue(report, report.contains("second: 2 queries, 0 classifications"));
+
+		// still used by the second consumer, disposed on release
+		service.close();
+		service.release(ontology);
+		OWLReasoner third = service.acquire(ontology, "fourth");
+		assertNotSame(second, third);
+		service.release(ontology);
+	}
+
+	private static OWLClass cls(OWLGraphWrapper graph, String name) {
+		return graph.getOWLClass(IRI.create("http://foo.bar/"+name));
+	}
+}
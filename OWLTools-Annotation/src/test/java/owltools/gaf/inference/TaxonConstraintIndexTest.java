@@ -0,0 +1,57 @@
+package owltools.gaf.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+public class TaxonConstraintIndexTest extends OWLToolsTestBasics {
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testSameAsEngine() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		IRI iri = IRI.create(new File("src/test/resources/simple_taxon_check.owl").getCanonicalFile());
+		OWLGraphWrapper graph = new OWLGraphWrapper(pw.parseOWL(iri));
+
+		List<OWLClass> classes = Arrays.asList(cls(graph, "hair"), cls(graph, "hair_root"),
+				cls(graph, "whisker"), cls(graph, "tip_of_whisker"));
+		List<OWLClass> taxa = Arrays.asList(cls(graph, "animal"), cls(graph, "vertebrate"),
+				cls(graph, "mammal"), cls(graph, "mouse"), cls(graph, "human"),
+				cls(graph, "bird"), cls(graph, "chicken"));
+
+		TaxonConstraintIndex index = new TaxonConstraintIndex(graph, classes, taxa);
+		TaxonConstraintsEngine engine = new TaxonConstraintsEngine(graph);
+		for (OWLClass c : classes) {
+			for (OWLClass taxon : taxa) {
+				assertTrue(index.isIndexed(taxon));
+				assertEquals(c+" "+taxon, engine.isClassApplicable(c, taxon), index.isClassApplicable(c, taxon));
+			}
+		}
+		assertFalse(index.isClassApplicable(cls(graph, "whisker"), cls(graph, "chicken")));
+		assertTrue(index.isClassApplicable(cls(graph, "whisker"), cls(graph, "mammal")));
+
+		// classes and taxa which are not indexed yet
+		TaxonConstraintIndex lazy = new TaxonConstraintIndex(graph, Collections.<OWLClass>emptySet(),
+				Collections.singleton(cls(graph, "bird")));
+		assertFalse(lazy.isClassApplicable(cls(graph, "hair"), cls(graph, "bird")));
+		assertFalse(lazy.isIndexed(cls(graph, "mammal")));
+		assertTrue(lazy.isClassApplicable(cls(graph, "hair"), cls(graph, "mammal")));
+	}
+
+	private static OWLClass cls(OWLGraphWrapper graph, String name) {
+		return graph.getOWLClass(IRI.create("http://foo.bar/"+name));
+	}
+}
@@ -0,0 +1,153 @@
+package owltools.gaf.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import owltools.OWLToolsTestBasics;
+import owltools.gaf.Bioentity;
+import owltools.gaf.GafDocument;
+import owltools.gaf.GeneAnnotation;
+import owltools.gaf.parser.GafObjectsBuilder;
+
+public class ParallelRowWriterTest extends OWLToolsTestBasics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOrder() throws Exception {
+		List<Integer> rows = new ArrayList<Integer>();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			rows.add(Integer.valueOf(i));
+			expected.append(i).append('\n');
+		}
+		ParallelRowWriter writer = new ParallelRowWriter(4);
+		writer.setBlockSize(7);
+		final StringBuilder out = new StringBuilder();
+		writer.write(rows, sb -> row -> sb.append(row).append('\n'), block -> out.append(block));
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	@Test
+	public void testGafAndGzip() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		GafWriter writer = new GafWriter();
+		writer.setStream(new PrintStream(sequential));
+		writer.write(gafdoc);
+
+		// formatted by several threads, in the same order
+		StringBuilder rows = new StringBuilder();
+		ParallelRowWriter parallel = new ParallelRowWriter(4);
+		parallel.setBlockSize(5);
+		parallel.write(gafdoc.getGeneAnnotations(), sb -> {
+			GafWriter.BufferedGafWriter rowWriter = new GafWriter.BufferedGafWriter();
+			return (GeneAnnotation ann) -> {
+				rowWriter.write(ann);
+				List<String> lines = rowWriter.getLines();
+				sb.append(lines.remove(lines.size() - 1));
+			};
+		}, block -> rows.append(block));
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		GafWriter headerWriter = new GafWriter();
+		headerWriter.setStream(new PrintStream(header));
+		headerWriter.writeHeader(gafdoc);
+		headerWriter.getStream().flush();
+		assertEquals(sequential.toString(), header.toString()+rows.toString());
+
+		File file = folder.newFile("test.gaf.gz");
+		GafWriter gzWriter = new GafWriter();
+		gzWriter.setBlockSize(5);
+		gzWriter.setStream(file, ParallelRowWriter.isGzip(file.getName()));
+		gzWriter.writeParallel(gafdoc, 4);
+		GZIPInputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			assertEquals(sequential.toString(), IOUtils.toString(in));
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	@Test
+	public void testGaf() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		GafWriter writer = new GafWriter();
+		writer.setStream(new PrintStream(sequential));
+		writer.write(gafdoc);
+
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		GafWriter parallelWriter = new GafWriter();
+		parallelWriter.setBlockSize(3);
+		parallelWriter.setStream(new PrintStream(parallel));
+		parallelWriter.writeParallel(gafdoc, 4);
+		assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+
+		// overrides the row format, falls back to the sequential write
+		GafWriter.BufferedGafWriter buffered = new GafWriter.BufferedGafWriter();
+		buffered.write(gafdoc);
+		GafWriter.BufferedGafWriter parallelBuffered = new GafWriter.BufferedGafWriter();
+		parallelBuffered.setBlockSize(3);
+		parallelBuffered.writeParallel(gafdoc, 4);
+		assertEquals(gafdoc.getGeneAnnotations().size(), parallelBuffered.getLines().size());
+		assertEquals(buffered.getLines(), parallelBuffered.getLines());
+	}
+
+	@Test
+	public void testGpad() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		GpadWriter writer = new GpadWriter(new PrintWriter(new OutputStreamWriter(sequential, StandardCharsets.UTF_8)), 1.2);
+		writer.write(gafdoc);
+
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		GpadWriter parallelWriter = new GpadWriter(new PrintWriter(new OutputStreamWriter(parallel, StandardCharsets.UTF_8)), 1.2);
+		parallelWriter.setBlockSize(3);
+		parallelWriter.writeParallel(gafdoc, 4);
+		assertTrue(sequential.size() > 0);
+		assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+	}
+
+	@Test
+	public void testGpi() throws Exception {
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("test_gene_association_mgi.gaf"));
+		List<Bioentity> bioentities = new ArrayList<Bioentity>(gafdoc.getBioentities());
+
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		GpiWriter writer = new GpiWriter(new PrintWriter(new OutputStreamWriter(sequential, StandardCharsets.UTF_8)), 1.2);
+		writer.write(bioentities);
+
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		GpiWriter parallelWriter = new GpiWriter(new PrintWriter(new OutputStreamWriter(parallel, StandardCharsets.UTF_8)), 1.2);
+		parallelWriter.setBlockSize(3);
+		parallelWriter.writeParallel(bioentities, 4);
+		assertTrue(bioentities.size() > 3 * 4);
+		assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+	}
+}
@@ -1,5 +1,8 @@
 package owltools.gaf.owl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import java.io.File;
 
 import org.apache.log4j.Logger;
@@ -12,6 +15,7 @@ import org.semanticweb.owlapi.model.OWLOntology;
 
 import owltools.OWLToolsTestBasics;
 import owltools.gaf.GafDocument;
+import owltools.gaf.owl.GAFOWLBridge.BioentityMapping;
 import owltools.gaf.parser.GafObjectsBuilder;
 import owltools.graph.OWLGraphWrapper;
 import owltools.io.ParserWrapper;
@@ -45,4 +49,31 @@ public class GAFOWLBridgeTest extends OWLToolsTestBasics{
 
 	}
 
+	@Test
+	public void testBulkTranslation() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology ont = pw.parse(getResourceIRIString("go_xp_predictor_test_subset.obo"));
+		OWLGraphWrapper g = new OWLGraphWrapper(ont);
+		g.addSupportOntology(pw.parse(getResourceIRIString("gorel.owl")));
+
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("xp_inference_test.gaf"));
+
+		OWLOntology sequential = translate(g, gafdoc, false);
+		OWLOntology bulk = translate(g, gafdoc, true);
+		assertFalse(sequential.getAxioms().isEmpty());
+		assertEquals(sequential.getAxioms(), bulk.getAxioms());
+	}
+
+	private static OWLOntology translate(OWLGraphWrapper g, GafDocument gafdoc, boolean isBulk) throws Exception {
+		OWLOntology gafOnt = g.getManager().createOntology();
+		GAFOWLBridge bridge = new GAFOWLBridge(g, gafOnt);
+		bridge.setGenerateIndividuals(true);
+		bridge.setBasicAboxMapping(false);
+		bridge.setBioentityMapping(BioentityMapping.NAMED_CLASS);
+		bridge.setBulkTranslation(isBulk);
+		bridge.setThreads(2);
+		bridge.setChunkSize(1);
+		return bridge.translate(gafdoc);
+	}
 }
@@ -0,0 +1,115 @@
+package owltools.gaf.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import owltools.OWLToolsTestBasics;
+import owltools.gaf.GafDocument;
+import owltools.gaf.inference.ClassificationService;
+import owltools.gaf.parser.GafObjectsBuilder;
+import owltools.gaf.rules.AnnotationRuleViolation.ViolationType;
+import owltools.gaf.rules.AnnotationRulesEngine.AnnotationRulesEngineResult;
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+
+/**
+ * Checks that the OWL rules of the {@link AnnotationRulesEngine} see the
+ * translated annotations.
+ */
+public class AnnotationRulesEngineOwlRulesTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testOwlRules() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLGraphWrapper graph = pw.parseToOWLGraph(getResourceIRIString("owl_rules_test.owl"));
+		GafObjectsBuilder builder = new GafObjectsBuilder();
+		GafDocument gafdoc = builder.buildDocument(getResource("owl_rules_test.gaf"));
+
+		ClassificationService classifier = new ClassificationService();
+		try {
+			GenericReasonerValidationCheck reasonerCheck = new GenericReasonerValidationCheck(classifier);
+			reasonerCheck.setRuleId("GO_AR:0000019");
+			AnnotationTaxonRule taxonRule = new AnnotationTaxonRule(graph, null, classifier);
+			taxonRule.setRuleId("GO_AR:0000013");
+			// the engine requires annotation rules, the reasoner check ignores single annotations
+			AnnotationRulesEngine engine = new AnnotationRulesEngine(new OwlRulesFactory(graph, classifier,
+					Collections.<AnnotationRule>singletonList(reasonerCheck), Arrays.<AnnotationRule>asList(reasonerCheck, taxonRule)), false, false);
+			AnnotationRulesEngineResult result = engine.validateAnnotations(gafdoc);
+
+			// only the annotation with the extension is unsatisfiable
+			Map<String, List<AnnotationRuleViolation>> warnings = result.getViolations(ViolationType.Warning);
+			assertNotNull(warnings);
+			assertEquals(1, warnings.get("GO_AR:0000019").size());
+
+			Map<String, List<AnnotationRuleViolation>> errors = result.getViolations(ViolationType.Error);
+			assertNotNull(errors);
+			List<AnnotationRuleViolation> taxonErrors = errors.get("GO_AR:0000013");
+			assertEquals(1, taxonErrors.size());
+			assertEquals("MGI:MGI:0000001", taxonErrors.get(0).getSourceAnnotation().getBioentity());
+		}
+		finally {
+			classifier.close();
+		}
+	}
+
+	private static class OwlRulesFactory implements AnnotationRulesFactory {
+
+		private final OWLGraphWrapper graph;
+		private final ClassificationService classifier;
+		private final List<AnnotationRule> annotationRules;
+		private final List<AnnotationRule> owlRules;
+
+		OwlRulesFactory(OWLGraphWrapper graph, ClassificationService classifier, List<AnnotationRule> annotationRules, List<AnnotationRule> owlRules) {
+			this.graph = graph;
+			this.classifier = classifier;
+			this.annotationRules = annotationRules;
+			this.owlRules = owlRules;
+		}
+
+		@Override
+		public void init() {
+			// do nothing
+		}
+
+		@Override
+		public List<AnnotationRule> getGeneAnnotationRules() {
+			return annotationRules;
+		}
+
+		@Override
+		public List<AnnotationRule> getGafDocumentRules() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<AnnotationRule> getOwlRules() {
+			return owlRules;
+		}
+
+		@Override
+		public List<AnnotationRule> getInferenceRules() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<AnnotationRule> getExperimentalInferenceRules() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public OWLGraphWrapper getGraph() {
+			return graph;
+		}
+
+		@Override
+		public ClassificationService getClassificationService() {
+			return classifier;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package owltools.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.graph.OWLGraphEdge.OWLGraphEdgeSet;
+import owltools.util.Adjacency;
+import owltools.util.MappingTarjan;
+import owltools.util.Tarjan;
+
+/**
+ * Computes the outgoing closure of many objects at once, reusing the closures
+ * of parents rather than walking the graph from each object.
+ * <p>
+ * Cycles are first condensed using {@link MappingTarjan}. The components are then
+ * processed in reverse topological order, so that the closure of an object is the
+ * union of its primitive outgoing edges, and of each such edge combined with the
+ * closure of its target, as in {@link OWLGraphWrapperEdges#combineEdgePair(OWLObject, OWLGraphEdge, OWLGraphEdge, int)}.
+ * Components at the same depth do not depend on each other, and are processed in parallel.
+ * Objects in a cycle fall back to {@link OWLGraphWrapperEdges#computeOutgoingEdgesClosure(OWLObject, Set)}.
+ * <p>
+ * As the walk, only one combined edge is kept for each target and final quantified
+ * property. The walk keeps the first it finds, so where different edges share a target
+ * and final quantified property, the result depends on its visiting order; it also composes
+ * quantified property lists from the source onwards, and this from the target back,
+ * which can differ where property chains make the composition order matter. In both cases,
+ * i.e. if a combined edge has more than one quantified property or another combined edge
+ * with the same target and final quantified property, the object falls back to the walk,
+ * so that the closures are the same as {@link OWLGraphWrapperEdges#getOutgoingEdgesClosure(OWLObject)},
+ * and can be cached. Distances may differ.
+ *
+ * @see OWLGraphWrapperEdges#getOutgoingEdgesClosures(Collection)
+ */
+public class OWLGraphClosureBuilder {
+
+	private static final Logger LOG = Logger.getLogger(OWLGraphClosureBuilder.class);
+
+	private final OWLGraphWrapperEdges graph;
+	private final Map<OWLObject, Set<OWLGraphEdge>> primitiveEdges = new ConcurrentHashMap<OWLObject, Set<OWLGraphEdge>>();
+
+	/**
+	 * @param graph
+	 */
+	public OWLGraphClosureBuilder(OWLGraphWrapperEdges graph) {
+		this.graph = graph;
+	}
+
+	private Set<OWLGraphEdge> getPrimitiveOutgoingEdges(OWLObject x) {
+		return primitiveEdges.computeIfAbsent(x, graph::getPrimitiveOutgoingEdges);
+	}
+
+	/**
+	 * @param sources
+	 * @return closure of each source, and of all objects and class expressions reachable from them
+	 */
+	public Map<OWLObject, Set<OWLGraphEdge>> build(Collection<? extends OWLObject> sources) {
+		// primitive edges are independent, so can be fetched in parallel
+		sources.parallelStream().forEach(this::getPrimitiveOutgoingEdges);
+
+		Adjacency<OWLObject> adjacency = new Adjacency<OWLObject>() {
+
+			@Override
+			public List<OWLObject> getAdjacent(OWLObject source) {
+				Set<OWLObject> targets = new LinkedHashSet<OWLObject>();
+				for (OWLGraphEdge e : getPrimitiveOutgoingEdges(source)) {
+					if (e.getTarget() != null)
+						targets.add(e.getTarget());
+				}
+				return new ArrayList<OWLObject>(targets);
+			}
+
+			@Override
+			public Iterable<OWLObject> getSources() {
+				return Collections.unmodifiableCollection(sources);
+			}
+		};
+		Tarjan<OWLObject> tarjan = new MappingTarjan<OWLObject>(false);
+		// components come out after all components reachable from them
+		List<List<OWLObject>> components = tarjan.executeTarjan(adjacency);
+
+		Map<OWLObject, Integer> componentIndex = new HashMap<OWLObject, Integer>();
+		int[] levels = new int[components.size()];
+		List<List<List<OWLObject>>> componentsByLevel = new ArrayList<List<List<OWLObject>>>();
+		for (int i = 0; i < components.size(); i++) {
+			for (OWLObject x : components.get(i)) {
+				componentIndex.put(x, i);
+			}
+			int level = 0;
+			for (OWLObject x : components.get(i)) {
+				for (OWLGraphEdge e : getPrimitiveOutgoingEdges(x)) {
+					if (e.getTarget() == null)
+						continue;
+					int j = componentIndex.get(e.getTarget());
+					if (j != i)
+						level = Math.max(level, levels[j] + 1);
+				}
+			}
+			levels[i] = level;
+			while (componentsByLevel.size() <= level)
+				componentsByLevel.add(new ArrayList<List<OWLObject>>());
+			componentsByLevel.get(level).add(components.get(i));
+		}
+		LOG.info("Computing closure of "+componentIndex.size()+" objects in "+
+				components.size()+" components, "+componentsByLevel.size()+" levels");
+
+		Map<OWLObject, Set<OWLGraphEdge>> closures = new ConcurrentHashMap<OWLObject, Set<OWLGraphEdge>>(componentIndex.size());
+		for (List<List<OWLObject>> level : componentsByLevel) {
+			level.parallelStream().forEach(component -> {
+				Set<OWLGraphEdge> closure = null;
+				if (component.size() == 1 && !isSelfLoop(component.get(0))) {
+					closure = combine(component.get(0), closures);
+				}
+				if (closure != null) {
+					closures.put(component.get(0), closure);
+				}
+				else {
+					for (OWLObject x : component) {
+						closures.put(x, graph.computeOutgoingEdgesClosure(x, null));
+					}
+				}
+			});
+		}
+		primitiveEdges.clear();
+		return closures;
+	}
+
+	private boolean isSelfLoop(OWLObject x) {
+		for (OWLGraphEdge e : getPrimitiveOutgoingEdges(x)) {
+			if (x.equals(e.getTarget()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param s
+	 * @param closures
+	 * @return closure of s, or null if it may differ from the walk's
+	 */
+	private Set<OWLGraphEdge> combine(OWLObject s, Map<OWLObject, Set<OWLGraphEdge>> closures) {
+		Map<OWLGraphEdge, OWLGraphEdge> closure = new HashMap<OWLGraphEdge, OWLGraphEdge>();
+		// combined edge by target and final quantified property, as visited by the walk
+		Map<OWLObject, Map<OWLQuantifiedProperty, OWLGraphEdge>> combined = new HashMap<OWLObject, Map<OWLQuantifiedProperty, OWLGraphEdge>>();
+		for (OWLGraphEdge e : getPrimitiveOutgoingEdges(s)) {
+			addEdge(closure, e);
+			if (e.getTarget() == null)
+				continue;
+			for (OWLGraphEdge f : closures.get(e.getTarget())) {
+				OWLGraphEdge nu = graph.combineEdgePair(s, e, f, e.getDistance() + f.getDistance());
+				if (nu == null)
+					continue;
+				if (nu.getQuantifiedPropertyList().size() > 1)
+					return null;
+				Map<OWLQuantifiedProperty, OWLGraphEdge> byQp = combined.get(nu.getTarget());
+				if (byQp == null) {
+					byQp = new HashMap<OWLQuantifiedProperty, OWLGraphEdge>();
+					combined.put(nu.getTarget(), byQp);
+				}
+				OWLGraphEdge seen = byQp.get(nu.getFinalQuantifiedProperty());
+				if (seen == null) {
+					byQp.put(nu.getFinalQuantifiedProperty(), nu);
+				}
+				else if (seen.equals(nu)) {
+					seen.setDistance(Math.min(seen.getDistance(), nu.getDistance()));
+				}
+				else {
+					return null;
+				}
+			}
+		}
+		for (Map<OWLQuantifiedProperty, OWLGraphEdge> byQp : combined.values()) {
+			for (OWLGraphEdge nu : byQp.values()) {
+				if (nu.getTarget() instanceof OWLNamedObject ||
+						graph.getConfig().isIncludeClassExpressionsInClosure) {
+					addEdge(closure, nu);
+				}
+			}
+		}
+		return new OWLGraphEdgeSet(closure.keySet());
+	}
+
+	// as OWLGraphEdgeSet#add, without a linear scan for the equal edge
+	private static void addEdge(Map<OWLGraphEdge, OWLGraphEdge> closure, OWLGraphEdge e) {
+		OWLGraphEdge existing = closure.remove(e);
+		if (existing != null) {
+			OWLGraphEdge merged = existing.merge(e);
+			merged.setDistance(Math.min(existing.getDistance(), e.getDistance()));
+			e = merged;
+		}
+		closure.put(e, e);
+	}
+}
@@ -0,0 +1,26 @@
+package owltools.graph;
+
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Source of precomputed outgoing closures, consulted by {@link OWLGraphWrapperEdges}
+ * before it walks the graph.
+ *
+ * @see OWLGraphWrapperEdges#setClosureProvider(OWLGraphClosureProvider)
+ */
+public interface OWLGraphClosureProvider {
+
+	/**
+	 * @param s
+	 * @return a new, modifiable set of edges, or null if s is not covered
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s);
+
+	/**
+	 * @param s
+	 * @return named ancestors of s, or null if s is not covered
+	 */
+	public Set<OWLObject> getAncestors(OWLObject s);
+}
@@ -0,0 +1,499 @@
+package owltools.graph;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.graph.OWLGraphEdge.OWLGraphEdgeSet;
+
+/**
+ * Integer indexed, immutable copy of the asserted edges and the outgoing
+ * edge closure of an {@link OWLGraphWrapperEdges} graph.
+ * <p>
+ * Each node (named object, or class expression reachable as an edge
+ * target) is assigned an int id. Everything in an edge except the source,
+ * target and distance - the quantified property chain, the ontology and
+ * any GCI qualifiers - is interned as an int label id, so an edge takes
+ * three ints. Edges are stored in compressed sparse row form: for node n,
+ * its edges are at offsets[n] to offsets[n+1] in the target, label and
+ * distance arrays, sorted by target then label. The incoming closure is
+ * the transpose of the outgoing closure.
+ * <p>
+ * The int methods ({@link #forEachAncestor(int, IntConsumer)},
+ * {@link #isAncestor(int, int)}, ...) do not allocate. The object methods
+ * materialize {@link OWLGraphEdge}s on each call, for code that needs
+ * them; the underlying axioms of the edges are not retained.
+ * <p>
+ * The copy reflects the graph and its {@link OWLGraphWrapperEdges.Config}
+ * at the time of {@link #build(OWLGraphWrapperEdges)}.
+ *
+ * @see OWLGraphWrapperEdges#buildCompactCore()
+ */
+public class OWLGraphCompactCore {
+
+	private static final Logger LOG = Logger.getLogger(OWLGraphCompactCore.class);
+
+	/**
+	 * The parts of an edge other than source, target and distance
+	 */
+	private static class EdgeLabel {
+		final List<OWLQuantifiedProperty> quantifiedPropertyList;
+		final OWLOntology ontology;
+		final OWLClass gciFiller;
+		final OWLObjectPropertyExpression gciRelation;
+		final int hash;
+
+		EdgeLabel(OWLGraphEdge e) {
+			// copy, the edge list is mutable
+			quantifiedPropertyList = Collections.unmodifiableList(
+					new ArrayList<OWLQuantifiedProperty>(e.getQuantifiedPropertyList()));
+			ontology = e.getOntology();
+			gciFiller = e.getGCIFiller();
+			gciRelation = e.getGCIRelation();
+			int h = quantifiedPropertyList.hashCode();
+			h = 31 * h + (ontology == null ? 0 : ontology.hashCode());
+			h = 31 * h + (gciFiller == null ? 0 : gciFiller.hashCode());
+			h = 31 * h + (gciRelation == null ? 0 : gciRelation.hashCode());
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof EdgeLabel))
+				return false;
+			EdgeLabel other = (EdgeLabel) obj;
+			return hash == other.hash &&
+					quantifiedPropertyList.equals(other.quantifiedPropertyList) &&
+					isEq(ontology, other.ontology) &&
+					isEq(gciFiller, other.gciFiller) &&
+					isEq(gciRelation, other.gciRelation);
+		}
+
+		private static boolean isEq(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	/**
+	 * CSR edge table
+	 */
+	private static class EdgeTable {
+		final int[] offsets;
+		final int[] nodes;
+		final int[] labels;
+		final int[] distances;
+
+		EdgeTable(int[] offsets, int[] nodes, int[] labels, int[] distances) {
+			this.offsets = offsets;
+			this.nodes = nodes;
+			this.labels = labels;
+			this.distances = distances;
+		}
+
+		/**
+		 * @return table with the source and target of every edge swapped;
+		 * rows are sorted by source node, as the input is traversed in node order
+		 */
+		EdgeTable transpose() {
+			int numNodes = offsets.length - 1;
+			int[] tOffsets = new int[numNodes + 1];
+			for (int n : nodes) {
+				tOffsets[n + 1]++;
+			}
+			for (int n = 0; n < numNodes; n++) {
+				tOffsets[n + 1] += tOffsets[n];
+			}
+			int[] fill = Arrays.copyOf(tOffsets, numNodes);
+			int[] tNodes = new int[nodes.length];
+			int[] tLabels = new int[nodes.length];
+			int[] tDistances = new int[nodes.length];
+			for (int s = 0; s < numNodes; s++) {
+				for (int i = offsets[s]; i < offsets[s + 1]; i++) {
+					int pos = fill[nodes[i]]++;
+					tNodes[pos] = s;
+					tLabels[pos] = labels[i];
+					tDistances[pos] = distances[i];
+				}
+			}
+			return new EdgeTable(tOffsets, tNodes, tLabels, tDistances);
+		}
+	}
+
+	/**
+	 * Collects rows in node order
+	 */
+	private static class EdgeTableBuilder {
+		private final int[] offsets;
+		private int[] nodes = new int[1024];
+		private int[] labels = new int[1024];
+		private int[] distances = new int[1024];
+		private int size = 0;
+
+		EdgeTableBuilder(int numNodes) {
+			offsets = new int[numNodes + 1];
+		}
+
+		/**
+		 * @param node
+		 * @param rowNodes
+		 * @param rowLabels
+		 * @param rowDistances
+		 * @param rowSize
+		 */
+		void setRow(int node, int[] rowNodes, int[] rowLabels, int[] rowDistances, int rowSize) {
+			if (size + rowSize > nodes.length) {
+				int n = Math.max(nodes.length * 2, size + rowSize);
+				nodes = Arrays.copyOf(nodes, n);
+				labels = Arrays.copyOf(labels, n);
+				distances = Arrays.copyOf(distances, n);
+			}
+			// sort by target, then label; rows are short, so a simple index sort
+			Integer[] order = new Integer[rowSize];
+			for (int i = 0; i < rowSize; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> rowNodes[a] != rowNodes[b] ?
+					Integer.compare(rowNodes[a], rowNodes[b]) : Integer.compare(rowLabels[a], rowLabels[b]));
+			for (int i = 0; i < rowSize; i++) {
+				nodes[size + i] = rowNodes[order[i]];
+				labels[size + i] = rowLabels[order[i]];
+				distances[size + i] = rowDistances[order[i]];
+			}
+			size += rowSize;
+			offsets[node + 1] = size;
+		}
+
+		EdgeTable build(int numNodes) {
+			// rows not set are empty
+			for (int n = 0; n < numNodes; n++) {
+				if (offsets[n + 1] < offsets[n])
+					offsets[n + 1] = offsets[n];
+			}
+			return new EdgeTable(offsets,
+					Arrays.copyOf(nodes, size),
+					Arrays.copyOf(labels, size),
+					Arrays.copyOf(distances, size));
+		}
+	}
+
+	private final OWLObject[] nodes;
+	private final TObjectIntHashMap<OWLObject> nodeIndex;
+	private final EdgeLabel[] edgeLabels;
+	private final EdgeTable outgoing;
+	private final EdgeTable incoming;
+	private final EdgeTable outgoingClosure;
+	private final EdgeTable incomingClosure;
+
+	private OWLGraphCompactCore(OWLObject[] nodes, TObjectIntHashMap<OWLObject> nodeIndex,
+			EdgeLabel[] edgeLabels, EdgeTable outgoing, EdgeTable outgoingClosure) {
+		this.nodes = nodes;
+		this.nodeIndex = nodeIndex;
+		this.edgeLabels = edgeLabels;
+		this.outgoing = outgoing;
+		this.incoming = outgoing.transpose();
+		this.outgoingClosure = outgoingClosure;
+		this.incomingClosure = outgoingClosure.transpose();
+	}
+
+	/**
+	 * Builds the compact core from the asserted edges and outgoing closure
+	 * of every named object in the graph, and of every class expression
+	 * reachable from them.
+	 * <p>
+	 * The closure is computed with {@link OWLGraphWrapperEdges#computeOutgoingEdgesClosure(OWLObject, Set)},
+	 * which neither reads nor fills the closure cache, so that the edge sets
+	 * are not kept in memory alongside the compact copy.
+	 *
+	 * @param g
+	 * @return new core
+	 */
+	public static OWLGraphCompactCore build(OWLGraphWrapperEdges g) {
+		long t = System.currentTimeMillis();
+		List<OWLObject> nodeList = new ArrayList<OWLObject>();
+		TObjectIntHashMap<OWLObject> nodeIndex = new TObjectIntHashMap<OWLObject>(1024, 0.5f, -1);
+		List<EdgeLabel> labelList = new ArrayList<EdgeLabel>();
+		TObjectIntHashMap<EdgeLabel> labelIndex = new TObjectIntHashMap<EdgeLabel>(64, 0.5f, -1);
+		for (OWLObject x : g.getAllOWLObjects()) {
+			addNode(x, nodeList, nodeIndex);
+		}
+
+		// rows are collected per node; node ids are assigned to new targets as
+		// they are found, so rows are kept until the number of nodes is known
+		List<int[][]> assertedRows = new ArrayList<int[][]>();
+		List<int[][]> closureRows = new ArrayList<int[][]>();
+		for (int n = 0; n < nodeList.size(); n++) {
+			OWLObject x = nodeList.get(n);
+			assertedRows.add(toRow(g.getOutgoingEdges(x), nodeList, nodeIndex, labelList, labelIndex));
+			closureRows.add(toRow(g.computeOutgoingEdgesClosure(x, null), nodeList, nodeIndex, labelList, labelIndex));
+		}
+
+		int numNodes = nodeList.size();
+		EdgeTableBuilder assertedBuilder = new EdgeTableBuilder(numNodes);
+		EdgeTableBuilder closureBuilder = new EdgeTableBuilder(numNodes);
+		for (int n = 0; n < numNodes; n++) {
+			int[][] row = assertedRows.get(n);
+			assertedBuilder.setRow(n, row[0], row[1], row[2], row[0].length);
+			row = closureRows.get(n);
+			closureBuilder.setRow(n, row[0], row[1], row[2], row[0].length);
+		}
+		OWLGraphCompactCore core = new OWLGraphCompactCore(nodeList.toArray(new OWLObject[numNodes]), nodeIndex,
+				labelList.toArray(new EdgeLabel[labelList.size()]),
+				assertedBuilder.build(numNodes), closureBuilder.build(numNodes));
+		LOG.info("Built compact graph; nodes: "+numNodes+" edge labels: "+labelList.size()+
+				" closure edges: "+core.outgoingClosure.nodes.length+
+				" time: "+(System.currentTimeMillis()-t)+"ms");
+		return core;
+	}
+
+	private static int addNode(OWLObject x, List<OWLObject> nodeList, TObjectIntHashMap<OWLObject> nodeIndex) {
+		int id = nodeIndex.get(x);
+		if (id < 0) {
+			id = nodeList.size();
+			nodeList.add(x);
+			nodeIndex.put(x, id);
+		}
+		return id;
+	}
+
+	private static int[][] toRow(Set<OWLGraphEdge> edges, List<OWLObject> nodeList, TObjectIntHashMap<OWLObject> nodeIndex,
+			List<EdgeLabel> labelList, TObjectIntHashMap<EdgeLabel> labelIndex) {
+		int[] targets = new int[edges.size()];
+		int[] labels = new int[edges.size()];
+		int[] distances = new int[edges.size()];
+		int i = 0;
+		for (OWLGraphEdge e : edges) {
+			targets[i] = addNode(e.getTarget(), nodeList, nodeIndex);
+			EdgeLabel label = new EdgeLabel(e);
+			int labelId = labelIndex.get(label);
+			if (labelId < 0) {
+				labelId = labelList.size();
+				labelList.add(label);
+				labelIndex.put(label, labelId);
+			}
+			labels[i] = labelId;
+			distances[i] = e.getDistance();
+			i++;
+		}
+		return new int[][]{targets, labels, distances};
+	}
+
+	/**
+	 * @return number of nodes; ids are 0 to getNumNodes()-1
+	 */
+	public int getNumNodes() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return number of distinct edge labels
+	 */
+	public int getNumEdgeLabels() {
+		return edgeLabels.length;
+	}
+
+	/**
+	 * @param x
+	 * @return id of x, or -1 if x is not a node in this graph
+	 */
+	public int getNodeId(OWLObject x) {
+		return nodeIndex.get(x);
+	}
+
+	/**
+	 * @param id
+	 * @return node with this id
+	 */
+	public OWLObject getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * @param labelId
+	 * @return quantified property chain of the label (unmodifiable)
+	 */
+	public List<OWLQuantifiedProperty> getQuantifiedPropertyList(int labelId) {
+		return edgeLabels[labelId].quantifiedPropertyList;
+	}
+
+	/**
+	 * @param id
+	 * @return number of asserted outgoing edges
+	 */
+	public int getOutgoingEdgeCount(int id) {
+		return outgoing.offsets[id + 1] - outgoing.offsets[id];
+	}
+
+	/**
+	 * @param id
+	 * @return number of edges in the outgoing closure
+	 */
+	public int getOutgoingClosureEdgeCount(int id) {
+		return outgoingClosure.offsets[id + 1] - outgoingClosure.offsets[id];
+	}
+
+	/**
+	 * Calls the consumer once for each direct target of id, over any relation
+	 *
+	 * @param id
+	 * @param consumer
+	 */
+	public void forEachParent(int id, IntConsumer consumer) {
+		forEachDistinct(outgoing, id, consumer);
+	}
+
+	/**
+	 * Calls the consumer once for each direct source of an edge to id, over any relation
+	 *
+	 * @param id
+	 * @param consumer
+	 */
+	public void forEachChild(int id, IntConsumer consumer) {
+		forEachDistinct(incoming, id, consumer);
+	}
+
+	/**
+	 * Calls the consumer once for each node reachable from id; as {@link OWLGraphWrapperEdges#getAncestors(OWLObject)}
+	 *
+	 * @param id
+	 * @param consumer
+	 */
+	public void forEachAncestor(int id, IntConsumer consumer) {
+		forEachDistinct(outgoingClosure, id, consumer);
+	}
+
+	/**
+	 * Calls the consumer once for each node from which id is reachable
+	 *
+	 * @param id
+	 * @param consumer
+	 */
+	public void forEachDescendant(int id, IntConsumer consumer) {
+		forEachDistinct(incomingClosure, id, consumer);
+	}
+
+	private static void forEachDistinct(EdgeTable table, int id, IntConsumer consumer) {
+		int prev = -1;
+		for (int i = table.offsets[id]; i < table.offsets[id + 1]; i++) {
+			int n = table.nodes[i];
+			if (n != prev) {
+				consumer.accept(n);
+				prev = n;
+			}
+		}
+	}
+
+	/**
+	 * @param id
+	 * @param ancestorId
+	 * @return true if ancestorId is reachable from id (not reflexive)
+	 */
+	public boolean isAncestor(int id, int ancestorId) {
+		return Arrays.binarySearch(outgoingClosure.nodes,
+				outgoingClosure.offsets[id], outgoingClosure.offsets[id + 1], ancestorId) >= 0;
+	}
+
+	/**
+	 * @param id
+	 * @return number of distinct nodes reachable from id
+	 */
+	public int getAncestorCount(int id) {
+		int[] count = new int[1];
+		forEachAncestor(id, n -> count[0]++);
+		return count[0];
+	}
+
+	/**
+	 * @param x
+	 * @return ancestors of x as in {@link OWLGraphWrapperEdges#getAncestors(OWLObject)},
+	 * or null if x is not a node in this graph
+	 */
+	public Set<OWLObject> getAncestors(OWLObject x) {
+		int id = getNodeId(x);
+		if (id < 0)
+			return null;
+		Set<OWLObject> ancs = new HashSet<OWLObject>();
+		forEachAncestor(id, n -> ancs.add(nodes[n]));
+		return ancs;
+	}
+
+	/**
+	 * @param x
+	 * @return nodes from which x is reachable, or null if x is not a node in this graph
+	 */
+	public Set<OWLObject> getDescendants(OWLObject x) {
+		int id = getNodeId(x);
+		if (id < 0)
+			return null;
+		Set<OWLObject> descs = new HashSet<OWLObject>();
+		forEachDescendant(id, n -> descs.add(nodes[n]));
+		return descs;
+	}
+
+	/**
+	 * @param x
+	 * @return asserted outgoing edges of x, or null if x is not a node in this graph
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdges(OWLObject x) {
+		return materialize(outgoing, x, true);
+	}
+
+	/**
+	 * @param x
+	 * @return asserted incoming edges of x, or null if x is not a node in this graph
+	 */
+	public Set<OWLGraphEdge> getIncomingEdges(OWLObject x) {
+		return materialize(incoming, x, false);
+	}
+
+	/**
+	 * @param x
+	 * @return outgoing edge closure of x, as {@link OWLGraphWrapperEdges#getOutgoingEdgesClosure(OWLObject)},
+	 * or null if x is not a node in this graph
+	 */
+	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject x) {
+		return materialize(outgoingClosure, x, true);
+	}
+
+	/**
+	 * @param x
+	 * @return all closure edges with x as target, or null if x is not a node in this graph
+	 */
+	public Set<OWLGraphEdge> getIncomingEdgesClosure(OWLObject x) {
+		return materialize(incomingClosure, x, false);
+	}
+
+	private Set<OWLGraphEdge> materialize(EdgeTable table, OWLObject x, boolean isOutgoing) {
+		int id = getNodeId(x);
+		if (id < 0)
+			return null;
+		Set<OWLGraphEdge> edges = new OWLGraphEdgeSet();
+		for (int i = table.offsets[id]; i < table.offsets[id + 1]; i++) {
+			OWLObject other = nodes[table.nodes[i]];
+			EdgeLabel label = edgeLabels[table.labels[i]];
+			OWLGraphEdge e = new OWLGraphEdge(isOutgoing ? x : other, isOutgoing ? other : x,
+					new ArrayList<OWLQuantifiedProperty>(label.quantifiedPropertyList),
+					label.ontology, null, label.gciFiller, label.gciRelation);
+			e.setDistance(table.distances[i]);
+			edges.add(e);
+		}
+		return edges;
+	}
+}
@@ -1,9 +1,12 @@
 package owltools.graph;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.Vector;
 
 import org.semanticweb.owlapi.model.OWLAxiom;
@@ -35,17 +38,63 @@ public class OWLGraphEdge {
     public static class OWLGraphEdgeSet extends HashSet<OWLGraphEdge> {
         private static final long serialVersionUID = -3155229334639121333L;
         
+        /**
+         * Each edge mapped to itself, so that an equal edge can be found 
+         * in constant time when merging. All the {@code Set} operations 
+         * are delegated to this map, the storage inherited from {@code HashSet} 
+         * is left empty.
+         */
+        private HashMap<OWLGraphEdge, OWLGraphEdge> edges;
+        
         public OWLGraphEdgeSet() {
             super();
+            this.edges = new HashMap<OWLGraphEdge, OWLGraphEdge>();
         }
         public OWLGraphEdgeSet(OWLGraphEdgeSet edges) {
-            super(edges);
+            super();
+            this.edges = new HashMap<OWLGraphEdge, OWLGraphEdge>(edges.edges);
         }
         public OWLGraphEdgeSet(Set<OWLGraphEdge> edges) {
-            super();
+            this();
             this.addAll(edges);
         }
         
+        @Override
+        public int size() {
+            return edges.size();
+        }
+        @Override
+        public boolean isEmpty() {
+            return edges.isEmpty();
+        }
+        @Override
+        public boolean contains(Object o) {
+            return edges.containsKey(o);
+        }
+        @Override
+        public Iterator<OWLGraphEdge> iterator() {
+            return edges.keySet().iterator();
+        }
+        @Override
+        public Spliterator<OWLGraphEdge> spliterator() {
+            return edges.keySet().spliterator();
+        }
+        @Override
+        public boolean remove(Object o) {
+            return edges.remove(o) != null;
+        }
+        @Override
+        public void clear() {
+            edges.clear();
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object clone() {
+            OWLGraphEdgeSet clone = (OWLGraphEdgeSet) super.clone();
+            clone.edges = (HashMap<OWLGraphEdge, OWLGraphEdge>) edges.clone();
+            return clone;
+        }
+        
         /**
          * Try to add or merge each element of {@code edges} into this {@code OWLGraphEdgeSet}, 
          * as performed by the method {@link #add(OWLGraphEdge)}.
@@ -83,17 +132,11 @@ public class OWLGraphEdge {
          */
         @Override
         public boolean add(OWLGraphEdge edge) {
-            if (!super.add(edge)) {
-                OWLGraphEdge toMerge = null;
-                for (OWLGraphEdge e: this) {
-                    if (e.equals(edge)) {
-                        toMerge = e;
-                        break;
-                    }
-                }
-                super.remove(toMerge);
-                super.add(toMerge.merge(edge));
+            OWLGraphEdge toMerge = edges.remove(edge);
+            if (toMerge != null) {
+                edge = toMerge.merge(edge);
             } 
+            edges.put(edge, edge);
             return true;
         }
     }
@@ -124,6 +167,13 @@ public class OWLGraphEdge {
      */
 	private OWLObjectPropertyExpression gciRelation = null;
 	
+	/**
+	 * 64-bit hash of the fields compared by {@link #equals(Object)}, computed when 
+	 * first needed and reset by the setters; {@code 0} if not computed yet. 
+	 * See {@link #getStructuralHash()}.
+	 */
+	private volatile long structuralHash = 0;
+	
 	public OWLGraphEdge(OWLObject source, OWLObject target,
 			OWLOntology ontology, OWLQuantifiedProperty qp) {
 		super();
@@ -239,6 +289,7 @@ public class OWLGraphEdge {
         this.underlyingAxioms = edge.getAxioms();
         this.gciFiller = edge.gciFiller;
         this.gciRelation = edge.gciRelation;
+        this.structuralHash = edge.structuralHash;
     }
 
 	public OWLObject getSource() {
@@ -249,6 +300,7 @@ public class OWLGraphEdge {
 	}
 	public void setSource(OWLObject source) {
 		this.source = source;
+		structuralHash = 0;
 	}
 	public OWLObject getTarget() {
 		return target;
@@ -259,6 +311,7 @@ public class OWLGraphEdge {
 
 	public void setTarget(OWLObject target) {
 		this.target = target;
+		structuralHash = 0;
 	}
 	
 	public int getDistance() {
@@ -278,6 +331,7 @@ public class OWLGraphEdge {
 
 	public void setQuantifiedPropertyList(List<OWLQuantifiedProperty> qps) {
 		this.quantifiedPropertyList = qps;
+		structuralHash = 0;
 	}
 
 	public OWLQuantifiedProperty getSingleQuantifiedProperty() {
@@ -295,6 +349,7 @@ public class OWLGraphEdge {
 	public void setSingleQuantifiedProperty(OWLQuantifiedProperty qp) {
 		quantifiedPropertyList = new Vector<OWLQuantifiedProperty>();
 		quantifiedPropertyList.add(qp);
+		structuralHash = 0;
 	}
 
 	public OWLQuantifiedProperty getFinalQuantifiedProperty() {
@@ -306,6 +361,7 @@ public class OWLGraphEdge {
 	}
 	public void setOntology(OWLOntology ontology) {
 		this.ontology = ontology;
+		structuralHash = 0;
 	}
 
 
@@ -444,18 +500,43 @@ public class OWLGraphEdge {
 		return sb.toString();
 	}
 	
+	/**
+	 * Returns a 64-bit hash of the source, target, quantified property list, ontology, 
+	 * and GCI fields of this edge, that is, of all the fields compared by {@link #equals(Object)}. 
+	 * It is computed once, and reset by the setters, so the quantified property list 
+	 * of an edge, and its {@code OWLQuantifiedProperty}s, should not be modified 
+	 * otherwise once the edge is in use. Edges with different structural hashes 
+	 * are never equal, which allows {@link #equals(Object)} to return early.
+	 * 
+	 * @return A {@code long} that is the structural hash of this edge, never {@code 0}.
+	 */
+	public long getStructuralHash() {
+	    long h = structuralHash;
+	    if (h == 0) {
+	        h = 1;
+	        h = mixHash(h, quantifiedPropertyList);
+	        h = mixHash(h, source);
+	        h = mixHash(h, target);
+	        h = mixHash(h, ontology);
+	        h = mixHash(h, gciFiller);
+	        h = mixHash(h, gciRelation);
+	        if (h == 0) {
+	            h = 1;
+	        }
+	        structuralHash = h;
+	    }
+	    return h;
+	}
+	
+	private static long mixHash(long h, Object o) {
+	    h = (h ^ (o == null ? 0 : o.hashCode())) * 0x9E3779B97F4A7C15L;
+	    return h ^ (h >>> 29);
+	}
+	
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		List<OWLQuantifiedProperty> owlQuantifiedProperties = getQuantifiedPropertyList();
-		result = prime * result + ((owlQuantifiedProperties == null) ? 0 : owlQuantifiedProperties.hashCode());
-		result = prime * result + ((source == null) ? 0 : source.hashCode());
-		result = prime * result + ((target == null) ? 0 : target.hashCode());
-        result = prime * result + ((ontology == null) ? 0 : ontology.hashCode());
-        result = prime * result + ((gciFiller == null) ? 0 : gciFiller.hashCode());
-        result = prime * result + ((gciRelation == null) ? 0 : gciRelation.hashCode());
-		return result;
+		long h = getStructuralHash();
+		return (int) (h ^ (h >>> 32));
 	}
 	
 	private boolean isEq(Object a, Object b) {
@@ -537,14 +618,20 @@ public class OWLGraphEdge {
      *                         and {@code gciRelation}s .
 	 */
 	private boolean equals(Object e, boolean ignoreOntology, boolean ignoreGCI) {
+	    if (this == e)
+	        return true;
 	    if(e == null || !(e instanceof OWLGraphEdge))
             return false;
         
         OWLGraphEdge other = (OWLGraphEdge) e;
+        // the structural hash covers all fields, only when none is ignored
+        if (!ignoreOntology && !ignoreGCI && 
+                getStructuralHash() != other.getStructuralHash())
+            return false;
         
         return isEq(other.getSource(),getSource()) &&
                 isEq(other.getTarget(),getTarget()) &&
-                isEq(quantifiedPropertyList,other.getQuantifiedPropertyList()) &&
+                isEq(quantifiedPropertyList,other.quantifiedPropertyList) &&
                 (ignoreGCI || equalsGCI(other)) && 
                 (ignoreOntology || isEq(ontology,other.getOntology()));
 	}
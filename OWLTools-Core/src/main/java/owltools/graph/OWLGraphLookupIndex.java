@@ -0,0 +1,363 @@
+package owltools.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.obolibrary.obo2owl.Obo2OWLConstants.Obo2OWLVocabulary;
+import org.obolibrary.obo2owl.Obo2Owl;
+import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Immutable lookup tables for the named entities in a set of ontologies:
+ * declared entities by IRI, rdfs:labels (in both directions), oboInOwl:id
+ * and shorthand values, OBO synonyms, alt_ids and owl:deprecated flags.
+ * <p>
+ * The index is built once, in parallel over all annotation assertion and
+ * declaration axioms. It does not track changes to the ontologies; see
+ * {@link OWLGraphWrapperExtended#setUseLookupIndex(boolean)} for the
+ * wrapper integration, which discards the index on any change.
+ * <p>
+ * Where an entity has more than one label or id, the lexically smallest
+ * value is indexed, so that lookups do not depend on axiom order.
+ *
+ * @see OWLGraphWrapperExtended#getLookupIndex()
+ */
+public class OWLGraphLookupIndex {
+
+	private static final Logger LOG = Logger.getLogger(OWLGraphLookupIndex.class);
+
+	private final Set<OWLOntology> ontologies;
+	private final Map<IRI, OWLEntity> entityByIRI;
+	private final Set<IRI> classIRIs;
+	private final Set<IRI> individualIRIs;
+	private final Set<IRI> objectPropertyIRIs;
+	private final Set<IRI> annotationPropertyIRIs;
+	private final Map<IRI, String> labelByIRI;
+	private final Map<String, Set<IRI>> iriByLabel;
+	private final Map<IRI, String> oboIdByIRI;
+	private final Map<String, Set<IRI>> iriByOboId;
+	private final Map<String, Set<IRI>> objectPropertyIRIsByShorthand;
+	private final Map<String, Set<IRI>> iriBySynonym;
+	private final Map<String, IRI> iriByAltId;
+	private final Set<IRI> obsoleteIRIs;
+
+	private OWLGraphLookupIndex(Set<OWLOntology> ontologies, Builder b) {
+		this.ontologies = ImmutableSet.copyOf(ontologies);
+		this.classIRIs = ImmutableSet.copyOf(b.classIRIs);
+		this.individualIRIs = ImmutableSet.copyOf(b.individualIRIs);
+		this.objectPropertyIRIs = ImmutableSet.copyOf(b.objectPropertyIRIs);
+		this.annotationPropertyIRIs = ImmutableSet.copyOf(b.annotationPropertyIRIs);
+		this.entityByIRI = freezeEntities(b);
+		this.labelByIRI = ImmutableMap.copyOf(b.labelByIRI);
+		this.iriByLabel = freeze(b.iriByLabel);
+		this.oboIdByIRI = ImmutableMap.copyOf(b.oboIdByIRI);
+		this.iriByOboId = freeze(b.iriByOboId);
+		Map<String, Set<IRI>> shorthands = new HashMap<String, Set<IRI>>();
+		for (Map.Entry<String, Set<IRI>> e : b.iriByShorthand.entrySet()) {
+			for (IRI iri : e.getValue()) {
+				if (b.objectPropertySignature.contains(iri)) {
+					Set<IRI> iris = shorthands.get(e.getKey());
+					if (iris == null) {
+						iris = new HashSet<IRI>();
+						shorthands.put(e.getKey(), iris);
+					}
+					iris.add(iri);
+				}
+			}
+		}
+		this.objectPropertyIRIsByShorthand = freeze(shorthands);
+		this.iriBySynonym = freeze(b.iriBySynonym);
+		Map<String, IRI> altIds = new HashMap<String, IRI>();
+		for (Map.Entry<String, IRI> e : b.iriByAltId.entrySet()) {
+			// as in OWLGraphWrapperExtended#getAllOWLObjectsByAltId(), only keep declared objects
+			if (entityByIRI.containsKey(e.getValue())) {
+				altIds.put(e.getKey(), e.getValue());
+			}
+		}
+		this.iriByAltId = ImmutableMap.copyOf(altIds);
+		this.obsoleteIRIs = ImmutableSet.copyOf(b.obsoleteIRIs);
+	}
+
+	private static Map<String, Set<IRI>> freeze(Map<String, ? extends Collection<IRI>> m) {
+		ImmutableMap.Builder<String, Set<IRI>> builder = ImmutableMap.builder();
+		for (Map.Entry<String, ? extends Collection<IRI>> e : m.entrySet()) {
+			builder.put(e.getKey(), ImmutableSortedSet.copyOf(e.getValue()));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * precedence for punned IRIs is as for {@link OWLGraphWrapperExtended#getOWLObject(IRI)}
+	 */
+	private Map<IRI, OWLEntity> freezeEntities(Builder b) {
+		Map<IRI, OWLEntity> m = new HashMap<IRI, OWLEntity>();
+		for (IRI iri : annotationPropertyIRIs)
+			m.put(iri, b.df.getOWLAnnotationProperty(iri));
+		for (IRI iri : objectPropertyIRIs)
+			m.put(iri, b.df.getOWLObjectProperty(iri));
+		for (IRI iri : individualIRIs)
+			m.put(iri, b.df.getOWLNamedIndividual(iri));
+		for (IRI iri : classIRIs)
+			m.put(iri, b.df.getOWLClass(iri));
+		return ImmutableMap.copyOf(m);
+	}
+
+	/**
+	 * Builds the index over all axioms of the given ontologies. No imports
+	 * are followed; pass the full set, e.g. {@link OWLGraphWrapperBasic#getAllOntologies()}.
+	 *
+	 * @param ontologies
+	 * @param df
+	 * @return new index
+	 */
+	public static OWLGraphLookupIndex build(Set<OWLOntology> ontologies, OWLDataFactory df) {
+		long t = System.currentTimeMillis();
+		final Builder b = new Builder(df);
+		// one ontology usually holds nearly all axioms, so parallelize within ontologies
+		for (OWLOntology o : ontologies) {
+			o.getAxioms(AxiomType.DECLARATION).parallelStream()
+				.forEach(b::addDeclaration);
+			o.getObjectPropertiesInSignature().parallelStream()
+				.forEach(p -> b.objectPropertySignature.add(p.getIRI()));
+			o.getAxioms(AxiomType.ANNOTATION_ASSERTION).parallelStream()
+				.forEach(b::addAnnotationAssertion);
+		}
+		OWLGraphLookupIndex index = new OWLGraphLookupIndex(ontologies, b);
+		LOG.info("Built lookup index; entities: "+index.entityByIRI.size()+
+				" labels: "+index.labelByIRI.size()+
+				" time: "+(System.currentTimeMillis()-t)+"ms");
+		return index;
+	}
+
+	/**
+	 * Concurrent collectors, used while building
+	 */
+	private static class Builder {
+		final OWLDataFactory df;
+		final IRI labelIRI;
+		final IRI oboIdIRI;
+		final IRI shorthandIRI;
+		final IRI altIdIRI;
+		final Set<IRI> synonymIRIs;
+
+		final Set<IRI> classIRIs = ConcurrentHashMap.newKeySet();
+		final Set<IRI> individualIRIs = ConcurrentHashMap.newKeySet();
+		final Set<IRI> objectPropertyIRIs = ConcurrentHashMap.newKeySet();
+		final Set<IRI> annotationPropertyIRIs = ConcurrentHashMap.newKeySet();
+		final Set<IRI> objectPropertySignature = ConcurrentHashMap.newKeySet();
+		final ConcurrentMap<IRI, String> labelByIRI = new ConcurrentHashMap<IRI, String>();
+		final ConcurrentMap<String, Set<IRI>> iriByLabel = new ConcurrentHashMap<String, Set<IRI>>();
+		final ConcurrentMap<IRI, String> oboIdByIRI = new ConcurrentHashMap<IRI, String>();
+		final ConcurrentMap<String, Set<IRI>> iriByOboId = new ConcurrentHashMap<String, Set<IRI>>();
+		final ConcurrentMap<String, Set<IRI>> iriByShorthand = new ConcurrentHashMap<String, Set<IRI>>();
+		final ConcurrentMap<String, Set<IRI>> iriBySynonym = new ConcurrentHashMap<String, Set<IRI>>();
+		final ConcurrentMap<String, IRI> iriByAltId = new ConcurrentHashMap<String, IRI>();
+		final Set<IRI> obsoleteIRIs = ConcurrentHashMap.newKeySet();
+
+		Builder(OWLDataFactory df) {
+			this.df = df;
+			labelIRI = df.getRDFSLabel().getIRI();
+			oboIdIRI = Obo2Owl.trTagToIRI(OboFormatTag.TAG_ID.getTag());
+			shorthandIRI = Obo2OWLVocabulary.IRI_OIO_shorthand.getIRI();
+			altIdIRI = Obo2Owl.trTagToIRI(OboFormatTag.TAG_ALT_ID.getTag());
+			synonymIRIs = ImmutableSet.of(
+					Obo2OWLVocabulary.IRI_OIO_hasExactSynonym.getIRI(),
+					Obo2OWLVocabulary.IRI_OIO_hasRelatedSynonym.getIRI(),
+					Obo2OWLVocabulary.IRI_OIO_hasNarrowSynonym.getIRI(),
+					Obo2OWLVocabulary.IRI_OIO_hasBroadSynonym.getIRI());
+		}
+
+		void addDeclaration(OWLDeclarationAxiom da) {
+			OWLEntity e = da.getEntity();
+			if (e.isOWLClass())
+				classIRIs.add(e.getIRI());
+			else if (e.isOWLNamedIndividual())
+				individualIRIs.add(e.getIRI());
+			else if (e.isOWLObjectProperty())
+				objectPropertyIRIs.add(e.getIRI());
+			else if (e.isOWLAnnotationProperty())
+				annotationPropertyIRIs.add(e.getIRI());
+		}
+
+		void addAnnotationAssertion(OWLAnnotationAssertionAxiom aa) {
+			if (!(aa.getSubject() instanceof IRI))
+				return;
+			IRI subject = (IRI) aa.getSubject();
+			if (aa.getAnnotation().isDeprecatedIRIAnnotation()) {
+				obsoleteIRIs.add(subject);
+				return;
+			}
+			OWLAnnotationValue v = aa.getValue();
+			if (!(v instanceof OWLLiteral))
+				return;
+			String s = ((OWLLiteral) v).getLiteral();
+			IRI p = aa.getProperty().getIRI();
+			if (p.equals(labelIRI)) {
+				labelByIRI.merge(subject, s, OWLGraphLookupIndex::min);
+				add(iriByLabel, s, subject);
+			}
+			else if (p.equals(oboIdIRI)) {
+				oboIdByIRI.merge(subject, s, OWLGraphLookupIndex::min);
+				add(iriByOboId, s, subject);
+				add(iriByShorthand, s, subject);
+			}
+			else if (p.equals(shorthandIRI)) {
+				add(iriByShorthand, s, subject);
+			}
+			else if (p.equals(altIdIRI)) {
+				iriByAltId.merge(s, subject, (x, y) -> x.compareTo(y) <= 0 ? x : y);
+			}
+			else if (synonymIRIs.contains(p)) {
+				add(iriBySynonym, s, subject);
+			}
+		}
+
+		private static void add(ConcurrentMap<String, Set<IRI>> m, String k, IRI v) {
+			m.computeIfAbsent(k, x -> ConcurrentHashMap.newKeySet()).add(v);
+		}
+	}
+
+	private static String min(String a, String b) {
+		return a.compareTo(b) <= 0 ? a : b;
+	}
+
+	/**
+	 * @return the ontologies this index was built from
+	 */
+	public Set<OWLOntology> getOntologies() {
+		return ontologies;
+	}
+
+	/**
+	 * @param iri
+	 * @return entity declared with this IRI, or null
+	 * @see OWLGraphWrapperExtended#getOWLObject(IRI)
+	 */
+	public OWLObject getEntity(IRI iri) {
+		return entityByIRI.get(iri);
+	}
+
+	public boolean isDeclaredClass(IRI iri) {
+		return classIRIs.contains(iri);
+	}
+
+	public boolean isDeclaredIndividual(IRI iri) {
+		return individualIRIs.contains(iri);
+	}
+
+	public boolean isDeclaredObjectProperty(IRI iri) {
+		return objectPropertyIRIs.contains(iri);
+	}
+
+	public boolean isDeclaredAnnotationProperty(IRI iri) {
+		return annotationPropertyIRIs.contains(iri);
+	}
+
+	/**
+	 * @param iri
+	 * @return rdfs:label or null
+	 */
+	public String getLabel(IRI iri) {
+		return labelByIRI.get(iri);
+	}
+
+	/**
+	 * @param label
+	 * @return all IRIs with this rdfs:label, in IRI order; empty if none
+	 */
+	public Set<IRI> getIRIsByLabel(String label) {
+		return getSet(iriByLabel, label);
+	}
+
+	/**
+	 * @param label
+	 * @return true if more than one IRI has this label
+	 */
+	public boolean isSharedLabel(String label) {
+		return getIRIsByLabel(label).size() > 1;
+	}
+
+	/**
+	 * @param iri
+	 * @return oboInOwl:id value or null
+	 */
+	public String getOboId(IRI iri) {
+		return oboIdByIRI.get(iri);
+	}
+
+	/**
+	 * @param id
+	 * @return all IRIs with this oboInOwl:id value; empty if none
+	 */
+	public Set<IRI> getIRIsByOboId(String id) {
+		return getSet(iriByOboId, id);
+	}
+
+	/**
+	 * @param id
+	 * @return object properties in the signature with this oboInOwl:shorthand
+	 * or oboInOwl:id value; empty if none
+	 */
+	public Set<IRI> getObjectPropertyIRIsByShorthand(String id) {
+		return getSet(objectPropertyIRIsByShorthand, id);
+	}
+
+	/**
+	 * @param synonym
+	 * @return all IRIs with an OBO synonym of any scope with this value; empty if none
+	 */
+	public Set<IRI> getIRIsBySynonym(String synonym) {
+		return getSet(iriBySynonym, synonym);
+	}
+
+	/**
+	 * @param altId
+	 * @return IRI of the declared entity with this alt_id, or null
+	 */
+	public IRI getIRIByAltId(String altId) {
+		return iriByAltId.get(altId);
+	}
+
+	/**
+	 * @return alt_id to IRI map, for declared entities
+	 */
+	public Map<String, IRI> getAllIRIsByAltId() {
+		return iriByAltId;
+	}
+
+	/**
+	 * @param iri
+	 * @return true if there is an owl:deprecated true annotation on iri
+	 */
+	public boolean isObsolete(IRI iri) {
+		return obsoleteIRIs.contains(iri);
+	}
+
+	private static Set<IRI> getSet(Map<String, Set<IRI>> m, String k) {
+		Set<IRI> iris = m.get(k);
+		if (iris == null)
+			return Collections.emptySet();
+		return iris;
+	}
+}
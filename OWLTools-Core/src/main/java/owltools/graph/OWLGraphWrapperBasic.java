@@ -141,6 +141,7 @@ public class OWLGraphWrapperBasic {
 		mergeOntology(extOnt);
 		if (isRemoveFromSupportList) {
 			this.supportOntologySet.remove(extOnt);
+			graphOntologiesChanged();
 		}
 	}
 
@@ -185,6 +186,7 @@ public class OWLGraphWrapperBasic {
 		mergeOntology(extOnt);
 		if (isRemoveFromSupportList) {
 			this.supportOntologySet.remove(extOnt);
+			graphOntologiesChanged();
 		}
 	}
 
@@ -214,6 +216,7 @@ public class OWLGraphWrapperBasic {
 
 	public void setSourceOntology(OWLOntology sourceOntology) {
 		this.sourceOntology = sourceOntology;
+		graphOntologiesChanged();
 	}
 
 	/**
@@ -229,13 +232,26 @@ public class OWLGraphWrapperBasic {
 
 	public void setSupportOntologySet(Set<OWLOntology> supportOntologySet) {
 		this.supportOntologySet = supportOntologySet;
+		graphOntologiesChanged();
 	}
 
 	public void addSupportOntology(OWLOntology o) {
 		this.supportOntologySet.add(o);
+		graphOntologiesChanged();
 	}
 	public void removeSupportOntology(OWLOntology o) {
 		this.supportOntologySet.remove(o);
+		graphOntologiesChanged();
+	}
+
+	/**
+	 * Called when the source ontology or the set of support ontologies is
+	 * replaced or modified through this wrapper, so that subclasses can drop
+	 * state derived from {@link #getAllOntologies()}. Changes to the axioms of
+	 * the ontologies are not reported here.
+	 */
+	protected void graphOntologiesChanged() {
+		// nothing to drop at this level
 	}
 
 	/**
@@ -299,6 +315,7 @@ public class OWLGraphWrapperBasic {
 		addSupportOntologiesFromImportsClosure();
 		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
 		sourceOntology = manager.createOntology(sourceOntology.getAxioms(), ontologyIRI);
+		graphOntologiesChanged();
 	}
 
 	/**
@@ -1,6 +1,7 @@
 package owltools.graph;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -89,9 +90,15 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
     // parent = UnionOf( ..., child, ...)
 	// we store the OWLGraphEdges outgoing from the child, rather than simply the parents, 
 	// to be able to store the underlying OWLEquivalentClassesAxioms. 
-	private Map<OWLObject, Set<OWLGraphEdge>> extraSubClassOfEdges = null;
+	private volatile Map<OWLObject, Set<OWLGraphEdge>> extraSubClassOfEdges = null;
 
 	private final Object edgeCacheMutex = new Object();
+
+	// optional int indexed copy of the edges and closure; see buildCompactCore()
+	private volatile OWLGraphCompactCore compactCore = null;
+
+	// optional precomputed closure, e.g. read from a file
+	private volatile OWLGraphClosureProvider closureProvider = null;
 	
 	protected Profiler profiler = new Profiler();
 
@@ -293,21 +300,26 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	 *                 the reversed {@code OWLObjectUnionOf}s.
 	 */
 	private Set<OWLGraphEdge> getOutgoingEdgesViaReverseUnion(OWLObject child) {
-		synchronized (edgeCacheMutex) {
-			if (extraSubClassOfEdges == null)
-				cacheReverseUnionMap();
-			
-			if (extraSubClassOfEdges.containsKey(child)) 
-			    return new OWLGraphEdgeSet(extraSubClassOfEdges.get(child));
-			
-		    return new OWLGraphEdgeSet();
+		// the map is only read once built, so only take the lock to build it
+		Map<OWLObject, Set<OWLGraphEdge>> m = extraSubClassOfEdges;
+		if (m == null) {
+			synchronized (edgeCacheMutex) {
+				if (extraSubClassOfEdges == null)
+					cacheReverseUnionMap();
+				m = extraSubClassOfEdges;
+			}
 		}
+		if (m.containsKey(child)) 
+		    return new OWLGraphEdgeSet(m.get(child));
+		
+	    return new OWLGraphEdgeSet();
 	}
 
 
 	private void cacheReverseUnionMap() {
 		synchronized (edgeCacheMutex) {
-		    extraSubClassOfEdges = new HashMap<OWLObject, Set<OWLGraphEdge>>();
+			// filled before it is published, as it is read without the lock
+			Map<OWLObject, Set<OWLGraphEdge>> extraSubClassOfEdges = new HashMap<OWLObject, Set<OWLGraphEdge>>();
             if (!config.isGraphReasonedAndRelaxed) {
 		        for (OWLOntology o : getAllOntologies()) {
 		            for (OWLClass cls : o.getClassesInSignature()) {
@@ -327,6 +339,7 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 		            }
 		        }
 		    }
+		    this.extraSubClassOfEdges = extraSubClassOfEdges;
 		}
 	}
 
@@ -660,9 +673,55 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 			inferredEdgeBySource = null;
 			inferredEdgeByTarget = null;
 			extraSubClassOfEdges = null;
+			compactCore = null;
+			closureProvider = null;
 		}
 	}
 
+	/**
+	 * Sets a source of precomputed outgoing closures, used by
+	 * {@link #getOutgoingEdgesClosure(OWLObject)} and {@link #getAncestors(OWLObject)}
+	 * for the objects it covers. Like the closure cache, it is dropped by
+	 * {@link #clearCachedEdges()}.
+	 * 
+	 * @param closureProvider
+	 * @see owltools.io.MappedGraphClosure
+	 */
+	public void setClosureProvider(OWLGraphClosureProvider closureProvider) {
+		this.closureProvider = closureProvider;
+	}
+
+	public OWLGraphClosureProvider getClosureProvider() {
+		return closureProvider;
+	}
+
+	/**
+	 * Builds an {@link OWLGraphCompactCore} for the current graph, and uses it
+	 * to answer {@link #getOutgoingEdgesClosure(OWLObject)} and
+	 * {@link #getAncestors(OWLObject)} for nodes it contains, in place of the
+	 * per node closure cache. The core is a snapshot: it is dropped by
+	 * {@link #clearCachedEdges()}, which must be called after the ontologies change.
+	 * 
+	 * @return the new core
+	 */
+	public OWLGraphCompactCore buildCompactCore() {
+		compactCore = null;
+		OWLGraphCompactCore core = OWLGraphCompactCore.build(this);
+		synchronized (edgeCacheMutex) {
+			// the closure is now held by the core
+			inferredEdgeBySource = null;
+			compactCore = core;
+		}
+		return core;
+	}
+
+	/**
+	 * @return the core built by {@link #buildCompactCore()}, or null
+	 */
+	public OWLGraphCompactCore getCompactCore() {
+		return compactCore;
+	}
+
 	/**
 	 * @param t
 	 * @return all edges that have t as a direct target
@@ -670,7 +729,7 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	public Set<OWLGraphEdge> getIncomingEdges(OWLObject t) {
 		ensureEdgesCached();
 		if (edgeByTarget.containsKey(t)) {
-			HashSet<OWLGraphEdge> edges = new OWLGraphEdgeSet();
+			Set<OWLGraphEdge> edges = new OWLGraphEdgeSet();
 			for (OWLGraphEdge e :edgeByTarget.get(t)) {
 			    edges.addAll(this.unfoldEdgeSource(e));
 			}
@@ -818,95 +877,143 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	 * @return
 	 */
 	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s, Set<? extends OWLPropertyExpression> overProperties) {
-		synchronized (edgeCacheMutex) {
-			// never use cache if a property list is specified (in future we may have one
-			// cache per property set)
-			if (config.isCacheClosure && overProperties == null) {
+		if (overProperties == null) {
+			OWLGraphCompactCore core = compactCore;
+			if (core != null) {
+				Set<OWLGraphEdge> edges = core.getOutgoingEdgesClosure(s);
+				if (edges != null)
+					return edges;
+			}
+			OWLGraphClosureProvider provider = closureProvider;
+			if (provider != null) {
+				Set<OWLGraphEdge> edges = provider.getOutgoingEdgesClosure(s);
+				if (edges != null)
+					return edges;
+			}
+		}
+		// never use cache if a property list is specified (in future we may have one
+		// cache per property set)
+		boolean isUseCache = config.isCacheClosure && overProperties == null;
+		if (isUseCache) {
+			synchronized (edgeCacheMutex) {
 				if (inferredEdgeBySource == null)
 					inferredEdgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
 				if (inferredEdgeBySource.containsKey(s)) {
 					return new OWLGraphEdgeSet(inferredEdgeBySource.get(s));
 				}
 			}
-			profiler.startTaskNotify("getOutgoingEdgesClosure");
-	
-			Stack<OWLGraphEdge> edgeStack = new Stack<OWLGraphEdge>();
-			Set<OWLGraphEdge> closureSet = new OWLGraphEdgeSet();
-			//Set<OWLGraphEdge> visitedSet = new HashSet<OWLGraphEdge>();
-			Set<OWLObject> visitedObjs = new HashSet<OWLObject>();
-			Map<OWLObject,Set<OWLGraphEdge>> visitedMap = new HashMap<OWLObject,Set<OWLGraphEdge>>();
-			visitedObjs.add(s);
-			visitedMap.put(s, new OWLGraphEdgeSet());
-	
-			// initialize. we seed the search with a reflexive identity edge DEPR
-			//edgeStack.add(new OWLGraphEdge(s,s,null,Quantifier.IDENTITY,ontology));
-	
-			// seed stack
-			edgeStack.addAll(getPrimitiveOutgoingEdges(s, overProperties));
-			closureSet.addAll(edgeStack);
-			while (!edgeStack.isEmpty()) {
-				OWLGraphEdge ne = edgeStack.pop();
-				//System.out.println("NEXT: "+ne+" //stack: "+edgeStack);
-				int nextDist = ne.getDistance() + 1;
-				Set<OWLGraphEdge> extSet = getPrimitiveOutgoingEdges(ne.getTarget(), overProperties);
-				for (OWLGraphEdge extEdge : extSet) {
-					//System.out.println("   EXT:"+extEdge);
-					OWLGraphEdge nu = combineEdgePair(s, ne, extEdge, nextDist);
-					if (nu == null)
-						continue;
-					//if (!isKeepEdge(nu))
-					//	continue;
-	
-					OWLObject nuTarget = nu.getTarget();
-					//System.out.println("     COMBINED:"+nu);
-	
-					// check for cycles. this is not as simple as
-					// checking if we have visited the node, as we are interested
-					// in different paths to the same node.
-					// todo - check if there is an existing path to this node
-					//  that is shorter
-					//if (!visitedSet.contains(nu)) {
-					boolean isEdgeVisited = false;
-					if (visitedObjs.contains(nuTarget)) {
-						// we have potentially visited this edge before
-						//System.out.println("checking to see if  visisted "+nu);
-						//System.out.println(nu.getFinalQuantifiedProperty());
-						for (OWLGraphEdge ve : visitedMap.get(nuTarget)) {
-							//System.out.println(" ve:"+ve.getFinalQuantifiedProperty());
-							if (ve.getFinalQuantifiedProperty().equals(nu.getFinalQuantifiedProperty())) {
-								//System.out.println("already visited: "+nu+" via: "+ve);
-								isEdgeVisited = true;
-							}
-						}
-						if (!isEdgeVisited) {
-						    visitedMap.get(nuTarget).add(nu);
-						}
-					}
-					else {
-						visitedObjs.add(nuTarget);
-						visitedMap.put(nuTarget, new OWLGraphEdgeSet());
-						visitedMap.get(nuTarget).add(nu);
-					}
-	
-					if (!isEdgeVisited) {
-						//System.out.println("      *NOT VISITED:"+nu+" visistedSize:"+visitedSet.size());
-						if (nu.getTarget() instanceof OWLNamedObject || 
-								config.isIncludeClassExpressionsInClosure) {
-						    closureSet.add(nu);
-						}
-						edgeStack.add(nu);
-						//visitedSet.add(nu);		
-	
+		}
+		Set<OWLGraphEdge> closureSet = computeOutgoingEdgesClosure(s, overProperties);
+		if (isUseCache) {
+			synchronized (edgeCacheMutex) {
+				if (inferredEdgeBySource == null)
+					inferredEdgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
+				inferredEdgeBySource.put(s, new OWLGraphEdgeSet(closureSet));
+			}
+		}
+		return closureSet;
+	}
+
+	/**
+	 * Computes the closure as {@link #getOutgoingEdgesClosure(OWLObject, Set)},
+	 * without reading or filling the closure cache. 
+	 * <p>
+	 * This does not take the edge cache lock, so can be called from several threads
+	 * at once, as long as the ontologies are not modified at the same time.
+	 * 
+	 * @param s
+	 * @param overProperties may be null
+	 * @return closure of edges originating from source
+	 */
+	public Set<OWLGraphEdge> computeOutgoingEdgesClosure(OWLObject s, Set<? extends OWLPropertyExpression> overProperties) {
+		profiler.startTaskNotify("getOutgoingEdgesClosure");
+
+		Stack<OWLGraphEdge> edgeStack = new Stack<OWLGraphEdge>();
+		Set<OWLGraphEdge> closureSet = new OWLGraphEdgeSet();
+		//Set<OWLGraphEdge> visitedSet = new HashSet<OWLGraphEdge>();
+		// final quantified properties of the edges visited to each target
+		Map<OWLObject,Set<OWLQuantifiedProperty>> visitedMap = new HashMap<OWLObject,Set<OWLQuantifiedProperty>>();
+		visitedMap.put(s, new HashSet<OWLQuantifiedProperty>());
+
+		// initialize. we seed the search with a reflexive identity edge DEPR
+		//edgeStack.add(new OWLGraphEdge(s,s,null,Quantifier.IDENTITY,ontology));
+
+		// seed stack
+		edgeStack.addAll(getPrimitiveOutgoingEdges(s, overProperties));
+		closureSet.addAll(edgeStack);
+		while (!edgeStack.isEmpty()) {
+			OWLGraphEdge ne = edgeStack.pop();
+			//System.out.println("NEXT: "+ne+" //stack: "+edgeStack);
+			int nextDist = ne.getDistance() + 1;
+			Set<OWLGraphEdge> extSet = getPrimitiveOutgoingEdges(ne.getTarget(), overProperties);
+			for (OWLGraphEdge extEdge : extSet) {
+				//System.out.println("   EXT:"+extEdge);
+				OWLGraphEdge nu = combineEdgePair(s, ne, extEdge, nextDist);
+				if (nu == null)
+					continue;
+				//if (!isKeepEdge(nu))
+				//	continue;
+
+				OWLObject nuTarget = nu.getTarget();
+				//System.out.println("     COMBINED:"+nu);
+
+				// check for cycles. this is not as simple as
+				// checking if we have visited the node, as we are interested
+				// in different paths to the same node.
+				// todo - check if there is an existing path to this node
+				//  that is shorter
+				//if (!visitedSet.contains(nu)) {
+				Set<OWLQuantifiedProperty> visitedQps = visitedMap.get(nuTarget);
+				if (visitedQps == null) {
+					visitedQps = new HashSet<OWLQuantifiedProperty>();
+					visitedMap.put(nuTarget, visitedQps);
+				}
+				// we have visited this edge before if we reached its target 
+				// through the same final property
+				boolean isEdgeVisited = !visitedQps.add(nu.getFinalQuantifiedProperty());
+
+				if (!isEdgeVisited) {
+					//System.out.println("      *NOT VISITED:"+nu+" visistedSize:"+visitedSet.size());
+					if (nu.getTarget() instanceof OWLNamedObject || 
+							config.isIncludeClassExpressionsInClosure) {
+					    closureSet.add(nu);
 					}
-	
+					edgeStack.add(nu);
+					//visitedSet.add(nu);		
+
 				}
+
 			}
-	
-			if (config.isCacheClosure && overProperties == null) {
-				inferredEdgeBySource.put(s, new OWLGraphEdgeSet(closureSet));
-			}
-			profiler.endTaskNotify("getOutgoingEdgesClosure");
-			return closureSet;
+		}
+
+		profiler.endTaskNotify("getOutgoingEdgesClosure");
+		return closureSet;
+
+	}
+
+	/**
+	 * Computes the closures of many objects in one pass, in topological order,
+	 * reusing the closures of parents; see {@link OWLGraphClosureBuilder}.
+	 * Neither reads nor fills the closure cache.
+	 * 
+	 * @param objs
+	 * @return closure of each object, and of each object reachable from them
+	 */
+	public Map<OWLObject, Set<OWLGraphEdge>> getOutgoingEdgesClosures(Collection<? extends OWLObject> objs) {
+		return new OWLGraphClosureBuilder(this).build(objs);
+	}
+
+	/**
+	 * Fills the closure cache with the closures of all objects in the graph,
+	 * computed with {@link #getOutgoingEdgesClosures(Collection)}.
+	 * Only useful if {@link Config#isCacheClosure} is set.
+	 */
+	public void cacheAllOutgoingEdgesClosures() {
+		Map<OWLObject, Set<OWLGraphEdge>> closures = getOutgoingEdgesClosures(getAllOWLObjects());
+		synchronized (edgeCacheMutex) {
+			if (inferredEdgeBySource == null)
+				inferredEdgeBySource = new HashMap<OWLObject,Set<OWLGraphEdge>>();
+			inferredEdgeBySource.putAll(closures);
 		}
 	}
 
@@ -1159,6 +1266,18 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	 * @return all reachable target nodes, regardless of edges
 	 */
 	public Set<OWLObject> getAncestors(OWLObject x) {
+		OWLGraphCompactCore core = compactCore;
+		if (core != null) {
+			Set<OWLObject> ancs = core.getAncestors(x);
+			if (ancs != null)
+				return ancs;
+		}
+		OWLGraphClosureProvider provider = closureProvider;
+		if (provider != null) {
+			Set<OWLObject> ancs = provider.getAncestors(x);
+			if (ancs != null)
+				return ancs;
+		}
 		Set<OWLObject> ancs = new HashSet<OWLObject>();
 		for (OWLGraphEdge e : getOutgoingEdgesClosure(x)) {
 			ancs.add(e.getTarget());
@@ -1382,10 +1501,10 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 			Stack<OWLGraphEdge> edgeStack = new Stack<OWLGraphEdge>();
 			Set<OWLGraphEdge> closureSet = new OWLGraphEdgeSet();
 			//Set<OWLGraphEdge> visitedSet = new HashSet<OWLGraphEdge>();
-			Set<OWLObject> visitedObjs = new HashSet<OWLObject>();
-			Map<OWLObject,Set<OWLGraphEdge>> visitedMap = new HashMap<OWLObject,Set<OWLGraphEdge>>();
-			visitedObjs.add(t);
-			visitedMap.put(t, new OWLGraphEdgeSet());
+			// shortest path length from each source, by first quantified property
+			Map<OWLObject,Map<OWLQuantifiedProperty,Integer>> visitedMap = 
+					new HashMap<OWLObject,Map<OWLQuantifiedProperty,Integer>>();
+			visitedMap.put(t, new HashMap<OWLQuantifiedProperty,Integer>());
 	
 			// initialize -
 			// note that edges are always from src to tgt. here we are extending down from tgt to src
@@ -1415,28 +1534,18 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	
 					OWLObject nusource = nu.getSource();
 	
-					boolean isEdgeVisited = false;
-					if (visitedObjs.contains(nusource)) {
-						//isEdgeVisited = true;
-						for (OWLGraphEdge ve : visitedMap.get(nusource)) {
-							//System.out.println(" ve:"+ve.getFinalQuantifiedProperty());
-							if (ve.getFirstQuantifiedProperty().equals(nu.getFirstQuantifiedProperty())) {
-								//System.out.println("already visited: "+nu);
-								// always favor the shorter path
-								if (ve.getQuantifiedPropertyList().size() <= nu.getQuantifiedPropertyList().size()) {
-									isEdgeVisited = true;
-								}
-							}
-						}
-						if (!isEdgeVisited) {
-						    visitedMap.get(nusource).add(nu);
-						}
-	
+					Map<OWLQuantifiedProperty,Integer> visitedLengths = visitedMap.get(nusource);
+					if (visitedLengths == null) {
+						visitedLengths = new HashMap<OWLQuantifiedProperty,Integer>();
+						visitedMap.put(nusource, visitedLengths);
 					}
-					else {
-						visitedObjs.add(nusource);
-						visitedMap.put(nusource, new OWLGraphEdgeSet());
-						visitedMap.get(nusource).add(nu);
+					// always favor the shorter path
+					OWLQuantifiedProperty firstQp = nu.getFirstQuantifiedProperty();
+					int length = nu.getQuantifiedPropertyList().size();
+					Integer visitedLength = visitedLengths.get(firstQp);
+					boolean isEdgeVisited = visitedLength != null && visitedLength <= length;
+					if (!isEdgeVisited) {
+						visitedLengths.put(firstQp, length);
 					}
 	
 					if (!isEdgeVisited) {
@@ -1699,10 +1808,11 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 	}
 
 	// TODO - currently hardcoded for simple property chains
-	Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> pcMap = null;
+	volatile Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> pcMap = null;
 	private Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> getPropertyChainMap() {
 		if (pcMap == null) {
-			pcMap = new HashMap<OWLObjectProperty,Set<List<OWLObjectProperty>>>();
+			// filled before it is published, as closures may be computed concurrently
+			Map<OWLObjectProperty,Set<List<OWLObjectProperty>>> pcMap = new HashMap<OWLObjectProperty,Set<List<OWLObjectProperty>>>();
 			for (OWLSubPropertyChainOfAxiom a : sourceOntology.getAxioms(AxiomType.SUB_PROPERTY_CHAIN_OF)) {
 				//LOG.info("CHAIN:"+a+" // "+a.getPropertyChain().size());
 				if (a.getPropertyChain().size() == 2) {
@@ -1723,6 +1833,7 @@ public class OWLGraphWrapperEdges extends OWLGraphWrapperExtended {
 					// TODO
 				}
 			}
+			this.pcMap = pcMap;
 		}
 		return pcMap;
 	}
@@ -3,14 +3,17 @@ package owltools.graph;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.log4j.Logger;
 import org.geneontology.reasoner.ExpressionMaterializingReasoner;
@@ -125,6 +128,7 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 			isSynchronized = false;
 		}
 		neighborAxioms = null;
+		disposeLookupIndex();
 	}
 
 	/**
@@ -685,6 +689,22 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 			final Set<OWLObjectProperty> props, final Map<String,String> relation_map) {
 		addPropertiesForMaterialization(props);
 		ExpressionMaterializingReasoner materializingReasoner = getMaterializingReasoner();
+		for (OWLClass cls : getRelationClosure(c, props, materializingReasoner)) {
+			final String id = getIdentifier(cls);
+			final String label = getLabelOrDisplayId(cls);
+			relation_map.put(id, label);
+		}
+	}
+
+	/**
+	 * @param c
+	 * @param props
+	 * @param materializingReasoner
+	 * @return named super classes of c, and fillers of its super class expressions over props
+	 */
+	private Set<OWLClass> getRelationClosure(OWLClass c, final Set<OWLObjectProperty> props,
+			ExpressionMaterializingReasoner materializingReasoner) {
+		final Set<OWLClass> closure = new HashSet<OWLClass>();
 		Set<OWLClassExpression> classExpressions = materializingReasoner.getSuperClassExpressions(c, false);
 		OWLEntity owlThing = this.getManager().getOWLDataFactory().getOWLThing();
 		
@@ -697,9 +717,7 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 				@Override
 				public void visit(OWLClass cls) {
 					if (cls.isBuiltIn() == false) {
-						final String id = getIdentifier(cls);
-						final String label = getLabelOrDisplayId(cls);
-						relation_map.put(id, label);
+						closure.add(cls);
 					}
 				}
 
@@ -708,20 +726,31 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 					if (props.contains(svf.getProperty())) {
 						OWLClassExpression filler = svf.getFiller();
 						if (!filler.isAnonymous()) {
-							OWLClass cls = filler.asOWLClass();
-							final String id = getIdentifier(cls);
-							final String label = getLabelOrDisplayId(cls);
-							relation_map.put(id, label);
+							closure.add(filler.asOWLClass());
 						}
 					}
 				}
 				
 			});
 		}
+		return closure;
 	}
 	
 	private void addIdLabelClosure(OWLObjectProperty p, boolean reflexive,
 			final Map<String,String> relation_map) {
+		for (OWLObjectProperty property : getRelationClosure(p)) {
+			final String id = getIdentifier(property);
+			final String label = getLabelOrDisplayId(property);
+			relation_map.put(id, label);
+		}
+	}
+
+	/**
+	 * @param p
+	 * @return named super properties of p, and p
+	 */
+	private Set<OWLObjectProperty> getRelationClosure(OWLObjectProperty p) {
+		final Set<OWLObjectProperty> properties = new HashSet<OWLObjectProperty>();
 		// using the graph walker instead of a reasoner: ELK does not implement getSuperProperties()
 		Set<OWLObjectPropertyExpression> closure = getSuperPropertyClosureOf(p);
 		closure.add(p);
@@ -741,9 +770,7 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 				@Override
 				public void visit(OWLObjectProperty property) {
 					if (property.isBuiltIn() == false) {
-						final String id = getIdentifier(property);
-						final String label = getLabelOrDisplayId(property);
-						relation_map.put(id, label);
+						properties.add(property);
 					}
 				}
 
@@ -753,6 +780,65 @@ public class OWLGraphWrapperEdgesAdvanced extends OWLGraphWrapperEdgesExtended i
 				}
 			});
 		}
+		return properties;
+	}
+
+	/**
+	 * Batch version of {@link #getRelationClosureMap(OWLObject, List)}, for many objects
+	 * and the same relations. The reasoner is prepared once, and the id and label of each
+	 * object in any closure are looked up once, in parallel. The closures are computed on
+	 * the calling thread, as the reasoner is not safe for concurrent queries.
+	 * Does not use or fill the cache of {@link #getRelationClosureMap(OWLObject, List)}.
+	 * <p>
+	 * Intended for GOlr loading.
+	 * 
+	 * @param objs
+	 * @param relation_ids
+	 * @return closures, as indexes into a shared table of ids and labels
+	 */
+	public RelationClosureTable getRelationClosureTable(Collection<? extends OWLObject> objs, List<String> relation_ids) {
+		final Set<OWLObjectProperty> props = relationshipIDsToPropertySet(relation_ids);
+		addPropertiesForMaterialization(props);
+		final ExpressionMaterializingReasoner materializingReasoner = getMaterializingReasoner();
+
+		List<OWLObject> objList = new ArrayList<OWLObject>(new LinkedHashSet<OWLObject>(objs));
+		List<Set<OWLObject>> closures = new ArrayList<Set<OWLObject>>(objList.size());
+		for (OWLObject obj : objList) {
+			// reflexive
+			Set<OWLObject> closure = new LinkedHashSet<OWLObject>();
+			closure.add(obj);
+			if (obj instanceof OWLClass) {
+				closure.addAll(getRelationClosure((OWLClass) obj, props, materializingReasoner));
+			}
+			else if (obj instanceof OWLObjectProperty) {
+				closure.addAll(getRelationClosure((OWLObjectProperty) obj));
+			}
+			closures.add(closure);
+		}
+
+		// shared table, in order of first occurrence
+		Map<OWLObject, Integer> index = new HashMap<OWLObject, Integer>();
+		List<OWLObject> table = new ArrayList<OWLObject>();
+		for (Set<OWLObject> closure : closures) {
+			for (OWLObject x : closure) {
+				if (!index.containsKey(x)) {
+					index.put(x, table.size());
+					table.add(x);
+				}
+			}
+		}
+		final String[] ids = new String[table.size()];
+		final String[] labels = new String[table.size()];
+		IntStream.range(0, table.size()).parallel().forEach(i -> {
+			ids[i] = getIdentifier(table.get(i));
+			labels[i] = getLabelOrDisplayId(table.get(i));
+		});
+
+		Map<OWLObject, int[]> closureIndexes = new HashMap<OWLObject, int[]>();
+		for (int i = 0; i < objList.size(); i++) {
+			closureIndexes.put(objList.get(i), closures.get(i).stream().mapToInt(index::get).sorted().toArray());
+		}
+		return new RelationClosureTable(ids, labels, closureIndexes);
 	}
 	
 	/**
@@ -1,13 +1,16 @@
 package owltools.graph;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,6 +47,8 @@ import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLObjectPropertyRangeAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.OWLPropertyDomainAxiom;
 import org.semanticweb.owlapi.model.OWLReflexiveObjectPropertyAxiom;
@@ -72,6 +77,50 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	private static final Logger LOG = Logger.getLogger(OWLGraphWrapperExtended.class);
 	private Map<String,OWLObject> altIdMap = null;
 
+	private volatile boolean isUseLookupIndex = false;
+	private volatile OWLGraphLookupIndex lookupIndex = null;
+	// incremented on each change that may invalidate the index, including
+	// changes made while the index is being built
+	private final AtomicLong lookupIndexModCount = new AtomicLong();
+	private final Object lookupIndexMutex = new Object();
+	private LookupIndexInvalidator lookupIndexInvalidator = null;
+
+	/**
+	 * Discards the lookup index of a wrapper on changes to its ontologies.
+	 * Only holds a weak reference to the wrapper, so that registering it
+	 * with a long lived manager does not keep the wrapper alive; once the
+	 * wrapper is gone, it removes itself from the manager on the next change.
+	 */
+	private static class LookupIndexInvalidator implements OWLOntologyChangeListener {
+
+		private final WeakReference<OWLGraphWrapperExtended> wrapper;
+		private final OWLOntologyManager manager;
+
+		LookupIndexInvalidator(OWLGraphWrapperExtended wrapper, OWLOntologyManager manager) {
+			this.wrapper = new WeakReference<OWLGraphWrapperExtended>(wrapper);
+			this.manager = manager;
+		}
+
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			OWLGraphWrapperExtended g = wrapper.get();
+			if (g == null) {
+				manager.removeOntologyChangeListener(this);
+				return;
+			}
+			g.lookupIndexModCount.incrementAndGet();
+			OWLGraphLookupIndex index = g.lookupIndex;
+			if (index == null)
+				return;
+			for (OWLOntologyChange change : changes) {
+				if (index.getOntologies().contains(change.getOntology())) {
+					g.clearLookupIndex();
+					return;
+				}
+			}
+		}
+	}
+
 	protected OWLGraphWrapperExtended(OWLOntology ontology) {
 		super(ontology);
 	}
@@ -81,6 +130,93 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 		super(iri);
 	}
 
+	/**
+	 * If set, label, identifier, alt_id, obsoletion and IRI lookups are
+	 * answered from an {@link OWLGraphLookupIndex}, instead of scanning the
+	 * ontologies on each call. The index is built on first use, and
+	 * discarded on any change to the ontologies in the graph.
+	 * <p>
+	 * Intended for read-mostly use, such as loading a Solr index, where the
+	 * same lookups are repeated many times. Disabling the index, or closing
+	 * the wrapper, stops listening to the changes of the manager.
+	 * 
+	 * @param isUseLookupIndex
+	 */
+	public void setUseLookupIndex(boolean isUseLookupIndex) {
+		this.isUseLookupIndex = isUseLookupIndex;
+		if (!isUseLookupIndex) {
+			disposeLookupIndex();
+		}
+	}
+
+	public boolean isUseLookupIndex() {
+		return isUseLookupIndex;
+	}
+
+	/**
+	 * @return the lookup index, building it if necessary; null unless enabled
+	 * with {@link #setUseLookupIndex(boolean)}
+	 */
+	public OWLGraphLookupIndex getLookupIndex() {
+		if (!isUseLookupIndex)
+			return null;
+		OWLGraphLookupIndex index = lookupIndex;
+		if (index != null)
+			return index;
+		synchronized (lookupIndexMutex) {
+			index = lookupIndex;
+			if (index == null) {
+				OWLOntologyManager manager = getManager();
+				if (lookupIndexInvalidator == null || lookupIndexInvalidator.manager != manager) {
+					removeLookupIndexInvalidator();
+					lookupIndexInvalidator = new LookupIndexInvalidator(this, manager);
+					manager.addOntologyChangeListener(lookupIndexInvalidator);
+				}
+				// rebuild if the ontologies changed before the index was published;
+				// later changes are seen by the listener, which clears it
+				long modCount;
+				do {
+					modCount = lookupIndexModCount.get();
+					index = OWLGraphLookupIndex.build(getAllOntologies(), getDataFactory());
+					lookupIndex = index;
+				} while (modCount != lookupIndexModCount.get());
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Discards the lookup index, if any; it is rebuilt on next use
+	 */
+	public void clearLookupIndex() {
+		lookupIndexModCount.incrementAndGet();
+		lookupIndex = null;
+	}
+
+	/**
+	 * Discards the lookup index, if any, and stops listening to changes
+	 * of the ontologies in the manager
+	 */
+	protected void disposeLookupIndex() {
+		synchronized (lookupIndexMutex) {
+			clearLookupIndex();
+			removeLookupIndexInvalidator();
+		}
+	}
+
+	private void removeLookupIndexInvalidator() {
+		if (lookupIndexInvalidator != null) {
+			lookupIndexInvalidator.manager.removeOntologyChangeListener(lookupIndexInvalidator);
+			lookupIndexInvalidator = null;
+		}
+	}
+
+	@Override
+	protected void graphOntologiesChanged() {
+		super.graphOntologiesChanged();
+		clearLookupIndex();
+	}
+
 	/**
 	 * fetches the rdfs:label for an OWLObject
 	 * <p>
@@ -132,6 +268,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 * @return boolean
 	 */
 	public boolean isObsolete(OWLObject c) {
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.isObsolete(((OWLEntity) c).getIRI());
+		}
 		for (OWLOntology ont : getAllOntologies()) {
 			for (OWLAnnotation ann : OwlHelper.getAnnotations((OWLEntity) c, ont)) {
 				if (ann.isDeprecatedIRIAnnotation()) {
@@ -214,6 +354,12 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	public String getAnnotationValue(OWLObject c, OWLAnnotationProperty lap) {
 		Set<OWLAnnotation>anns = new HashSet<OWLAnnotation>();
 		if (c instanceof OWLEntity) {
+			if (lap.isLabel()) {
+				OWLGraphLookupIndex index = getLookupIndex();
+				if (index != null) {
+					return index.getLabel(((OWLEntity) c).getIRI());
+				}
+			}
 			for (OWLOntology ont : getAllOntologies()) {
 				anns.addAll(OwlHelper.getAnnotations((OWLEntity) c, lap, ont));
 			}
@@ -564,6 +710,11 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 * @return OWLObject that has matching altId, or null if not found
 	 */
 	public OWLObject getObjectByAltId(String altId) {
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			IRI iri = index.getIRIByAltId(altId);
+			return iri == null ? null : index.getEntity(iri);
+		}
 		Map<String, OWLObject> m = getAltIdMap(false);
 		if (m.containsKey(altId))
 			return m.get(altId);
@@ -904,6 +1055,15 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 		if (iriId.toString().startsWith(Obo2OWLConstants.DEFAULT_IRI_PREFIX))
 			return (String) SerializationUtils.clone(Owl2Obo.getIdentifier(iriId));
 
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			String id = index.getOboId(iriId);
+			if (id != null)
+				return id;
+			LOG.warn("Unable to retrieve the value of oboInOw#id as the identifier for " + iriId + "; we will use an original iri as the identifier.");
+			return iriId.toString();
+		}
+
 		final OWLAnnotationProperty oboIdInOwl = getDataFactory().getOWLAnnotationProperty(Obo2Owl.trTagToIRI(OboFormatTag.TAG_ID.getTag()));
 		for (OWLOntology o : getAllOntologies()) {
 			Collection<OWLAnnotation> oas = EntitySearcher.getAnnotations(iriId, o);
@@ -954,7 +1114,13 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 		// or for relations with a non identifiers with-out a colon, e.g. negative_regulation
 		// we first collect all candidate matching properties in candIRISet.
 		Set<IRI> candIRISet = Sets.newHashSet();
-		if (!id.contains(":")) {
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			if (!id.contains(":")) {
+				candIRISet.addAll(index.getObjectPropertyIRIsByShorthand(id));
+			}
+		}
+		else if (!id.contains(":")) {
 			final OWLAnnotationProperty shortHand = getDataFactory().getOWLAnnotationProperty(Obo2OWLVocabulary.IRI_OIO_shorthand.getIRI());
 			final OWLAnnotationProperty oboIdInOwl = getDataFactory().getOWLAnnotationProperty(Obo2Owl.trTagToIRI(OboFormatTag.TAG_ID.getTag()));
 			for (OWLOntology o : getAllOntologies()) {
@@ -1166,7 +1332,8 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	/**
 	 * fetches an OWL IRI by rdfs:label, optionally testing for uniqueness
 	 * <p>
-	 * TODO: index labels. This currently scans all labels in the ontology, which is expensive
+	 * This scans all labels in the ontology, which is expensive, unless the
+	 * lookup index is enabled; see {@link #setUseLookupIndex(boolean)}
 	 * 
 	 * @param label
 	 * @param isEnforceUnivocal
@@ -1174,6 +1341,18 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 * @throws SharedLabelException if >1 IRI shares input label
 	 */
 	public IRI getIRIByLabel(String label, boolean isEnforceUnivocal) throws SharedLabelException {
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			Set<IRI> iris = index.getIRIsByLabel(label);
+			if (iris.isEmpty())
+				return null;
+			Iterator<IRI> it = iris.iterator();
+			IRI first = it.next();
+			if (isEnforceUnivocal && it.hasNext()) {
+				throw new SharedLabelException(label, first, it.next());
+			}
+			return first;
+		}
 		IRI iri = null;
 		for (OWLOntology o : getAllOntologies()) {
 			Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
@@ -1238,6 +1417,16 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 */
 	public Map<String, OWLObject> getOWLObjectsByAltId(Set<String> altIds) {
 		final Map<String, OWLObject> results = new HashMap<String, OWLObject>();
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			for (String altId : altIds) {
+				IRI iri = index.getIRIByAltId(altId);
+				if (iri != null) {
+					results.put(altId, index.getEntity(iri));
+				}
+			}
+			return results;
+		}
 		final OWLAnnotationProperty altIdProperty = getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
 		if (altIdProperty == null) {
 			return Collections.emptyMap();
@@ -1274,6 +1463,13 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 */
 	public Map<String, OWLObject> getAllOWLObjectsByAltId() {
 		final Map<String, OWLObject> results = new HashMap<String, OWLObject>();
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			for (Map.Entry<String, IRI> e : index.getAllIRIsByAltId().entrySet()) {
+				results.put(e.getKey(), index.getEntity(e.getValue()));
+			}
+			return results;
+		}
 		final OWLAnnotationProperty altIdProperty = getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
 		if (altIdProperty == null) {
 			return Collections.emptyMap();
@@ -1323,6 +1519,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 */
 	public OWLClass getOWLClass(IRI iri) {
 		OWLClass c = getDataFactory().getOWLClass(iri);
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.isDeclaredClass(iri) ? c : null;
+		}
 		for (OWLOntology o : getAllOntologies()) {
 			if (o.getDeclarationAxioms(c).size() > 0) {
 				return c;
@@ -1359,6 +1559,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 */
 	public OWLNamedIndividual getOWLIndividual(IRI iri) {
 		OWLNamedIndividual c = getDataFactory().getOWLNamedIndividual(iri);
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.isDeclaredIndividual(iri) ? c : null;
+		}
 		for (OWLOntology o : getAllOntologies()) {
 			for (OWLDeclarationAxiom da : o.getDeclarationAxioms(c)) {
 				if (da.getEntity() instanceof OWLNamedIndividual) {
@@ -1393,6 +1597,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 
 	public OWLObjectProperty getOWLObjectProperty(IRI iri) {
 		OWLObjectProperty p = getDataFactory().getOWLObjectProperty(iri);
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.isDeclaredObjectProperty(iri) ? p : null;
+		}
 		for (OWLOntology o : getAllOntologies()) {
 			if (o.getDeclarationAxioms(p).size() > 0) {
 				return p;
@@ -1403,6 +1611,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 
 	public OWLAnnotationProperty getOWLAnnotationProperty(IRI iri) {
 		OWLAnnotationProperty p = getDataFactory().getOWLAnnotationProperty(iri);
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.isDeclaredAnnotationProperty(iri) ? p : null;
+		}
 		for (OWLOntology o : getAllOntologies()) {
 			if (o.getDeclarationAxioms(p).size() > 0) {
 				return p;
@@ -1439,6 +1651,10 @@ public class OWLGraphWrapperExtended extends OWLGraphWrapperBasic {
 	 * @return {@link OWLObject}
 	 */
 	public OWLObject getOWLObject(IRI s) {
+		OWLGraphLookupIndex index = getLookupIndex();
+		if (index != null) {
+			return index.getEntity(s);
+		}
 		OWLObject o;
 		o = getOWLClass(s);
 		if (o == null) {
@@ -0,0 +1,85 @@
+package owltools.graph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLObject;
+
+/**
+ * Relation closures of many objects, as computed by
+ * {@link OWLGraphWrapperEdgesAdvanced#getRelationClosureTable(java.util.Collection, java.util.List)}.
+ * <p>
+ * Each closure is a sorted array of indexes into a table of ids and labels
+ * shared by all closures, rather than a map of ids to labels per object.
+ */
+public class RelationClosureTable {
+
+	private final String[] ids;
+	private final String[] labels;
+	private final Map<OWLObject, int[]> closures;
+
+	RelationClosureTable(String[] ids, String[] labels, Map<OWLObject, int[]> closures) {
+		this.ids = ids;
+		this.labels = labels;
+		this.closures = closures;
+	}
+
+	/**
+	 * @return objects with a closure
+	 */
+	public Set<OWLObject> getObjects() {
+		return Collections.unmodifiableSet(closures.keySet());
+	}
+
+	/**
+	 * @param obj
+	 * @return sorted indexes of the objects in the closure, including obj; null if obj was not requested
+	 */
+	public int[] getClosure(OWLObject obj) {
+		return closures.get(obj);
+	}
+
+	/**
+	 * @return number of distinct objects over all closures
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @param index
+	 * @return identifier of the object at index
+	 */
+	public String getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * @param index
+	 * @return label, or identifier if there is no label, of the object at index
+	 */
+	public String getLabel(int index) {
+		return labels[index];
+	}
+
+	/**
+	 * Same as {@link OWLGraphWrapperEdgesAdvanced#getRelationClosureMap(OWLObject, java.util.List)},
+	 * except that an unlabeled obj maps to its id instead of null.
+	 *
+	 * @param obj
+	 * @return map of ids to their displayable labels; null if obj was not requested
+	 */
+	public Map<String, String> getClosureMap(OWLObject obj) {
+		int[] closure = closures.get(obj);
+		if (closure == null) {
+			return null;
+		}
+		Map<String, String> map = new HashMap<String, String>(closure.length * 2);
+		for (int i : closure) {
+			map.put(ids[i], labels[i]);
+		}
+		return map;
+	}
+}
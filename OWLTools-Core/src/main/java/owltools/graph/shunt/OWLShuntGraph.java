@@ -1,14 +1,20 @@
 package owltools.graph.shunt;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * A simple (and easily serializable through GSON) graph model to move data from the
@@ -25,6 +31,10 @@ import com.google.gson.annotations.SerializedName;
  */
 public class OWLShuntGraph {
 	
+	// only used for metadata values
+	private static final Gson GSON = new Gson();
+	private static final Gson UNSAFE_GSON = new GsonBuilder().disableHtmlEscaping().create();
+
 	public String id = null;
 	public Set<OWLShuntNode> nodes = new HashSet<OWLShuntNode>();
 	public Set<OWLShuntEdge> edges = new HashSet<OWLShuntEdge>();
@@ -195,9 +205,7 @@ public class OWLShuntGraph {
 	 * @return JSON form of the shunt graph structure
 	 */
 	public String toJSON(){
-		
-		Gson gson = new Gson();
-		return gson.toJson(this);
+		return toJSON(true);
 	}
 	
 	/**
@@ -205,11 +213,104 @@ public class OWLShuntGraph {
 	 * @return JSON form of the shunt graph structure
 	 */
 	public String unsafeToJSON(){
-		
-		//Gson gson = new Gson();
-		//Gson gson = new GsonBuilder().serializeNulls().create();
-		Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-		return gson.toJson(this);
+		return toJSON(false);
+	}
+
+	private String toJSON(boolean htmlSafe) {
+		StringWriter writer = new StringWriter();
+		try {
+			writeJSON(writer, htmlSafe);
+		} catch (IOException e) {
+			// not thrown by a StringWriter
+			throw new UncheckedIOException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Streams the same JSON as {@link #toJSON()}, or {@link #unsafeToJSON()} if
+	 * htmlSafe is false, to the writer.
+	 * 
+	 * @param writer
+	 * @param htmlSafe
+	 * @throws IOException
+	 */
+	public void writeJSON(Writer writer, boolean htmlSafe) throws IOException {
+		JsonWriter json = createJsonWriter(writer, htmlSafe);
+		json.beginObject();
+		json.name("id").value(id);
+		if (nodes != null) {
+			json.name("nodes").beginArray();
+			for (OWLShuntNode n : nodes) {
+				writeNode(json, n.id, n.type, n.lbl, n.meta);
+			}
+			json.endArray();
+		}
+		if (edges != null) {
+			json.name("edges").beginArray();
+			for (OWLShuntEdge e : edges) {
+				writeEdge(json, e.sub, e.obj, e.pred, e.meta);
+			}
+			json.endArray();
+		}
+		json.name("meta");
+		writeMap(json, metadata);
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * @param writer
+	 * @param htmlSafe
+	 * @return writer that, like Gson by default, skips null values
+	 */
+	static JsonWriter createJsonWriter(Writer writer, boolean htmlSafe) {
+		JsonWriter json = new JsonWriter(writer);
+		json.setHtmlSafe(htmlSafe);
+		json.setSerializeNulls(false);
+		return json;
+	}
+
+	static void writeNode(JsonWriter json, String id, String type, String lbl, Map<String, ?> meta) throws IOException {
+		json.beginObject();
+		json.name("id").value(id);
+		json.name("type").value(type);
+		json.name("lbl").value(lbl);
+		json.name("meta");
+		writeMap(json, meta);
+		json.endObject();
+	}
+
+	static void writeEdge(JsonWriter json, String sub, String obj, String pred, Map<String, ?> meta) throws IOException {
+		json.beginObject();
+		json.name("sub").value(sub);
+		json.name("obj").value(obj);
+		json.name("pred").value(pred);
+		json.name("meta");
+		writeMap(json, meta);
+		json.endObject();
+	}
+
+	static void writeMap(JsonWriter json, Map<String, ?> map) throws IOException {
+		if (map == null) {
+			json.nullValue();
+			return;
+		}
+		json.beginObject();
+		for (Entry<String, ?> e : map.entrySet()) {
+			Object value = e.getValue();
+			json.name(String.valueOf(e.getKey()));
+			if (value == null) {
+				json.nullValue();
+			}
+			else if (value instanceof String) {
+				json.value((String) value);
+			}
+			else {
+				(json.isHtmlSafe() ? GSON : UNSAFE_GSON).toJson(value, value.getClass(), json);
+			}
+		}
+		json.endObject();
 	}
 	
 	/**
@@ -0,0 +1,295 @@
+package owltools.graph.shunt;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectSomeValuesFrom;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Builds the shunt graphs of {@link OWLGraphWrapper#getSegmentShuntGraph(OWLObject, List)}
+ * for many objects and the same relations.
+ * <p>
+ * The id and label of each object, and the stepwise parents of each object, are
+ * computed once and shared by all graphs, so each ancestor is only visited once
+ * for all the objects below it. Graphs are written as JSON directly from the shared
+ * data, without {@link OWLShuntNode} and {@link OWLShuntEdge} objects.
+ * <p>
+ * Safe for use from several threads, as long as the ontology is not modified.
+ */
+public class OWLShuntGraphBuilder {
+
+	private final OWLGraphWrapper graph;
+	private final List<String> relationIds;
+	private final Set<OWLObjectProperty> props;
+	private boolean isHtmlSafe = true;
+
+	// shared between all graphs
+	private final Map<OWLObject, Node> nodes = new ConcurrentHashMap<OWLObject, Node>();
+	private final Map<OWLObject, Node> topicNodes = new ConcurrentHashMap<OWLObject, Node>();
+	private final Map<String, String> predicates = new ConcurrentHashMap<String, String>();
+	private final Map<OWLObject, List<Step>> parents = new ConcurrentHashMap<OWLObject, List<Step>>();
+
+	private static final class Node {
+		final String id;
+		final String lbl;
+
+		Node(String id, String lbl) {
+			this.id = id;
+			this.lbl = lbl;
+		}
+	}
+
+	// edge from an object to a parent
+	private static final class Step {
+		final OWLObject target;
+		final Node node;
+		final String pred;
+
+		Step(OWLObject target, Node node, String pred) {
+			this.target = target;
+			this.node = node;
+			this.pred = pred;
+		}
+	}
+
+	private static final class Edge {
+		final String sub;
+		final String obj;
+		final String pred;
+
+		Edge(String sub, String obj, String pred) {
+			this.sub = sub;
+			this.obj = obj;
+			this.pred = pred;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((obj == null) ? 0 : obj.hashCode());
+			result = prime * result + ((pred == null) ? 0 : pred.hashCode());
+			result = prime * result + ((sub == null) ? 0 : sub.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object thing) {
+			if (this == thing)
+				return true;
+			if (!(thing instanceof Edge))
+				return false;
+			Edge other = (Edge) thing;
+			return eq(sub, other.sub) && eq(obj, other.obj) && eq(pred, other.pred);
+		}
+
+		private static boolean eq(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	// graph of one object, referring to the shared nodes
+	private static final class Segment {
+		// keyed by id, as nodes in OWLShuntGraph
+		final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+		final Set<Edge> edges = new LinkedHashSet<Edge>();
+
+		boolean addNode(Node n) {
+			if (nodes.containsKey(n.id))
+				return false;
+			nodes.put(n.id, n);
+			return true;
+		}
+	}
+
+	/**
+	 * @param graph
+	 * @param relationIds
+	 */
+	public OWLShuntGraphBuilder(OWLGraphWrapper graph, List<String> relationIds) {
+		this.graph = graph;
+		this.relationIds = relationIds;
+		this.props = graph.relationshipIDsToPropertySet(relationIds);
+	}
+
+	/**
+	 * @param isHtmlSafe false for the JSON of {@link OWLShuntGraph#unsafeToJSON()}; default true
+	 */
+	public void setHtmlSafe(boolean isHtmlSafe) {
+		this.isHtmlSafe = isHtmlSafe;
+	}
+
+	public List<String> getRelationIds() {
+		return relationIds;
+	}
+
+	private Node getNode(OWLObject x) {
+		return nodes.computeIfAbsent(x, o -> new Node(graph.getIdentifier(o), graph.getLabelOrDisplayId(o)));
+	}
+
+	private Node getTopicNode(OWLObject x) {
+		return topicNodes.computeIfAbsent(x, o -> new Node(graph.getIdentifier(o), graph.getLabel(o)));
+	}
+
+	private String getPredicate(String label) {
+		String pred = predicates.putIfAbsent(label, label);
+		return pred == null ? label : pred;
+	}
+
+	private List<Step> getParents(OWLObject x) {
+		List<Step> steps = parents.get(x);
+		if (steps == null) {
+			steps = new ArrayList<Step>();
+			for (OWLGraphEdge e : graph.getOutgoingEdges(x, props)) {
+				OWLObject target = e.getTarget();
+				OWLObject parent = getRelated(e, target);
+				if (parent == null)
+					continue;
+				String elabel = graph.getEdgeLabel(e);
+				Node node = getNode(parent);
+				if (elabel != null && node.id != null && !node.id.equals("")) {
+					steps.add(new Step(target, node, getPredicate(elabel)));
+				}
+			}
+			parents.put(x, steps);
+		}
+		return steps;
+	}
+
+	// as in addStepwiseAncestorsToShuntGraph and addDirectDescendentsToShuntGraph
+	private OWLObject getRelated(OWLGraphEdge e, OWLObject edgeDirector) {
+		String rel = graph.classifyRelationship(e, edgeDirector, props);
+		if ("simplesubclass".equals(rel)) {
+			return edgeDirector;
+		}
+		if ("typesubclass".equals(rel)) {
+			return ((OWLObjectSomeValuesFrom) edgeDirector).getFiller().asOWLClass();
+		}
+		return null;
+	}
+
+	private void addStepwiseAncestors(OWLObject x, Segment g) {
+		Node topic = getTopicNode(x);
+		g.addNode(topic);
+		if (topic.id == null || topic.id.equals(""))
+			return;
+		for (Step step : getParents(x)) {
+			if (g.addNode(step.node)) {
+				addStepwiseAncestors(step.target, g);
+			}
+			g.edges.add(new Edge(topic.id, step.node.id, step.pred));
+		}
+	}
+
+	private void addDirectDescendents(OWLObject x, Segment g) {
+		Node topic = getTopicNode(x);
+		g.addNode(topic);
+		if (topic.id == null || topic.id.equals(""))
+			return;
+		for (OWLGraphEdge e : graph.getIncomingEdges(x)) {
+			OWLObject child = getRelated(e, e.getSource());
+			if (child == null)
+				continue;
+			String elabel = graph.getEdgeLabel(e);
+			Node node = getNode(child);
+			if (elabel != null && node.id != null && !node.id.equals("")) {
+				g.addNode(node);
+				g.edges.add(new Edge(node.id, topic.id, getPredicate(elabel)));
+			}
+		}
+	}
+
+	private Segment getSegment(OWLObject x) {
+		Segment g = new Segment();
+		g.addNode(getTopicNode(x));
+		addStepwiseAncestors(x, g);
+		addDirectDescendents(x, g);
+		return g;
+	}
+
+	/**
+	 * @param x
+	 * @return same graph as {@link OWLGraphWrapper#getSegmentShuntGraph(OWLObject, List)}
+	 */
+	public OWLShuntGraph getSegmentShuntGraph(OWLObject x) {
+		Segment segment = getSegment(x);
+		OWLShuntGraph g = new OWLShuntGraph();
+		for (Node n : segment.nodes.values()) {
+			g.addNode(new OWLShuntNode(n.id, n.lbl));
+		}
+		for (Edge e : segment.edges) {
+			g.addEdge(new OWLShuntEdge(e.sub, e.obj, e.pred));
+		}
+		return g;
+	}
+
+	/**
+	 * @param x
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeSegmentShuntGraphJSON(OWLObject x, Writer writer) throws IOException {
+		Segment segment = getSegment(x);
+		JsonWriter json = OWLShuntGraph.createJsonWriter(writer, isHtmlSafe);
+		json.beginObject();
+		json.name("nodes").beginArray();
+		for (Node n : segment.nodes.values()) {
+			OWLShuntGraph.writeNode(json, n.id, null, n.lbl, null);
+		}
+		json.endArray();
+		json.name("edges").beginArray();
+		for (Edge e : segment.edges) {
+			OWLShuntGraph.writeEdge(json, e.sub, e.obj, e.pred, null);
+		}
+		json.endArray();
+		json.name("meta");
+		OWLShuntGraph.writeMap(json, Collections.<String, Object>emptyMap());
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * @param x
+	 * @return JSON of the graph; same content as {@link OWLGraphWrapper#getSegmentShuntGraphJSON(OWLObject, List)}
+	 */
+	public String getSegmentShuntGraphJSON(OWLObject x) {
+		StringWriter writer = new StringWriter();
+		try {
+			writeSegmentShuntGraphJSON(x, writer);
+		} catch (IOException e) {
+			// not thrown by a StringWriter
+			throw new UncheckedIOException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Builds the graphs of all objects in parallel.
+	 *
+	 * @param objs
+	 * @return JSON of the graph of each object
+	 */
+	public Map<OWLObject, String> getSegmentShuntGraphJSON(Collection<? extends OWLObject> objs) {
+		Map<OWLObject, String> jsons = new ConcurrentHashMap<OWLObject, String>();
+		objs.parallelStream().forEach(x -> jsons.put(x, getSegmentShuntGraphJSON(x)));
+		return jsons;
+	}
+}
@@ -1,8 +1,11 @@
 package owltools.io;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.parameters.Imports;
@@ -18,6 +21,8 @@ import owltools.graph.OWLGraphWrapper;
  */
 public abstract class AbstractClosureRenderer extends AbstractRenderer implements GraphRenderer {
 
+	private static final int CHUNK_SIZE = 1000;
+
 	public AbstractClosureRenderer(PrintStream stream) {
 		super(stream);
 	}
@@ -33,9 +38,17 @@ public abstract class AbstractClosureRenderer extends AbstractRenderer implement
 		Set<OWLObject> objs = new HashSet<OWLObject>(g.getSourceOntology().getClassesInSignature(Imports.EXCLUDED));
 		objs.addAll(g.getSourceOntology().getIndividualsInSignature(Imports.EXCLUDED));
 
-		for (OWLObject obj : objs) {
-			for (OWLGraphEdge e : g.getOutgoingEdgesClosure(obj)) {
-				render(e);
+		// closures are computed in parallel, a chunk at a time, and rendered in order
+		List<OWLObject> objList = new ArrayList<OWLObject>(objs);
+		for (int i=0; i<objList.size(); i+=CHUNK_SIZE) {
+			List<OWLObject> chunk = objList.subList(i, Math.min(i+CHUNK_SIZE, objList.size()));
+			List<Set<OWLGraphEdge>> closures = chunk.parallelStream()
+					.map(g::getOutgoingEdgesClosure)
+					.collect(Collectors.toList());
+			for (Set<OWLGraphEdge> edges : closures) {
+				for (OWLGraphEdge e : edges) {
+					render(e);
+				}
 			}
 		}
 		stream.close();
@@ -0,0 +1,46 @@
+package owltools.io;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * Maps a closure written by {@link BinaryGraphClosureRenderer} and installs it as
+ * the closure provider of the graph. Edges are decoded when requested, not on reading.
+ * <p>
+ * Note that the ontology must be loaded prior to restoring a closure table. As only
+ * edges to named objects are stored, the closure is only complete if
+ * {@code isIncludeClassExpressionsInClosure} is false in the graph config.
+ *
+ * @see MappedGraphClosure
+ */
+public class BinaryGraphClosureReader extends AbstractClosureReader {
+
+	private static final Logger LOG = Logger.getLogger(BinaryGraphClosureReader.class);
+
+	public BinaryGraphClosureReader(OWLGraphWrapper g) {
+		super(g);
+	}
+
+	@Override
+	public void read(String file) throws IOException {
+		MappedGraphClosure closure = new MappedGraphClosure(file, graph.getSourceOntology());
+		if (graph.getConfig().isIncludeClassExpressionsInClosure) {
+			LOG.warn("Closure in "+file+" only contains edges to named objects");
+		}
+		graph.setClosureProvider(closure);
+		LOG.info("Mapped closure of "+closure.getNumSources()+" objects: "+closure.getNumEdges()+" edges");
+	}
+
+	/**
+	 * Binary closures are mapped from a file, use {@link #read(String)}
+	 *
+	 * @throws IOException always
+	 */
+	@Override
+	public void read() throws IOException {
+		throw new IOException("Binary closures can only be read from a file");
+	}
+}
@@ -0,0 +1,221 @@
+package owltools.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+import owltools.graph.OWLQuantifiedProperty;
+
+/**
+ * Writes the graph closure of all classes and individuals in the source ontology
+ * as an indexed binary file, which can be memory mapped with {@link MappedGraphClosure}.
+ * <p>
+ * Closures are computed in one pass in topological order, see
+ * {@link OWLGraphWrapper#getOutgoingEdgesClosures(java.util.Collection)}. As with
+ * {@link CompactGraphClosureRenderer}, only edges to named objects are written.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <ul>
+ * <li>header: magic, version, number of sources, nodes and labels (ints),
+ * followed by the positions of the edge, node, label and offset sections (longs)</li>
+ * <li>edges: target node, label and distance (ints), grouped by source</li>
+ * <li>nodes: type (C, I or P) and IRI of each node; sources come first</li>
+ * <li>labels: the quantified property list and GCI qualifiers of each distinct edge label</li>
+ * <li>offsets: index of the first edge of each source, plus the total number of edges (longs)</li>
+ * </ul>
+ *
+ * @see BinaryGraphClosureReader
+ */
+public class BinaryGraphClosureRenderer implements GraphRenderer {
+
+	private static final Logger LOG = Logger.getLogger(BinaryGraphClosureRenderer.class);
+
+	static final int MAGIC = 0x4F47434C; // "OGCL"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 5 * 4 + 4 * 8;
+	static final int EDGE_SIZE = 3 * 4;
+
+	static final byte TYPE_CLASS = 'C';
+	static final byte TYPE_INDIVIDUAL = 'I';
+	static final byte TYPE_PROPERTY = 'P';
+
+	static final byte FLAG_INVERSE = 1;
+	static final byte FLAG_GCI_RELATION_INVERSE = 2;
+
+	private final String file;
+
+	// node and label tables, filled as edges are written
+	private final List<OWLNamedObject> nodes = new ArrayList<OWLNamedObject>();
+	private final Map<IRI, Integer> nodeIndex = new HashMap<IRI, Integer>();
+	private final List<OWLGraphEdge> labels = new ArrayList<OWLGraphEdge>();
+	private final Map<List<Object>, Integer> labelIndex = new HashMap<List<Object>, Integer>();
+
+	public BinaryGraphClosureRenderer(String file) {
+		this.file = file;
+	}
+
+	/**
+	 * As {@link #write(OWLGraphWrapper)}, for use as a {@link GraphRenderer}
+	 */
+	@Override
+	public void render(OWLGraphWrapper g) {
+		try {
+			write(g);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param g
+	 * @throws IOException
+	 */
+	public void write(OWLGraphWrapper g) throws IOException {
+		Set<OWLNamedObject> objs = new HashSet<OWLNamedObject>(g.getSourceOntology().getClassesInSignature(Imports.EXCLUDED));
+		objs.addAll(g.getSourceOntology().getIndividualsInSignature(Imports.EXCLUDED));
+		List<OWLNamedObject> sources = new ArrayList<OWLNamedObject>(objs);
+		Collections.sort(sources, (a, b) -> a.getIRI().compareTo(b.getIRI()));
+		for (OWLNamedObject s : sources) {
+			addNode(s);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Channels.newOutputStream(channel.position(HEADER_SIZE)), 1 << 16));
+			Map<OWLObject, Set<OWLGraphEdge>> closures = g.getOutgoingEdgesClosures(sources);
+			long[] offsets = new long[sources.size() + 1];
+			long numEdges = 0;
+			for (int i = 0; i < sources.size(); i++) {
+				offsets[i] = numEdges;
+				for (OWLGraphEdge e : closures.get(sources.get(i))) {
+					if (!(e.getTarget() instanceof OWLNamedObject)) {
+						continue;
+					}
+					out.writeInt(addNode((OWLNamedObject) e.getTarget()));
+					out.writeInt(addLabel(e));
+					out.writeInt(e.getDistance());
+					numEdges++;
+				}
+			}
+			offsets[sources.size()] = numEdges;
+
+			long edgesPos = HEADER_SIZE;
+			long nodesPos = edgesPos + numEdges * EDGE_SIZE;
+			// labels may refer to properties not yet in the node table
+			byte[] labelBytes = writeLabels();
+			byte[] nodeBytes = writeNodes();
+			long labelsPos = nodesPos + nodeBytes.length;
+			long offsetsPos = labelsPos + labelBytes.length;
+			out.write(nodeBytes);
+			out.write(labelBytes);
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(sources.size()).putInt(nodes.size()).putInt(labels.size());
+			header.putLong(edgesPos).putLong(nodesPos).putLong(labelsPos).putLong(offsetsPos);
+			header.flip();
+			channel.write(header, 0);
+			LOG.info("Wrote closure of "+sources.size()+" objects: "+numEdges+" edges, "+labels.size()+" labels");
+		}
+	}
+
+	private int addNode(OWLNamedObject obj) {
+		Integer id = nodeIndex.get(obj.getIRI());
+		if (id == null) {
+			id = nodes.size();
+			nodes.add(obj);
+			nodeIndex.put(obj.getIRI(), id);
+		}
+		return id;
+	}
+
+	private int addLabel(OWLGraphEdge e) {
+		List<Object> key = Arrays.asList(e.getQuantifiedPropertyList(), e.getGCIFiller(), e.getGCIRelation());
+		Integer id = labelIndex.get(key);
+		if (id == null) {
+			id = labels.size();
+			labels.add(e);
+			labelIndex.put(key, id);
+		}
+		return id;
+	}
+
+	private byte[] writeLabels() throws IOException {
+		ByteArrayDataOutput out = new ByteArrayDataOutput();
+		for (OWLGraphEdge e : labels) {
+			List<OWLQuantifiedProperty> qpl = e.getQuantifiedPropertyList();
+			out.writeInt(qpl.size());
+			for (OWLQuantifiedProperty qp : qpl) {
+				out.writeByte(qp.getQuantifier() == null ? -1 : qp.getQuantifier().ordinal());
+				out.writeByte(qp.isInverseOf() ? FLAG_INVERSE : 0);
+				out.writeInt(qp.hasProperty() ? addNode(qp.getProperty()) : -1);
+				out.writeInt(qp.getMinCardinality() == null ? -1 : qp.getMinCardinality());
+				out.writeInt(qp.getMaxCardinality() == null ? -1 : qp.getMaxCardinality());
+			}
+			OWLObjectPropertyExpression gciRelation = e.getGCIRelation();
+			out.writeByte(gciRelation != null && gciRelation.isAnonymous() ? FLAG_GCI_RELATION_INVERSE : 0);
+			out.writeInt(e.getGCIFiller() == null ? -1 : addNode(e.getGCIFiller()));
+			out.writeInt(gciRelation == null ? -1 : addNode(gciRelation.getNamedProperty()));
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] writeNodes() throws IOException {
+		ByteArrayDataOutput out = new ByteArrayDataOutput();
+		for (OWLNamedObject obj : nodes) {
+			if (obj instanceof OWLClass)
+				out.writeByte(TYPE_CLASS);
+			else if (obj instanceof OWLNamedIndividual)
+				out.writeByte(TYPE_INDIVIDUAL);
+			else if (obj instanceof OWLObjectProperty)
+				out.writeByte(TYPE_PROPERTY);
+			else
+				throw new IOException("Cannot write closure node: "+obj);
+			out.writeUTF(obj.getIRI().toString());
+		}
+		return out.toByteArray();
+	}
+
+	private static class ByteArrayDataOutput extends DataOutputStream {
+
+		ByteArrayDataOutput() {
+			super(new ByteArrayOutputStream());
+		}
+
+		byte[] toByteArray() throws IOException {
+			flush();
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+}
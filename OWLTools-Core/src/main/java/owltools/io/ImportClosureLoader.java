@@ -0,0 +1,454 @@
+package owltools.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.io.IRIDocumentSource;
+import org.semanticweb.owlapi.io.OWLOntologyDocumentSource;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.model.PrefixDocumentFormat;
+import org.semanticweb.owlapi.util.VersionInfo;
+
+import com.google.common.base.Optional;
+
+/**
+ * Loads an ontology and its import closure into a manager, parsing the
+ * imports in parallel.
+ * <p>
+ * The imports are loaded level by level: all documents imported by the
+ * current level are parsed at the same time, each in its own manager and
+ * without following their imports. The parsed ontologies are then added to
+ * the target manager, which finds them when resolving the import declarations.
+ * Imports that could not be parsed this way are left to the target manager,
+ * so errors are reported as in {@link OWLOntologyManager#loadOntology(IRI)}.
+ * <p>
+ * If a cache directory is set, ontologies parsed from local files are also
+ * stored there in OWL functional syntax, which is faster to parse than most
+ * source formats. The cache files are keyed by the SHA-256 of the file
+ * content, the document IRI, the loader configuration and the OWL API
+ * version, so that unchanged files are not parsed from the source again by
+ * later runs.
+ *
+ * @see ParserWrapper#setParallelImports(boolean)
+ */
+public class ImportClosureLoader {
+
+	private static final Logger LOG = Logger.getLogger(ImportClosureLoader.class);
+
+	private static final String CACHE_SUFFIX = ".ofn";
+	// change, if the content of the cache files changes
+	private static final String CACHE_VERSION = "2";
+
+	private final OWLOntologyManager manager;
+	private final File cacheDirectory;
+	// a file that does not exist, used to skip imports when parsing a single document
+	private final IRI skippedImport;
+	private final AtomicInteger cacheHits = new AtomicInteger();
+
+	/**
+	 * @param manager target manager, with the IRI mappers to use
+	 * @param cacheDirectory directory for parsed ontologies, or null for no caching
+	 */
+	public ImportClosureLoader(OWLOntologyManager manager, File cacheDirectory) {
+		this.manager = manager;
+		this.cacheDirectory = cacheDirectory;
+		File tmp = new File(System.getProperty("java.io.tmpdir"));
+		this.skippedImport = IRI.create(new File(tmp, "owltools-skipped-import-"+UUID.randomUUID()+".owl"));
+	}
+
+	/**
+	 * @return number of documents read from the cache directory
+	 */
+	public int getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * Content of a single ontology document, without its imports.
+	 */
+	private static class ParsedOntology {
+
+		IRI ontologyIRI;
+		IRI versionIRI;
+		Set<OWLAxiom> axioms;
+		Set<OWLAnnotation> annotations;
+		Set<OWLImportsDeclaration> imports;
+		String format;
+		Map<String, String> prefixes;
+		IRI documentIRI;
+
+		OWLOntologyID getOntologyID() {
+			if (ontologyIRI == null) {
+				return new OWLOntologyID();
+			}
+			return new OWLOntologyID(Optional.of(ontologyIRI), Optional.fromNullable(versionIRI));
+		}
+	}
+
+	/**
+	 * @param iri ontology or document IRI, as for {@link OWLOntologyManager#loadOntology(IRI)}
+	 * @return ontology, with its import closure loaded in the manager
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology load(IRI iri) throws OWLOntologyCreationException {
+		ParsedOntology root = parse(iri);
+		if (root == null) {
+			// report the error as usual
+			return manager.loadOntology(iri);
+		}
+		Map<IRI, ParsedOntology> parsed = new LinkedHashMap<IRI, ParsedOntology>();
+		parsed.put(iri, root);
+		// imports that could not be parsed are left to the manager
+		Set<IRI> attempted = new HashSet<IRI>();
+		attempted.add(iri);
+		Set<IRI> level = getNewImports(root.imports, attempted);
+		while (!level.isEmpty()) {
+			attempted.addAll(level);
+			Map<IRI, ParsedOntology> levelParsed = new ConcurrentHashMap<IRI, ParsedOntology>();
+			level.parallelStream().forEach(importIRI -> {
+				ParsedOntology p = parse(importIRI);
+				if (p != null) {
+					levelParsed.put(importIRI, p);
+				}
+			});
+			Set<IRI> next = new LinkedHashSet<IRI>();
+			for (IRI importIRI : level) {
+				ParsedOntology p = levelParsed.get(importIRI);
+				if (p != null) {
+					parsed.put(importIRI, p);
+					next.addAll(getNewImports(p.imports, attempted));
+				}
+			}
+			level = next;
+		}
+
+		OWLOntology ontology = null;
+		List<OWLOntology> added = new ArrayList<OWLOntology>();
+		for (ParsedOntology p : parsed.values()) {
+			OWLOntologyID id = p.getOntologyID();
+			OWLOntology ont;
+			if (!id.isAnonymous() && manager.contains(id)) {
+				LOG.info("Skip already loaded ontology: "+id);
+				ont = manager.getOntology(id);
+			}
+			else {
+				ont = add(p);
+				added.add(ont);
+			}
+			if (p == root) {
+				ontology = ont;
+			}
+		}
+		// anything not found by IRI is loaded by the manager
+		OWLOntologyLoaderConfiguration config = manager.getOntologyLoaderConfiguration();
+		for (OWLOntology ont : added) {
+			for (OWLImportsDeclaration decl : ont.getImportsDeclarations()) {
+				if (manager.getImportedOntology(decl) == null) {
+					manager.makeLoadImportRequest(decl, config);
+				}
+			}
+		}
+		return ontology;
+	}
+
+	private Set<IRI> getNewImports(Set<OWLImportsDeclaration> imports, Set<IRI> attempted) {
+		Set<IRI> iris = new LinkedHashSet<IRI>();
+		for (OWLImportsDeclaration decl : imports) {
+			IRI importIRI = decl.getIRI();
+			if (!attempted.contains(importIRI) && !manager.contains(importIRI)) {
+				iris.add(importIRI);
+			}
+		}
+		return iris;
+	}
+
+	private IRI getDocumentIRI(IRI iri) {
+		for (OWLOntologyIRIMapper mapper : manager.getIRIMappers()) {
+			IRI documentIRI = mapper.getDocumentIRI(iri);
+			if (documentIRI != null) {
+				return documentIRI;
+			}
+		}
+		return iri;
+	}
+
+	private OWLOntology add(ParsedOntology p) throws OWLOntologyCreationException {
+		OWLOntology ont = toOntology(p, manager);
+		manager.setOntologyDocumentIRI(ont, p.documentIRI);
+		OWLDocumentFormat format = createFormat(p);
+		if (format != null) {
+			manager.setOntologyFormat(ont, format);
+		}
+		return ont;
+	}
+
+	private static OWLOntology toOntology(ParsedOntology p, OWLOntologyManager m) throws OWLOntologyCreationException {
+		OWLOntology ont = m.createOntology(p.getOntologyID());
+		m.addAxioms(ont, p.axioms);
+		List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+		for (OWLAnnotation annotation : p.annotations) {
+			changes.add(new AddOntologyAnnotation(ont, annotation));
+		}
+		for (OWLImportsDeclaration decl : p.imports) {
+			changes.add(new AddImport(ont, decl));
+		}
+		m.applyChanges(changes);
+		return ont;
+	}
+
+	private OWLDocumentFormat createFormat(ParsedOntology p) {
+		if (p.format == null) {
+			return null;
+		}
+		try {
+			OWLDocumentFormat format = (OWLDocumentFormat) Class.forName(p.format).newInstance();
+			if (p.prefixes != null && format.isPrefixOWLOntologyFormat()) {
+				format.asPrefixOWLOntologyFormat().copyPrefixesFrom(p.prefixes);
+			}
+			return format;
+		} catch (ReflectiveOperationException e) {
+			LOG.warn("Could not create format: "+p.format, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param iri
+	 * @return parsed document, or null if it could not be parsed
+	 */
+	private ParsedOntology parse(IRI iri) {
+		IRI documentIRI = getDocumentIRI(iri);
+		String key = null;
+		if (cacheDirectory != null && "file".equals(documentIRI.getScheme())) {
+			File file = new File(documentIRI.toURI());
+			try {
+				key = getCacheKey(file, documentIRI);
+			} catch (IOException e) {
+				LOG.warn("Could not read: "+file, e);
+				return null;
+			}
+			ParsedOntology cached = readCache(key, documentIRI);
+			if (cached != null) {
+				LOG.info("Using cached ontology: "+cached.ontologyIRI+" from: "+documentIRI);
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		}
+		ParsedOntology p = parseDocument(new IRIDocumentSource(documentIRI), documentIRI);
+		if (p != null && key != null) {
+			writeCache(key, p);
+		}
+		return p;
+	}
+
+	/**
+	 * Parse a single document, without its imports.
+	 * 
+	 * @param source
+	 * @param documentIRI
+	 * @return parsed document, or null if it could not be parsed
+	 */
+	private ParsedOntology parseDocument(OWLOntologyDocumentSource source, IRI documentIRI) {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		// every import resolves to a missing file, so only this document is parsed
+		OWLOntologyIRIMapper skipImports = iri -> skippedImport;
+		m.getIRIMappers().set(skipImports);
+		OWLOntologyLoaderConfiguration config = manager.getOntologyLoaderConfiguration()
+				.setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+		LOG.info("Start loading ontology from: "+documentIRI);
+		OWLOntology ont;
+		try {
+			ont = m.loadOntologyFromOntologyDocument(source, config);
+		} catch (OWLOntologyCreationException e) {
+			LOG.warn("Could not parse: "+documentIRI, e);
+			return null;
+		}
+		ParsedOntology p = new ParsedOntology();
+		OWLOntologyID id = ont.getOntologyID();
+		p.ontologyIRI = id.getOntologyIRI().orNull();
+		p.versionIRI = id.getVersionIRI().orNull();
+		p.axioms = new HashSet<OWLAxiom>(ont.getAxioms());
+		p.annotations = new HashSet<OWLAnnotation>(ont.getAnnotations());
+		p.imports = new HashSet<OWLImportsDeclaration>(ont.getImportsDeclarations());
+		OWLDocumentFormat format = m.getOntologyFormat(ont);
+		if (format != null) {
+			p.format = format.getClass().getName();
+			if (format.isPrefixOWLOntologyFormat()) {
+				PrefixDocumentFormat prefixFormat = format.asPrefixOWLOntologyFormat();
+				p.prefixes = new HashMap<String, String>(prefixFormat.getPrefixName2PrefixMap());
+			}
+		}
+		p.documentIRI = documentIRI;
+		LOG.info("Finished loading ontology: "+p.ontologyIRI+" from: "+documentIRI);
+		return p;
+	}
+
+	private File getCacheFile(String key) {
+		return new File(cacheDirectory, key+CACHE_SUFFIX);
+	}
+
+	/**
+	 * A cache file has the name of the original format on the first line,
+	 * followed by the document in OWL functional syntax.
+	 * 
+	 * @param key
+	 * @param documentIRI
+	 * @return cached document, or null
+	 */
+	private ParsedOntology readCache(String key, IRI documentIRI) {
+		File cacheFile = getCacheFile(key);
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(cacheFile));
+			String format = readLine(in);
+			ParsedOntology p = parseDocument(new StreamDocumentSource(in, documentIRI, new FunctionalSyntaxDocumentFormat(), null), documentIRI);
+			if (p == null) {
+				LOG.warn("Ignoring unreadable cache file: "+cacheFile);
+				return null;
+			}
+			p.format = format.isEmpty() ? null : format;
+			return p;
+		} catch (IOException e) {
+			LOG.warn("Ignoring unreadable cache file: "+cacheFile, e);
+			return null;
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				throw new IOException("Missing format line");
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	private void writeCache(String key, ParsedOntology p) {
+		File tmp = null;
+		OutputStream out = null;
+		try {
+			cacheDirectory.mkdirs();
+			tmp = File.createTempFile(key, ".tmp", cacheDirectory);
+			out = new BufferedOutputStream(new FileOutputStream(tmp));
+			out.write(((p.format != null ? p.format : "")+"\n").getBytes(StandardCharsets.UTF_8));
+			OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+			FunctionalSyntaxDocumentFormat format = new FunctionalSyntaxDocumentFormat();
+			if (p.prefixes != null) {
+				format.copyPrefixesFrom(p.prefixes);
+			}
+			m.saveOntology(toOntology(p, m), format, out);
+			out.close();
+			out = null;
+			// other processes only ever see complete files
+			Files.move(tmp.toPath(), getCacheFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | OWLOntologyCreationException | OWLOntologyStorageException e) {
+			LOG.warn("Could not write cache file for: "+p.documentIRI, e);
+		}
+		finally {
+			IOUtils.closeQuietly(out);
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Identical bytes may parse differently, e.g. relative IRIs are resolved
+	 * against the document IRI. So the key covers the file content and
+	 * everything else which is used for parsing.
+	 * 
+	 * @param file
+	 * @param documentIRI
+	 * @return key
+	 * @throws IOException
+	 */
+	private String getCacheKey(File file, IRI documentIRI) throws IOException {
+		OWLOntologyLoaderConfiguration config = manager.getOntologyLoaderConfiguration();
+		StringBuilder header = new StringBuilder();
+		header.append(CACHE_VERSION).append('\n');
+		header.append(VersionInfo.getVersionInfo().getVersion()).append('\n');
+		header.append(documentIRI).append('\n');
+		header.append(config.isStrict()).append(' ');
+		header.append(config.isLoadAnnotationAxioms()).append(' ');
+		header.append(config.isTreatDublinCoreAsBuiltIn()).append('\n');
+		return sha256(header.toString(), file);
+	}
+
+	private static String sha256(String header, File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// required on every Java platform
+			throw new IllegalStateException(e);
+		}
+		digest.update(header.getBytes(StandardCharsets.UTF_8));
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		finally {
+			in.close();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,228 @@
+package owltools.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.graph.OWLGraphClosureProvider;
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphEdge.OWLGraphEdgeSet;
+import owltools.graph.OWLQuantifiedProperty;
+import owltools.graph.OWLQuantifiedProperty.Quantifier;
+
+/**
+ * Closure written by {@link BinaryGraphClosureRenderer}, mapped into memory.
+ * <p>
+ * Only the node and label tables are read when the file is opened; the edges
+ * of a source are decoded each time its closure is requested. Decoded edges
+ * belong to the given ontology, as with {@link CompactGraphClosureReader}.
+ * <p>
+ * The file must not be modified while mapped. Safe for use from several threads.
+ */
+public class MappedGraphClosure implements OWLGraphClosureProvider {
+
+	// edges per mapped segment; a mapped buffer is limited to 2GB
+	private static final long EDGES_PER_SEGMENT = Integer.MAX_VALUE / BinaryGraphClosureRenderer.EDGE_SIZE;
+
+	private final OWLOntology ontology;
+	private final int numSources;
+	private final OWLNamedObject[] nodes;
+	private final Map<IRI, Integer> nodeIndex;
+	private final LabelTemplate[] labels;
+	private final LongBuffer offsets;
+	private final ByteBuffer[] edgeSegments;
+
+	private static class LabelTemplate {
+		Quantifier[] quantifiers;
+		OWLObjectProperty[] properties;
+		boolean[] isInverseOf;
+		Integer[] minCardinalities;
+		Integer[] maxCardinalities;
+		OWLClass gciFiller;
+		OWLObjectPropertyExpression gciRelation;
+
+		List<OWLQuantifiedProperty> createQuantifiedPropertyList() {
+			// new instances each time, as quantified properties are mutable
+			List<OWLQuantifiedProperty> qpl = new ArrayList<OWLQuantifiedProperty>(quantifiers.length);
+			for (int i = 0; i < quantifiers.length; i++) {
+				OWLQuantifiedProperty qp = new OWLQuantifiedProperty(properties[i], quantifiers[i]);
+				qp.setInverseOf(isInverseOf[i]);
+				qp.setMinCardinality(minCardinalities[i]);
+				qp.setMaxCardinality(maxCardinalities[i]);
+				qpl.add(qp);
+			}
+			return qpl;
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param ontology - ontology of the decoded edges
+	 * @throws IOException if the file cannot be read or was not written by {@link BinaryGraphClosureRenderer}
+	 */
+	public MappedGraphClosure(String file, OWLOntology ontology) throws IOException {
+		this.ontology = ontology;
+		OWLDataFactory df = ontology.getOWLOntologyManager().getOWLDataFactory();
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, BinaryGraphClosureRenderer.HEADER_SIZE);
+			if (header.getInt() != BinaryGraphClosureRenderer.MAGIC) {
+				throw new IOException("Not a binary closure file: "+file);
+			}
+			int version = header.getInt();
+			if (version != BinaryGraphClosureRenderer.VERSION) {
+				throw new IOException("Unsupported binary closure version "+version+" in "+file);
+			}
+			numSources = header.getInt();
+			int numNodes = header.getInt();
+			int numLabels = header.getInt();
+			long edgesPos = header.getLong();
+			long nodesPos = header.getLong();
+			long labelsPos = header.getLong();
+			long offsetsPos = header.getLong();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel.position(nodesPos)), 1 << 16));
+			nodes = new OWLNamedObject[numNodes];
+			nodeIndex = new HashMap<IRI, Integer>(numNodes * 2);
+			for (int i = 0; i < numNodes; i++) {
+				byte type = in.readByte();
+				IRI iri = IRI.create(in.readUTF());
+				if (type == BinaryGraphClosureRenderer.TYPE_CLASS)
+					nodes[i] = df.getOWLClass(iri);
+				else if (type == BinaryGraphClosureRenderer.TYPE_INDIVIDUAL)
+					nodes[i] = df.getOWLNamedIndividual(iri);
+				else if (type == BinaryGraphClosureRenderer.TYPE_PROPERTY)
+					nodes[i] = df.getOWLObjectProperty(iri);
+				else
+					throw new IOException("Unknown node type "+type+" in "+file);
+				if (i < numSources)
+					nodeIndex.put(iri, i);
+			}
+
+			in = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel.position(labelsPos)), 1 << 16));
+			labels = new LabelTemplate[numLabels];
+			Quantifier[] quantifiers = Quantifier.values();
+			for (int i = 0; i < numLabels; i++) {
+				LabelTemplate label = new LabelTemplate();
+				int n = in.readInt();
+				label.quantifiers = new Quantifier[n];
+				label.properties = new OWLObjectProperty[n];
+				label.isInverseOf = new boolean[n];
+				label.minCardinalities = new Integer[n];
+				label.maxCardinalities = new Integer[n];
+				for (int j = 0; j < n; j++) {
+					byte q = in.readByte();
+					label.quantifiers[j] = q < 0 ? null : quantifiers[q];
+					label.isInverseOf[j] = (in.readByte() & BinaryGraphClosureRenderer.FLAG_INVERSE) != 0;
+					int p = in.readInt();
+					label.properties[j] = p < 0 ? null : (OWLObjectProperty) nodes[p];
+					int min = in.readInt();
+					label.minCardinalities[j] = min < 0 ? null : min;
+					int max = in.readInt();
+					label.maxCardinalities[j] = max < 0 ? null : max;
+				}
+				boolean isGciRelationInverse = (in.readByte() & BinaryGraphClosureRenderer.FLAG_GCI_RELATION_INVERSE) != 0;
+				int filler = in.readInt();
+				label.gciFiller = filler < 0 ? null : (OWLClass) nodes[filler];
+				int relation = in.readInt();
+				if (relation >= 0) {
+					OWLObjectProperty p = (OWLObjectProperty) nodes[relation];
+					label.gciRelation = isGciRelationInverse ? df.getOWLObjectInverseOf(p) : p;
+				}
+				labels[i] = label;
+			}
+
+			offsets = channel.map(MapMode.READ_ONLY, offsetsPos, (numSources + 1) * 8L).asLongBuffer();
+			long numEdges = offsets.get(numSources);
+			int numSegments = (int) ((numEdges + EDGES_PER_SEGMENT - 1) / EDGES_PER_SEGMENT);
+			edgeSegments = new ByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long first = i * EDGES_PER_SEGMENT;
+				long size = Math.min(EDGES_PER_SEGMENT, numEdges - first) * BinaryGraphClosureRenderer.EDGE_SIZE;
+				edgeSegments[i] = channel.map(MapMode.READ_ONLY, edgesPos + first * BinaryGraphClosureRenderer.EDGE_SIZE, size);
+			}
+		}
+	}
+
+	/**
+	 * @return number of objects with a stored closure
+	 */
+	public int getNumSources() {
+		return numSources;
+	}
+
+	/**
+	 * @return total number of stored edges
+	 */
+	public long getNumEdges() {
+		return offsets.get(numSources);
+	}
+
+	private int getSourceId(OWLObject s) {
+		if (!(s instanceof OWLNamedObject))
+			return -1;
+		Integer id = nodeIndex.get(((OWLNamedObject) s).getIRI());
+		// also check the type, in case of punning
+		if (id == null || !nodes[id].equals(s))
+			return -1;
+		return id;
+	}
+
+	private int getInt(long edge, int field) {
+		ByteBuffer segment = edgeSegments[(int) (edge / EDGES_PER_SEGMENT)];
+		return segment.getInt((int) (edge % EDGES_PER_SEGMENT) * BinaryGraphClosureRenderer.EDGE_SIZE + field * 4);
+	}
+
+	@Override
+	public Set<OWLGraphEdge> getOutgoingEdgesClosure(OWLObject s) {
+		int id = getSourceId(s);
+		if (id < 0)
+			return null;
+		Set<OWLGraphEdge> edges = new OWLGraphEdgeSet();
+		long last = offsets.get(id + 1);
+		for (long edge = offsets.get(id); edge < last; edge++) {
+			LabelTemplate label = labels[getInt(edge, 1)];
+			OWLGraphEdge e = new OWLGraphEdge(s, nodes[getInt(edge, 0)], label.createQuantifiedPropertyList(),
+					ontology, null, label.gciFiller, label.gciRelation);
+			e.setDistance(getInt(edge, 2));
+			edges.add(e);
+		}
+		return edges;
+	}
+
+	@Override
+	public Set<OWLObject> getAncestors(OWLObject s) {
+		int id = getSourceId(s);
+		if (id < 0)
+			return null;
+		Set<OWLObject> ancs = new HashSet<OWLObject>();
+		long last = offsets.get(id + 1);
+		for (long edge = offsets.get(id); edge < last; edge++) {
+			ancs.add(nodes[getInt(edge, 0)]);
+		}
+		return ancs;
+	}
+}
@@ -1,9 +1,18 @@
 package owltools.io;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.IRI;
@@ -29,12 +38,24 @@ import owltools.graph.OWLQuantifiedProperty;
 
 import com.google.common.base.Optional;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
+/**
+ * Renders OWL objects as JSON.
+ * <p>
+ * The convert methods build the JSON structure as maps and arrays; the
+ * render methods write the same structure directly to the writer, without
+ * building it first. Ontologies are written with axioms in sorted order,
+ * rendered in parallel chunks of {@link #CHUNK_SIZE} axioms, with only a
+ * bounded number of rendered chunks held in memory.
+ */
 public class OWLGsonRenderer {
 	PrintWriter writer;
 
 	private static Logger LOG = Logger.getLogger(OWLGsonRenderer.class);
 
+	static final int CHUNK_SIZE = 1000;
+
 	Gson gson = new Gson();
 
 	public OWLGsonRenderer(PrintWriter writer) {
@@ -182,17 +203,254 @@ public class OWLGsonRenderer {
 	}
 
 	public void render(OWLAxiom a) {
-		writer.println(gson.toJson(convert(a)));
+		write(a);
+		writer.println();
 	}
 	public void render(OWLGraphEdge a) {
-		writer.println(gson.toJson(convert(a)));
+		write(a);
+		writer.println();
 	}
 	public void render(OWLOntology a) {
-		writer.println(gson.toJson(convert(a)));
+		try {
+			write(a, writer);
+		} catch (IOException e) {
+			// PrintWriter does not throw
+			throw new UncheckedIOException(e);
+		}
+		writer.println();
 		flush();
 	}
 	public void render(Set a) {
-		writer.println(gson.toJson(convertSet(a)));
+		write(a);
+		writer.println();
+	}
+
+	private void write(Object obj) {
+		try {
+			JsonWriter json = createJsonWriter(writer);
+			writeElement(json, obj);
+			json.flush();
+		} catch (IOException e) {
+			// PrintWriter does not throw
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private JsonWriter createJsonWriter(Writer w) {
+		// same escaping as the default Gson
+		JsonWriter json = new JsonWriter(w);
+		json.setHtmlSafe(true);
+		return json;
+	}
+
+	/**
+	 * Writes the same JSON as rendering {@link #convert(OWLOntology)}.
+	 * 
+	 * @param ont
+	 * @param w
+	 * @throws IOException
+	 */
+	public void write(OWLOntology ont, Writer w) throws IOException {
+		w.write('{');
+		Optional<IRI> ontologyIRI = ont.getOntologyID().getOntologyIRI();
+		if (ontologyIRI.isPresent()) {
+			w.write("\"iri\":");
+			w.write(gson.toJson(convert(ontologyIRI.get())));
+			w.write(',');
+		}
+		w.write("\"annotations\":");
+		writeArray(ont.getAnnotations(), w);
+
+		w.write(",\"axioms\":[");
+		List<OWLAxiom> axioms = new ArrayList<OWLAxiom>(ont.getAxioms());
+		Collections.sort(axioms);
+		int chunks = (axioms.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		// number of chunks rendered at the same time
+		int window = 4 * Runtime.getRuntime().availableProcessors();
+		for (int start = 0; start < chunks; start += window) {
+			List<String> rendered = IntStream.range(start, Math.min(start + window, chunks))
+					.parallel()
+					.mapToObj(i -> renderChunk(axioms.subList(i * CHUNK_SIZE, Math.min((i + 1) * CHUNK_SIZE, axioms.size()))))
+					.collect(Collectors.toList());
+			for (int i = 0; i < rendered.size(); i++) {
+				if (start + i > 0) {
+					w.write(',');
+				}
+				w.write(rendered.get(i));
+			}
+		}
+		w.write(']');
+
+		w.write(",\"imports\":");
+		writeArray(ont.getImportsDeclarations(), w);
+		w.write('}');
+		w.flush();
+	}
+
+	private String renderChunk(List<OWLAxiom> axioms) {
+		StringWriter w = new StringWriter();
+		try {
+			for (int i = 0; i < axioms.size(); i++) {
+				if (i > 0) {
+					w.write(',');
+				}
+				writeAxiom(createJsonWriter(w), axioms.get(i));
+			}
+		} catch (IOException e) {
+			// not thrown by a StringWriter
+			throw new UncheckedIOException(e);
+		}
+		return w.toString();
+	}
+
+	private void writeArray(Set<?> objs, Writer w) throws IOException {
+		JsonWriter json = createJsonWriter(w);
+		writeSet(json, objs);
+		json.flush();
+	}
+
+	private void writeSet(JsonWriter json, Set<?> objs) throws IOException {
+		json.beginArray();
+		for (Object obj : objs) {
+			writeElement(json, obj);
+		}
+		json.endArray();
+	}
+
+	// same dispatch as convertSet
+	private void writeElement(JsonWriter json, Object obj) throws IOException {
+		if (obj instanceof OWLAxiom)
+			writeAxiom(json, (OWLAxiom) obj);
+		else if (obj instanceof OWLImportsDeclaration)
+			writeObject(json, ((OWLImportsDeclaration) obj).getIRI());
+		else if (obj instanceof OWLGraphEdge)
+			writeEdge(json, (OWLGraphEdge) obj);
+		else if (obj instanceof Set)
+			writeSet(json, (Set<?>) obj);
+		else
+			writeObject(json, (OWLObject) obj);
+	}
+
+	/**
+	 * Writes the same JSON as rendering {@link #convert(OWLObject)}.
+	 * 
+	 * @param json
+	 * @param obj
+	 * @throws IOException
+	 */
+	public void writeObject(JsonWriter json, OWLObject obj) throws IOException {
+		if (obj instanceof IRI) {
+			json.value(obj.toString());
+		}
+		else if (obj instanceof OWLEntity) {
+			json.value(((OWLEntity)obj).getIRI().toString());
+		}
+		else if (obj instanceof OWLClassExpression) {
+			json.beginObject();
+			json.name("type").value(((OWLClassExpression) obj).getClassExpressionType().toString());
+			json.name("args").beginArray();
+			if (obj instanceof OWLQuantifiedObjectRestriction) {
+				OWLQuantifiedObjectRestriction r = (OWLQuantifiedObjectRestriction)obj;
+				writeObject(json, r.getProperty());
+				writeObject(json, r.getFiller());
+			}
+			else if (obj instanceof OWLObjectCardinalityRestriction) {
+				OWLObjectCardinalityRestriction r = (OWLObjectCardinalityRestriction)obj;
+				json.value(r.getCardinality());
+				writeObject(json, r.getProperty());
+				writeObject(json, r.getFiller());
+			}
+			else if (obj instanceof OWLNaryBooleanClassExpression) {
+				for (OWLClassExpression op : ((OWLNaryBooleanClassExpression)obj).getOperands()) {
+					writeObject(json, op);
+				}
+			}
+			json.endArray();
+			json.endObject();
+		}
+		else if (obj instanceof OWLLiteral) {
+			json.value(((OWLLiteral)obj).getLiteral());
+		}
+		else {
+			json.value(obj.toString());
+		}
+	}
+
+	/**
+	 * Writes the same JSON as rendering {@link #convert(OWLAxiom)}.
+	 * 
+	 * @param json
+	 * @param a
+	 * @throws IOException
+	 */
+	public void writeAxiom(JsonWriter json, OWLAxiom a) throws IOException {
+		json.beginObject();
+		json.name("type").value(a.getAxiomType().toString());
+		json.name("args").beginArray();
+		if (a instanceof OWLSubClassOfAxiom) {
+			OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom)a;
+			writeObject(json, ax.getSubClass());
+			writeObject(json, ax.getSuperClass());
+		}
+		else if (a instanceof OWLClassAssertionAxiom) {
+			OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom)a;
+			writeObject(json, ax.getClassExpression());
+			writeObject(json, ax.getIndividual());
+		}
+		else if (a instanceof OWLNaryClassAxiom) {
+			for (OWLClassExpression ce : ((OWLNaryClassAxiom)a).getClassExpressions()) {
+				writeObject(json, ce);
+			}
+		}
+		else if (a instanceof OWLUnaryPropertyAxiom) {
+			writeObject(json, ((OWLUnaryPropertyAxiom<?>)a).getProperty());
+		}
+		else if (a instanceof OWLAnnotationAssertionAxiom) {
+			OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom)a;
+			writeObject(json, ax.getProperty());
+			writeObject(json, ax.getSubject());
+			writeObject(json, ax.getValue());
+		}
+		else if (a instanceof OWLDeclarationAxiom) {
+			OWLEntity e = ((OWLDeclarationAxiom)a).getEntity();
+			json.value(e.getEntityType().getName());
+			writeObject(json, e);
+		}
+		else {
+			LOG.warn("no conversion for "+a);
+		}
+		json.endArray();
+		json.endObject();
+	}
+
+	/**
+	 * Writes the same JSON as rendering {@link #convert(OWLGraphEdge)}.
+	 * 
+	 * @param json
+	 * @param edge
+	 * @throws IOException
+	 */
+	public void writeEdge(JsonWriter json, OWLGraphEdge edge) throws IOException {
+		json.beginObject();
+		json.name("distance").value(edge.getDistance());
+		json.name("source");
+		writeObject(json, edge.getSource());
+		json.name("target");
+		writeObject(json, edge.getTarget());
+		json.name("quantifiedPropertyList").beginArray();
+		for (OWLQuantifiedProperty qp : edge.getQuantifiedPropertyList()) {
+			json.beginObject();
+			if (qp.getProperty() != null) {
+				json.name("property");
+				writeObject(json, qp.getProperty());
+			}
+			if (qp.getQuantifier() != null) {
+				json.name("quantifier").value(qp.getQuantifier().name());
+			}
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
 	}
 
 	public void flush() {
@@ -0,0 +1,265 @@
+package owltools.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.obolibrary.obo2owl.Obo2Owl;
+import org.obolibrary.oboformat.model.Clause;
+import org.obolibrary.oboformat.model.Frame;
+import org.obolibrary.oboformat.model.Frame.FrameType;
+import org.obolibrary.oboformat.model.FrameMergeException;
+import org.obolibrary.oboformat.model.OBODoc;
+import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.obolibrary.oboformat.writer.OBOFormatWriter;
+import org.obolibrary.oboformat.writer.OBOFormatWriter.NameProvider;
+import org.obolibrary.oboformat.writer.OBOFormatWriter.OBODocNameProvider;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Translates between OBO and OWL using several threads, for large OBO documents.
+ * <p>
+ * OBO to OWL: the term frames are split into chunks, each translated by its own
+ * {@link Obo2Owl}, together with the header and all typedef frames, which term frames
+ * may refer to. The first chunk, with the instance frames, is translated into the
+ * target manager; the axioms of the others are then added to it in one call.
+ * <p>
+ * OBO writing: frames are rendered by chunks into separate buffers using
+ * {@link OBOFormatWriter}, then written in the same order as
+ * {@link OBOFormatWriter#write(OBODoc, BufferedWriter)}.
+ */
+public class ParallelOboTranslator {
+
+	private static final Logger LOG = Logger.getLogger(ParallelOboTranslator.class);
+
+	static final int DEFAULT_CHUNK_SIZE = 5000;
+
+	private final int threads;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	public ParallelOboTranslator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads
+	 */
+	public ParallelOboTranslator(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param chunkSize number of frames translated or rendered by a single task
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param doc
+	 * @param manager
+	 * @return same ontology as {@link Obo2Owl#convert(OBODoc)} with the manager
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology convert(OBODoc doc, OWLOntologyManager manager) throws OWLOntologyCreationException {
+		return convert(doc, manager, true);
+	}
+
+	/**
+	 * @param doc
+	 * @param manager
+	 * @param isLoadImports if false, the imports of the header are neither declared
+	 *            nor loaded, e.g. to load them with an {@link ImportClosureLoader}
+	 * @return same ontology as {@link Obo2Owl#convert(OBODoc)} with the manager
+	 * @throws OWLOntologyCreationException
+	 * @see #getImportIRIs(OBODoc)
+	 */
+	public OWLOntology convert(OBODoc doc, OWLOntologyManager manager, boolean isLoadImports) throws OWLOntologyCreationException {
+		List<Frame> termFrames = new ArrayList<Frame>(doc.getTermFrames());
+		boolean isSingleChunk = termFrames.size() <= chunkSize || threads <= 1;
+		if (isSingleChunk && isLoadImports) {
+			return new Obo2Owl(manager).convert(doc);
+		}
+		int size = isSingleChunk ? Math.max(termFrames.size(), 1) : chunkSize;
+		List<OBODoc> chunks = new ArrayList<OBODoc>();
+		try {
+			Frame header = doc.getHeaderFrame();
+			Frame headerWithoutImports = removeImports(header);
+			int start = 0;
+			do {
+				boolean isFirst = start == 0;
+				OBODoc chunk = new OBODoc();
+				// imports are only loaded once, for the first chunk
+				chunk.setHeaderFrame(isFirst && isLoadImports ? header : headerWithoutImports);
+				if (doc.getImportedOBODocs() != null) {
+					chunk.setImportedOBODocs(doc.getImportedOBODocs());
+				}
+				addFrames(chunk, doc.getTypedefFrames());
+				addFrames(chunk, termFrames.subList(start, Math.min(start + size, termFrames.size())));
+				if (isFirst) {
+					addFrames(chunk, doc.getInstanceFrames());
+				}
+				chunks.add(chunk);
+				start += size;
+			} while (start < termFrames.size());
+		} catch (FrameMergeException e) {
+			// frames come from a single valid document
+			throw new IllegalStateException(e);
+		}
+		if (chunks.size() == 1) {
+			return new Obo2Owl(manager).convert(chunks.get(0));
+		}
+		LOG.info("Translating "+termFrames.size()+" term frames in "+chunks.size()+" chunks");
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<OWLOntology> first = executor.submit(() -> new Obo2Owl(manager).convert(chunks.get(0)));
+			List<Future<Set<OWLAxiom>>> others = new ArrayList<Future<Set<OWLAxiom>>>();
+			for (OBODoc chunk : chunks.subList(1, chunks.size())) {
+				others.add(executor.submit(() -> {
+					OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+					return new Obo2Owl(m).convert(chunk).getAxioms();
+				}));
+			}
+			OWLOntology ontology = get(first, OWLOntologyCreationException.class);
+			Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+			for (Future<Set<OWLAxiom>> f : others) {
+				axioms.addAll(get(f, OWLOntologyCreationException.class));
+			}
+			manager.addAxioms(ontology, axioms);
+			return ontology;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param doc
+	 * @return IRIs of the imports in the header, as translated by {@link Obo2Owl}
+	 */
+	public static List<IRI> getImportIRIs(OBODoc doc) {
+		List<IRI> iris = new ArrayList<IRI>();
+		Frame header = doc.getHeaderFrame();
+		if (header != null) {
+			for (Clause clause : header.getClauses(OboFormatTag.TAG_IMPORT.getTag())) {
+				iris.add(IRI.create(Obo2Owl.getURI(clause.getValue().toString())));
+			}
+		}
+		return iris;
+	}
+
+	private static Frame removeImports(Frame header) {
+		Frame copy = new Frame(FrameType.HEADER);
+		if (header != null) {
+			for (Clause clause : header.getClauses()) {
+				if (!OboFormatTag.TAG_IMPORT.getTag().equals(clause.getTag())) {
+					copy.addClause(clause);
+				}
+			}
+		}
+		return copy;
+	}
+
+	private static void addFrames(OBODoc doc, Collection<Frame> frames) throws FrameMergeException {
+		for (Frame frame : frames) {
+			doc.addFrame(frame);
+		}
+	}
+
+	/**
+	 * Writes the same as {@link OBOFormatWriter#write(OBODoc, BufferedWriter, NameProvider)}.
+	 *
+	 * @param doc
+	 * @param writer
+	 * @param nameProvider or null to use the names from doc
+	 * @param isCheckStructure
+	 * @throws IOException
+	 */
+	public void write(OBODoc doc, BufferedWriter writer, NameProvider nameProvider, boolean isCheckStructure) throws IOException {
+		if (isCheckStructure) {
+			doc.check();
+		}
+		NameProvider names = nameProvider != null ? nameProvider : new OBODocNameProvider(doc);
+		new OBOFormatWriter().writeHeader(doc.getHeaderFrame(), writer, names);
+
+		List<Frame> frames = new ArrayList<Frame>();
+		frames.addAll(sortById(doc.getTermFrames()));
+		frames.addAll(sortById(doc.getTypedefFrames()));
+		frames.addAll(sortById(doc.getInstanceFrames()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> rendered = new ArrayList<Future<String>>();
+			for (int start = 0; start < frames.size(); start += chunkSize) {
+				List<Frame> chunk = frames.subList(start, Math.min(start + chunkSize, frames.size()));
+				rendered.add(executor.submit(() -> render(chunk, names)));
+			}
+			for (Future<String> f : rendered) {
+				writer.write(get(f, IOException.class));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		writer.flush();
+	}
+
+	private static String render(List<Frame> frames, NameProvider names) throws IOException {
+		StringWriter buffer = new StringWriter();
+		BufferedWriter bw = new BufferedWriter(buffer);
+		OBOFormatWriter oboWriter = new OBOFormatWriter();
+		for (Frame frame : frames) {
+			oboWriter.write(frame, bw, names);
+		}
+		bw.flush();
+		return buffer.toString();
+	}
+
+	private static List<Frame> sortById(Collection<Frame> frames) {
+		List<Frame> sorted = new ArrayList<Frame>(frames);
+		Collections.sort(sorted, new Comparator<Frame>() {
+
+			@Override
+			public int compare(Frame f1, Frame f2) {
+				return f1.getId().compareTo(f2.getId());
+			}
+		});
+		return sorted;
+	}
+
+	private static <T, E extends Exception> T get(Future<T> future, Class<E> exceptionType) throws E {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (exceptionType.isInstance(cause)) {
+				throw exceptionType.cast(cause);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+}
@@ -23,14 +23,18 @@ import org.obolibrary.obo2owl.Owl2Obo;
 import org.obolibrary.oboformat.model.Frame;
 import org.obolibrary.oboformat.model.OBODoc;
 import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.obolibrary.oboformat.parser.OBOFormatParser;
 import org.obolibrary.oboformat.writer.OBOFormatWriter;
 import org.obolibrary.oboformat.writer.OBOFormatWriter.NameProvider;
 import org.obolibrary.oboformat.writer.OBOFormatWriter.OBODocNameProvider;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.formats.OBODocumentFormat;
 import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.io.OWLOntologyCreationIOException;
+import org.semanticweb.owlapi.model.AddImport;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
 import org.semanticweb.owlapi.model.OWLObject;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyAlreadyExistsException;
@@ -59,6 +63,10 @@ public class ParserWrapper {
     private final List<OWLOntologyIRIMapper> mappers = new ArrayList<OWLOntologyIRIMapper>();
     OBODoc obodoc;
     boolean isCheckOboDoc = true;
+    boolean isParallelImports = false;
+    boolean isParallelObo = false;
+    int parallelOboThreads = Runtime.getRuntime().availableProcessors();
+    File importCacheDirectory = null;
 
 
     public ParserWrapper() {
@@ -100,6 +108,50 @@ public class ParserWrapper {
         this.isCheckOboDoc = isCheckOboDoc;
     }
 
+    public boolean isParallelImports() {
+        return isParallelImports;
+    }
+
+    /**
+     * @param isParallelImports if true, load imports using an {@link ImportClosureLoader}
+     */
+    public void setParallelImports(boolean isParallelImports) {
+        this.isParallelImports = isParallelImports;
+    }
+
+    public boolean isParallelObo() {
+        return isParallelObo;
+    }
+
+    /**
+     * @param isParallelObo if true, translate OBO files and write OBO using a {@link ParallelOboTranslator}
+     */
+    public void setParallelObo(boolean isParallelObo) {
+        this.isParallelObo = isParallelObo;
+    }
+
+    public int getParallelOboThreads() {
+        return parallelOboThreads;
+    }
+
+    /**
+     * @param parallelOboThreads number of threads used with {@link #setParallelObo(boolean)}
+     */
+    public void setParallelOboThreads(int parallelOboThreads) {
+        this.parallelOboThreads = parallelOboThreads;
+    }
+
+    public File getImportCacheDirectory() {
+        return importCacheDirectory;
+    }
+
+    /**
+     * @param importCacheDirectory cache of parsed imports, only used with parallel imports
+     */
+    public void setImportCacheDirectory(File importCacheDirectory) {
+        this.importCacheDirectory = importCacheDirectory;
+    }
+
     public void addIRIMapper(OWLOntologyIRIMapper mapper) {
         manager.getIRIMappers().add(mapper);
         mappers.add(0, mapper);
@@ -154,13 +206,81 @@ public class ParserWrapper {
         return iriString.startsWith("file:") || iriString.startsWith("http:") || iriString.startsWith("https:");
     }
 
+    /**
+     * @param iri
+     * @return document IRI, from the IRI mappers of the manager
+     */
+    private IRI getDocumentIRI(IRI iri) {
+        for (OWLOntologyIRIMapper mapper : manager.getIRIMappers()) {
+            IRI documentIRI = mapper.getDocumentIRI(iri);
+            if (documentIRI != null) {
+                return documentIRI;
+            }
+        }
+        return iri;
+    }
+
+    /**
+     * Loads an OBO document as {@link OWLOntologyManager#loadOntology(IRI)}
+     * does, translating it with a {@link ParallelOboTranslator}. With parallel
+     * imports, the imports are loaded with an {@link ImportClosureLoader}.
+     * 
+     * @param documentIRI
+     * @return ontology
+     * @throws OWLOntologyCreationException
+     */
+    private OWLOntology parseOBOParallel(IRI documentIRI) throws OWLOntologyCreationException {
+        for (OWLOntology managed : manager.getOntologies()) {
+            if (documentIRI.equals(manager.getOntologyDocumentIRI(managed))) {
+                LOG.info("Skip already loaded ontology: "+documentIRI);
+                return managed;
+            }
+        }
+        OBOFormatParser p = new OBOFormatParser();
+        try {
+            obodoc = p.parse(documentIRI.toURI().toURL());
+        } catch (IOException e) {
+            throw new OWLOntologyCreationIOException(e);
+        }
+        ParallelOboTranslator translator = new ParallelOboTranslator(parallelOboThreads);
+        OWLOntology ont = translator.convert(obodoc, manager, !isParallelImports);
+        manager.setOntologyDocumentIRI(ont, documentIRI);
+        manager.setOntologyFormat(ont, new OBODocumentFormat());
+        if (isParallelImports) {
+            ImportClosureLoader loader = new ImportClosureLoader(manager, importCacheDirectory);
+            for (IRI importIRI : ParallelOboTranslator.getImportIRIs(obodoc)) {
+                OWLImportsDeclaration decl = manager.getOWLDataFactory().getOWLImportsDeclaration(importIRI);
+                manager.applyChange(new AddImport(ont, decl));
+                if (manager.getImportedOntology(decl) == null) {
+                    loader.load(importIRI);
+                }
+            }
+        }
+        return ont;
+    }
+
     public OWLOntology parseOWL(IRI iri) throws OWLOntologyCreationException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("parsing: "+iri.toString()+" using "+manager);
         }
+        IRI oboDocumentIRI = null;
+        if (isParallelObo) {
+            IRI documentIRI = getDocumentIRI(iri);
+            if (documentIRI.toString().endsWith(".obo")) {
+                oboDocumentIRI = documentIRI;
+            }
+        }
+        if (isParallelImports && oboDocumentIRI == null) {
+            return new ImportClosureLoader(manager, importCacheDirectory).load(iri);
+        }
         OWLOntology ont;
         try {
-            ont = manager.loadOntology(iri);
+            if (oboDocumentIRI != null) {
+                ont = parseOBOParallel(oboDocumentIRI);
+            }
+            else {
+                ont = manager.loadOntology(iri);
+            }
         } catch (OWLOntologyAlreadyExistsException e) {
             // Trying to recover from exception
             OWLOntologyID ontologyID = e.getOntologyID();
@@ -224,19 +344,25 @@ public class ParserWrapper {
     }
     public void saveOWL(OWLOntology ont, OWLDocumentFormat owlFormat,
             OutputStream outputStream) throws OWLOntologyStorageException, IOException {
-        if (owlFormat instanceof OBODocumentFormat && this.isCheckOboDoc == false) {
+        if (owlFormat instanceof OBODocumentFormat && (this.isCheckOboDoc == false || isParallelObo)) {
             // special work-around for skipping the OBO validation before write
             // see also OWL-API issue: https://github.com/owlcs/owlapi/issues/290
             // see also saveOWL(OWLOntology, OWLOntologyFormat, String) for redundant code
+            // also used for writing frames in parallel
             Owl2Obo bridge = new Owl2Obo();
             OBODoc doc;
             BufferedWriter bw = null;
             try {
                 doc = bridge.convert(ont);
-                OBOFormatWriter oboWriter = new OBOFormatWriter();
-                oboWriter.setCheckStructure(isCheckOboDoc); 
                 bw = new BufferedWriter(new OutputStreamWriter(outputStream));
-                oboWriter.write(doc, bw);
+                if (isParallelObo) {
+                    new ParallelOboTranslator(parallelOboThreads).write(doc, bw, null, isCheckOboDoc);
+                }
+                else {
+                    OBOFormatWriter oboWriter = new OBOFormatWriter();
+                    oboWriter.setCheckStructure(isCheckOboDoc); 
+                    oboWriter.write(doc, bw);
+                }
             } catch (IOException e) {
                 throw new OWLOntologyStorageException("Could not write ontology to output stream.", e);
             }
@@ -249,7 +375,7 @@ public class ParserWrapper {
             BufferedWriter bw = null;
             try {
                 bw = new BufferedWriter(new OutputStreamWriter(outputStream));
-                OWLGsonRenderer gr = new OWLGsonRenderer(new PrintWriter(outputStream));
+                OWLGsonRenderer gr = new OWLGsonRenderer(new PrintWriter(bw));
                 gr.render(ont);
                 gr.flush();
             }
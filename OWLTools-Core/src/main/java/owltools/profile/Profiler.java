@@ -6,7 +6,8 @@ import java.util.Map;
 public class Profiler {
 	
 	Map<String,Long> taskTotalTimeMap = new HashMap<String,Long>();
-	Map<String,Long> taskInitTimeMap = new HashMap<String,Long>();
+	// start times are per thread, as the same task may run in several threads at once
+	ThreadLocal<Map<String,Long>> taskInitTimeMap = ThreadLocal.withInitial(HashMap::new);
 
 	public Profiler() {
 		super();
@@ -14,22 +15,26 @@ public class Profiler {
 	}
 	
 	public void startTaskNotify(String task) {
-		taskInitTimeMap.put(task, System.nanoTime());
+		taskInitTimeMap.get().put(task, System.nanoTime());
 	}
 
 	public void endTaskNotify(String task) {
-		long ct = 0;
-		if (taskTotalTimeMap.containsKey(task)) {
-			ct = taskTotalTimeMap.get(task);
-		}
-		long t1 = taskInitTimeMap.get(task);
+		long t1 = taskInitTimeMap.get().get(task);
 		long t2 = System.nanoTime();
-		taskTotalTimeMap.put(task, ct + (t2-t1));
+		synchronized (taskTotalTimeMap) {
+			long ct = 0;
+			if (taskTotalTimeMap.containsKey(task)) {
+				ct = taskTotalTimeMap.get(task);
+			}
+			taskTotalTimeMap.put(task, ct + (t2-t1));
+		}
 	}
 	
 	public void report() {
-		for (String task : taskTotalTimeMap.keySet()) {
-			System.out.println("TASK:"+task+" TIME:"+((float)taskTotalTimeMap.get(task)) / 1000000000);
+		synchronized (taskTotalTimeMap) {
+			for (String task : taskTotalTimeMap.keySet()) {
+				System.out.println("TASK:"+task+" TIME:"+((float)taskTotalTimeMap.get(task)) / 1000000000);
+			}
 		}
 	}
 	
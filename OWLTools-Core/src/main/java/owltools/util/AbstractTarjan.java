@@ -1,7 +1,9 @@
 package owltools.util;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -16,6 +18,7 @@ public abstract class AbstractTarjan<NODE> implements Tarjan<NODE> {
 	
 	private int index = 0;
 	private Stack<NODE> stack = new Stack<NODE>();
+	private Set<NODE> onStack = new HashSet<NODE>();
 	private List<List<NODE>> SCC = new ArrayList<List<NODE>>();
 
 	/**
@@ -30,6 +33,7 @@ public abstract class AbstractTarjan<NODE> implements Tarjan<NODE> {
 		SCC.clear();
 		index = 0;
 		stack.clear();
+		onStack.clear();
 		if(graph != null){
 			for (NODE node : graph.getSources())
 			{
@@ -55,15 +59,17 @@ public abstract class AbstractTarjan<NODE> implements Tarjan<NODE> {
 	/**
 	 * Check: is the NODE n in the given stack<br>
 	 * <br>
-	 * <b>WARNING</b>: This is currently an inefficient implementation. 
-	 * This should be converted from a linear lookup to a constant operation.
+	 * For the stack of this instance, uses a set of the nodes on the stack,
+	 * so is a constant time operation; other stacks are scanned.
 	 * 
 	 * @param stack
 	 * @param n
 	 * @return boolean
 	 */
 	protected boolean isInStack(Stack<NODE> stack, NODE n) {
-		// TODO make this more efficient
+		if (stack == this.stack) {
+			return onStack.contains(n);
+		}
 		return stack.contains(n);
 	}
 	
@@ -72,6 +78,7 @@ public abstract class AbstractTarjan<NODE> implements Tarjan<NODE> {
 		setLowlink(v, index);
 		index++;
 		stack.push(v);
+		onStack.add(v);
 		for(NODE n : adjacencyInfo.getAdjacent(v)){
 			if(getIndex(n) == -1){
 				tarjan(n, adjacencyInfo);
@@ -85,6 +92,7 @@ public abstract class AbstractTarjan<NODE> implements Tarjan<NODE> {
 			List<NODE> component = new ArrayList<NODE>();
 			do{
 				n = stack.pop();
+				onStack.remove(n);
 				component.add(n);
 			}while(notEquals(n, v));
 			if (component.size() == 1 && ignoreSingleton) {
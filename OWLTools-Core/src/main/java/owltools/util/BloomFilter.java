@@ -37,7 +37,9 @@ import java.util.HashSet;
  *
  * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
  * @author Magnus Skjegstad <magnus@skjegstad.com>
+ * @deprecated hashes with a synchronized MD5 digest; use {@link ConcurrentBloomFilter}
  */
+@Deprecated
 public class BloomFilter<E> implements Serializable {
 
 	// generated
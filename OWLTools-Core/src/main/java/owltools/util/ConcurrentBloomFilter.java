@@ -0,0 +1,291 @@
+package owltools.util;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter that can be added to and queried from multiple threads
+ * without locking.
+ *
+ * Bits are stored in 64 bit words, and set with a compare-and-set, so
+ * concurrent adds never lose bits. Each element is hashed once to 64 bits,
+ * and the k bit positions are derived from the two 32 bit halves
+ * (Kirsch and Mitzenmacher, "Less hashing, same performance").
+ *
+ * Elements are hashed using {@link Object#hashCode()}, except for
+ * {@link CharSequence}s, which are hashed on all their characters. A
+ * serialized filter is therefore only valid in another JVM for elements
+ * with a stable hashCode, such as Strings and OWL API objects.
+ *
+ * Replaces {@link BloomFilter}, which computes an MD5 digest per hash
+ * function under a global lock.
+ *
+ * @param <E> element type
+ */
+public class ConcurrentBloomFilter<E> implements Serializable {
+
+	private static final long serialVersionUID = 6312284103877021837L;
+
+	private final AtomicLongArray words;
+	private final long numBits;
+	private final int numHashFunctions;
+	private final int expectedNumberOfElements;
+	private final AtomicLong numberOfAddedElements = new AtomicLong();
+
+	/**
+	 * @param numBits - total size of the filter
+	 * @param numHashFunctions
+	 * @param expectedNumberOfElements
+	 */
+	public ConcurrentBloomFilter(long numBits, int numHashFunctions, int expectedNumberOfElements) {
+		if (numBits <= 0 || numHashFunctions <= 0) {
+			throw new IllegalArgumentException("Filter size and number of hash functions must be positive");
+		}
+		int numWords = (int) ((numBits + 63) / 64);
+		this.words = new AtomicLongArray(numWords);
+		this.numBits = numWords * 64L;
+		this.numHashFunctions = numHashFunctions;
+		this.expectedNumberOfElements = expectedNumberOfElements;
+	}
+
+	/**
+	 * Sizes the filter for the desired false positive probability, using
+	 * the optimal number of bits, m = -n ln(p) / ln(2)^2, and of hash
+	 * functions, k = m/n ln(2).
+	 *
+	 * @param falsePositiveProbability
+	 * @param expectedNumberOfElements
+	 */
+	public ConcurrentBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+		this(optimalNumBits(falsePositiveProbability, expectedNumberOfElements),
+				optimalNumHashFunctions(falsePositiveProbability),
+				expectedNumberOfElements);
+	}
+
+	private static long optimalNumBits(double p, int n) {
+		n = Math.max(n, 1);
+		return Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+	}
+
+	private static int optimalNumHashFunctions(double p) {
+		return Math.max(1, (int) Math.round(-Math.log(p) / Math.log(2)));
+	}
+
+	/**
+	 * 64 bit hash of an element; see class description
+	 *
+	 * @param element
+	 * @return hash
+	 */
+	protected long hash64(Object element) {
+		long h;
+		if (element instanceof CharSequence) {
+			CharSequence s = (CharSequence) element;
+			h = 0xcbf29ce484222325L; // FNV-1a 64 bit offset basis
+			for (int i = 0; i < s.length(); i++) {
+				h ^= s.charAt(i);
+				h *= 0x100000001b3L;
+			}
+		}
+		else {
+			h = element.hashCode();
+		}
+		// MurmurHash3 fmix64 finalizer, spreads the bits of the seed over both halves
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @param element
+	 * @return true if any bits changed, i.e. the element was definitely not present before
+	 */
+	public boolean add(E element) {
+		long hash = hash64(element);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		boolean changed = false;
+		for (int i = 1; i <= numHashFunctions; i++) {
+			long combined = h1 + (long) i * h2;
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			changed |= setBit(combined % numBits);
+		}
+		if (changed) {
+			numberOfAddedElements.incrementAndGet();
+		}
+		return changed;
+	}
+
+	private boolean setBit(long bitIndex) {
+		int wordIndex = (int) (bitIndex >>> 6);
+		long mask = 1L << bitIndex;
+		while (true) {
+			long word = words.get(wordIndex);
+			if ((word & mask) != 0) {
+				return false;
+			}
+			if (words.compareAndSet(wordIndex, word, word | mask)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean getBit(long bitIndex) {
+		return (words.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) != 0;
+	}
+
+	/**
+	 * @param c
+	 */
+	public void addAll(Collection<? extends E> c) {
+		for (E element : c) {
+			add(element);
+		}
+	}
+
+	/**
+	 * @param element
+	 * @return false if the element was definitely not added; true if it probably was
+	 */
+	public boolean contains(Object element) {
+		long hash = hash64(element);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= numHashFunctions; i++) {
+			long combined = h1 + (long) i * h2;
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			if (!getBit(combined % numBits)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param c
+	 * @return true if all elements are probably present
+	 */
+	public boolean containsAll(Collection<?> c) {
+		for (Object element : c) {
+			if (!contains(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param c
+	 * @return number of elements of c that are probably present
+	 */
+	public int countContained(Collection<?> c) {
+		int n = 0;
+		for (Object element : c) {
+			if (contains(element)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param c
+	 * @return members of c that are probably present
+	 */
+	public Collection<E> intersection(Collection<E> c) {
+		Collection<E> iset = new HashSet<E>();
+		for (E e : c) {
+			if (contains(e))
+				iset.add(e);
+		}
+		return iset;
+	}
+
+	/**
+	 * Adds all elements of another filter with the same dimensions
+	 *
+	 * @param other
+	 */
+	public void putAll(ConcurrentBloomFilter<? extends E> other) {
+		if (other.numBits != numBits || other.numHashFunctions != numHashFunctions) {
+			throw new IllegalArgumentException("Filters have different dimensions");
+		}
+		for (int w = 0; w < words.length(); w++) {
+			long bits = other.words.get(w);
+			while (true) {
+				long word = words.get(w);
+				if ((word | bits) == word || words.compareAndSet(w, word, word | bits)) {
+					break;
+				}
+			}
+		}
+		numberOfAddedElements.addAndGet(other.numberOfAddedElements.get());
+	}
+
+	/**
+	 * @return false positive probability for the number of elements added so far
+	 */
+	public double getFalsePositiveProbability() {
+		return getFalsePositiveProbability(numberOfAddedElements.get());
+	}
+
+	/**
+	 * @param numberOfElements
+	 * @return false positive probability for the given number of elements
+	 */
+	public double getFalsePositiveProbability(double numberOfElements) {
+		return Math.pow(1 - Math.exp(-numHashFunctions * numberOfElements / (double) numBits), numHashFunctions);
+	}
+
+	/**
+	 * @return false positive probability once the expected number of elements is added
+	 */
+	public double expectedFalsePositiveProbability() {
+		return getFalsePositiveProbability(expectedNumberOfElements);
+	}
+
+	/**
+	 * @return number of adds that set at least one bit; an estimate of the number of distinct elements
+	 */
+	public long count() {
+		return numberOfAddedElements.get();
+	}
+
+	/**
+	 * @return number of bits in the filter
+	 */
+	public long size() {
+		return numBits;
+	}
+
+	/**
+	 * @return number of hash functions
+	 */
+	public int getK() {
+		return numHashFunctions;
+	}
+
+	public int getExpectedNumberOfElements() {
+		return expectedNumberOfElements;
+	}
+
+	/**
+	 * Not atomic with respect to concurrent adds
+	 */
+	public void clear() {
+		for (int w = 0; w < words.length(); w++) {
+			words.set(w, 0L);
+		}
+		numberOfAddedElements.set(0);
+	}
+}
@@ -0,0 +1,49 @@
+package owltools.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Checks that the closures from {@link OWLGraphClosureBuilder} are the same
+ * as from the per object graph walk
+ */
+public class OWLGraphClosureBuilderTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSameAsGraphWalk() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Set<OWLObject> objs = g.getAllOWLObjects();
+		Map<OWLObject, Set<OWLGraphEdge>> closures = g.getOutgoingEdgesClosures(objs);
+		assertTrue(closures.keySet().containsAll(objs));
+		for (OWLObject x : objs) {
+			assertEquals(x.toString(), g.getOutgoingEdgesClosure(x), closures.get(x));
+		}
+
+		g.clearCachedEdges();
+		g.cacheAllOutgoingEdgesClosures();
+		for (OWLObject x : objs) {
+			assertEquals(x.toString(), closures.get(x), g.getOutgoingEdgesClosure(x));
+		}
+	}
+
+	/**
+	 * with property chains, objects whose lists depend on the composition order
+	 * are computed by the walk
+	 */
+	@Test
+	public void testSameAsGraphWalkWithPropertyChains() throws Exception {
+		OWLGraphWrapper g = getGraph("graph/sub-go-gaf-with-dummy-prop.owl");
+		Set<OWLObject> objs = g.getAllOWLObjects();
+		Map<OWLObject, Set<OWLGraphEdge>> closures = g.getOutgoingEdgesClosures(objs);
+		for (OWLObject x : objs) {
+			assertEquals(x.toString(), g.getOutgoingEdgesClosure(x), closures.get(x));
+		}
+	}
+}
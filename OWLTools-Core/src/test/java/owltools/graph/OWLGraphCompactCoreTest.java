@@ -0,0 +1,58 @@
+package owltools.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLObject;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Checks that {@link OWLGraphCompactCore} gives the same closure and
+ * ancestors as the edge set based implementation
+ */
+public class OWLGraphCompactCoreTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSameAsEdgeSets() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Map<OWLObject, Set<OWLGraphEdge>> closures = new HashMap<OWLObject, Set<OWLGraphEdge>>();
+		Map<OWLObject, Set<OWLObject>> ancestors = new HashMap<OWLObject, Set<OWLObject>>();
+		for (OWLObject x : g.getAllOWLObjects()) {
+			closures.put(x, g.getOutgoingEdgesClosure(x));
+			ancestors.put(x, g.getAncestors(x));
+		}
+
+		OWLGraphCompactCore core = g.buildCompactCore();
+		assertSame(core, g.getCompactCore());
+		assertTrue(core.getNumNodes() >= closures.size());
+		for (OWLObject x : closures.keySet()) {
+			assertEquals(x.toString(), closures.get(x), g.getOutgoingEdgesClosure(x));
+			assertEquals(x.toString(), ancestors.get(x), g.getAncestors(x));
+
+			int id = core.getNodeId(x);
+			assertEquals(x, core.getNode(id));
+			assertEquals(ancestors.get(x).size(), core.getAncestorCount(id));
+			for (OWLObject a : ancestors.get(x)) {
+				int aid = core.getNodeId(a);
+				assertTrue(core.isAncestor(id, aid));
+				assertTrue(core.getDescendants(a).contains(x));
+			}
+			Set<OWLObject> parents = new HashSet<OWLObject>();
+			core.forEachParent(id, n -> parents.add(core.getNode(n)));
+			Set<OWLObject> expectedParents = new HashSet<OWLObject>();
+			for (OWLGraphEdge e : g.getOutgoingEdges(x)) {
+				expectedParents.add(e.getTarget());
+			}
+			assertEquals(expectedParents, parents);
+		}
+
+		g.clearCachedEdges();
+		assertNull(g.getCompactCore());
+	}
+}
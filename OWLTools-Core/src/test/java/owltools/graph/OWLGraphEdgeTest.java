@@ -3,6 +3,7 @@ package owltools.graph;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.HashSet;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -114,4 +115,63 @@ public class OWLGraphEdgeTest {
                 ont, null, taxon2, partOf);
         assertFalse("Non-equal GCI parameters seen as equal", edge1.equalsGCI(edge2));
     }
+    
+    /**
+     * Test the method {@link OWLGraphEdge#getStructuralHash()}, and the merging 
+     * of equal edges by {@link OWLGraphEdge.OWLGraphEdgeSet}.
+     * 
+     * @throws OWLOntologyCreationException
+     * @throws IOException
+     */
+    @Test
+    public void testStructuralHashAndEdgeSet() throws OWLOntologyCreationException, IOException {
+        ParserWrapper parserWrapper = new ParserWrapper();
+        OWLOntology ont = parserWrapper.parse(OWLGraphWrapperEdgesExtendedTest.class.getResource(
+                "/graph/OWLGraphManipulatorTest.obo").getFile());
+        OWLGraphWrapper wrapper = new OWLGraphWrapper(ont);
+        
+        OWLObjectProperty partOf = wrapper.getOWLObjectPropertyByIdentifier("BFO:0000050");
+        OWLClass source = wrapper.getOWLClassByIdentifier("FOO:0002");
+        OWLClass target = wrapper.getOWLClassByIdentifier("FOO:0001");
+        OWLClass target2 = wrapper.getOWLClassByIdentifier("FOO:0003");
+        
+        OWLGraphEdge edge1 = new OWLGraphEdge(source, target, partOf, Quantifier.SOME, ont);
+        OWLGraphEdge edge2 = new OWLGraphEdge(source, target, partOf, Quantifier.SOME, ont);
+        assertEquals("Equal edges with different structural hashes", 
+                edge1.getStructuralHash(), edge2.getStructuralHash());
+        assertEquals("Copied edge with different structural hash", 
+                edge1.getStructuralHash(), new OWLGraphEdge(edge1).getStructuralHash());
+        
+        //the hash must be updated by setters
+        edge2.setTarget(target2);
+        assertNotEquals("Structural hash not updated", 
+                edge1.getStructuralHash(), edge2.getStructuralHash());
+        assertFalse("Different edges seen as equal", edge1.equals(edge2));
+        edge2.setTarget(target);
+        assertTrue("Equal edges seen as non-equal", edge1.equals(edge2));
+        assertEquals("Equal edges with different hashCodes", 
+                edge1.hashCode(), edge2.hashCode());
+        
+        //equal edges are merged by OWLGraphEdgeSet
+        OWLGraphEdge.OWLGraphEdgeSet edges = new OWLGraphEdge.OWLGraphEdgeSet();
+        edges.add(edge1);
+        edges.add(edge2);
+        edges.add(new OWLGraphEdge(source, target2, partOf, Quantifier.SOME, ont));
+        assertEquals("Incorrect number of edges", 2, edges.size());
+        assertTrue("Missing edge", edges.contains(edge2));
+        OWLGraphEdge.OWLGraphEdgeSet copy = new OWLGraphEdge.OWLGraphEdgeSet(edges);
+        assertEquals("Incorrect copy", edges, copy);
+        assertTrue("Edge not removed", copy.remove(edge1));
+        assertEquals("Incorrect number of edges", 1, copy.size());
+        assertEquals("Original set modified", 2, edges.size());
+
+        //still usable as a HashSet
+        @SuppressWarnings("unchecked")
+        HashSet<OWLGraphEdge> clone = (HashSet<OWLGraphEdge>) ((HashSet<OWLGraphEdge>) edges).clone();
+        assertEquals("Incorrect clone", edges, clone);
+        clone.clear();
+        assertTrue("Clone not cleared", clone.isEmpty());
+        assertEquals("Original set modified", 2, edges.size());
+        assertEquals("Incorrect stream", 2, edges.stream().count());
+    }
 }
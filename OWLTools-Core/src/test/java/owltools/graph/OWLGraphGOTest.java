@@ -2,6 +2,7 @@ package owltools.graph;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +11,7 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLNamedObject;
 import org.semanticweb.owlapi.model.OWLObject;
 
@@ -194,6 +196,33 @@ public class OWLGraphGOTest extends OWLToolsTestBasics {
 		return ids;	
 	}
 	
+	/*
+	 * The batch closure table should give the same closures as one map at a time.
+	 */
+	@Test
+	public void testGOGraphClosureTable() throws Exception{
+		List<String> rel_ids = RelationSets.getRelationSet(RelationSets.ISA_PARTOF);
+		List<OWLObject> objs = new ArrayList<OWLObject>();
+		for (OWLObject x : wrapper.getAllOWLObjects()) {
+			if (x instanceof OWLClass && wrapper.getLabel(x) != null) {
+				objs.add(x);
+			}
+		}
+		RelationClosureTable table = wrapper.getRelationClosureTable(objs, rel_ids);
+		assertEquals(objs.size(), table.getObjects().size());
+		for (OWLObject x : objs) {
+			assertEquals(wrapper.getRelationClosureMap(x, rel_ids), table.getClosureMap(x));
+		}
+		int[] closure = table.getClosure(wrapper.getOWLClassByIdentifier("GO:0022008"));
+		Set<String> ids = new HashSet<String>();
+		for (int i : closure) {
+			ids.add(table.getId(i));
+		}
+		assertTrue(ids.contains("GO:0022008"));
+		assertTrue(ids.contains("GO:0007399"));
+		assertTrue(ids.contains("GO:0008150"));
+	}
+
 	private static OWLGraphWrapper getOntologyWrapper(String file) throws Exception{
 		ParserWrapper pw = new ParserWrapper();
 		OWLGraphWrapper graph = pw.parseToOWLGraph(getResourceIRIString(file));
@@ -0,0 +1,128 @@
+package owltools.graph;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Checks that lookups answered from the {@link OWLGraphLookupIndex} match
+ * the scanning implementations in {@link OWLGraphWrapperExtended}
+ */
+public class OWLGraphLookupIndexTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testSameAsScan() throws Exception {
+		OWLGraphWrapper g = getGraph("go-module.obo");
+		Map<String, OWLObject> altIds = g.getAllOWLObjectsByAltId();
+		assertFalse(altIds.isEmpty());
+
+		g.setUseLookupIndex(true);
+		assertNotNull(g.getLookupIndex());
+		assertEquals(altIds, g.getAllOWLObjectsByAltId());
+		for (String altId : altIds.keySet()) {
+			assertEquals(altIds.get(altId), g.getObjectByAltId(altId));
+		}
+		for (OWLClass c : g.getAllOWLClasses()) {
+			IRI iri = c.getIRI();
+			g.setUseLookupIndex(false);
+			String label = g.getLabel(c);
+			boolean isObsolete = g.isObsolete(c);
+			OWLObject obj = g.getOWLObject(iri);
+			String id = g.getIdentifier(iri);
+			g.setUseLookupIndex(true);
+			assertEquals(label, g.getLabel(c));
+			assertEquals(isObsolete, g.isObsolete(c));
+			assertEquals(obj, g.getOWLObject(iri));
+			assertEquals(id, g.getIdentifier(iri));
+			if (label != null) {
+				assertTrue(g.getLookupIndex().getIRIsByLabel(label).contains(iri));
+			}
+		}
+		assertNull(g.getOWLObject(IRI.create("http://example.org/undeclared")));
+	}
+
+	@Test
+	public void testGetIRIByIdentifier() throws Exception {
+		OWLGraphWrapper g = getGraph("graph/sub-go-gaf-with-dummy-prop.owl");
+		g.setUseLookupIndex(true);
+		assertEquals("http://purl.obolibrary.org/obo/RO_0002297", g.getIRIByIdentifier("results_in_formation_of").toString());
+		assertEquals("http://purl.obolibrary.org/obo/so#dummy1", g.getIRIByIdentifier("dummy1").toString());
+		assertEquals("http://purl.obolibrary.org/obo/BFO_0000050", g.getIRIByIdentifier("part_of").toString());
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		OWLGraphWrapper g = getGraph("go-module.obo");
+		g.setUseLookupIndex(true);
+		OWLDataFactory df = g.getDataFactory();
+		OWLClass c = g.getAllOWLClasses().iterator().next();
+		String label = "a label not used anywhere else";
+		assertNull(g.getIRIByLabel(label));
+
+		OWLAxiom ax = df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), c.getIRI(), df.getOWLLiteral(label));
+		g.getManager().addAxiom(g.getSourceOntology(), ax);
+		assertEquals(c.getIRI(), g.getIRIByLabel(label));
+
+		// a shared label
+		OWLClass d = df.getOWLClass(IRI.create("http://example.org/D"));
+		g.getManager().addAxiom(g.getSourceOntology(), df.getOWLDeclarationAxiom(d));
+		g.getManager().addAxiom(g.getSourceOntology(),
+				df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), d.getIRI(), df.getOWLLiteral(label)));
+		assertEquals(d, g.getOWLObject(d.getIRI()));
+		assertTrue(g.getLookupIndex().isSharedLabel(label));
+		try {
+			g.getIRIByLabel(label, true);
+			fail("expected a SharedLabelException");
+		}
+		catch (SharedLabelException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testListenerDoesNotLeakWrapper() throws Exception {
+		OWLGraphWrapper g = getGraph("go-module.obo");
+		OWLOntology ont = g.getSourceOntology();
+		g.setUseLookupIndex(true);
+		assertNotNull(g.getLookupIndex());
+		WeakReference<OWLGraphWrapper> ref = new WeakReference<OWLGraphWrapper>(g);
+		g = null;
+
+		// the manager outlives the wrapper
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertNull("wrapper still referenced by the change listener", ref.get());
+
+		// the listener removes itself
+		OWLDataFactory df = ont.getOWLOntologyManager().getOWLDataFactory();
+		ont.getOWLOntologyManager().addAxiom(ont, df.getOWLDeclarationAxiom(df.getOWLClass(IRI.create("http://example.org/E"))));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		OWLGraphWrapper g = getGraph("go-module.obo");
+		g.setUseLookupIndex(true);
+		OWLGraphLookupIndex index = g.getLookupIndex();
+		assertNotNull(index);
+		g.close();
+		// discarded, rebuilt on next use
+		OWLGraphLookupIndex rebuilt = g.getLookupIndex();
+		assertNotNull(rebuilt);
+		assertNotSame(index, rebuilt);
+		g.setUseLookupIndex(false);
+		assertNull(g.getLookupIndex());
+	}
+}
@@ -2,7 +2,9 @@ package owltools.graph;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.junit.Test;
@@ -11,9 +13,12 @@ import org.semanticweb.owlapi.model.OWLObject;
 import owltools.OWLToolsTestBasics;
 import owltools.graph.shunt.OWLShuntEdge;
 import owltools.graph.shunt.OWLShuntGraph;
+import owltools.graph.shunt.OWLShuntGraphBuilder;
 import owltools.graph.shunt.OWLShuntNode;
 import owltools.io.ParserWrapper;
 
+import com.google.gson.Gson;
+
 public class OWLGraphShuntTest extends OWLToolsTestBasics {
 
 	private static Logger LOG = Logger.getLogger(OWLGraphWrapper.class);
@@ -134,6 +139,36 @@ public class OWLGraphShuntTest extends OWLToolsTestBasics {
 //		assertEquals("e14", g.hasEdge(new OWLShuntEdge("GO:0009987", "GO:0008150", "is_a")), true);		
 //	}
 	
+	/*
+	 * Testing that OWLShuntGraphBuilder gives the graphs of getSegmentShuntGraph,
+	 * and that the streamed JSON is the same as from Gson.
+	 */
+	@Test
+	public void testSegmentShuntGraphBuilder() throws Exception{
+		OWLGraphWrapper wrapper = getOntologyWrapper("graph/neurogenesis.obo");
+		List<String> rel_ids = RelationSets.getRelationSet(RelationSets.COMMON);
+		OWLShuntGraphBuilder builder = new OWLShuntGraphBuilder(wrapper, rel_ids);
+
+		List<OWLObject> objs = Arrays.<OWLObject>asList(
+				wrapper.getOWLClassByIdentifier("GO:0022008"),
+				wrapper.getOWLClassByIdentifier("GO:0007399"),
+				wrapper.getOWLClassByIdentifier("GO:0008150"));
+		Map<OWLObject, String> jsons = builder.getSegmentShuntGraphJSON(objs);
+		Gson gson = new Gson();
+		for (OWLObject c : objs) {
+			OWLShuntGraph expected = wrapper.getSegmentShuntGraph(c, rel_ids);
+			OWLShuntGraph g = builder.getSegmentShuntGraph(c);
+			assertEquals(expected.nodes, g.nodes);
+			assertEquals(expected.edges, g.edges);
+
+			OWLShuntGraph parsed = gson.fromJson(jsons.get(c), OWLShuntGraph.class);
+			assertEquals(expected.nodes, parsed.nodes);
+			assertEquals(expected.edges, parsed.edges);
+
+			assertEquals(gson.toJson(expected), expected.toJSON());
+		}
+	}
+
 	private OWLGraphWrapper getOntologyWrapper(String file) throws Exception {
 		ParserWrapper p = new ParserWrapper();
 		return p.parseToOWLGraph(getResourceIRIString(file));
@@ -0,0 +1,74 @@
+package owltools.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedObject;
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import owltools.OWLToolsTestBasics;
+import owltools.graph.OWLGraphEdge;
+import owltools.graph.OWLGraphWrapper;
+
+/**
+ * Writes the closure with {@link BinaryGraphClosureRenderer} and checks that
+ * the mapped closure gives the same edges to named objects, and distances, as
+ * {@link OWLGraphWrapper#getOutgoingEdgesClosures(java.util.Collection)}
+ */
+public class BinaryGraphClosureTest extends OWLToolsTestBasics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		OWLGraphWrapper g = getGraph("caro.obo");
+		Set<OWLClass> classes = g.getSourceOntology().getClassesInSignature(Imports.EXCLUDED);
+		Map<OWLObject, Set<OWLGraphEdge>> allClosures = g.getOutgoingEdgesClosures(classes);
+		Map<OWLObject, Set<OWLGraphEdge>> closures = new HashMap<OWLObject, Set<OWLGraphEdge>>();
+		for (OWLClass c : classes) {
+			Set<OWLGraphEdge> edges = new HashSet<OWLGraphEdge>();
+			for (OWLGraphEdge e : allClosures.get(c)) {
+				if (e.getTarget() instanceof OWLNamedObject)
+					edges.add(e);
+			}
+			closures.put(c, edges);
+		}
+
+		File file = folder.newFile("caro-closure.bin");
+		new BinaryGraphClosureRenderer(file.getAbsolutePath()).write(g);
+		g.clearCachedEdges();
+		new BinaryGraphClosureReader(g).read(file.getAbsolutePath());
+		assertNotNull(g.getClosureProvider());
+
+		for (OWLObject x : closures.keySet()) {
+			Set<OWLGraphEdge> edges = g.getOutgoingEdgesClosure(x);
+			assertEquals(x.toString(), closures.get(x), edges);
+			Map<OWLGraphEdge, Integer> distances = new HashMap<OWLGraphEdge, Integer>();
+			for (OWLGraphEdge e : closures.get(x)) {
+				distances.put(e, e.getDistance());
+			}
+			for (OWLGraphEdge e : edges) {
+				assertEquals(e.toString(), distances.get(e).intValue(), e.getDistance());
+			}
+			Set<OWLObject> ancs = new HashSet<OWLObject>();
+			for (OWLGraphEdge e : closures.get(x)) {
+				ancs.add(e.getTarget());
+			}
+			assertEquals(ancs, g.getAncestors(x));
+		}
+		// class expressions and unknown objects fall through to the graph walk
+		OWLClass unknown = g.getDataFactory().getOWLClass(g.getIRIByIdentifier("CARO:9999999"));
+		assertTrue(g.getOutgoingEdgesClosure(unknown).isEmpty());
+	}
+}
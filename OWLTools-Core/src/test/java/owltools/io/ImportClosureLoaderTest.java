@@ -0,0 +1,115 @@
+package owltools.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Checks that {@link ImportClosureLoader} loads the same import closure as
+ * the manager, with and without the cache
+ */
+public class ImportClosureLoaderTest extends OWLToolsTestBasics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testImportChain() throws Exception {
+		checkSameClosure("test-import-chain-root.owl");
+	}
+
+	@Test
+	public void testMutualImports() throws Exception {
+		checkSameClosure("mutual-import-1.owl");
+	}
+
+	private void checkSameClosure(String file) throws Exception {
+		OWLOntology expected = createParserWrapper(false, null).parse(getResourceIRIString(file));
+
+		File cache = folder.newFolder();
+		// first run fills the cache, second reads from it
+		for (int run = 0; run < 2; run++) {
+			OWLOntology ont = createParserWrapper(true, cache).parse(getResourceIRIString(file));
+			assertEquals(expected.getOntologyID(), ont.getOntologyID());
+			assertEquals(ids(expected), ids(ont));
+			assertEquals(expected.getAxioms(Imports.INCLUDED), ont.getAxioms(Imports.INCLUDED));
+			assertEquals(expected.getAnnotations(), ont.getAnnotations());
+			assertTrue(cache.list().length > 0);
+		}
+
+		// every local document of the closure is read from the cache
+		int cached = cache.list().length;
+		ImportClosureLoader loader = new ImportClosureLoader(createManager(), cache);
+		OWLOntology ont = loader.load(getResourceIRI(file));
+		assertEquals(cached, loader.getCacheHits());
+		assertEquals(cached, cache.list().length);
+		assertEquals(expected.getAxioms(Imports.INCLUDED), ont.getAxioms(Imports.INCLUDED));
+	}
+
+	@Test
+	public void testRelativeIRIs() throws Exception {
+		String content = "<?xml version=\"1.0\"?>\n"
+				+ "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+				+ "     xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n"
+				+ "    <owl:Ontology rdf:about=\"\"/>\n"
+				+ "    <owl:Class rdf:about=\"#A\"/>\n"
+				+ "</rdf:RDF>\n";
+		File first = new File(folder.newFolder(), "relative.owl");
+		File second = new File(folder.newFolder(), "relative.owl");
+		FileUtils.writeStringToFile(first, content, StandardCharsets.UTF_8);
+		FileUtils.writeStringToFile(second, content, StandardCharsets.UTF_8);
+
+		// same bytes, but the IRIs are resolved against different documents
+		File cache = folder.newFolder();
+		ImportClosureLoader loader = new ImportClosureLoader(OWLManager.createOWLOntologyManager(), cache);
+		OWLOntology firstOnt = loader.load(IRI.create(first));
+		OWLOntology secondOnt = new ImportClosureLoader(OWLManager.createOWLOntologyManager(), cache).load(IRI.create(second));
+		assertEquals(IRI.create(IRI.create(first)+"#A"), firstOnt.getClassesInSignature().iterator().next().getIRI());
+		assertEquals(IRI.create(IRI.create(second)+"#A"), secondOnt.getClassesInSignature().iterator().next().getIRI());
+		assertEquals(0, loader.getCacheHits());
+		assertEquals(2, cache.list().length);
+
+		ImportClosureLoader cachedLoader = new ImportClosureLoader(OWLManager.createOWLOntologyManager(), cache);
+		OWLOntology cachedOnt = cachedLoader.load(IRI.create(second));
+		assertEquals(1, cachedLoader.getCacheHits());
+		assertEquals(secondOnt.getAxioms(), cachedOnt.getAxioms());
+	}
+
+	private OWLOntologyManager createManager() throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		m.getIRIMappers().add(new CatalogXmlIRIMapper(getResource("catalog-v001.xml")));
+		return m;
+	}
+
+	private ParserWrapper createParserWrapper(boolean isParallelImports, File cache) throws Exception {
+		ParserWrapper p = new ParserWrapper();
+		p.addIRIMapper(new CatalogXmlIRIMapper(getResource("catalog-v001.xml")));
+		p.setParallelImports(isParallelImports);
+		p.setImportCacheDirectory(cache);
+		return p;
+	}
+
+	private Set<OWLOntologyID> ids(OWLOntology ont) {
+		Set<OWLOntologyID> ids = new HashSet<OWLOntologyID>();
+		for (OWLOntology o : ont.getImportsClosure()) {
+			ids.add(o.getOntologyID());
+		}
+		return ids;
+	}
+}
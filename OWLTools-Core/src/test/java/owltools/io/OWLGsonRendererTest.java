@@ -5,6 +5,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
 
 import org.apache.log4j.Logger;
 import org.junit.Rule;
@@ -22,6 +26,12 @@ import owltools.OWLToolsTestBasics;
 import owltools.graph.OWLGraphEdge;
 import owltools.graph.OWLGraphWrapper;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
 public class OWLGsonRendererTest extends OWLToolsTestBasics {
 
 	private static Logger LOG = Logger.getLogger(OWLGsonRendererTest.class);
@@ -76,6 +86,32 @@ public class OWLGsonRendererTest extends OWLToolsTestBasics {
 		}
 	}
 
+	@Test
+	public void testStreamedOntSameAsConverted() throws Exception{
+		OWLGraphWrapper  wrapper = getOBO2OWLOntologyWrapper("caro.obo");
+		OWLOntology ont = wrapper.getSourceOntology();
+		final StringWriter stringWriter = new StringWriter();
+		OWLGsonRenderer gr = new OWLGsonRenderer(new PrintWriter(stringWriter));
+		gr.render(ont);
+
+		JsonParser parser = new JsonParser();
+		JsonObject streamed = parser.parse(stringWriter.toString()).getAsJsonObject();
+		JsonObject converted = parser.parse(new Gson().toJson(gr.convert(ont))).getAsJsonObject();
+		assertEquals(converted.get("iri"), streamed.get("iri"));
+		assertEquals(converted.get("imports"), streamed.get("imports"));
+		assertEquals(toSet(converted.getAsJsonArray("annotations")), toSet(streamed.getAsJsonArray("annotations")));
+		// axioms are sorted when streamed
+		assertEquals(ont.getAxiomCount(), streamed.getAsJsonArray("axioms").size());
+		assertEquals(toSet(converted.getAsJsonArray("axioms")), toSet(streamed.getAsJsonArray("axioms")));
+	}
+
+	private Set<JsonElement> toSet(JsonArray arr) {
+		Set<JsonElement> set = new HashSet<JsonElement>();
+		for (JsonElement e : arr) {
+			set.add(e);
+		}
+		return set;
+	}
 	
 	private OWLGraphWrapper getOBO2OWLOntologyWrapper(String file) throws Exception{
 		OBOFormatParser p = new OBOFormatParser();
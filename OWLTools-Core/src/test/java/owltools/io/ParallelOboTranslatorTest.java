@@ -0,0 +1,73 @@
+package owltools.io;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.obolibrary.obo2owl.Obo2Owl;
+import org.obolibrary.oboformat.model.OBODoc;
+import org.obolibrary.oboformat.parser.OBOFormatParser;
+import org.obolibrary.oboformat.writer.OBOFormatWriter;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.OBODocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import owltools.OWLToolsTestBasics;
+
+/**
+ * Checks that {@link ParallelOboTranslator}, with small chunks, gives the same
+ * ontology as {@link Obo2Owl} and the same OBO as {@link OBOFormatWriter}
+ */
+public class ParallelOboTranslatorTest extends OWLToolsTestBasics {
+
+	@Test
+	public void testConvert() throws Exception {
+		OBODoc doc = new OBOFormatParser().parse(getResource("caro.obo"));
+		OWLOntology expected = new Obo2Owl(OWLManager.createOWLOntologyManager()).convert(doc);
+
+		ParallelOboTranslator translator = new ParallelOboTranslator(4);
+		translator.setChunkSize(5);
+		OWLOntology ont = translator.convert(doc, OWLManager.createOWLOntologyManager());
+		assertEquals(expected.getOntologyID(), ont.getOntologyID());
+		assertEquals(expected.getAnnotations(), ont.getAnnotations());
+		assertEquals(expected.getImportsDeclarations(), ont.getImportsDeclarations());
+		assertEquals(expected.getAxioms(), ont.getAxioms());
+	}
+
+	@Test
+	public void testParserWrapper() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		OWLOntology expected = pw.parseOBO(getResourceIRIString("caro.obo"));
+
+		ParserWrapper parallel = new ParserWrapper();
+		parallel.setParallelObo(true);
+		parallel.setParallelOboThreads(4);
+		OWLOntology ont = parallel.parseOBO(getResourceIRIString("caro.obo"));
+		assertEquals(expected.getOntologyID(), ont.getOntologyID());
+		assertEquals(expected.getAxioms(), ont.getAxioms());
+		OWLOntologyManager m = parallel.getManager();
+		assertEquals(pw.getManager().getOntologyDocumentIRI(expected), m.getOntologyDocumentIRI(ont));
+		assertTrue(m.getOntologyFormat(ont) instanceof OBODocumentFormat);
+		// loaded once
+		assertSame(ont, parallel.parseOBO(getResourceIRIString("caro.obo")));
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		OBODoc doc = new OBOFormatParser().parse(getResource("caro.obo"));
+		StringWriter expected = new StringWriter();
+		BufferedWriter bw = new BufferedWriter(expected);
+		new OBOFormatWriter().write(doc, bw);
+		bw.flush();
+
+		ParallelOboTranslator translator = new ParallelOboTranslator(4);
+		translator.setChunkSize(5);
+		StringWriter actual = new StringWriter();
+		bw = new BufferedWriter(actual);
+		translator.write(doc, bw, null, true);
+		assertEquals(expected.toString(), actual.toString());
+	}
+}
@@ -0,0 +1,93 @@
+package owltools.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConcurrentBloomFilter}
+ */
+public class ConcurrentBloomFilterTest {
+
+	@Test
+	public void testNoFalseNegatives() {
+		ConcurrentBloomFilter<String> f = new ConcurrentBloomFilter<String>(0.01, 1000);
+		for (int i=0; i<1000; i++) {
+			f.add("GO:"+i);
+		}
+		for (int i=0; i<1000; i++) {
+			assertTrue(f.contains("GO:"+i));
+		}
+		assertTrue(f.count() > 990);
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		ConcurrentBloomFilter<Integer> f = new ConcurrentBloomFilter<Integer>(0.01, 10000);
+		for (int i=0; i<10000; i++) {
+			f.add(i);
+		}
+		int fp = 0;
+		for (int i=10000; i<110000; i++) {
+			if (f.contains(i))
+				fp++;
+		}
+		// expected ~1000; allow for variance and sizing round-off
+		assertTrue("false positives: "+fp, fp < 2000);
+		assertEquals(0.01, f.expectedFalsePositiveProbability(), 0.005);
+	}
+
+	@Test
+	public void testConcurrentAdd() throws Exception {
+		final ConcurrentBloomFilter<String> f = new ConcurrentBloomFilter<String>(0.01, 40000);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<4; t++) {
+			final int offset = t * 10000;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i=offset; i<offset+10000; i++) {
+						f.add("X:"+i);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int i=0; i<40000; i++) {
+			assertTrue(f.contains("X:"+i));
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		ConcurrentBloomFilter<String> f = new ConcurrentBloomFilter<String>(0.01, 100);
+		for (int i=0; i<100; i++) {
+			f.add("GO:"+i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(f);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		@SuppressWarnings("unchecked")
+		ConcurrentBloomFilter<String> f2 = (ConcurrentBloomFilter<String>) in.readObject();
+		in.close();
+		assertEquals(f.size(), f2.size());
+		assertEquals(f.getK(), f2.getK());
+		assertEquals(f.count(), f2.count());
+		for (int i=0; i<100; i++) {
+			assertTrue(f2.contains("GO:"+i));
+		}
+	}
+}
@@ -80,6 +80,7 @@ import owltools.graph.OWLGraphWrapper;
 import owltools.io.CatalogXmlIRIMapper;
 import owltools.io.OWLOboGraphsFormat;
 import owltools.io.OWLPrettyPrinter;
+import owltools.io.ParallelOboTranslator;
 import owltools.io.ParserWrapper;
 import owltools.mooncat.Mooncat;
 import owltools.mooncat.PropertyViewOntologyBuilder;
@@ -396,6 +397,9 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			else if (opts.nextEq("--threads")) {
 				oortConfig.setThreads(Integer.parseInt(opts.nextOpt()));
 			}
+			else if (opts.nextEq("--parallel-obo")) {
+				oortConfig.setParallelObo(true);
+			}
 			else if (opts.nextEq("--run-obo-basic-dag-check")) {
 				oortConfig.setRunOboBasicDagCheck(true);
 			}
@@ -543,6 +547,8 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			logInfo("Using the following gaf files: " +gafs);
 		}
 		parser = new ParserWrapper();
+		parser.setParallelObo(oortConfig.isParallelObo());
+		parser.setParallelOboThreads(oortConfig.getThreads());
 		String catalogXML = oortConfig.getCatalogXML();
 		if (catalogXML != null) {
 			parser.addIRIMapper(new CatalogXmlIRIMapper(catalogXML));
@@ -1715,11 +1721,15 @@ public class OboOntologyReleaseRunner extends ReleaseRunnerFileTools {
 			Owl2Obo owl2obo = new Owl2Obo();
 			OBODoc doc = owl2obo.convert(ontologyToSave);
 
-			OBOFormatWriter writer = new OBOFormatWriter();
-
 			BufferedWriter bwriter = getWriter(fileNameBase +".obo");
 
-			writer.write(doc, bwriter);
+			if (oortConfig.isParallelObo()) {
+				new ParallelOboTranslator(oortConfig.getThreads()).write(doc, bwriter, null, true);
+			}
+			else {
+				OBOFormatWriter writer = new OBOFormatWriter();
+				writer.write(doc, bwriter);
+			}
 
 			bwriter.close();
 		}
@@ -161,6 +161,8 @@ import owltools.idmap.IDMappingPIRParser;
 import owltools.idmap.UniProtIDMapParser;
 import owltools.io.CatalogXmlIRIMapper;
 import owltools.io.ChadoGraphClosureRenderer;
+import owltools.io.BinaryGraphClosureReader;
+import owltools.io.BinaryGraphClosureRenderer;
 import owltools.io.CompactGraphClosureReader;
 import owltools.io.CompactGraphClosureRenderer;
 import owltools.io.EdgeTableRenderer;
@@ -395,6 +397,30 @@ public class CommandRunner extends CommandRunnerBase {
                 opts.info("", "uses default catalog-v001.xml");
                 pw.addIRIMapper(new CatalogXmlIRIMapper("catalog-v001.xml"));
             }
+            else if (opts.nextEq("--parallel-imports")) {
+                opts.info("[-c CACHEDIR]", "parses imports of subsequently loaded ontologies in parallel, optionally caching parsed local files in CACHEDIR");
+                pw.setParallelImports(true);
+                while (opts.hasOpts()) {
+                    if (opts.nextEq("-c")) {
+                        pw.setImportCacheDirectory(new File(opts.nextOpt()));
+                    }
+                    else {
+                        break;
+                    }
+                }
+            }
+            else if (opts.nextEq("--parallel-obo")) {
+                opts.info("[-t THREADS]", "translates subsequently loaded OBO files, and writes OBO, using several threads; by default one per processor");
+                pw.setParallelObo(true);
+                while (opts.hasOpts()) {
+                    if (opts.nextEq("-t")) {
+                        pw.setParallelOboThreads(Integer.parseInt(opts.nextOpt()));
+                    }
+                    else {
+                        break;
+                    }
+                }
+            }
             else if (opts.nextEq("--catalog-xml")) {
                 opts.info("CATALOG-FILE", "uses the specified file as a catalog");
                 pw.addIRIMapper(new CatalogXmlIRIMapper(opts.nextOpt()));
@@ -960,23 +986,34 @@ public class CommandRunner extends CommandRunnerBase {
                 FileUtils.writeLines(new File(filename), lines);
             }
             else if (opts.nextEq("--save-closure")) {
-                opts.info("[-c] FILENAME", "write out closure of graph.");
+                opts.info("[-c|-b] FILENAME", "write out closure of graph.");
                 GraphRenderer gcw;
                 if (opts.nextEq("-c")) {
                     opts.info("", "compact storage option.");
                     gcw = new CompactGraphClosureRenderer(opts.nextOpt());					
                 }
+                else if (opts.nextEq("-b")) {
+                    opts.info("", "binary storage option; closures are computed in parallel and can be memory mapped by --read-closure -b.");
+                    gcw = new BinaryGraphClosureRenderer(opts.nextOpt());
+                }
                 else {
                     gcw = new GraphClosureRenderer(opts.nextOpt());
                 }
                 gcw.render(g);				
             }
             else if (opts.nextEq("--read-closure")) {
-                opts.info("FILENAME", "reads closure previously saved using --save-closure (compact format only)");
-                GraphReader gr = new CompactGraphClosureReader(g);
-                gr.read(opts.nextOpt());	
-                LOG.info("RESTORED CLOSURE CACHE");
-                LOG.info("size="+g.inferredEdgeBySource.size());
+                opts.info("[-b] FILENAME", "reads closure previously saved using --save-closure (compact or binary format only)");
+                if (opts.nextEq("-b")) {
+                    opts.info("", "maps a closure saved using --save-closure -b; edges are decoded on demand.");
+                    GraphReader gr = new BinaryGraphClosureReader(g);
+                    gr.read(opts.nextOpt());
+                }
+                else {
+                    GraphReader gr = new CompactGraphClosureReader(g);
+                    gr.read(opts.nextOpt());	
+                    LOG.info("RESTORED CLOSURE CACHE");
+                    LOG.info("size="+g.inferredEdgeBySource.size());
+                }
             }
             else if (opts.nextEq("--save-closure-for-chado")) {
                 opts.info("OUTPUTFILENAME",
@@ -7,6 +7,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
@@ -58,9 +59,11 @@ import owltools.gaf.inference.AnnotationPredictor;
 import owltools.gaf.inference.CompositionalClassPredictor;
 import owltools.gaf.inference.FoldBasedPredictor;
 import owltools.gaf.inference.Prediction;
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.gaf.io.GafWriter;
 import owltools.gaf.io.GpadWriter;
 import owltools.gaf.io.GpiWriter;
+import owltools.gaf.io.ParallelRowWriter;
 import owltools.gaf.io.OpenAnnotationRDFWriter;
 import owltools.gaf.io.PseudoRdfXmlWriter;
 import owltools.gaf.io.PseudoRdfXmlWriter.ProgressReporter;
@@ -118,6 +121,7 @@ public class GafCommandRunner extends CommandRunner {
 	private String gafPredictionFile = null;
 	private String gafPredictionReportFile = null;
 	private String gafTaxonModule = "go-taxon-rule-unsatisfiable-module.owl";
+	private boolean useGafTaxonIndex = false;
 	private String experimentalGafPredictionFile = null;
 	private String experimentalGafPredictionReportFile = null;
 
@@ -241,8 +245,9 @@ public class GafCommandRunner extends CommandRunner {
 		String ofn = opts.nextOpt();
 		GafWriter gw = new GafWriter();
 		try {
-			gw.setStream(ofn);
-			gw.write(gafdoc);
+			// compress output files ending with '.gz'
+			gw.setStream(new File(ofn), ParallelRowWriter.isGzip(ofn));
+			gw.writeParallel(gafdoc, Runtime.getRuntime().availableProcessors());
 		}
 		finally {
 			IOUtils.closeQuietly(gw);
@@ -446,6 +451,7 @@ public class GafCommandRunner extends CommandRunner {
 		bridge.setBasicAboxMapping(false);
 		bridge.setBioentityMapping(BioentityMapping.CLASS_EXPRESSION);
 		bridge.setSkipNotAnnotations(true);
+		bridge.setBulkTranslation(true);
 		OWLOntology translated = bridge.translate(gafdoc);
 		File outputFile = new File(out);
 		OWLOntologyManager manager = translated.getOWLOntologyManager();
@@ -860,15 +866,15 @@ public class GafCommandRunner extends CommandRunner {
 		gafdoc.setGeneAnnotations(mappedAnns);
 		if (ofn != null) {
 			GafWriter gw = new GafWriter();
-			gw.setStream(ofn);
-			gw.write(gafdoc);
+			gw.setStream(new File(ofn), ParallelRowWriter.isGzip(ofn));
+			gw.writeParallel(gafdoc, Runtime.getRuntime().availableProcessors());
 		}
 		if (uofn != null) {
 			GafWriter gw = new GafWriter();
-			gw.setStream(uofn);
+			gw.setStream(new File(uofn), ParallelRowWriter.isGzip(uofn));
 			GafDocument ugd = new GafDocument(null, null);
 			ugd.setGeneAnnotations(unmappedAnns);
-			gw.write(ugd);
+			gw.writeParallel(ugd, Runtime.getRuntime().availableProcessors());
 		}
 
 	}
@@ -990,6 +996,7 @@ public class GafCommandRunner extends CommandRunner {
 		boolean predictAnnotations = gafPredictionFile != null;
 		boolean experimentalPredictAnnotations = experimentalGafPredictionFile != null;
 		if (g != null && gafdoc != null && gafReportFile != null) {
+			AnnotationRulesFactory rulesFactory = null;
 			AnnotationRulesEngine ruleEngine = null;
 			AnnotationRulesEngineResult result;
 			ExtendAnnotationRulesReportWriter reportWriter = null;
@@ -1012,7 +1019,11 @@ public class GafCommandRunner extends CommandRunner {
 					eco = EcoMapperFactory.createTraversingEcoMapper(pw).getMapper();
 				}
 				LOG.info("Start validating GAF");
-				AnnotationRulesFactory rulesFactory = new GoAnnotationRulesFactoryImpl(g, eco, gafTaxonModule);
+				TaxonConstraintIndex taxonIndex = null;
+				if (useGafTaxonIndex) {
+					taxonIndex = createTaxonIndex(gafdoc);
+				}
+				rulesFactory = new GoAnnotationRulesFactoryImpl(g, eco, gafTaxonModule, taxonIndex);
 				ruleEngine = new AnnotationRulesEngine(rulesFactory, predictAnnotations, experimentalPredictAnnotations);
 
 				result = ruleEngine.validateAnnotations(gafdoc);
@@ -1030,6 +1041,11 @@ public class GafCommandRunner extends CommandRunner {
 				if (ruleEngine != null) {
 					ruleEngine = null;
 				}
+				if (rulesFactory != null) {
+					// logs the classification usage
+					rulesFactory.getClassificationService().close();
+					rulesFactory = null;
+				}
 				if (elkLogLevel != null && elkLogger != null) {
 					elkLogger.setLevel(elkLogLevel);
 					elkLogger = null;
@@ -1253,6 +1269,32 @@ public class GafCommandRunner extends CommandRunner {
 		}
 	}
 
+	@CLIMethod("--gaf-validation-taxon-index")
+	public void setGAFTaxonIndex(Opts opts) {
+		opts.info("", "check taxon constraints for each annotation with a precomputed index, instead of a reasoner");
+		useGafTaxonIndex = true;
+	}
+
+	// index for the classes and taxa of the annotations
+	private TaxonConstraintIndex createTaxonIndex(GafDocument doc) {
+		Set<OWLClass> classes = new HashSet<OWLClass>();
+		Set<OWLClass> taxa = new HashSet<OWLClass>();
+		for (GeneAnnotation a : doc.getGeneAnnotations()) {
+			OWLClass c = g.getOWLClassByIdentifier(a.getCls());
+			if (c != null) {
+				classes.add(c);
+			}
+			Bioentity e = a.getBioentityObject();
+			if (e != null && e.getNcbiTaxonId() != null) {
+				OWLClass t = g.getOWLClassByIdentifier(e.getNcbiTaxonId());
+				if (t != null) {
+					taxa.add(t);
+				}
+			}
+		}
+		return new TaxonConstraintIndex(g, classes, taxa);
+	}
+
 	@CLIMethod("--experimental-gaf-prediction-file")
 	public void setExperimentalGAFPredictionFile(Opts opts) {
 		if (opts.hasArgs()) {
@@ -1891,9 +1933,9 @@ public class GafCommandRunner extends CommandRunner {
 		}
 		PrintWriter pw = null;
 		try {
-			pw = new PrintWriter(new File(outputFileName));
+			pw = new PrintWriter(new OutputStreamWriter(ParallelRowWriter.openOutputStream(new File(outputFileName), ParallelRowWriter.isGzip(outputFileName))));
 			GpadWriter writer = new GpadWriter(pw, version);
-			writer.write(gafdoc);
+			writer.writeParallel(gafdoc, Runtime.getRuntime().availableProcessors());
 		}
 		finally {
 			IOUtils.closeQuietly(pw);
@@ -1930,14 +1972,14 @@ public class GafCommandRunner extends CommandRunner {
 		}
 		PrintWriter pw = null;
 		try {
-			pw = new PrintWriter(new File(outputFileName));
+			pw = new PrintWriter(new OutputStreamWriter(ParallelRowWriter.openOutputStream(new File(outputFileName), ParallelRowWriter.isGzip(outputFileName))));
 			GpiWriter writer = new GpiWriter(pw, version);
 			if (bioentityDocument != null) {
-				writer.write(bioentityDocument);
+				writer.writeParallel(bioentityDocument, Runtime.getRuntime().availableProcessors());
 			}
 			else {
 				// TODO create proper document with all isoforms used in the annotations
-				writer.write(gafdoc.getBioentities());
+				writer.writeParallel(gafdoc.getBioentities(), Runtime.getRuntime().availableProcessors());
 			}
 
 		}
@@ -1,6 +1,7 @@
 package owltools.cli;
 
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -40,6 +41,7 @@ import org.semanticweb.owlapi.reasoner.Node;
 
 import owltools.cli.tools.CLIMethod;
 import owltools.io.OWLPrettyPrinter;
+import owltools.sim2.AnnotationICStatistics;
 import owltools.sim2.ClassDifferentiaLearner;
 import owltools.sim2.EnrichmentConfig;
 import owltools.sim2.EnrichmentResult;
@@ -48,6 +50,7 @@ import owltools.sim2.FastOwlSimFactory;
 import owltools.sim2.OwlSim;
 import owltools.sim2.OwlSim.ScoreAttributeSetPair;
 import owltools.sim2.OwlSimFactory;
+import owltools.sim2.ShardedAllByAll;
 import owltools.sim2.SimStats;
 import owltools.sim2.SimpleOwlSim;
 import owltools.sim2.SimpleOwlSim.Direction;
@@ -57,6 +60,8 @@ import owltools.sim2.SimpleOwlSim.ScoreAttributePair;
 import owltools.sim2.SimpleOwlSim.SimConfigurationProperty;
 import owltools.sim2.SimpleOwlSimFactory;
 import owltools.sim2.UnknownOWLClassException;
+import owltools.sim2.io.BinaryRenderer;
+import owltools.sim2.io.BinaryResultReader;
 import owltools.sim2.io.DelimitedLineRenderer;
 import owltools.sim2.io.FormattedRenderer;
 import owltools.sim2.io.JSONRenderer;
@@ -71,6 +76,7 @@ import owltools.sim2.preprocessor.SimPreProcessor;
 import owltools.sim2.scores.AttributePairScores;
 import owltools.sim2.scores.ElementPairScores;
 import owltools.web.OWLServer;
+import owltools.web.SimQueryExecutor;
 
 
 
@@ -1010,6 +1016,123 @@ public class Sim2CommandRunner extends SimCommandRunner {
 		}
 	}
 
+	@CLIMethod("--fsim-all-by-all-sharded")
+	public void fsimAllByAllSharded(Opts opts) throws Exception {
+		opts.info("[-p PROPS] [-s k/N] [-t NumThreads] [--pairs-per-chunk N] DIR",
+				"all by all comparison of individuals, for shard k of N. "+
+				"Results for each chunk are written to DIR; completed chunks are skipped on re-running. "+
+				"Use --fsim-merge-shards to combine results.");
+		setOwlSimFactory(new FastOwlSimFactory());
+		loadProperties(opts);
+		int shard = 1;
+		int numShards = 1;
+		Integer numThreads = null;
+		Long pairsPerChunk = null;
+		while (opts.hasOpts()) {
+			if (opts.nextEq("-s|--shard")) {
+				String[] parts = opts.nextOpt().split("/");
+				shard = Integer.parseInt(parts[0]);
+				numShards = Integer.parseInt(parts[1]);
+			}
+			else if (opts.nextEq("-t|--threads")) {
+				numThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--pairs-per-chunk")) {
+				pairsPerChunk = Long.parseLong(opts.nextOpt());
+			}
+			else {
+				break;
+			}
+		}
+		File dir = new File(opts.nextOpt());
+		String format = simProperties.getProperty(SimConfigurationProperty.outputFormat.toString());
+		if (OutputFormat.BINARY.name().equalsIgnoreCase(format)) {
+			// chunk files are merged line by line
+			throw new IllegalArgumentException("outputFormat="+format+" is not supported for sharded runs");
+		}
+		try {
+			if (owlsim == null) {
+				owlsim = getOwlSimFactory().createOwlSim(g.getSourceOntology());
+				owlsim.createElementAttributeMapFromOntology();
+			}
+			ShardedAllByAll runner = new ShardedAllByAll(owlsim, owlsim.getAllElements());
+			runner.setMinSimJ(getPropertyAsDouble(SimConfigurationProperty.minimumSimJ, 0.1));
+			runner.setMinMaxIC(getPropertyAsDouble(SimConfigurationProperty.minimumMaxIC, 3.0));
+			if (numThreads != null)
+				runner.setNumThreads(numThreads);
+			if (pairsPerChunk != null)
+				runner.setPairsPerChunk(pairsPerChunk);
+			runner.setPairFilter(new ShardedAllByAll.PairFilter() {
+				@Override
+				public boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j) {
+					return Sim2CommandRunner.this.isComparable(i, j);
+				}
+			});
+			runner.addHeaderComment("Properties for this run:");
+			for (Object k : simProperties.keySet()) {
+				runner.addHeaderComment(k + " = "
+						+ simProperties.getProperty(k.toString()));
+			}
+			runner.run(dir, shard, numShards, new ShardedAllByAll.RendererFactory() {
+				@Override
+				public SimResultRenderer createRenderer(PrintStream out) {
+					return Sim2CommandRunner.this.createRenderer(out);
+				}
+			});
+			owlsim.showTimings();
+		} finally {
+			owlsim.dispose();
+		}
+	}
+
+	@CLIMethod("--fsim-merge-shards")
+	public void fsimMergeShards(Opts opts) throws Exception {
+		opts.info("[-o FILE] -n NumShards DIR",
+				"combines the results of --fsim-all-by-all-sharded; fails if any shard is incomplete");
+		int numShards = 1;
+		while (opts.hasOpts()) {
+			if (opts.nextEq("-n")) {
+				numShards = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("-o")) {
+				resultOutStream = new PrintStream(new BufferedOutputStream(
+						new FileOutputStream(opts.nextOpt())));
+			}
+			else {
+				break;
+			}
+		}
+		File dir = new File(opts.nextOpt());
+		try {
+			ShardedAllByAll.merge(dir, numShards, resultOutStream);
+		} finally {
+			IOUtils.closeQuietly(resultOutStream);
+		}
+	}
+
+	@CLIMethod("--sim-binary-to-tsv")
+	public void simBinaryToTsv(Opts opts) throws Exception {
+		opts.info("[-o FILE] BINARYFILE",
+				"converts results written with outputFormat=BINARY to the tab-delimited layout");
+		while (opts.hasOpts()) {
+			if (opts.nextEq("-o")) {
+				resultOutStream = new PrintStream(new BufferedOutputStream(
+						new FileOutputStream(opts.nextOpt())));
+			}
+			else {
+				break;
+			}
+		}
+		FileInputStream fis = new FileInputStream(opts.nextOpt());
+		BinaryResultReader reader = new BinaryResultReader(fis.getChannel());
+		try {
+			reader.writeTabular(resultOutStream);
+		} finally {
+			reader.close();
+			IOUtils.closeQuietly(resultOutStream);
+		}
+	}
+
 	@CLIMethod("--use-fsim")
 	public void useFastOwlSim(Opts opts) throws Exception {
 		setOwlSimFactory(new FastOwlSimFactory());
@@ -1604,7 +1727,7 @@ public class Sim2CommandRunner extends SimCommandRunner {
 	// NEW
 	@CLIMethod("--all-by-all-enrichment-analysis")
 	public void owlsimEnrichmentAnalysisAllByAll(Opts opts) throws Exception {
-		opts.info("[-p pValCutOff] [-m MaxClassSize] [-i IC_Cutoff] SAMPLECLASS TESTCLASS", 
+		opts.info("[-p pValCutOff] [-m MaxClassSize] [-i IC_Cutoff] [-t NumThreads] SAMPLECLASS TESTCLASS", 
 				"performs all by all enrichment on every c x d where c Sub SAMPLECLASS and d Sub TESTCLASS");
 		OWLPrettyPrinter owlpp = getPrettyPrinter();
 		if (owlsim == null) {
@@ -1621,6 +1744,9 @@ public class Sim2CommandRunner extends SimCommandRunner {
 			} else if (opts.nextEq("-m")) {
 				ec.maximumClassSize =  Integer.parseInt(opts
 						.nextOpt());
+			} else if (opts.nextEq("-t")) {
+				ec.numThreads =  Integer.parseInt(opts
+						.nextOpt());
 			} else
 				break;
 		}
@@ -1691,12 +1817,48 @@ public class Sim2CommandRunner extends SimCommandRunner {
 
 	@CLIMethod("--start-sim-server")
 	public void startSimServer(Opts opts) throws Exception {
+		opts.info("[-p PORT] [-t NumThreads] [--max-queue N] [--cache-size N] [--cache-ttl SECONDS] [--subgraph-stats ID,...] [--ic-stats FILE]",
+				"starts an owlsim server; sim queries run on NumThreads threads, queries waiting beyond max-queue are rejected. "+
+				"System statistics, and those for the subgraphs rooted at the --subgraph-stats classes, are computed before starting. "+
+				"If --ic-stats is set, the annotation IC statistics are loaded from FILE, or saved to it if it does not exist");
 
 		int port = 9000;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int maxQueueSize = SimQueryExecutor.DEFAULT_MAX_QUEUE_SIZE;
+		int maxCacheSize = SimQueryExecutor.DEFAULT_MAX_CACHE_SIZE;
+		long cacheTTL = SimQueryExecutor.DEFAULT_CACHE_TTL_SECONDS;
+		Set<OWLClass> subgraphRoots = new HashSet<OWLClass>();
+		File icStatsFile = null;
 		while (opts.hasOpts()) {
 			if (opts.nextEq("-p")) {
 				port = Integer.parseInt(opts.nextOpt());
 			}
+			else if (opts.nextEq("-t|--threads")) {
+				numThreads = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--max-queue")) {
+				maxQueueSize = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--cache-size")) {
+				maxCacheSize = Integer.parseInt(opts.nextOpt());
+			}
+			else if (opts.nextEq("--cache-ttl")) {
+				cacheTTL = Long.parseLong(opts.nextOpt());
+			}
+			else if (opts.nextEq("--subgraph-stats")) {
+				for (String id : opts.nextOpt().split(",")) {
+					OWLClass c = g.getOWLClassByIdentifier(id);
+					if (c == null) {
+						LOG.error("Unknown class: "+id);
+					}
+					else {
+						subgraphRoots.add(c);
+					}
+				}
+			}
+			else if (opts.nextEq("--ic-stats")) {
+				icStatsFile = new File(opts.nextOpt());
+			}
 			else {
 				break;
 			}
@@ -1705,8 +1867,34 @@ public class Sim2CommandRunner extends SimCommandRunner {
 		Server server = new Server(port);
 		if (owlsim == null) {
 			owlsim = new FastOwlSim(g.getSourceOntology());
+			owlsim.createElementAttributeMapFromOntology();
 		}
-		server.setHandler(new OWLServer(g, owlsim));
+		// statistics are computed before any query runs, rather than lazily by the first queries
+		if (icStatsFile != null && icStatsFile.exists()) {
+			AnnotationICStatistics stats = AnnotationICStatistics.load(icStatsFile, g.getDataFactory());
+			List<OWLNamedIndividual> elements = new ArrayList<OWLNamedIndividual>(owlsim.getAllElements());
+			Collections.sort(elements);
+			if (stats.getElements().equals(elements)) {
+				LOG.info("Using IC statistics from "+icStatsFile);
+				owlsim.setAnnotationICStatistics(stats);
+			}
+			else {
+				LOG.warn("IC statistics in "+icStatsFile+" are for different individuals; recomputing");
+				owlsim.computeSystemStats();
+			}
+		}
+		else if (owlsim.getAnnotationICStatistics() == null) {
+			owlsim.computeSystemStats();
+		}
+		if (icStatsFile != null && !icStatsFile.exists() && owlsim.getAnnotationICStatistics() != null) {
+			owlsim.getAnnotationICStatistics().save(icStatsFile);
+		}
+		if (!subgraphRoots.isEmpty()) {
+			owlsim.precomputeSystemStatsForSubgraphs(subgraphRoots, numThreads);
+		}
+		OWLServer owlServer = new OWLServer(g, owlsim);
+		owlServer.setSimQueryExecutor(new SimQueryExecutor(numThreads, maxQueueSize, maxCacheSize, cacheTTL));
+		server.setHandler(owlServer);
 
 
 		try {
@@ -1723,6 +1911,15 @@ public class Sim2CommandRunner extends SimCommandRunner {
 	 * @return renderer
 	 */
 	private SimResultRenderer setRenderer() {
+		return createRenderer(resultOutStream);
+	}
+
+	/**
+	 * Create a renderer writing to the given stream, based on the configurable parameter: outputFormat
+	 * @param resultOutStream
+	 * @return renderer
+	 */
+	private SimResultRenderer createRenderer(PrintStream resultOutStream) {
 		SimResultRenderer renderer = null;
 		String f = simProperties.getProperty(SimConfigurationProperty.outputFormat.toString());
 		if (f != null) {
@@ -1739,6 +1936,8 @@ public class Sim2CommandRunner extends SimCommandRunner {
 				renderer = new OWLRenderer(resultOutStream);
 			} else if (f.toLowerCase().equals(OutputFormat.FORMATTED.name().toLowerCase())) {
 				renderer = new FormattedRenderer(resultOutStream, new OWLPrettyPrinter(g));
+			} else if (f.toLowerCase().equals(OutputFormat.BINARY.name().toLowerCase())) {
+				renderer = new BinaryRenderer(resultOutStream);
 			}
 		}
 		if (renderer == null) {
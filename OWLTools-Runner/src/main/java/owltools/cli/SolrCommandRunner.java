@@ -921,8 +921,9 @@ public class SolrCommandRunner extends TaxonCommandRunner {
 
 		// We should already have added the reasoner elsewhere on the commandline,
 		// So there should be real no extra overhead here.
-		EcoTools eco = new EcoTools(g, g.getReasoner(), true);
-		TaxonTools taxo = new TaxonTools(g.getReasoner(), true);
+		// The reasoner is shared and owned by the graph, do not dispose it here.
+		EcoTools eco = new EcoTools(g, g.getReasoner(), false);
+		TaxonTools taxo = new TaxonTools(g.getReasoner(), false);
 
 		List<String> files = opts.nextList();
 		for (String file : files) {
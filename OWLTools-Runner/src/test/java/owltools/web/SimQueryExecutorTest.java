@@ -0,0 +1,105 @@
+package owltools.web;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.FutureCallback;
+
+/**
+ * Tests coalescing, caching and admission control in {@link SimQueryExecutor}
+ */
+public class SimQueryExecutorTest {
+
+	// query that blocks until released, counting invocations
+	private static class BlockingQuery implements Callable<String> {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger numCalls = new AtomicInteger();
+		final String result;
+
+		BlockingQuery(String result) {
+			this.result = result;
+		}
+
+		@Override
+		public String call() throws Exception {
+			numCalls.incrementAndGet();
+			release.await(10, TimeUnit.SECONDS);
+			return result;
+		}
+	}
+
+	private static class Collector implements FutureCallback<String> {
+		final BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+
+		@Override
+		public void onSuccess(String result) {
+			results.add(result);
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			results.add("FAILED");
+		}
+
+		String take() throws InterruptedException {
+			return results.poll(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testCoalesceAndCache() throws Exception {
+		SimQueryExecutor executor = new SimQueryExecutor(2, 10, 10, 60);
+		BlockingQuery query = new BlockingQuery("{}");
+		Collector collector = new Collector();
+		executor.submit("q1", query, collector);
+		executor.submit("q1", query, collector);
+		query.release.countDown();
+		assertEquals("{}", collector.take());
+		assertEquals("{}", collector.take());
+		assertEquals(1, query.numCalls.get());
+		assertEquals(1L, executor.getMetrics().get("coalesced"));
+
+		// subsequent queries are answered from the cache
+		assertEquals("{}", executor.getCachedResult("q1"));
+		executor.submit("q1", query, collector);
+		assertEquals("{}", collector.take());
+		assertEquals(1, query.numCalls.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testRejectWhenQueueFull() throws Exception {
+		SimQueryExecutor executor = new SimQueryExecutor(1, 1, 10, 60);
+		BlockingQuery running = new BlockingQuery("a");
+		BlockingQuery queued = new BlockingQuery("b");
+		Collector collector = new Collector();
+		executor.submit("a", running, collector);
+		// wait for the first query to occupy the only thread
+		for (int i=0; i<1000 && running.numCalls.get() == 0; i++) {
+			Thread.sleep(10);
+		}
+		executor.submit("b", queued, collector);
+		assertEquals(1, executor.getQueueDepth());
+		try {
+			executor.submit("c", new BlockingQuery("c"), collector);
+			fail("expected queue to be full");
+		}
+		catch (RejectedExecutionException e) {
+			assertEquals(1L, executor.getMetrics().get("rejected"));
+		}
+		running.release.countDown();
+		queued.release.countDown();
+		assertEquals("a", collector.take());
+		assertEquals("b", collector.take());
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,218 @@
+package owltools.sim2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.sim2.OwlSim.ScoreAttributeSetPair;
+import owltools.sim2.bench.SyntheticCorpusGenerator;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * JMH benchmarks for the {@link FastOwlSim} hot paths.
+ *
+ * The corpus is generated by {@link SyntheticCorpusGenerator} from the
+ * size parameters, unless ontologyFile is set, in which case that ontology
+ * (with its class assertions) is loaded instead. Each benchmark operates
+ * on a fixed, seeded sample of class pairs or individual pairs, so scores
+ * are per sample rather than per call.
+ *
+ * This class is in the owltools.sim2 package so that it can reach the
+ * protected populateSimilarityMatrix kernel.
+ *
+ * @see owltools.sim2.bench.SimBenchmarkRunner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FastOwlSimBenchmark {
+
+	@Param({"2000"})
+	public int numClasses;
+
+	@Param({"500"})
+	public int numIndividuals;
+
+	@Param({"20"})
+	public int annotationsPerIndividual;
+
+	@Param({"4"})
+	public int branching;
+
+	/**
+	 * if non-empty, an ontology to load in place of the synthetic corpus
+	 */
+	@Param({""})
+	public String ontologyFile;
+
+	@Param({"1000"})
+	public int sampleSize;
+
+	private OWLReasoner reasoner;
+	private FastOwlSim owlsim;
+	private OWLClass[] lcsPairs;
+	private OWLNamedIndividual[] elementPairs;
+	private OWLClass[] enrichmentPairs;
+	private Set<OWLClass> queryAttributes;
+	private String targetIdSpace;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		OWLOntology ont;
+		if (ontologyFile != null && !ontologyFile.isEmpty()) {
+			ont = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(ontologyFile));
+			targetIdSpace = null;
+		}
+		else {
+			SyntheticCorpusGenerator gen =
+					new SyntheticCorpusGenerator(numClasses, numIndividuals, annotationsPerIndividual);
+			gen.setBranching(branching);
+			ont = gen.generate();
+			targetIdSpace = SyntheticCorpusGenerator.INDIVIDUAL_ID_SPACE;
+		}
+		reasoner = new ElkReasonerFactory().createReasoner(ont);
+		owlsim = new FastOwlSim(reasoner);
+		owlsim.createElementAttributeMapFromOntology();
+		owlsim.precomputeCachesForConcurrentAccess();
+
+		Random random = new Random(42);
+		List<OWLNamedIndividual> elements = new ArrayList<OWLNamedIndividual>(owlsim.getAllElements());
+		Collections.sort(elements);
+		List<OWLClass> attributes = new ArrayList<OWLClass>(owlsim.getAllAttributeClasses());
+		Collections.sort(attributes);
+
+		lcsPairs = new OWLClass[sampleSize * 2];
+		enrichmentPairs = new OWLClass[sampleSize * 2];
+		elementPairs = new OWLNamedIndividual[sampleSize * 2];
+		for (int n=0; n<sampleSize * 2; n++) {
+			lcsPairs[n] = attributes.get(random.nextInt(attributes.size()));
+			enrichmentPairs[n] = attributes.get(random.nextInt(attributes.size()));
+			elementPairs[n] = elements.get(random.nextInt(elements.size()));
+		}
+		queryAttributes = owlsim.getAttributesForElement(elements.get(0));
+
+		// populate the LCS cache for the sampled pairs
+		lcs(false, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		reasoner.dispose();
+	}
+
+	private void lcs(boolean noLookup, Blackhole bh) throws UnknownOWLClassException {
+		owlsim.setNoLookupForLCSCache(noLookup);
+		try {
+			for (int n=0; n<lcsPairs.length; n+=2) {
+				ScoreAttributeSetPair sap = owlsim.getLowestCommonSubsumerWithIC(lcsPairs[n], lcsPairs[n+1]);
+				if (bh != null)
+					bh.consume(sap);
+			}
+		}
+		finally {
+			owlsim.setNoLookupForLCSCache(false);
+		}
+	}
+
+	/**
+	 * LCS for the sampled class pairs, bypassing the LCS cache lookup
+	 */
+	@Benchmark
+	public void lowestCommonSubsumerWithICCold(Blackhole bh) throws Exception {
+		lcs(true, bh);
+	}
+
+	/**
+	 * LCS for the sampled class pairs, all answered from the LCS cache
+	 */
+	@Benchmark
+	public void lowestCommonSubsumerWithICWarm(Blackhole bh) throws Exception {
+		lcs(false, bh);
+	}
+
+	/**
+	 * full groupwise comparison of the sampled element pairs
+	 */
+	@Benchmark
+	public void groupwiseSimilarity(Blackhole bh) throws Exception {
+		for (int n=0; n<elementPairs.length; n+=2) {
+			bh.consume(owlsim.getGroupwiseSimilarity(elementPairs[n], elementPairs[n+1]));
+		}
+	}
+
+	/**
+	 * the best match average kernel alone, for the sampled element pairs
+	 */
+	@Benchmark
+	public void populateSimilarityMatrix(Blackhole bh) throws Exception {
+		for (int n=0; n<elementPairs.length; n+=2) {
+			ElementPairScores s = new ElementPairScores(elementPairs[n], elementPairs[n+1]);
+			owlsim.populateSimilarityMatrix(elementPairs[n], elementPairs[n+1], s);
+			bh.consume(s);
+		}
+	}
+
+	/**
+	 * one profile search against all elements
+	 */
+	@Benchmark
+	public List<ElementPairScores> findMatches() throws Exception {
+		return owlsim.findMatches(queryAttributes, targetIdSpace);
+	}
+
+	/**
+	 * enrichment of the sampled class pairs, over all elements
+	 */
+	@Benchmark
+	public void pairwiseEnrichment(Blackhole bh) throws Exception {
+		for (int n=0; n<enrichmentPairs.length; n+=2) {
+			bh.consume(owlsim.calculatePairwiseEnrichment(null, enrichmentPairs[n], enrichmentPairs[n+1]));
+		}
+	}
+
+	/**
+	 * building the element to attribute map, IC and ancestor bitmaps from
+	 * the already classified reasoner; each invocation starts from an empty
+	 * {@link FastOwlSim}
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 5)
+	public FastOwlSim ancestorBitmapConstruction() throws Exception {
+		FastOwlSim sim = new FastOwlSim(reasoner);
+		// the LCS cache is filled lazily; its allocation is not of interest here
+		sim.setDisableLCSCache(true);
+		sim.createElementAttributeMapFromOntology();
+		sim.precomputeCachesForConcurrentAccess();
+		return sim;
+	}
+}
@@ -0,0 +1,138 @@
+package owltools.sim2.bench;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import owltools.util.BloomFilter;
+import owltools.util.ConcurrentBloomFilter;
+
+/**
+ * Compares {@link ConcurrentBloomFilter} with the legacy MD5 based
+ * {@link BloomFilter}, and with a plain HashSet as a baseline, for the
+ * access pattern of the legacy sim search: one filter built from the query
+ * attributes, then probed with the attributes of every candidate, of which
+ * about hitRate are in the query.
+ *
+ * The contains benchmarks run with 4 threads, sharing one filter, to show
+ * the effect of the global digest lock in the legacy filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class BloomFilterBenchmark {
+
+	@Param({"200"})
+	public int numElements;
+
+	@Param({"10000"})
+	public int numProbes;
+
+	@Param({"0.1"})
+	public double hitRate;
+
+	private List<OWLClass> elements;
+	private List<OWLClass> probes;
+	private BloomFilter<OWLClass> legacyFilter;
+	private ConcurrentBloomFilter<OWLClass> concurrentFilter;
+	private Set<OWLClass> hashSet;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		OWLDataFactory df = OWLManager.getOWLDataFactory();
+		Random random = new Random(42);
+		elements = new ArrayList<OWLClass>(numElements);
+		for (int n=0; n<numElements; n++) {
+			elements.add(df.getOWLClass(IRI.create(SyntheticCorpusGenerator.CLASS_PREFIX + n)));
+		}
+		probes = new ArrayList<OWLClass>(numProbes);
+		for (int n=0; n<numProbes; n++) {
+			if (random.nextDouble() < hitRate)
+				probes.add(elements.get(random.nextInt(numElements)));
+			else
+				probes.add(df.getOWLClass(IRI.create(SyntheticCorpusGenerator.CLASS_PREFIX + (numElements + n))));
+		}
+		legacyFilter = new BloomFilter<OWLClass>(0.01, numElements);
+		legacyFilter.addAll(elements);
+		concurrentFilter = new ConcurrentBloomFilter<OWLClass>(0.01, numElements);
+		concurrentFilter.addAll(elements);
+		hashSet = new HashSet<OWLClass>(elements);
+	}
+
+	@Benchmark
+	public BloomFilter<OWLClass> addLegacy() {
+		BloomFilter<OWLClass> f = new BloomFilter<OWLClass>(0.01, numElements);
+		f.addAll(elements);
+		return f;
+	}
+
+	@Benchmark
+	public ConcurrentBloomFilter<OWLClass> addConcurrent() {
+		ConcurrentBloomFilter<OWLClass> f = new ConcurrentBloomFilter<OWLClass>(0.01, numElements);
+		f.addAll(elements);
+		return f;
+	}
+
+	@Benchmark
+	public Set<OWLClass> addHashSet() {
+		return new HashSet<OWLClass>(elements);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int containsLegacy() {
+		int n = 0;
+		for (OWLClass c : probes) {
+			if (legacyFilter.contains(c))
+				n++;
+		}
+		return n;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int containsConcurrent() {
+		int n = 0;
+		for (OWLClass c : probes) {
+			if (concurrentFilter.contains(c))
+				n++;
+		}
+		return n;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int containsHashSet() {
+		int n = 0;
+		for (OWLClass c : probes) {
+			if (hashSet.contains(c))
+				n++;
+		}
+		return n;
+	}
+}
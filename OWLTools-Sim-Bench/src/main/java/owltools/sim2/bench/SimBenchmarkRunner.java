@@ -0,0 +1,43 @@
+package owltools.sim2.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point for the benchmarks jar; passes all arguments to the JMH
+ * command line, adding JSON result output unless a result format is
+ * given. Examples:
+ *
+ * <pre>
+ * mvn -Pbenchmarks package
+ * java -jar OWLTools-Sim-Bench/target/sim-benchmarks.jar
+ * java -jar OWLTools-Sim-Bench/target/sim-benchmarks.jar FastOwlSimBenchmark.findMatches -p numClasses=5000,20000 -rff mp.json
+ * java -jar OWLTools-Sim-Bench/target/sim-benchmarks.jar -p ontologyFile=mp-with-annotations.owl
+ * </pre>
+ *
+ * Results are written to {@link #DEFAULT_RESULT_FILE} by default, in the
+ * JMH JSON format, for comparison between commits.
+ *
+ * Large synthetic corpora can be generated ahead of time with
+ * {@link SyntheticCorpusGenerator#main(String[])}.
+ */
+public class SimBenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FILE = "sim-benchmarks.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (!jmhArgs.contains("-rf")) {
+			jmhArgs.add("-rf");
+			jmhArgs.add("json");
+			if (!jmhArgs.contains("-rff")) {
+				jmhArgs.add("-rff");
+				jmhArgs.add(DEFAULT_RESULT_FILE);
+			}
+		}
+		Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+	}
+}
@@ -0,0 +1,184 @@
+package owltools.sim2.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+
+/**
+ * Generates a synthetic attribute ontology plus a corpus of annotated
+ * individuals, for benchmarking owlsim without external resources.
+ *
+ * The ontology is a DAG: class n has a primary parent (n-1)/branching, giving a
+ * balanced tree of depth log<sub>branching</sub>(numClasses), and with
+ * probability extraParentProbability a second parent chosen at random among the
+ * lower numbered classes. Each individual is a direct instance of
+ * annotationsPerIndividual distinct classes, chosen at random.
+ *
+ * Generation is deterministic for a given seed, so benchmark runs with
+ * the same parameters are comparable. Large corpora can be written once
+ * with {@link #main(String[])} and read by the benchmarks.
+ */
+public class SyntheticCorpusGenerator {
+
+	private static Logger LOG = Logger.getLogger(SyntheticCorpusGenerator.class);
+
+	public static final String CLASS_PREFIX = "http://purl.obolibrary.org/obo/SYN_";
+	public static final String INDIVIDUAL_ID_SPACE = "SYNI";
+	public static final String INDIVIDUAL_PREFIX = "http://purl.obolibrary.org/obo/"+INDIVIDUAL_ID_SPACE+"_";
+
+	private int numClasses = 2000;
+	private int branching = 4;
+	private double extraParentProbability = 0.2;
+	private int numIndividuals = 500;
+	private int annotationsPerIndividual = 20;
+	private long seed = 42;
+
+	public SyntheticCorpusGenerator() {
+		super();
+	}
+
+	/**
+	 * @param numClasses
+	 * @param numIndividuals
+	 * @param annotationsPerIndividual
+	 */
+	public SyntheticCorpusGenerator(int numClasses, int numIndividuals, int annotationsPerIndividual) {
+		super();
+		this.numClasses = numClasses;
+		this.numIndividuals = numIndividuals;
+		this.annotationsPerIndividual = annotationsPerIndividual;
+	}
+
+	public void setNumClasses(int numClasses) {
+		this.numClasses = numClasses;
+	}
+
+	public void setBranching(int branching) {
+		this.branching = branching;
+	}
+
+	public void setExtraParentProbability(double extraParentProbability) {
+		this.extraParentProbability = extraParentProbability;
+	}
+
+	public void setNumIndividuals(int numIndividuals) {
+		this.numIndividuals = numIndividuals;
+	}
+
+	public void setAnnotationsPerIndividual(int annotationsPerIndividual) {
+		this.annotationsPerIndividual = annotationsPerIndividual;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return new ontology, in a new manager
+	 * @throws OWLOntologyCreationException
+	 */
+	public OWLOntology generate() throws OWLOntologyCreationException {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = m.getOWLDataFactory();
+		Random random = new Random(seed);
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+
+		List<OWLClass> classes = new ArrayList<OWLClass>(numClasses);
+		for (int n=0; n<numClasses; n++) {
+			OWLClass c = df.getOWLClass(IRI.create(CLASS_PREFIX + n));
+			classes.add(c);
+			axioms.add(df.getOWLDeclarationAxiom(c));
+			if (n == 0)
+				continue;
+			int parent = (n-1) / branching;
+			axioms.add(df.getOWLSubClassOfAxiom(c, classes.get(parent)));
+			if (n > 1 && random.nextDouble() < extraParentProbability) {
+				int extra = random.nextInt(n);
+				if (extra != parent) {
+					axioms.add(df.getOWLSubClassOfAxiom(c, classes.get(extra)));
+				}
+			}
+		}
+
+		int k = Math.min(annotationsPerIndividual, numClasses - 1);
+		for (int n=0; n<numIndividuals; n++) {
+			OWLNamedIndividual i = df.getOWLNamedIndividual(IRI.create(INDIVIDUAL_PREFIX + n));
+			axioms.add(df.getOWLDeclarationAxiom(i));
+			Set<Integer> chosen = new HashSet<Integer>();
+			while (chosen.size() < k) {
+				// never annotate to the root
+				chosen.add(1 + random.nextInt(numClasses - 1));
+			}
+			for (int cix : chosen) {
+				axioms.add(df.getOWLClassAssertionAxiom(classes.get(cix), i));
+			}
+		}
+
+		OWLOntology ont = m.createOntology(IRI.create("http://purl.obolibrary.org/obo/synthetic-"+
+				numClasses+"-"+numIndividuals+"-"+annotationsPerIndividual+".owl"));
+		m.addAxioms(ont, axioms);
+		LOG.info("Generated "+numClasses+" classes, "+numIndividuals+" individuals; axioms: "+axioms.size());
+		return ont;
+	}
+
+	/**
+	 * Writes the generated ontology in functional syntax
+	 *
+	 * @param file
+	 * @throws OWLOntologyCreationException
+	 * @throws OWLOntologyStorageException
+	 * @throws IOException
+	 */
+	public void write(File file) throws OWLOntologyCreationException, OWLOntologyStorageException, IOException {
+		OWLOntology ont = generate();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			ont.getOWLOntologyManager().saveOntology(ont, new FunctionalSyntaxDocumentFormat(), out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Usage: SyntheticCorpusGenerator OUTFILE [NUM_CLASSES [NUM_INDIVIDUALS [ANNOTATIONS_PER_INDIVIDUAL [SEED]]]]
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: SyntheticCorpusGenerator OUTFILE [NUM_CLASSES [NUM_INDIVIDUALS [ANNOTATIONS_PER_INDIVIDUAL [SEED]]]]");
+			System.exit(1);
+		}
+		SyntheticCorpusGenerator gen = new SyntheticCorpusGenerator();
+		if (args.length > 1)
+			gen.setNumClasses(Integer.parseInt(args[1]));
+		if (args.length > 2)
+			gen.setNumIndividuals(Integer.parseInt(args[2]));
+		if (args.length > 3)
+			gen.setAnnotationsPerIndividual(Integer.parseInt(args[3]));
+		if (args.length > 4)
+			gen.setSeed(Long.parseLong(args[4]));
+		gen.write(new File(args[0]));
+	}
+}
@@ -7,7 +7,7 @@ import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLObject;
 
-import owltools.util.BloomFilter;
+import owltools.util.ConcurrentBloomFilter;
 
 public class JaccardBloomSimilarity extends Similarity {
 
@@ -21,7 +21,7 @@ public class JaccardBloomSimilarity extends Similarity {
 	public void calculate(SimEngine simEngine, OWLObject a, OWLObject b) {
 		this.simEngine = simEngine;
 		Set<OWLObject> ancs = simEngine.getGraph().getAncestorsReflexive(a);
-		BloomFilter bloomFilter = new BloomFilter<OWLObject>(0.05, ancs.size());
+		ConcurrentBloomFilter<OWLObject> bloomFilter = new ConcurrentBloomFilter<OWLObject>(0.05, ancs.size());
 		bloomFilter.addAll(ancs);
 
 		Set<OWLObject>  cu = simEngine.getGraph().getAncestorsReflexive(b);
@@ -10,8 +10,6 @@ import java.util.TreeMap;
 import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLObject;
 
-import owltools.util.BloomFilter;
-
 /**
  * quick search for best matches
  * 
@@ -25,7 +23,6 @@ public class SimSearch {
 	protected Double minScore;
 	protected Double minIC = 2.5; // note that with test datasets this is too strict
 	protected SimEngine simEngine;
-	protected BloomFilter<OWLObject> bloomFilter;
 	protected int maxHits = 300;
 	protected Set<OWLObject> candidates;
 	protected Reporter reporter;
@@ -68,8 +65,8 @@ public class SimSearch {
 		atts = filterNonSignificantAttributes(atts);
 		System.out.println("filtered atts: "+atts.size());
 
-		//bloomFilter = new BloomFilter<OWLObject>(0.05, atts.size());
-		//bloomFilter.addAll(atts);
+		// atts is an exact set, so the overlap is counted with HashSet lookups;
+		// a bloom filter in front of these would only add a second lookup
 				
 		SortedMap<Integer,Set<OWLObject>> scoreCandidateMap = new TreeMap<Integer,Set<OWLObject>>();
 		
@@ -83,8 +80,12 @@ public class SimSearch {
 				continue;
 			int cAttsSize = iAtts.size();
 	
-			iAtts.retainAll(atts);
-			//Collection<OWLObject> iAtts = bloomFilter.intersection(cAtts);
+			// count the overlap, without mutating the candidate's attributes
+			int numShared = 0;
+			for (OWLObject a : iAtts) {
+				if (atts.contains(a))
+					numShared++;
+			}
 			
 			// simJ, one-sided, scaled by 1000
 			// negate to ensure largest first
@@ -92,11 +93,11 @@ public class SimSearch {
 			
 			// this biases us towards genes with large numbers of annotations,
 			// but it is better at finding the models that share all features
-			Integer score = - iAtts.size();
+			Integer score = - numShared;
 			if (!scoreCandidateMap.containsKey(score)) 
 				scoreCandidateMap.put(score, new HashSet<OWLObject>());
 			scoreCandidateMap.get(score).add(candidate);
-			reporter.report(this,"query_candidate_overlap_total",queryObj,candidate,iAtts.size(),cAttsSize);
+			reporter.report(this,"query_candidate_overlap_total",queryObj,candidate,numShared,cAttsSize);
 		}
 		
 		int n = 0;
@@ -11,11 +11,11 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.math.MathException;
 import org.apache.commons.math.distribution.HypergeometricDistributionImpl;
 import org.apache.commons.math3.stat.StatUtils;
-import org.apache.commons.math3.stat.descriptive.AggregateSummaryStatistics;
 import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.apache.log4j.Logger;
@@ -23,6 +23,7 @@ import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLLiteral;
@@ -66,7 +67,9 @@ public abstract class AbstractOwlSim implements OwlSim {
 	public SummaryStatistics overallStats;
 
 	public StatsPerIndividual overallSummaryStatsPerIndividual = new StatsPerIndividual();
-	public HashMap<OWLClass,StatsPerIndividual> subgraphSummaryStatsPerIndividual = new HashMap<OWLClass,StatsPerIndividual>();
+	public Map<OWLClass,StatsPerIndividual> subgraphSummaryStatsPerIndividual = new ConcurrentHashMap<OWLClass,StatsPerIndividual>();
+
+	protected volatile AnnotationICStatistics annotationICStatistics = null;
 
 	public SummaryStatistics simStatsPerIndividual = new SummaryStatistics();
 
@@ -164,6 +167,46 @@ public abstract class AbstractOwlSim implements OwlSim {
 
 	}
 
+	/**
+	 * Default implementation: updates the ontology and rebuilds all indexes
+	 * using {@link #createElementAttributeMapFromOntology()}
+	 */
+	@Override
+	public void addElementAttributes(OWLNamedIndividual e, Set<OWLClass> atts) throws UnknownOWLClassException {
+		OWLOntology ont = getSourceOntology();
+		OWLDataFactory df = ont.getOWLOntologyManager().getOWLDataFactory();
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		for (OWLClass c : atts) {
+			axioms.add(df.getOWLClassAssertionAxiom(c, e));
+		}
+		ont.getOWLOntologyManager().addAxioms(ont, axioms);
+		getReasoner().flush();
+		resetDerivedCorpusSize();
+		createElementAttributeMapFromOntology();
+	}
+
+	/**
+	 * Default implementation: updates the ontology and rebuilds all indexes
+	 * using {@link #createElementAttributeMapFromOntology()}
+	 */
+	@Override
+	public void removeElement(OWLNamedIndividual e) throws UnknownOWLClassException {
+		OWLOntology ont = getSourceOntology();
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(ont.getClassAssertionAxioms(e));
+		axioms.addAll(ont.getDeclarationAxioms(e));
+		ont.getOWLOntologyManager().removeAxioms(ont, axioms);
+		getReasoner().flush();
+		resetDerivedCorpusSize();
+		createElementAttributeMapFromOntology();
+	}
+
+	// the corpus size is derived from the elements, unless it has been set explicitly
+	protected void resetDerivedCorpusSize() {
+		if (corpusSize != null && corpusSize == getAllElements().size()) {
+			corpusSize = null;
+		}
+	}
+
 	@Override
 	public void precomputeAttributeAllByAll()  throws UnknownOWLClassException {
 		LOG.info("precomputing attribute all x all");
@@ -711,7 +754,7 @@ public abstract class AbstractOwlSim implements OwlSim {
 	// hardcode bonferoni for now
 	Integer correctionFactor = null; // todo - robust cacheing
 
-	private int getCorrectionFactor(OWLClass populationClass) throws UnknownOWLClassException {
+	protected int getCorrectionFactor(OWLClass populationClass) throws UnknownOWLClassException {
 		if (correctionFactor == null) {
 			int n = 0;
 			for (OWLClass sc : this.getReasoner()
@@ -774,75 +817,74 @@ public abstract class AbstractOwlSim implements OwlSim {
 		return Boolean.valueOf(v);
 	}
 
-	public void computeSystemStats() throws UnknownOWLClassException {
-		Set<OWLNamedIndividual> insts = this.getAllElements();
-		LOG.info("Computing system stats for " + insts.size() + " individuals");
-		LOG.info("Creating singular stat scores for all IDspaces");
+	public synchronized void computeSystemStats() throws UnknownOWLClassException {
+		LOG.info("Computing system stats for " + getAllElements().size() + " individuals");
+		// unannotated classes are assigned the max IC from any previous run
+		double defaultIC = getSummaryStatistics() == null ? Double.NaN : getSummaryStatistics().max.getMax();
+		setAnnotationICStatistics(new AnnotationICStatistics(this, defaultIC));
+		LOG.info("Finished computing overall statsPerIndividual:\n"+this.getSummaryStatistics().toString());
+	}
 
-		Collection<SummaryStatistics> aggregate = new ArrayList<SummaryStatistics>();
+	public synchronized void setAnnotationICStatistics(AnnotationICStatistics stats) {
+		// the statistics are published last, see ensureSystemStats
+		this.overallStats = stats.getMeanICStatistics();
+		this.overallSummaryStatsPerIndividual = stats.getStatsPerIndividual();
+		this.subgraphSummaryStatsPerIndividual.clear();
+		this.annotationICStatistics = stats;
+	}
 
-		this.overallStats = new SummaryStatistics();
+	/**
+	 * Brings the system stats in line after a change to a single element,
+	 * without collecting the ICs of all elements again; see
+	 * {@link AnnotationICStatistics#update(OwlSim, OWLNamedIndividual, double)}.
+	 * Subgraph stats that had been computed are recomputed from the arrays.
+	 * 
+	 * @param e
+	 * @throws UnknownOWLClassException
+	 */
+	protected synchronized void updateSystemStats(OWLNamedIndividual e) throws UnknownOWLClassException {
+		AnnotationICStatistics prev = annotationICStatistics;
+		if (prev == null) {
+			computeSystemStats();
+			return;
+		}
+		double defaultIC = getSummaryStatistics() == null ? Double.NaN : getSummaryStatistics().max.getMax();
+		Set<OWLClass> roots = new HashSet<OWLClass>(subgraphSummaryStatsPerIndividual.keySet());
+		AnnotationICStatistics stats = prev.update(this, e, defaultIC);
+		setAnnotationICStatistics(stats);
+		for (OWLClass c : roots) {
+			subgraphSummaryStatsPerIndividual.put(c, stats.getStatsPerIndividual(c));
+		}
+	}
 
-		int counter = 0;
-		for (OWLNamedIndividual i : insts) {			
-			counter++;
-			SummaryStatistics statsPerIndividual = computeIndividualStats(i);			
-			//put this individual into the aggregate
-			if (statsPerIndividual.getN() == 0) {
-				LOG.error("No annotations found for Individual "+i.toStringID());
-			} else {
-				aggregate.add(statsPerIndividual);
-			}
-			//TODO: put this individual into an idSpace aggregate
-			//			String idSpace = i.getIRI().getNamespace();
-			this.overallStats.addValue(statsPerIndividual.getMean());
-			if (counter % 1000 == 0) {
-				LOG.info("Finished "+counter+" individuals");
-			}
+	// computes the system stats on first use; checked under the lock,
+	// so that concurrent queries do not compute them more than once
+	private synchronized void ensureSystemStats() throws UnknownOWLClassException {
+		if (annotationICStatistics == null) {
+			LOG.info("Stats have not been computed yet - doing this now");
+			computeSystemStats();
 		}
-		//		this.aggregateStatsPerIndividual = AggregateSummaryStatistics.aggregate(aggregate);	
-		StatsPerIndividual myStats = new StatsPerIndividual();
-
-		myStats.mean = getSummaryStatisticsForCollection(aggregate,Stat.MEAN);
-		myStats.sum  = getSummaryStatisticsForCollection(aggregate,Stat.SUM);
-		myStats.min  = getSummaryStatisticsForCollection(aggregate,Stat.MIN);
-		myStats.max  = getSummaryStatisticsForCollection(aggregate,Stat.MAX);
-		myStats.n  = getSummaryStatisticsForCollection(aggregate,Stat.N);		
-		myStats.aggregate = AggregateSummaryStatistics.aggregate(aggregate);
-		this.overallSummaryStatsPerIndividual = myStats;
-		LOG.info("Finished computing overall statsPerIndividual:\n"+this.getSummaryStatistics().toString());
 	}
 
 	public void computeSystemStatsForSubgraph(OWLClass c) throws UnknownOWLClassException {
-		Set<OWLNamedIndividual> insts = this.getAllElements();
-		LOG.info("Computing system stats for subgraph rooted at" + c.toString() +" with "+ insts.size() + " individuals");
-		//		LOG.info("Creating singular stat scores for all IDspaces");
-
-		Collection<SummaryStatistics> aggregate = new ArrayList<SummaryStatistics>();
-
-		SummaryStatistics subgraphStats = new SummaryStatistics();
-
-		for (OWLNamedIndividual i : insts) {			
-			SummaryStatistics statsPerIndividual = computeIndividualStatsForSubgraph(i,c);			
-			//put this individual into the aggregate
-			if (statsPerIndividual.getN() == 0) {
-				//LOG.info("No annotations found in this subgraph for Individual "+i.toStringID());
-			} else {
-				//LOG.info(statsPerIndividual.getN()+" Annotations found in this subgraph for Individual "+i.toStringID());
-				aggregate.add(statsPerIndividual);
-			}
-			//TODO: put this individual into an idSpace aggregate
-			//String idSpace = i.getIRI().getNamespace();
-			subgraphStats.addValue(statsPerIndividual.getMean());
-		}		
-		StatsPerIndividual myStats = new StatsPerIndividual();
-		myStats.mean = getSummaryStatisticsForCollection(aggregate,Stat.MEAN);
-		myStats.sum  = getSummaryStatisticsForCollection(aggregate,Stat.SUM);
-		myStats.min  = getSummaryStatisticsForCollection(aggregate,Stat.MIN);
-		myStats.max  = getSummaryStatisticsForCollection(aggregate,Stat.MAX);
-		myStats.n  = getSummaryStatisticsForCollection(aggregate,Stat.N);		
-		this.subgraphSummaryStatsPerIndividual.put(c, myStats);
-		LOG.info("Finished omputing system stats for subgraph rooted at" + c.toString());
+		ensureSystemStats();
+		LOG.info("Computing system stats for subgraph rooted at " + c.toString());
+		this.subgraphSummaryStatsPerIndividual.put(c, annotationICStatistics.getStatsPerIndividual(c));
+	}
+
+	public void precomputeSystemStatsForSubgraphs(Collection<OWLClass> roots, int numThreads) throws UnknownOWLClassException {
+		ensureSystemStats();
+		annotationICStatistics.precomputeSubgraphStatistics(roots, numThreads);
+		for (OWLClass c : roots) {
+			this.subgraphSummaryStatsPerIndividual.put(c, annotationICStatistics.getStatsPerIndividual(c));
+		}
+	}
+
+	/**
+	 * @return IC statistics computed by {@link #computeSystemStats()}, or null
+	 */
+	public AnnotationICStatistics getAnnotationICStatistics() {
+		return annotationICStatistics;
 	}
 
 
@@ -944,9 +986,7 @@ public abstract class AbstractOwlSim implements OwlSim {
 			Double ic;
 			try {
 				//check if sub is an inferred superclass of the current annotated class
-				//TODO check if i need all of these; this might be expensive and unnecessary
-				if (getReasoner().getSuperClasses(c, false).containsEntity(sub) ||
-						getReasoner().getEquivalentClasses(c).contains(sub))  { 
+				if (isInSubgraph(c, sub))  { 
 					ic = this.getInformationContentForAttribute(c);
 
 					if (ic == null) { 
@@ -978,6 +1018,18 @@ public abstract class AbstractOwlSim implements OwlSim {
 	}	
 
 
+	private boolean isInSubgraph(OWLClass c, OWLClass sub) {
+		if (annotationICStatistics != null) {
+			Boolean isIn = annotationICStatistics.isInSubgraph(c, sub);
+			if (isIn != null) {
+				return isIn;
+			}
+		}
+		// not an attribute of any element
+		return getReasoner().getSuperClasses(c, false).containsEntity(sub) ||
+				getReasoner().getEquivalentClasses(c).contains(sub);
+	}
+
 	public StatisticalSummaryValues getSystemStats() {
 		//		return this.aggregateStatsPerIndividual;
 		return this.overallSummaryStatsPerIndividual.aggregate;
@@ -988,7 +1040,12 @@ public abstract class AbstractOwlSim implements OwlSim {
 	}
 
 	public StatsPerIndividual getSummaryStatistics(OWLClass c) {
-		return this.subgraphSummaryStatsPerIndividual.get(c);
+		StatsPerIndividual s = this.subgraphSummaryStatsPerIndividual.get(c);
+		if (s == null && annotationICStatistics != null) {
+			s = annotationICStatistics.getStatsPerIndividual(c);
+			this.subgraphSummaryStatsPerIndividual.put(c, s);
+		}
+		return s;
 	}
 
 	public SummaryStatistics getSimStatistics() {
@@ -1024,10 +1081,7 @@ public abstract class AbstractOwlSim implements OwlSim {
 
 	public double calculateOverallAnnotationSufficiencyForAttributeSet(Set<OWLClass> atts) throws UnknownOWLClassException {
 		SummaryStatistics stats = computeAttributeSetSimilarityStats(atts);
-		if ((this.getSummaryStatistics() == null) || Double.isNaN(this.getSummaryStatistics().mean.getMean())) {
-			LOG.info("Stats have not been computed yet - doing this now");
-			this.computeSystemStats();
-		}
+		ensureSystemStats();
 		// score = mean(atts)/mean(overall) + max(atts)/max(overall) + sum(atts)/mean(sum(overall))
 		double overall_score = 0.0;
 		Double mean_score = stats.getMean();
@@ -1047,10 +1101,7 @@ public abstract class AbstractOwlSim implements OwlSim {
 	public double calculateSubgraphAnnotationSufficiencyForAttributeSet(Set<OWLClass> atts, OWLClass c) throws UnknownOWLClassException {
 		SummaryStatistics stats = computeAttributeSetSimilarityStatsForSubgraph(atts,c);
 		//TODO: compute statsPerIndividual for this subgraph
-		if ((this.overallSummaryStatsPerIndividual == null ) || (Double.isNaN(this.overallSummaryStatsPerIndividual.max.getMean()))) {
-			LOG.info("Stats have not been computed yet - doing this now");
-			this.computeSystemStats();
-		}
+		ensureSystemStats();
 
 		if (!(this.subgraphSummaryStatsPerIndividual.containsKey(c))) {
 			//only do this once for the whole system, per class requested
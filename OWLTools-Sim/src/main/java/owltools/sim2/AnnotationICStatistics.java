@@ -0,0 +1,658 @@
+package owltools.sim2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.reasoner.Node;
+
+import owltools.sim2.OwlSim.Stat;
+import owltools.sim2.OwlSim.StatsPerIndividual;
+
+/**
+ * Information content (IC) statistics for the attributes of all elements,
+ * as used for annotation sufficiency scores and attribute profiles.
+ *
+ * The IC of each attribute of each element is stored once, in primitive
+ * arrays, along with the per-element n, sum, min and max. For each class
+ * that subsumes an attribute we store the set of attributes it subsumes, so
+ * that statistics for a subgraph are computed by scanning the arrays rather
+ * than by querying the reasoner for every annotation. Subgraph statistics are
+ * cached per subgraph root, and may be computed eagerly in parallel with
+ * {@link #precomputeSubgraphStatistics(Collection, int)}.
+ *
+ * Sorted per-element mean, max and sum values are kept, so quantiles and
+ * percentile ranks are array lookups.
+ *
+ * The arrays can be saved and loaded with {@link #save(File)} and
+ * {@link #load(File, OWLDataFactory)}. After a change to a single element,
+ * {@link #update(OwlSim, OWLNamedIndividual, double)} derives new statistics
+ * from the arrays rather than collecting everything again.
+ */
+public class AnnotationICStatistics {
+
+	private static Logger LOG = Logger.getLogger(AnnotationICStatistics.class);
+
+	private static final int FILE_VERSION = 1;
+
+	private final OWLNamedIndividual[] elements;
+	private final OWLClass[] attributes;
+	private final double[] attributeIC;
+	private final Map<OWLClass, Integer> attributeIndex = new HashMap<OWLClass, Integer>();
+
+	// attributes of element e are entries[offsets[e]] .. entries[offsets[e+1]-1]
+	private final int[] offsets;
+	private final int[] entries;
+
+	// for each class, the (reflexive) subclasses of that class among the attributes
+	private final Map<OWLClass, BitSet> subsumedAttributes;
+
+	// per element
+	private final int[] elementN;
+	private final double[] elementSum;
+	private final double[] elementSumSq;
+	private final double[] elementMin;
+	private final double[] elementMax;
+
+	// sorted values over elements with at least one attribute
+	private double[] sortedMean;
+	private double[] sortedMax;
+	private double[] sortedSum;
+	private double[] sortedN;
+
+	private StatsPerIndividual overallStats;
+	private SummaryStatistics meanICStats;
+	private final Map<OWLClass, StatsPerIndividual> subgraphStats =
+			new ConcurrentHashMap<OWLClass, StatsPerIndividual>();
+
+	/**
+	 * Collects the ICs of the attributes of all elements.
+	 *
+	 * Attributes with no IC (or an infinite IC) are assigned defaultIC,
+	 * as in {@link AbstractOwlSim#computeAttributeSetSimilarityStats(Set)}.
+	 *
+	 * @param sim
+	 * @param defaultIC
+	 * @throws UnknownOWLClassException
+	 */
+	public AnnotationICStatistics(OwlSim sim, double defaultIC) throws UnknownOWLClassException {
+		Set<OWLNamedIndividual> elementSet = sim.getAllElements();
+		elements = elementSet.toArray(new OWLNamedIndividual[elementSet.size()]);
+		Arrays.sort(elements);
+		LOG.info("Collecting attribute ICs for "+elements.length+" elements");
+
+		List<OWLClass> attList = new ArrayList<OWLClass>();
+		List<Double> icList = new ArrayList<Double>();
+		offsets = new int[elements.length+1];
+		int[] entryBuf = new int[1024];
+		int numEntries = 0;
+		for (int e=0; e<elements.length; e++) {
+			offsets[e] = numEntries;
+			for (OWLClass c : sim.getAttributesForElement(elements[e])) {
+				Integer ix = attributeIndex.get(c);
+				if (ix == null) {
+					Double ic;
+					try {
+						ic = sim.getInformationContentForAttribute(c);
+					} catch (UnknownOWLClassException ex) {
+						LOG.info("Unknown class "+c.toStringID()+" submitted for summary stats. Removed from calculation.");
+						continue;
+					}
+					if (ic == null || ic.isInfinite() || ic.isNaN()) {
+						ic = defaultIC;
+					}
+					ix = attList.size();
+					attributeIndex.put(c, ix);
+					attList.add(c);
+					icList.add(ic);
+				}
+				if (numEntries == entryBuf.length) {
+					entryBuf = Arrays.copyOf(entryBuf, numEntries * 2);
+				}
+				entryBuf[numEntries++] = ix;
+			}
+		}
+		offsets[elements.length] = numEntries;
+		entries = Arrays.copyOf(entryBuf, numEntries);
+		attributes = attList.toArray(new OWLClass[attList.size()]);
+		attributeIC = new double[attributes.length];
+		for (int a=0; a<attributes.length; a++) {
+			attributeIC[a] = icList.get(a);
+		}
+
+		// index attributes by subsumer, once, in place of
+		// per-annotation reasoner calls
+		subsumedAttributes = new HashMap<OWLClass, BitSet>();
+		for (int a=0; a<attributes.length; a++) {
+			for (Node<OWLClass> n : sim.getNamedReflexiveSubsumers(attributes[a])) {
+				for (OWLClass s : n.getEntities()) {
+					BitSet bs = subsumedAttributes.get(s);
+					if (bs == null) {
+						bs = new BitSet(attributes.length);
+						subsumedAttributes.put(s, bs);
+					}
+					bs.set(a);
+				}
+			}
+		}
+
+		elementN = new int[elements.length];
+		elementSum = new double[elements.length];
+		elementSumSq = new double[elements.length];
+		elementMin = new double[elements.length];
+		elementMax = new double[elements.length];
+		summarize();
+	}
+
+	private AnnotationICStatistics(OWLNamedIndividual[] elements, OWLClass[] attributes,
+			double[] attributeIC, int[] offsets, int[] entries,
+			Map<OWLClass, BitSet> subsumedAttributes) {
+		this.elements = elements;
+		this.attributes = attributes;
+		this.attributeIC = attributeIC;
+		this.offsets = offsets;
+		this.entries = entries;
+		this.subsumedAttributes = subsumedAttributes;
+		for (int a=0; a<attributes.length; a++) {
+			attributeIndex.put(attributes[a], a);
+		}
+		elementN = new int[elements.length];
+		elementSum = new double[elements.length];
+		elementSumSq = new double[elements.length];
+		elementMin = new double[elements.length];
+		elementMax = new double[elements.length];
+		summarize();
+	}
+
+	/**
+	 * Statistics after the attributes of a single element have changed, or
+	 * the element has been added or removed. Only the attributes of e are
+	 * read from the sim, and subsumers are only looked up for attributes not
+	 * seen before; all other entries are copied. The ICs of all attributes
+	 * are refreshed from the sim, as a change to one element can change
+	 * the IC of any of its subsumers, and of the whole corpus.
+	 *
+	 * Subgraph statistics are not carried over.
+	 *
+	 * @param sim
+	 * @param e - element to update
+	 * @param defaultIC - as for {@link #AnnotationICStatistics(OwlSim, double)}
+	 * @return new statistics; this object is not changed
+	 * @throws UnknownOWLClassException
+	 */
+	public AnnotationICStatistics update(OwlSim sim, OWLNamedIndividual e, double defaultIC) throws UnknownOWLClassException {
+		List<OWLClass> attList = new ArrayList<OWLClass>(Arrays.asList(attributes));
+		List<Double> icList = new ArrayList<Double>(attributes.length);
+		for (OWLClass c : attributes) {
+			icList.add(getIC(sim, c, defaultIC));
+		}
+		Map<OWLClass, Integer> newIndex = new HashMap<OWLClass, Integer>(attributeIndex);
+		Map<OWLClass, BitSet> newSubsumed = new HashMap<OWLClass, BitSet>(subsumedAttributes);
+
+		// new attributes of e
+		boolean isPresent = sim.getAllElements().contains(e);
+		int[] row = new int[0];
+		if (isPresent) {
+			Set<OWLClass> atts = sim.getAttributesForElement(e);
+			row = new int[atts.size()];
+			int numEntries = 0;
+			for (OWLClass c : atts) {
+				Integer ix = newIndex.get(c);
+				if (ix == null) {
+					Double ic;
+					try {
+						ic = getIC(sim, c, defaultIC);
+					} catch (UnknownOWLClassException ex) {
+						LOG.info("Unknown class "+c.toStringID()+" submitted for summary stats. Removed from calculation.");
+						continue;
+					}
+					ix = attList.size();
+					newIndex.put(c, ix);
+					attList.add(c);
+					icList.add(ic);
+					for (Node<OWLClass> n : sim.getNamedReflexiveSubsumers(c)) {
+						for (OWLClass s : n.getEntities()) {
+							BitSet bs = newSubsumed.get(s);
+							if (bs == null) {
+								bs = new BitSet();
+								newSubsumed.put(s, bs);
+							}
+							else if (bs == subsumedAttributes.get(s)) {
+								// copy on write, this object is not changed
+								bs = (BitSet) bs.clone();
+								newSubsumed.put(s, bs);
+							}
+							bs.set(ix);
+						}
+					}
+				}
+				row[numEntries++] = ix;
+			}
+			row = Arrays.copyOf(row, numEntries);
+		}
+
+		// replace the row of e, keeping the elements sorted
+		int pos = Arrays.binarySearch(elements, e);
+		boolean wasPresent = pos >= 0;
+		if (!wasPresent) {
+			pos = -pos - 1;
+		}
+		int tail = wasPresent ? pos + 1 : pos; // first element after e
+		int start = offsets[pos];
+		int delta = row.length - (offsets[tail] - start);
+		int numElements = elements.length + (isPresent ? 1 : 0) - (wasPresent ? 1 : 0);
+		OWLNamedIndividual[] newElements = new OWLNamedIndividual[numElements];
+		int[] newOffsets = new int[numElements+1];
+		int[] newEntries = new int[entries.length + delta];
+		System.arraycopy(elements, 0, newElements, 0, pos);
+		System.arraycopy(offsets, 0, newOffsets, 0, pos+1);
+		System.arraycopy(entries, 0, newEntries, 0, start);
+		int next = pos;
+		if (isPresent) {
+			newElements[pos] = e;
+			System.arraycopy(row, 0, newEntries, start, row.length);
+			next++;
+		}
+		System.arraycopy(elements, tail, newElements, next, elements.length - tail);
+		for (int k=tail; k<=elements.length; k++) {
+			newOffsets[next + k - tail] = offsets[k] + delta;
+		}
+		System.arraycopy(entries, offsets[tail], newEntries, start + row.length, entries.length - offsets[tail]);
+
+		double[] newIC = new double[icList.size()];
+		for (int a=0; a<newIC.length; a++) {
+			newIC[a] = icList.get(a);
+		}
+		return new AnnotationICStatistics(newElements, attList.toArray(new OWLClass[attList.size()]),
+				newIC, newOffsets, newEntries, newSubsumed);
+	}
+
+	private static double getIC(OwlSim sim, OWLClass c, double defaultIC) throws UnknownOWLClassException {
+		Double ic = sim.getInformationContentForAttribute(c);
+		if (ic == null || ic.isInfinite() || ic.isNaN()) {
+			return defaultIC;
+		}
+		return ic;
+	}
+
+	private void summarize() {
+		int numAnnotated = 0;
+		meanICStats = new SummaryStatistics();
+		for (int e=0; e<elements.length; e++) {
+			double sum = 0.0;
+			double sumSq = 0.0;
+			double min = Double.NaN;
+			double max = Double.NaN;
+			for (int k=offsets[e]; k<offsets[e+1]; k++) {
+				double ic = attributeIC[entries[k]];
+				sum += ic;
+				sumSq += ic * ic;
+				if (!(ic >= min)) min = ic;
+				if (!(ic <= max)) max = ic;
+			}
+			int n = offsets[e+1] - offsets[e];
+			elementN[e] = n;
+			elementSum[e] = sum;
+			elementSumSq[e] = sumSq;
+			elementMin[e] = min;
+			elementMax[e] = max;
+			if (n > 0) {
+				numAnnotated++;
+			}
+			else {
+				LOG.error("No annotations found for Individual "+elements[e].toStringID());
+			}
+			// as in AbstractOwlSim.computeSystemStats, elements with no
+			// annotations contribute NaN
+			meanICStats.addValue(n == 0 ? Double.NaN : sum / n);
+		}
+
+		sortedMean = new double[numAnnotated];
+		sortedMax = new double[numAnnotated];
+		sortedSum = new double[numAnnotated];
+		sortedN = new double[numAnnotated];
+		long totalN = 0;
+		double totalSum = 0.0;
+		double totalSumSq = 0.0;
+		double totalMin = Double.NaN;
+		double totalMax = Double.NaN;
+		StatsPerIndividual s = new StatsPerIndividual();
+		int j = 0;
+		for (int e=0; e<elements.length; e++) {
+			int n = elementN[e];
+			if (n == 0)
+				continue;
+			addElement(s, n, elementSum[e], elementMin[e], elementMax[e]);
+			sortedMean[j] = elementSum[e] / n;
+			sortedMax[j] = elementMax[e];
+			sortedSum[j] = elementSum[e];
+			sortedN[j] = n;
+			j++;
+			totalN += n;
+			totalSum += elementSum[e];
+			totalSumSq += elementSumSq[e];
+			if (!(elementMin[e] >= totalMin)) totalMin = elementMin[e];
+			if (!(elementMax[e] <= totalMax)) totalMax = elementMax[e];
+		}
+		Arrays.sort(sortedMean);
+		Arrays.sort(sortedMax);
+		Arrays.sort(sortedSum);
+		Arrays.sort(sortedN);
+		if (totalN > 0) {
+			// pooled over all annotations, as AggregateSummaryStatistics.aggregate
+			double mean = totalSum / totalN;
+			double variance = totalN > 1 ?
+					(totalSumSq - totalSum * mean) / (totalN - 1) : 0.0;
+			s.aggregate = new StatisticalSummaryValues(mean, Math.max(variance, 0.0),
+					totalN, totalMax, totalMin, totalSum);
+		}
+		overallStats = s;
+		subgraphStats.clear();
+	}
+
+	private static void addElement(StatsPerIndividual s, int n, double sum, double min, double max) {
+		s.mean.addValue(sum / n);
+		s.sum.addValue(sum);
+		s.min.addValue(min);
+		s.max.addValue(max);
+		s.n.addValue(n);
+	}
+
+	/**
+	 * @return statistics over all elements that have at least one attribute
+	 */
+	public StatsPerIndividual getStatsPerIndividual() {
+		return overallStats;
+	}
+
+	/**
+	 * @return mean IC of each element, including NaN for elements without attributes
+	 */
+	public SummaryStatistics getMeanICStatistics() {
+		return meanICStats;
+	}
+
+	/**
+	 * Statistics over elements, counting only the attributes subsumed by the
+	 * root; elements with no attributes in the subgraph are not counted.
+	 *
+	 * @param root
+	 * @return statistics for the subgraph, cached
+	 */
+	public StatsPerIndividual getStatsPerIndividual(OWLClass root) {
+		StatsPerIndividual s = subgraphStats.get(root);
+		if (s == null) {
+			s = computeSubgraphStats(root);
+			subgraphStats.put(root, s);
+		}
+		return s;
+	}
+
+	private StatsPerIndividual computeSubgraphStats(OWLClass root) {
+		StatsPerIndividual s = new StatsPerIndividual();
+		BitSet members = subsumedAttributes.get(root);
+		if (members == null) {
+			return s;
+		}
+		for (int e=0; e<elements.length; e++) {
+			int n = 0;
+			double sum = 0.0;
+			double min = Double.NaN;
+			double max = Double.NaN;
+			for (int k=offsets[e]; k<offsets[e+1]; k++) {
+				int a = entries[k];
+				if (members.get(a)) {
+					double ic = attributeIC[a];
+					n++;
+					sum += ic;
+					if (!(ic >= min)) min = ic;
+					if (!(ic <= max)) max = ic;
+				}
+			}
+			if (n > 0) {
+				addElement(s, n, sum, min, max);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Computes subgraph statistics for all roots in parallel
+	 *
+	 * @param roots
+	 * @param numThreads
+	 */
+	public void precomputeSubgraphStatistics(Collection<OWLClass> roots, int numThreads) {
+		LOG.info("Computing subgraph statistics for "+roots.size()+" classes using "+numThreads+" threads");
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final OWLClass root : roots) {
+				if (subgraphStats.containsKey(root))
+					continue;
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						subgraphStats.put(root, computeSubgraphStats(root));
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @param attribute
+	 * @param root
+	 * @return true if root subsumes the attribute, or null if the attribute
+	 * is not used by any element
+	 */
+	public Boolean isInSubgraph(OWLClass attribute, OWLClass root) {
+		Integer ix = attributeIndex.get(attribute);
+		if (ix == null) {
+			return null;
+		}
+		BitSet members = subsumedAttributes.get(root);
+		return members != null && members.get(ix);
+	}
+
+	/**
+	 * @param e
+	 * @return ICs of the attributes of e, or null if e is not known
+	 */
+	public double[] getAttributeICs(OWLNamedIndividual e) {
+		int ix = Arrays.binarySearch(elements, e);
+		if (ix < 0) {
+			return null;
+		}
+		double[] ics = new double[offsets[ix+1] - offsets[ix]];
+		for (int k=offsets[ix]; k<offsets[ix+1]; k++) {
+			ics[k - offsets[ix]] = attributeIC[entries[k]];
+		}
+		return ics;
+	}
+
+	/**
+	 * @return all elements, in the order used internally
+	 */
+	public List<OWLNamedIndividual> getElements() {
+		return Arrays.asList(elements);
+	}
+
+	private double[] getSorted(Stat stat) {
+		switch (stat) {
+		case MEAN: return sortedMean;
+		case MAX: return sortedMax;
+		case SUM: return sortedSum;
+		case N: return sortedN;
+		default: throw new IllegalArgumentException("No distribution for: "+stat);
+		}
+	}
+
+	/**
+	 * @param stat - one of MEAN, MAX, SUM or N
+	 * @param p - between 0 and 1
+	 * @return value of the per-element statistic at quantile p
+	 */
+	public double getQuantile(Stat stat, double p) {
+		double[] vals = getSorted(stat);
+		if (vals.length == 0) {
+			return Double.NaN;
+		}
+		int ix = (int) Math.ceil(p * vals.length) - 1;
+		return vals[Math.min(Math.max(ix, 0), vals.length-1)];
+	}
+
+	/**
+	 * @param stat - one of MEAN, MAX, SUM or N
+	 * @param v
+	 * @return fraction of elements whose statistic is less than or equal to v
+	 */
+	public double getPercentileRank(Stat stat, double v) {
+		double[] vals = getSorted(stat);
+		if (vals.length == 0) {
+			return Double.NaN;
+		}
+		// upper bound: first index with a value > v
+		int lo = 0;
+		int hi = vals.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (vals[mid] <= v)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo / (double) vals.length;
+	}
+
+	// ---------
+	// PERSISTENCE
+	// ---------
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			dos.writeInt(FILE_VERSION);
+			dos.writeInt(elements.length);
+			for (OWLNamedIndividual e : elements) {
+				dos.writeUTF(e.getIRI().toString());
+			}
+			dos.writeInt(attributes.length);
+			for (int a=0; a<attributes.length; a++) {
+				dos.writeUTF(attributes[a].getIRI().toString());
+				dos.writeDouble(attributeIC[a]);
+			}
+			for (int o : offsets) {
+				dos.writeInt(o);
+			}
+			for (int a : entries) {
+				dos.writeInt(a);
+			}
+			dos.writeInt(subsumedAttributes.size());
+			for (Map.Entry<OWLClass, BitSet> e : subsumedAttributes.entrySet()) {
+				dos.writeUTF(e.getKey().getIRI().toString());
+				long[] words = e.getValue().toLongArray();
+				dos.writeInt(words.length);
+				for (long w : words) {
+					dos.writeLong(w);
+				}
+			}
+		}
+		finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * @param file - written by {@link #save(File)}
+	 * @param df
+	 * @return statistics
+	 * @throws IOException
+	 */
+	public static AnnotationICStatistics load(File file, OWLDataFactory df) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int version = dis.readInt();
+			if (version != FILE_VERSION) {
+				throw new IOException("Unsupported version: "+version);
+			}
+			OWLNamedIndividual[] elements = new OWLNamedIndividual[dis.readInt()];
+			for (int e=0; e<elements.length; e++) {
+				elements[e] = df.getOWLNamedIndividual(IRI.create(dis.readUTF()));
+			}
+			int numAtts = dis.readInt();
+			OWLClass[] attributes = new OWLClass[numAtts];
+			double[] attributeIC = new double[numAtts];
+			for (int a=0; a<numAtts; a++) {
+				attributes[a] = df.getOWLClass(IRI.create(dis.readUTF()));
+				attributeIC[a] = dis.readDouble();
+			}
+			int[] offsets = new int[elements.length+1];
+			for (int e=0; e<offsets.length; e++) {
+				offsets[e] = dis.readInt();
+			}
+			int[] entries = new int[offsets[elements.length]];
+			for (int k=0; k<entries.length; k++) {
+				entries[k] = dis.readInt();
+			}
+			int numSubsumers = dis.readInt();
+			Map<OWLClass, BitSet> subsumedAttributes = new HashMap<OWLClass, BitSet>();
+			for (int i=0; i<numSubsumers; i++) {
+				OWLClass c = df.getOWLClass(IRI.create(dis.readUTF()));
+				long[] words = new long[dis.readInt()];
+				for (int w=0; w<words.length; w++) {
+					words[w] = dis.readLong();
+				}
+				subsumedAttributes.put(c, BitSet.valueOf(words));
+			}
+			return new AnnotationICStatistics(elements, attributes, attributeIC,
+					offsets, entries, subsumedAttributes);
+		}
+		finally {
+			dis.close();
+		}
+	}
+}
@@ -6,4 +6,7 @@ public class EnrichmentConfig {
 	public Double attributeInformationContentCutoff;
 	
 	public int maximumClassSize = 1000;
+
+	// number of worker threads used for all-by-all enrichment
+	public int numThreads = Runtime.getRuntime().availableProcessors();
 }
\ No newline at end of file
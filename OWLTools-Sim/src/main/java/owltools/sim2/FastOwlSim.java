@@ -5,6 +5,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -13,14 +15,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.apache.commons.math.MathException;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.apache.log4j.Logger;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLNamedObject;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -150,13 +160,16 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 	ScoreAttributeSetPair[][] testCache = null;
 
 	//
-	// Symmetric 2D arrays
+	// Symmetric 2D array
 	//  - for a lookup [cix][dix], ensure cix <= dix
-	boolean[][] ciPairIsCached = null;   // determins if there is an entry is ciPairLCS
-	int[][] ciPairLCS = null; // LCS ix for a (cix,dix) pair
+	//  - holds the LCS ix + 1 for a (cix,dix) pair, or 0 if there is no entry;
+	//    a single int is written atomically, so the cache can be filled concurrently
+	volatile int[][] ciPairLCS = null;
 
 	// maps an individual to a unique integer
 	Map<OWLNamedIndividual,Integer> individualIndex;
+	// next free integer in individualIndex; integers of removed individuals are not reused
+	int nextIndividualIx = 0;
 
 	int[][] coaMatrix = null;
 
@@ -377,6 +390,317 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 
 	}
 
+	/**
+	 * Adds the class assertions to the ontology, and updates the indexes
+	 * incrementally rather than rebuilding them; see {@link #updateElement(OWLNamedIndividual, boolean)}
+	 * 
+	 * @see owltools.sim2.OwlSim#addElementAttributes(OWLNamedIndividual, Set)
+	 */
+	@Override
+	public synchronized void addElementAttributes(OWLNamedIndividual e, Set<OWLClass> atts) throws UnknownOWLClassException {
+		OWLOntology ont = getSourceOntology();
+		OWLDataFactory df = ont.getOWLOntologyManager().getOWLDataFactory();
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		for (OWLClass c : atts) {
+			axioms.add(df.getOWLClassAssertionAxiom(c, e));
+		}
+		ont.getOWLOntologyManager().addAxioms(ont, axioms);
+		updateElement(e, false);
+	}
+
+	/**
+	 * Removes the class assertions and declaration from the ontology, and updates the indexes
+	 * incrementally rather than rebuilding them; see {@link #updateElement(OWLNamedIndividual, boolean)}
+	 * 
+	 * @see owltools.sim2.OwlSim#removeElement(OWLNamedIndividual)
+	 */
+	@Override
+	public synchronized void removeElement(OWLNamedIndividual e) throws UnknownOWLClassException {
+		OWLOntology ont = getSourceOntology();
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(ont.getClassAssertionAxioms(e));
+		axioms.addAll(ont.getDeclarationAxioms(e));
+		ont.getOWLOntologyManager().removeAxioms(ont, axioms);
+		updateElement(e, true);
+	}
+
+	/**
+	 * Brings the indexes for a single element in line with the (already
+	 * changed) ontology.
+	 * 
+	 * Only the caches for e itself are recomputed. For the classes that e
+	 * gains or loses as inferred types, the element bitmaps and counts are
+	 * patched and the ICs are recomputed. Classes without members take their IC
+	 * from their parents, so these defaults are recomputed too. LCS cache entries
+	 * are invalidated only where one of the recomputed classes is, or
+	 * could now be, the LCS.
+	 * 
+	 * If the number of elements changes and the corpus size is derived from
+	 * the elements, every IC changes by the same amount, log2(N'/N); this
+	 * is applied to the cached values.
+	 * 
+	 * Falls back to a full rebuild if e is an instance of a class that is not
+	 * indexed, i.e. a class that previously had no members (unless useAllClasses is set).
+	 * 
+	 * @param e
+	 * @param isRemoved
+	 * @throws UnknownOWLClassException
+	 */
+	private void updateElement(OWLNamedIndividual e, boolean isRemoved) throws UnknownOWLClassException {
+		getReasoner().flush();
+		if (elementToDirectAttributesMap == null) {
+			createElementAttributeMapFromOntology();
+			return;
+		}
+		long t = System.currentTimeMillis();
+		int oldNumElements = getAllElements().size();
+
+		// inferred types before and after, as class indices; 0 (owl:Thing) stands for membership of the corpus
+		Set<Integer> oldAncs = new HashSet<Integer>();
+		if (elementToInferredAttributesMap.containsKey(e)) {
+			oldAncs.add(0);
+			for (Node<OWLClass> anc : elementToInferredAttributesMap.get(e)) {
+				Integer ix = classIndex.get(getDeterministicRepresentative(anc));
+				if (ix != null) {
+					oldAncs.add(ix);
+				}
+			}
+		}
+		Set<Integer> newAncs = new HashSet<Integer>();
+		Set<OWLClass> direct = null;
+		Set<Node<OWLClass>> inferred = null;
+		if (!isRemoved) {
+			direct = getReasoner().getTypes(e, true).getFlattened();
+			inferred = getReasoner().getTypes(e, false).getNodes();
+			direct.remove(owlThing());
+			newAncs.add(0);
+			for (Node<OWLClass> anc : inferred) {
+				OWLClass ac = getDeterministicRepresentative(anc);
+				if (ac.equals(owlThing()))
+					continue;
+				Integer ix = classIndex.get(ac);
+				if (ix == null) {
+					LOG.info("Not indexed: "+ac+"; rebuilding all indexes");
+					rebuildIndexes();
+					return;
+				}
+				newAncs.add(ix);
+			}
+		}
+
+		// element caches
+		if (inferredTypesMap != null)
+			inferredTypesMap.remove(e);
+		if (inferredTypesIntMap != null)
+			inferredTypesIntMap.remove(e);
+		if (inferredTypesBitmapMap != null)
+			inferredTypesBitmapMap.remove(e);
+		if (isRemoved) {
+			elementToDirectAttributesMap.remove(e);
+			elementToInferredAttributesMap.remove(e);
+			allTypesDirect = new HashSet<OWLClass>();
+			for (Set<OWLClass> atts : elementToDirectAttributesMap.values()) {
+				allTypesDirect.addAll(atts);
+			}
+		}
+		else {
+			elementToDirectAttributesMap.put(e, direct);
+			elementToInferredAttributesMap.put(e, inferred);
+			allTypesDirect.addAll(direct);
+			ancsBitmapCachedModifiable(e);
+		}
+
+		Set<Integer> gained = new HashSet<Integer>(newAncs);
+		gained.removeAll(oldAncs);
+		Set<Integer> lost = new HashSet<Integer>(oldAncs);
+		lost.removeAll(newAncs);
+		Set<Integer> affected = new HashSet<Integer>(gained);
+		affected.addAll(lost);
+
+		// element postings; bitmaps not yet cached are built on demand from the reasoner
+		if (individualIndex != null) {
+			Integer eix = individualIndex.get(e);
+			if (isRemoved) {
+				individualIndex.remove(e);
+			}
+			else if (eix == null) {
+				eix = nextIndividualIx++;
+				individualIndex.put(e, eix);
+			}
+			if (eix != null && classToElementBitmapMap != null) {
+				EWAHCompressedBitmap ebm = new EWAHCompressedBitmap();
+				ebm.set(eix);
+				for (int cix : affected) {
+					for (OWLClass c : getReasoner().getEquivalentClasses(classArray[cix])) {
+						EWAHCompressedBitmap bm = classToElementBitmapMap.get(c);
+						if (bm != null) {
+							classToElementBitmapMap.put(c, gained.contains(cix) ? bm.or(ebm) : bm.andNot(ebm));
+						}
+					}
+				}
+			}
+		}
+		for (int cix : affected) {
+			for (OWLClass c : getReasoner().getEquivalentClasses(classArray[cix])) {
+				EWAHCompressedBitmap bm = classToElementBitmapMap == null ? null : classToElementBitmapMap.get(c);
+				if (bm != null) {
+					numElementsCache.put(c, bm.cardinality());
+				}
+				else {
+					numElementsCache.remove(c);
+				}
+			}
+		}
+
+		updateInformationContent(affected, oldNumElements);
+		int numInvalidated = invalidateLCSCache(gained, lost);
+		coaMatrix = null;
+		testCache = null;
+		updateSystemStats(e);
+		LOG.info("Updated "+e+"; classes changed: "+affected.size()+
+				" LCS entries invalidated: "+numInvalidated+" time(ms)="+tdelta(t));
+	}
+
+	private void updateInformationContent(Set<Integer> affected, int oldNumElements) throws UnknownOWLClassException {
+		int newNumElements = getAllElements().size();
+		if (newNumElements != oldNumElements && corpusSize != null && corpusSize == oldNumElements) {
+			corpusSize = newNumElements;
+			if (oldNumElements > 0 && newNumElements > 0) {
+				// -log2(f/N') = -log2(f/N) + log2(N'/N)
+				double shift = Math.log((double) newNumElements / oldNumElements) / Math.log(2);
+				for (Map.Entry<OWLClass, Double> ice : icCache.entrySet()) {
+					if (ice.getValue() != null) {
+						ice.setValue(ice.getValue() + shift);
+					}
+				}
+				if (icClassArray != null) {
+					for (int cix=0; cix<icClassArray.length; cix++) {
+						if (icClassArray[cix] != null) {
+							icClassArray[cix] += shift;
+						}
+					}
+				}
+			}
+		}
+
+		Set<OWLClass> recompute = new HashSet<OWLClass>();
+		for (int cix : affected) {
+			recompute.addAll(getReasoner().getEquivalentClasses(classArray[cix]).getEntities());
+		}
+		for (Map.Entry<OWLClass, Integer> ne : numElementsCache.entrySet()) {
+			if (ne.getValue() == 0) {
+				recompute.add(ne.getKey());
+			}
+		}
+		for (OWLClass c : recompute) {
+			icCache.remove(c);
+			Integer cix = classIndex.get(c);
+			if (cix != null && icClassArray != null) {
+				icClassArray[cix] = null;
+			}
+		}
+		for (OWLClass c : recompute) {
+			getInformationContentForAttribute(c);
+			Integer cix = classIndex.get(c);
+			if (cix != null) {
+				getInformationContentForAttribute(cix.intValue());
+			}
+		}
+	}
+
+	/**
+	 * Invalidates cached LCS pairs where an affected class is the LCS, or
+	 * is a common subsumer that scores at least as high as the LCS.
+	 * Both classes of such a pair must be subsumed by an affected class, so
+	 * only those pairs are checked.
+	 * 
+	 * A class that gains the element drops in IC relative to all other classes
+	 * (a change in corpus size shifts all ICs equally), so it can only stop
+	 * being the LCS; only classes that lose the element are checked as
+	 * common subsumers.
+	 * 
+	 * owl:Thing is affected whenever an element is added or removed, and
+	 * subsumes every class. It is ignored: its IC is never higher than that of
+	 * another common subsumer, so it cannot displace a cached LCS, and the
+	 * IC of a cached LCS is looked up when the entry is read.
+	 * 
+	 * @param gained - class indices that gained the element
+	 * @param lost - class indices that lost the element
+	 * @return number of entries invalidated
+	 * @throws UnknownOWLClassException
+	 */
+	private int invalidateLCSCache(Set<Integer> gained, Set<Integer> lost) throws UnknownOWLClassException {
+		Integer thingIx = classIndex.get(owlThing());
+		Set<Integer> affected = new HashSet<Integer>(gained);
+		affected.addAll(lost);
+		affected.remove(thingIx);
+		if (ciPairLCS == null || affected.isEmpty())
+			return 0;
+		EWAHCompressedBitmap affectedBM = convertIntsToBitmap(affected);
+		Set<Integer> rising = new HashSet<Integer>(lost);
+		rising.remove(thingIx);
+		EWAHCompressedBitmap risingBM = rising.isEmpty() ? null : convertIntsToBitmap(rising);
+		List<Integer> subsumed = new ArrayList<Integer>();
+		for (int cix=0; cix<classArray.length; cix++) {
+			if (classArray[cix] != null && ancsBitmapCachedModifiable(cix).andCardinality(affectedBM) > 0) {
+				subsumed.add(cix);
+			}
+		}
+		int n = 0;
+		for (int i=0; i<subsumed.size(); i++) {
+			int cix = subsumed.get(i);
+			EWAHCompressedBitmap bmc = ancsBitmapCachedModifiable(cix);
+			for (int j=i; j<subsumed.size(); j++) {
+				int dix = subsumed.get(j);
+				int entry = ciPairLCS[cix][dix];
+				if (entry == 0)
+					continue;
+				int lcsix = entry - 1;
+				boolean isStale = affected.contains(lcsix);
+				if (!isStale && risingBM != null) {
+					// same tolerance as getLowestCommonSubsumerWithICNoCache
+					double minScore = getInformationContentForAttribute(lcsix) - 0.01;
+					EWAHCompressedBitmap cad = bmc.and(ancsBitmapCachedModifiable(dix)).and(risingBM);
+					for (int ix : cad.toArray()) {
+						if (getInformationContentForAttribute(ix) >= minScore) {
+							isStale = true;
+							break;
+						}
+					}
+				}
+				if (isStale) {
+					ciPairLCS[cix][dix] = 0;
+					n++;
+				}
+			}
+		}
+		if (n > 0 && isLCSCacheFullyPopulated) {
+			// a missing entry no longer means the pair is below threshold
+			LOG.info("LCS cache is no longer fully populated");
+			isLCSCacheFullyPopulated = false;
+		}
+		return n;
+	}
+
+	// discards all indexes and caches, and rebuilds them from the ontology
+	private void rebuildIndexes() throws UnknownOWLClassException {
+		resetDerivedCorpusSize();
+		superclassIntMap = null;
+		superclassBitmapMap = null;
+		superclassBitmapIndex = null;
+		properSuperclassBitmapMap = null;
+		inferredTypesMap = null;
+		inferredTypesIntMap = null;
+		inferredTypesBitmapMap = null;
+		classToElementBitmapMap = null;
+		individualIndex = null;
+		numElementsCache = new HashMap<OWLClass, Integer>();
+		clearInformationContentCache();
+		ciPairLCS = null;
+		isLCSCacheFullyPopulated = false;
+		coaMatrix = null;
+		createElementAttributeMapFromOntology();
+	}
+
 	// TODO - change set to be (ordered) List, to avoid sorting each time
 	private EWAHCompressedBitmap convertIntsToBitmap(Set<Integer> bits) {
 		EWAHCompressedBitmap bm = new EWAHCompressedBitmap();
@@ -612,6 +936,7 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 				individualIndex.put(i, n);
 				n++;
 			}
+			nextIndividualIx = n;
 		}
 	}
 
@@ -1161,65 +1486,119 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		ijscores.inverseAsymmetricSimjScore =
 				getAsymmetricElementJaccardSimilarity(j, i);
 
-		Vector<OWLClass> cs = new Vector<OWLClass>(getAttributesForElement(i));
-		Vector<OWLClass> ds = new Vector<OWLClass>(getAttributesForElement(j));
+		// the map is known to be populated; avoids the defensive copy in getAttributesForElement
+		Vector<OWLClass> cs = new Vector<OWLClass>(elementToDirectAttributesMap.get(i));
+		Vector<OWLClass> ds = new Vector<OWLClass>(elementToDirectAttributesMap.get(j));
 		populateSimilarityMatrix(cs, ds, ijscores);
 	}
 
+	// scratch arrays for the best match average kernel, reused by each thread
+	private static class BMAScratch {
+		int[] cixs = new int[0];
+		int[] dixs = new int[0];
+		double[] bestScoreForC = new double[0];
+		int[] bestLCSForC = new int[0];
+		double[] bestScoreForD = new double[0];
+		int[] bestLCSForD = new int[0];
+		// LCS computed by the last uncached lookup, with all tied classes
+		ScoreAttributeSetPair lastComputedLCS;
+
+		void ensureCapacity(int csize, int dsize) {
+			if (cixs.length < csize) {
+				cixs = new int[csize];
+				bestScoreForC = new double[csize];
+				bestLCSForC = new int[csize];
+			}
+			if (dixs.length < dsize) {
+				dixs = new int[dsize];
+				bestScoreForD = new double[dsize];
+				bestLCSForD = new int[dsize];
+			}
+		}
+	}
+
+	private final ThreadLocal<BMAScratch> bmaScratch = new ThreadLocal<BMAScratch>() {
+		@Override
+		protected BMAScratch initialValue() {
+			return new BMAScratch();
+		}
+	};
+
+	/**
+	 * Best match average kernel.
+	 * 
+	 * Works on class indices, reading the LCS index and its IC from the
+	 * array caches, and keeps only the running best per row and column, in
+	 * per-thread scratch arrays. {@link ScoreAttributeSetPair}s are created only
+	 * for the reported best matches; the full matrix is not kept
+	 * (iclcsMatrix.matrix is null).
+	 * 
+	 * Ties are resolved as before: the last of equal scores, in row order, wins.
+	 */
 	private void populateSimilarityMatrix(Vector<OWLClass> cs,
 			Vector<OWLClass> ds, ElementPairScores ijscores)  throws UnknownOWLClassException {
 
-		ScoreAttributeSetPair bestsap = null;
 		int csize = cs.size();
 		int dsize = ds.size();
 		ijscores.cs = cs;
 		ijscores.ds = ds;
+
+		BMAScratch scratch = bmaScratch.get();
+		scratch.ensureCapacity(csize, dsize);
+		int[] cixs = scratch.cixs;
+		int[] dixs = scratch.dixs;
+		double[] bestScoreForC = scratch.bestScoreForC;
+		int[] bestLCSForC = scratch.bestLCSForC;
+		double[] bestScoreForD = scratch.bestScoreForD;
+		int[] bestLCSForD = scratch.bestLCSForD;
+		for (int cx=0; cx<csize; cx++) {
+			cixs[cx] = getClassIndex(cs.elementAt(cx));
+		}
+		for (int dx=0; dx<dsize; dx++) {
+			dixs[dx] = getClassIndex(ds.elementAt(dx));
+			bestLCSForD[dx] = -1;
+		}
+
 		double total = 0.0;
-		ScoreAttributeSetPair[][] sapMatrix = new ScoreAttributeSetPair[csize][dsize];
-		ScoreAttributeSetPair[] bestSapForC = new ScoreAttributeSetPair[csize];
-		ScoreAttributeSetPair[] bestSapForD = new ScoreAttributeSetPair[dsize];
+		double bestScore = 0.0;
+		int bestLCS = -1;
+		ScoreAttributeSetPair bestComputedLCS = null;
 		double bestMatchCTotal = 0;
 		double bestMatchDTotal = 0;
 
 		// populate matrix
 		for (int cx=0; cx<csize; cx++) {
-			OWLClass c = cs.elementAt(cx);
-			int cix = classIndex.get(c);
-			ScoreAttributeSetPair bestcsap = null;
+			int cix = cixs[cx];
+			double bestcScore = 0.0;
+			int bestcLCS = -1;
 			for (int dx=0; dx<dsize; dx++) {
-				OWLClass d = ds.elementAt(dx);
-				int dix = classIndex.get(d);
-				ScoreAttributeSetPair sap = getLowestCommonSubsumerWithIC(cix,dix);
-				if (sap == null)
+				int lcsix = getLowestCommonSubsumerIndex(cix, dixs[dx], scratch);
+				if (lcsix < 0)
 					continue;
-				sapMatrix[cx][dx] = sap;
-				double score = sap.score;
+				double score = getInformationContentForAttribute(lcsix);
 				total += score;
-				if (bestsap == null || score >= bestsap.score) {
-					bestsap = sap;
+				if (bestLCS < 0 || score >= bestScore) {
+					bestScore = score;
+					bestLCS = lcsix;
+					bestComputedLCS = scratch.lastComputedLCS;
+				}
+				if (bestcLCS < 0 || score >= bestcScore) {
+					bestcScore = score;
+					bestcLCS = lcsix;
 				}
-				if (bestcsap == null || score >= bestcsap.score) {
-					bestcsap = sap;
+				if (bestLCSForD[dx] < 0 || score >= bestScoreForD[dx]) {
+					bestScoreForD[dx] = score;
+					bestLCSForD[dx] = lcsix;
 				}
 			}
-			bestSapForC[cx] = bestcsap;
-			if (bestcsap != null)
-				bestMatchCTotal += bestcsap.score;
+			bestScoreForC[cx] = bestcScore;
+			bestLCSForC[cx] = bestcLCS;
+			if (bestcLCS >= 0)
+				bestMatchCTotal += bestcScore;
 		}
-
-		// retrieve best values for each D
 		for (int dx=0; dx<dsize; dx++) {
-			ScoreAttributeSetPair bestdsap = null;
-			for (int cx=0; cx<csize; cx++) {
-				ScoreAttributeSetPair sap = sapMatrix[cx][dx];
-				if (sap != null && (bestdsap == null || sap.score >= bestdsap.score)) {
-					bestdsap = sap;
-				}
-			}
-			if (bestdsap != null) {
-				bestSapForD[dx] = bestdsap;
-				bestMatchDTotal += bestdsap.score;
-			}
+			if (bestLCSForD[dx] >= 0)
+				bestMatchDTotal += bestScoreForD[dx];
 		}
 
 		// TODO - use these
@@ -1228,14 +1607,31 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		ijscores.bmaInverseAsymIC = bestMatchDTotal / (double)dsize;
 		ijscores.bmaSymIC = (bestMatchCTotal + bestMatchDTotal) / (double)(csize+dsize);
 
+		// materialize the reported matches only
+		ScoreAttributeSetPair[] bestSapForC = new ScoreAttributeSetPair[csize];
+		ScoreAttributeSetPair[] bestSapForD = new ScoreAttributeSetPair[dsize];
+		for (int cx=0; cx<csize; cx++) {
+			if (bestLCSForC[cx] >= 0)
+				bestSapForC[cx] = new ScoreAttributeSetPair(bestScoreForC[cx], classArray[bestLCSForC[cx]]);
+		}
+		for (int dx=0; dx<dsize; dx++) {
+			if (bestLCSForD[dx] >= 0)
+				bestSapForD[dx] = new ScoreAttributeSetPair(bestScoreForD[dx], classArray[bestLCSForD[dx]]);
+		}
 		ijscores.iclcsMatrix = new ScoreMatrix<ScoreAttributeSetPair>();
-		ijscores.iclcsMatrix.matrix = sapMatrix;
 		ijscores.iclcsMatrix.bestForC = bestSapForC;
 		ijscores.iclcsMatrix.bestForD = bestSapForD;
 
-		if (bestsap != null) {
-			ijscores.maxIC = bestsap.score;
-			ijscores.maxICwitness = bestsap.attributeClassSet;
+		if (bestLCS >= 0) {
+			ijscores.maxIC = bestScore;
+			if (bestComputedLCS != null && bestComputedLCS.attributeClassSet != null &&
+					!bestComputedLCS.attributeClassSet.isEmpty()) {
+				// not from the cache, which holds a single class: keep all tied classes
+				ijscores.maxICwitness = bestComputedLCS.attributeClassSet;
+			}
+			else {
+				ijscores.maxICwitness = Collections.singleton(classArray[bestLCS]);
+			}
 		}
 		else {
 			//LOG.warn("No best S.A.P. for "+ijscores);
@@ -1245,6 +1641,47 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 
 	}
 
+	/**
+	 * Index of the LCS of a pair, as used by the best match average kernel.
+	 * 
+	 * Cache hits are answered from the LCS arrays without allocating;
+	 * otherwise the LCS is computed (and cached) by
+	 * {@link #getLowestCommonSubsumerWithIC(int, int)}, and kept in
+	 * the scratch, as it may hold several tied classes.
+	 * 
+	 * @param cix
+	 * @param dix
+	 * @param scratch
+	 * @return class index, or -1 if there is no LCS (as for a loaded cache without an entry)
+	 * @throws UnknownOWLClassException
+	 */
+	private int getLowestCommonSubsumerIndex(int cix, int dix, BMAScratch scratch) throws UnknownOWLClassException {
+		scratch.lastComputedLCS = null;
+		if (cix > dix) {
+			int temp = cix;
+			cix = dix;
+			dix = temp;
+		}
+		if (!isDisableLCSCache && !isNoLookupForLCSCache) {
+			if (ciPairLCS == null) {
+				initLCSCache();
+			}
+			int entry = ciPairLCS[cix][dix];
+			if (entry > 0) {
+				return entry - 1;
+			}
+		}
+		ScoreAttributeSetPair sap = getLowestCommonSubsumerWithIC(cix, dix);
+		if (sap == null)
+			return -1;
+		scratch.lastComputedLCS = sap;
+		if (sap.attributeClassSet == null || sap.attributeClassSet.isEmpty()) {
+			// as for a cached pair with no LCS
+			return 0;
+		}
+		return classIndex.get(sap.attributeClassSet.iterator().next());
+	}
+
 	// uses integer 2D array cache
 	private ScoreAttributeSetPair getLowestCommonSubsumerWithIC(int cix, int dix)
 			throws UnknownOWLClassException {
@@ -1269,24 +1706,15 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		}
 
 		// if the cache does not exist, initialize it
-		if (ciPairIsCached == null) {
-			// Estimates: 350mb for MP
-			// 5.4Gb for 30k classes
-			//int size = this.getAllAttributeClasses().size();
-			int size = classArray.length;
-			LOG.info("Creating 2D cache of "+size+" * "+size);
-			ciPairIsCached = new boolean[size][size];
-			ciPairLCS = new int[size][size];
-			LOG.info("Created LCS cache"+size+" * "+size);
-			//ciPairScaledScore = new short[size][size];
-			//LOG.info("Created score cache cache"+size+" * "+size);
+		if (ciPairLCS == null) {
+			initLCSCache();
 		}
 
 		// if either (1) an entry exists in the cache or (2) we are
 		// building the cache from fresh, then do a lookup
-		if (!isNoLookupForLCSCache && ciPairIsCached[cix][dix]) {
-			// TODO null vs 0
-			int lcsix = ciPairLCS[cix][dix];
+		int entry = isNoLookupForLCSCache ? 0 : ciPairLCS[cix][dix];
+		if (entry > 0) {
+			int lcsix = entry - 1;
 
 			// we lookup the IC on-the-fly
 			// TODO: hook in here to getAttributeTriadScore to produce other scores
@@ -1314,13 +1742,12 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			return null;
 		}
 
-		ciPairIsCached[cix][dix] = true;
 		OWLClass lcsCls = null;
 		if (sap.attributeClassSet != null && !sap.attributeClassSet.isEmpty()) {
 			// we take an arbitrary member
 			lcsCls = sap.attributeClassSet.iterator().next();
 			int lcsix = classIndex.get(lcsCls);
-			ciPairLCS[cix][dix] = lcsix;
+			ciPairLCS[cix][dix] = lcsix + 1;
 			if (debugClass != null && lcsCls.equals(debugClass) && debugClassMessages2 < 100) {
 				LOG.info("DEBUG2 "+lcsix+" " +sap.attributeClassSet+" sap.score="+sap.score);
 				debugClassMessages2++;
@@ -1328,6 +1755,8 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			//icClassArray[lcsix] = sap.score;
 		}
 		else {
+			// cached as the first class, as before
+			ciPairLCS[cix][dix] = 1;
 			//TODO - remove obsoletes
 			LOG.warn("uh oh"+classArray[cix] + " "+
 					classArray[dix]+" "+sap.attributeClassSet);
@@ -1336,6 +1765,55 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		return sap;
 	}
 
+	private synchronized void initLCSCache() {
+		if (ciPairLCS != null)
+			return;
+		// Estimates: 350mb for MP
+		// 5.4Gb for 30k classes
+		//int size = this.getAllAttributeClasses().size();
+		int size = classArray.length;
+		LOG.info("Creating 2D cache of "+size+" * "+size);
+		ciPairLCS = new int[size][size];
+		LOG.info("Created LCS cache"+size+" * "+size);
+		//ciPairScaledScore = new short[size][size];
+		//LOG.info("Created score cache cache"+size+" * "+size);
+	}
+
+	/**
+	 * Fills all lazily populated caches used by
+	 * {@link #getGroupwiseSimilarity(OWLNamedIndividual, OWLNamedIndividual)},
+	 * after which it can be called from multiple threads.
+	 * 
+	 * The only cache written to after this is the LCS cache; each entry
+	 * is a single deterministic int, so concurrent writes are harmless.
+	 * 
+	 * Note this does not apply to the timing counters, which may undercount.
+	 * 
+	 * @throws UnknownOWLClassException
+	 */
+	public void precomputeCachesForConcurrentAccess() throws UnknownOWLClassException {
+		if (classArray == null) {
+			createElementAttributeMapFromOntology();
+		}
+		long t = System.currentTimeMillis();
+		for (int cix=0; cix<classArray.length; cix++) {
+			// the array may have unused trailing entries
+			if (classArray[cix] == null)
+				continue;
+			ancsBitmapCachedModifiable(cix);
+			ancsProperBitmapCachedModifiable(classArray[cix]);
+			getInformationContentForAttribute(cix);
+		}
+		for (OWLNamedIndividual i : getAllElements()) {
+			ancsBitmapCachedModifiable(i);
+		}
+		makeIndividualIndex();
+		if (!isDisableLCSCache && ciPairLCS == null) {
+			initLCSCache();
+		}
+		LOG.info("Precomputed caches for concurrent access; time(ms)="+tdelta(t));
+	}
+
 	@Override
 	public ScoreAttributeSetPair getLowestCommonSubsumerWithIC(OWLClass c,
 			OWLClass d) throws UnknownOWLClassException {
@@ -1530,12 +2008,6 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			s.simjScore = simJPct / (double) 100;
 			EWAHCompressedBitmap cad = searchProfileBM.and(jAttsBM);
 
-			// COMMON SUBSUMERS (ALL)
-			Set<OWLClass> csSet = new HashSet<OWLClass>();
-			for (int ix : cad.toArray()) {
-				csSet.add(classArray[ix]);
-			}
-
 			// MAXIC
 			// TODO - evaluate if this is optimal;
 			// MaxIC falls out of BMA calculation, but it may be useful
@@ -1543,10 +2015,9 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			t = System.currentTimeMillis();
 			double icBest = 0;
 			double icSumCAD = 0;
-			for (int ix : cad.toArray()) {
-				Double ic = getInformationContentForAttribute(ix);
-				//OWLClass c = n.getRepresentativeElement();
-				//Double ic = getInformationContentForAttribute(c);
+			IntIterator cadIt = cad.intIterator();
+			while (cadIt.hasNext()) {
+				double ic = getInformationContentForAttribute(cadIt.next());
 				if (ic > icBest) {
 					icBest = ic;
 				}
@@ -1568,9 +2039,9 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			t = System.currentTimeMillis();
 			EWAHCompressedBitmap cud = searchProfileBM.or(jAttsBM);
 			double icSumCUD = 0;
-			for (int ix : cud.toArray()) {
-				Double ic = getInformationContentForAttribute(ix);
-				icSumCUD += ic;
+			IntIterator cudIt = cud.intIterator();
+			while (cudIt.hasNext()) {
+				icSumCUD += getInformationContentForAttribute(cudIt.next());
 			}
 			s.simGIC = icSumCAD / icSumCUD;
 			tSimGIC += tdelta(t);
@@ -1700,12 +2171,6 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 
 		EWAHCompressedBitmap cad = iAttsBM.and(jAttsBM);
 
-		// COMMON SUBSUMERS (ALL)
-		Set<OWLClass> csSet = new HashSet<OWLClass>();
-		for (int ix : cad.toArray()) {
-			csSet.add(classArray[ix]);
-		}
-
 		// MAXIC
 		// TODO - evaluate if this is optimal;
 		// MaxIC falls out of BMA calculation, but it may be useful
@@ -1714,10 +2179,9 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 
 		double icBest = 0;
 		double icSumCAD = 0;
-		for (int ix : cad.toArray()) {
-			Double ic = getInformationContentForAttribute(ix);
-			//OWLClass c = n.getRepresentativeElement();
-			//Double ic = getInformationContentForAttribute(c);
+		IntIterator cadIt = cad.intIterator();
+		while (cadIt.hasNext()) {
+			double ic = getInformationContentForAttribute(cadIt.next());
 			if (ic > icBest) {
 				icBest = ic;
 			}
@@ -1735,9 +2199,9 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		t = System.currentTimeMillis();
 		EWAHCompressedBitmap cud = iAttsBM.or(jAttsBM);
 		double icSumCUD = 0;
-		for (int ix : cud.toArray()) {
-			Double ic = getInformationContentForAttribute(ix);
-			icSumCUD += ic;
+		IntIterator cudIt = cud.intIterator();
+		while (cudIt.hasNext()) {
+			icSumCUD += getInformationContentForAttribute(cudIt.next());
 		}
 		s.simGIC = icSumCAD / icSumCUD;
 		tSimGIC += tdelta(t);
@@ -1966,6 +2430,182 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		return scoresets;
 	}
 
+	// ----------
+	// ENRICHMENT
+	// ----------
+
+	// a class taking part in all-by-all enrichment, with all data
+	// required for testing precomputed, so that tests can be run
+	// concurrently without touching any of the (unsynchronized) caches
+	private class EnrichmentCandidate {
+		OWLClass c;
+		int repIx;
+		int size; // number of elements, restricted to population where applicable
+		EWAHCompressedBitmap elements;
+		int[] ancestors; // reflexive, sorted; uses representative indices
+
+		boolean hasAncestor(int ix) {
+			return Arrays.binarySearch(ancestors, ix) >= 0;
+		}
+	}
+
+	private List<EnrichmentCandidate> getEnrichmentCandidates(OWLClass root,
+			EnrichmentConfig ec, EWAHCompressedBitmap populationBM, boolean isTestICCutoff) throws UnknownOWLClassException {
+		OWLClass nothing = getSourceOntology().getOWLOntologyManager().getOWLDataFactory().getOWLNothing();
+		List<OWLClass> classes = new ArrayList<OWLClass>(getReasoner().getSubClasses(root, false).getFlattened());
+		// deterministic output order, regardless of reasoner
+		Collections.sort(classes);
+		List<EnrichmentCandidate> candidates = new ArrayList<EnrichmentCandidate>();
+		for (OWLClass c : classes) {
+			if (c.equals(nothing))
+				continue;
+			int n = getNumElementsForAttribute(c);
+			if (n < 2 || n > ec.maximumClassSize)
+				continue;
+			if (isTestICCutoff && ec.attributeInformationContentCutoff != null
+					&& getInformationContentForAttribute(c) < ec.attributeInformationContentCutoff) {
+				continue;
+			}
+			EnrichmentCandidate ecand = new EnrichmentCandidate();
+			ecand.c = c;
+			ecand.repIx = getClassIndex(classTorepresentativeClassMap.get(c));
+			ecand.elements = getElementsForAttributeAsBitmao(c);
+			ecand.size = populationBM == null ? n : ecand.elements.andCardinality(populationBM);
+			ecand.ancestors = ancsBitmapCachedModifiable(c).toArray();
+			candidates.add(ecand);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Bitmap-based implementation; all set sizes and overlaps are obtained
+	 * from the class to element bitmaps, and p-values are calculated using
+	 * a precomputed log-factorial table.
+	 *
+	 * If a p-value cutoff is set, pairs for which even maximal overlap could not
+	 * pass the cutoff are pruned without calculating the overlap.
+	 *
+	 * Each sample set class is tested on a thread pool of size
+	 * {@link EnrichmentConfig#numThreads}. Output is in the same order
+	 * regardless of the number of threads.
+	 *
+	 * Pairs in which one class subsumes the other are skipped.
+	 *
+	 * @see owltools.sim2.AbstractOwlSim#calculateAllByAllEnrichment(org.semanticweb.owlapi.model.OWLClass, org.semanticweb.owlapi.model.OWLClass, org.semanticweb.owlapi.model.OWLClass)
+	 */
+	@Override
+	public List<EnrichmentResult> calculateAllByAllEnrichment(
+			OWLClass populationClass, OWLClass pc1, OWLClass pc2)
+					throws MathException, UnknownOWLClassException {
+		long t = System.currentTimeMillis();
+		final EnrichmentConfig ec = enrichmentConfig == null ? new EnrichmentConfig() : enrichmentConfig;
+
+		final int populationClassSize;
+		EWAHCompressedBitmap populationBM = null;
+		if (populationClass != null) {
+			populationBM = getElementsForAttributeAsBitmao(populationClass);
+			populationClassSize = populationBM.cardinality();
+		}
+		else {
+			populationClassSize = getCorpusSize();
+			populationClass = owlThing();
+		}
+		final int correctionFactor = getCorrectionFactor(populationClass);
+		final HypergeometricCalculator hg =
+				new HypergeometricCalculator(Math.max(populationClassSize, getCorpusSize()));
+
+		List<EnrichmentCandidate> sampleSets = getEnrichmentCandidates(pc1, ec, null, false);
+		final List<EnrichmentCandidate> enrichedSets = getEnrichmentCandidates(pc2, ec, populationBM, true);
+		LOG.info("Enrichment: |sample sets|="+sampleSets.size()+" |enriched sets|="+enrichedSets.size());
+		totalTimeEnrichPrep += tdelta(t);
+
+		long t1 = System.currentTimeMillis();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, ec.numThreads));
+		List<Future<List<EnrichmentResult>>> futures = new ArrayList<Future<List<EnrichmentResult>>>();
+		for (final EnrichmentCandidate s : sampleSets) {
+			futures.add(pool.submit(new Callable<List<EnrichmentResult>>() {
+				@Override
+				public List<EnrichmentResult> call() {
+					return calculateEnrichmentForSampleSet(s, enrichedSets,
+							populationClassSize, correctionFactor, hg, ec);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<EnrichmentResult> results = new ArrayList<EnrichmentResult>();
+		try {
+			for (Future<List<EnrichmentResult>> f : futures) {
+				results.addAll(f.get());
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted during enrichment", e);
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new RuntimeException(e.getCause());
+		}
+		totalTimeEnrichCalc += tdelta(t1);
+		LOG.info("enrichment completed; results="+results.size()+" time(ms)="+tdelta(t));
+		return results;
+	}
+
+	// tests a single sample set against all enriched set candidates;
+	// results are sorted by p-value, with redundant results removed
+	// (see AbstractOwlSim#filterEnrichmentResults)
+	private List<EnrichmentResult> calculateEnrichmentForSampleSet(EnrichmentCandidate s,
+			List<EnrichmentCandidate> enrichedSets, int populationClassSize,
+			int correctionFactor, HypergeometricCalculator hg, EnrichmentConfig ec) {
+		List<EnrichmentResult> resultsInner = new ArrayList<EnrichmentResult>();
+		Map<EnrichmentResult, EnrichmentCandidate> candidateMap =
+				new HashMap<EnrichmentResult, EnrichmentCandidate>();
+		int sampleSetClassSize = s.size;
+		if (sampleSetClassSize > populationClassSize)
+			return resultsInner;
+		Double cutoff = ec.pValueCorrectedCutoff;
+		for (EnrichmentCandidate e : enrichedSets) {
+			int enrichedClassSize = e.size;
+			if (enrichedClassSize == 0)
+				continue;
+			if (s.hasAncestor(e.repIx) || e.hasAncestor(s.repIx))
+				continue;
+			if (cutoff != null &&
+					hg.bestUpperCumulativeProbability(populationClassSize,
+							sampleSetClassSize, enrichedClassSize) * correctionFactor > cutoff) {
+				continue;
+			}
+			int eiSetSize = s.elements.andCardinality(e.elements);
+			if (eiSetSize == 0)
+				continue;
+			double p = hg.upperCumulativeProbability(populationClassSize,
+					sampleSetClassSize, enrichedClassSize, eiSetSize);
+			double pCorrected = p * correctionFactor;
+			if (cutoff != null && pCorrected > cutoff)
+				continue;
+			EnrichmentResult r = new EnrichmentResult(s.c, e.c, p, pCorrected,
+					populationClassSize, sampleSetClassSize, enrichedClassSize, eiSetSize);
+			resultsInner.add(r);
+			candidateMap.put(r, e);
+		}
+		Collections.sort(resultsInner);
+
+		// skip any result where a better result exists for a more specific class
+		List<EnrichmentResult> resultsOut = new ArrayList<EnrichmentResult>();
+		BitSet betterAncestors = new BitSet(classArray.length);
+		for (EnrichmentResult r : resultsInner) {
+			EnrichmentCandidate e = candidateMap.get(r);
+			if (!betterAncestors.get(e.repIx)) {
+				resultsOut.add(r);
+			}
+			for (int aix : e.ancestors) {
+				if (aix != e.repIx)
+					betterAncestors.set(aix);
+			}
+		}
+		return resultsOut;
+	}
+
 	// ----
 	// UTIL
 	// ----
@@ -2054,16 +2694,16 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 			}
 		}
 
-		// We assume ciPairIsCached is populated
-		for ( int cix = 0; cix< ciPairIsCached.length; cix++) {
-			boolean[] arr = ciPairIsCached[cix];
+		// We assume ciPairLCS is populated
+		for ( int cix = 0; cix< ciPairLCS.length; cix++) {
+			int[] arr = ciPairLCS[cix];
 			OWLClass c = classArray[cix];
 			for ( int dix = 0; dix< arr.length; dix++) {
 				// cix is always <= dix
 				if (cix > dix)
 					continue;
-				if (arr[dix]) {
-					int lcsix = ciPairLCS[cix][dix];
+				if (arr[dix] > 0) {
+					int lcsix = arr[dix] - 1;
 					Double s = icClassArray[lcsix];
 					if (s == null || s.isNaN() || s.isInfinite()) {
 						throw new IOException("No IC for "+classArray[lcsix]);
@@ -2132,10 +2772,9 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 				dix = temp;
 			}
 
-			ciPairIsCached[cix][dix] = true;
 			//ciPairScaledScore[cix][dix] = (short)(Double.valueOf(vals[2]) * scaleFactor);
 			// TODO - set all IC caches
-			ciPairLCS[cix][dix] = aix;
+			ciPairLCS[cix][dix] = aix + 1;
 		}
 		s.close();
 		LOG.info("Finished loading LCS cache from "+fileName);
@@ -2170,7 +2809,6 @@ public class FastOwlSim extends AbstractOwlSim implements OwlSim {
 		}
 		ciPairLCS = new int[classArray.length][classArray.length];
 		//ciPairScaledScore = new short[classArray.length][classArray.length];
-		ciPairIsCached = new boolean[classArray.length][classArray.length];		
 	}
 
 	@Override
@@ -0,0 +1,91 @@
+package owltools.sim2;
+
+/**
+ * Hypergeometric upper-tail probabilities computed from a precomputed
+ * table of log factorials.
+ *
+ * Equivalent to HypergeometricDistributionImpl.cumulativeProbability(k, max),
+ * but avoids creating a distribution object per test. The table is
+ * immutable once created, so a single instance can be shared between threads.
+ */
+public class HypergeometricCalculator {
+
+	// logFactorial[n] = ln(n!)
+	private final double[] logFactorial;
+
+	/**
+	 * @param maxPopulationSize - largest population size that will be tested
+	 */
+	public HypergeometricCalculator(int maxPopulationSize) {
+		logFactorial = new double[maxPopulationSize+1];
+		logFactorial[0] = 0.0;
+		for (int i=1; i<=maxPopulationSize; i++) {
+			logFactorial[i] = logFactorial[i-1] + Math.log(i);
+		}
+	}
+
+	/**
+	 * @return largest population size supported by this table
+	 */
+	public int getMaxPopulationSize() {
+		return logFactorial.length - 1;
+	}
+
+	private double logBinomial(int n, int k) {
+		return logFactorial[n] - logFactorial[k] - logFactorial[n-k];
+	}
+
+	/**
+	 * P(X=k), where X is the number of successes in a sample
+	 *
+	 * @param populationSize - N
+	 * @param numberOfSuccesses - K
+	 * @param sampleSize - n
+	 * @param k
+	 * @return probability
+	 */
+	public double probability(int populationSize, int numberOfSuccesses, int sampleSize, int k) {
+		if (k < Math.max(0, sampleSize + numberOfSuccesses - populationSize) ||
+				k > Math.min(sampleSize, numberOfSuccesses)) {
+			return 0.0;
+		}
+		return Math.exp(logBinomial(numberOfSuccesses, k) +
+				logBinomial(populationSize - numberOfSuccesses, sampleSize - k) -
+				logBinomial(populationSize, sampleSize));
+	}
+
+	/**
+	 * P(X &gt;= k)
+	 *
+	 * @param populationSize - N
+	 * @param numberOfSuccesses - K
+	 * @param sampleSize - n
+	 * @param k - observed overlap
+	 * @return upper tail probability
+	 */
+	public double upperCumulativeProbability(int populationSize, int numberOfSuccesses, int sampleSize, int k) {
+		int lo = Math.max(k, Math.max(0, sampleSize + numberOfSuccesses - populationSize));
+		int hi = Math.min(sampleSize, numberOfSuccesses);
+		double p = 0.0;
+		for (int i=lo; i<=hi; i++) {
+			p += probability(populationSize, numberOfSuccesses, sampleSize, i);
+		}
+		return Math.min(p, 1.0);
+	}
+
+	/**
+	 * The smallest p-value that can be obtained for a test with these
+	 * set sizes, i.e. the value obtained if the overlap is maximal.
+	 *
+	 * If this is above a cutoff, there is no need to calculate the overlap
+	 *
+	 * @param populationSize - N
+	 * @param numberOfSuccesses - K
+	 * @param sampleSize - n
+	 * @return lower bound for the upper tail probability
+	 */
+	public double bestUpperCumulativeProbability(int populationSize, int numberOfSuccesses, int sampleSize) {
+		int max = Math.min(sampleSize, numberOfSuccesses);
+		return probability(populationSize, numberOfSuccesses, sampleSize, max);
+	}
+}
@@ -1,6 +1,7 @@
 package owltools.sim2;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -539,6 +540,30 @@ public interface OwlSim {
 	 */
 	public void createElementAttributeMapFromOntology() throws UnknownOWLClassException;
 
+	/**
+	 * Adds ClassAssertion axioms for e to the source ontology, and updates
+	 * the element and attribute indexes to match.
+	 * 
+	 * e may be new, or may already have attributes, in which case these
+	 * are added to.
+	 * 
+	 * @param e
+	 * @param atts
+	 * @throws UnknownOWLClassException
+	 */
+	public void addElementAttributes(OWLNamedIndividual e, Set<OWLClass> atts) throws UnknownOWLClassException;
+
+	/**
+	 * Removes all ClassAssertion axioms for e, and its declaration, from the
+	 * source ontology, and updates the element and attribute indexes to match.
+	 * 
+	 * Other axioms referencing e are left in place.
+	 * 
+	 * @param e
+	 * @throws UnknownOWLClassException
+	 */
+	public void removeElement(OWLNamedIndividual e) throws UnknownOWLClassException;
+
 	/**
 	 * For implementations that use a cache, this performs an all by all comparison
 	 * of all attributes and caches the results.
@@ -1102,6 +1127,31 @@ public interface OwlSim {
 
 	public void computeSystemStatsForSubgraph(OWLClass c) throws UnknownOWLClassException;
 
+	/**
+	 * Computes statistics for the subgraphs rooted at each of the classes in
+	 * parallel, so that subgraph sufficiency scores for these classes do not
+	 * need to compute them on first use.
+	 * 
+	 * @param roots
+	 * @param numThreads
+	 * @throws UnknownOWLClassException
+	 */
+	public void precomputeSystemStatsForSubgraphs(Collection<OWLClass> roots, int numThreads) throws UnknownOWLClassException;
+
+	/**
+	 * @return IC statistics for the attributes of all elements, or null if
+	 * {@link #computeSystemStats()} has not been called
+	 */
+	public AnnotationICStatistics getAnnotationICStatistics();
+
+	/**
+	 * Uses the given statistics, e.g. loaded with {@link AnnotationICStatistics#load(java.io.File, org.semanticweb.owlapi.model.OWLDataFactory)},
+	 * in place of {@link #computeSystemStats()}
+	 * 
+	 * @param stats
+	 */
+	public void setAnnotationICStatistics(AnnotationICStatistics stats);
+
 	
 	public class StatsPerIndividual {
 		//TODO: make top-level class
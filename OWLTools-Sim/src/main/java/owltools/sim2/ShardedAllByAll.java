@@ -0,0 +1,459 @@
+package owltools.sim2;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import owltools.sim2.io.BinaryResultReader;
+import owltools.sim2.io.SimResultRenderer;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * All by all comparison of individuals, partitioned into shards that
+ * can be run independently (e.g. on different machines).
+ *
+ * Individuals are sorted by IRI, and the upper triangle of the pair
+ * space, including the diagonal (i &lt;= j), is split into N shards of roughly
+ * equal numbers of pairs, using contiguous ranges of rows. Each shard is further
+ * split into chunks, which are written to their own files and processed on a
+ * thread pool.
+ *
+ * Every ordered pair is passed to the {@link PairFilter} exactly once, so
+ * the merged output contains the same pairs as a single all by all run,
+ * including self and symmetric pairs if the filter permits them.
+ *
+ * When a chunk is complete, a marker file is written. Re-running the same
+ * shard skips any chunk with a marker, so killed jobs can be resumed.
+ * Once all shards are complete, {@link #merge(File, int, PrintStream)}
+ * concatenates the chunk files into a single table. This requires a
+ * line-based output format; binary chunk files cannot be merged.
+ *
+ * Files written to the output directory, for shard k of N:
+ * <ul>
+ * <li>shard-k-of-N.manifest - parameters and list of chunks
+ * <li>shard-k-of-N.chunk-R1-R2.out - results for rows R1 (inclusive) to R2 (exclusive)
+ * <li>shard-k-of-N.chunk-R1-R2.done - completion marker
+ * </ul>
+ */
+public class ShardedAllByAll {
+
+	private static final Logger LOG = Logger.getLogger(ShardedAllByAll.class);
+
+	/**
+	 * Decides if a pair should be compared; called for (i,i), and for both (i,j) and (j,i)
+	 */
+	public interface PairFilter {
+		public boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j);
+	}
+
+	/**
+	 * Creates a renderer writing to a chunk file
+	 */
+	public interface RendererFactory {
+		public SimResultRenderer createRenderer(PrintStream out);
+	}
+
+	private final OwlSim owlsim;
+	private final List<OWLNamedIndividual> individuals;
+	private PairFilter pairFilter = null;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+	private long pairsPerChunk = 100000;
+	private double minSimJ = 0.1;
+	private double minMaxIC = 3.0;
+	private List<String> headerComments = new ArrayList<String>();
+
+	/**
+	 * @param owlsim
+	 * @param individuals - will be sorted
+	 */
+	public ShardedAllByAll(OwlSim owlsim, Collection<OWLNamedIndividual> individuals) {
+		this.owlsim = owlsim;
+		this.individuals = new ArrayList<OWLNamedIndividual>(individuals);
+		Collections.sort(this.individuals);
+	}
+
+	public void setPairFilter(PairFilter pairFilter) {
+		this.pairFilter = pairFilter;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public void setPairsPerChunk(long pairsPerChunk) {
+		this.pairsPerChunk = pairsPerChunk;
+	}
+
+	public void setMinSimJ(double minSimJ) {
+		this.minSimJ = minSimJ;
+	}
+
+	public void setMinMaxIC(double minMaxIC) {
+		this.minMaxIC = minMaxIC;
+	}
+
+	/**
+	 * Comments written to the first chunk of the first shard only
+	 *
+	 * @param comment
+	 */
+	public void addHeaderComment(String comment) {
+		headerComments.add(comment);
+	}
+
+	/**
+	 * @return individuals, in the order used for partitioning
+	 */
+	public List<OWLNamedIndividual> getIndividuals() {
+		return individuals;
+	}
+
+	// ----------
+	// PARTITIONS
+	// ----------
+
+	/**
+	 * @param n - number of individuals
+	 * @param row
+	 * @return number of pairs (i,j) with i &lt; row and i &lt;= j
+	 */
+	static long pairsBeforeRow(int n, int row) {
+		return (long) row * n - (long) row * (row - 1) / 2;
+	}
+
+	/**
+	 * First row of a shard; rows are allocated such that each shard
+	 * has approximately the same number of pairs.
+	 *
+	 * @param n - number of individuals
+	 * @param shardIx - 0-based; if equal to numShards, returns n
+	 * @param numShards
+	 * @return row index
+	 */
+	static int getShardStartRow(int n, int shardIx, int numShards) {
+		if (shardIx <= 0)
+			return 0;
+		if (shardIx >= numShards)
+			return n;
+		long total = pairsBeforeRow(n, n);
+		long target = (total * shardIx) / numShards;
+		// smallest row r such that pairsBeforeRow(r) >= target
+		int lo = 0;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (pairsBeforeRow(n, mid) >= target)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param n - number of individuals
+	 * @param shard - 1-based
+	 * @param numShards
+	 * @param pairsPerChunk
+	 * @return list of [startRow, endRow) pairs
+	 */
+	static List<int[]> getChunks(int n, int shard, int numShards, long pairsPerChunk) {
+		int start = getShardStartRow(n, shard-1, numShards);
+		int end = getShardStartRow(n, shard, numShards);
+		List<int[]> chunks = new ArrayList<int[]>();
+		int chunkStart = start;
+		long pairs = 0;
+		for (int r=start; r<end; r++) {
+			pairs += n - r;
+			if (pairs >= pairsPerChunk) {
+				chunks.add(new int[]{chunkStart, r+1});
+				chunkStart = r+1;
+				pairs = 0;
+			}
+		}
+		if (chunkStart < end) {
+			chunks.add(new int[]{chunkStart, end});
+		}
+		return chunks;
+	}
+
+	// used to check all shards were run over the same individuals
+	private String getSignature() {
+		long h = 1125899906842597L;
+		for (OWLNamedIndividual i : individuals) {
+			h = 31 * h + i.getIRI().toString().hashCode();
+		}
+		return "individuals="+individuals.size()+" checksum="+Long.toHexString(h);
+	}
+
+	private static String getShardName(int shard, int numShards) {
+		return "shard-"+shard+"-of-"+numShards;
+	}
+
+	private static File getManifestFile(File dir, int shard, int numShards) {
+		return new File(dir, getShardName(shard, numShards)+".manifest");
+	}
+
+	private static String getChunkName(int shard, int numShards, int[] chunk) {
+		return getShardName(shard, numShards)+".chunk-"+chunk[0]+"-"+chunk[1];
+	}
+
+	private static File getOutputFile(File dir, String chunkName) {
+		return new File(dir, chunkName+".out");
+	}
+
+	private static File getMarkerFile(File dir, String chunkName) {
+		return new File(dir, chunkName+".done");
+	}
+
+	// ---------
+	// EXECUTION
+	// ---------
+
+	/**
+	 * Runs a single shard, skipping any chunks that have already been completed
+	 *
+	 * @param dir - output directory
+	 * @param shard - 1-based
+	 * @param numShards
+	 * @param rendererFactory
+	 * @return number of pairs written by this run
+	 * @throws Exception
+	 */
+	public long run(final File dir, final int shard, final int numShards,
+			final RendererFactory rendererFactory) throws Exception {
+		if (shard < 1 || shard > numShards) {
+			throw new IllegalArgumentException("Invalid shard: "+shard+"/"+numShards);
+		}
+		FileUtils.forceMkdir(dir);
+		List<int[]> chunks = writeManifest(dir, shard, numShards);
+
+		int nThreads = numThreads;
+		if (owlsim instanceof FastOwlSim) {
+			((FastOwlSim) owlsim).precomputeCachesForConcurrentAccess();
+		}
+		else if (nThreads > 1) {
+			LOG.warn("Concurrent comparisons only supported for FastOwlSim; using a single thread");
+			nThreads = 1;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, nThreads));
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		int numSkipped = 0;
+		for (final int[] chunk : chunks) {
+			final String chunkName = getChunkName(shard, numShards, chunk);
+			if (getMarkerFile(dir, chunkName).exists()) {
+				numSkipped++;
+				continue;
+			}
+			final boolean isFirst = shard == 1 && chunk[0] == 0;
+			futures.add(pool.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return runChunk(dir, chunkName, chunk, isFirst, rendererFactory);
+				}
+			}));
+		}
+		pool.shutdown();
+		LOG.info(getShardName(shard, numShards)+": chunks="+chunks.size()+
+				" alreadyCompleted="+numSkipped+" threads="+nThreads);
+
+		long total = 0;
+		try {
+			for (Future<Long> f : futures) {
+				total += f.get();
+			}
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+		LOG.info("FINISHED "+getShardName(shard, numShards)+"; pairs written="+total);
+		return total;
+	}
+
+	private List<int[]> writeManifest(File dir, int shard, int numShards) throws IOException {
+		List<int[]> chunks = getChunks(individuals.size(), shard, numShards, pairsPerChunk);
+		List<String> lines = new ArrayList<String>();
+		lines.add("# "+getSignature());
+		for (int[] chunk : chunks) {
+			lines.add(getChunkName(shard, numShards, chunk));
+		}
+		File manifest = getManifestFile(dir, shard, numShards);
+		if (manifest.exists()) {
+			// resuming; the partition must be identical to the previous run
+			List<String> prev = FileUtils.readLines(manifest, StandardCharsets.UTF_8.name());
+			if (!prev.equals(lines)) {
+				throw new IOException("Existing manifest "+manifest+
+						" was created with different individuals or chunk size");
+			}
+		}
+		else {
+			FileUtils.writeLines(manifest, StandardCharsets.UTF_8.name(), lines);
+		}
+		return chunks;
+	}
+
+	private long runChunk(File dir, String chunkName, int[] chunk, boolean isFirst,
+			RendererFactory rendererFactory) throws IOException {
+		File tmp = new File(dir, chunkName+".tmp");
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(tmp)),
+				false, StandardCharsets.UTF_8.name());
+		SimResultRenderer renderer = rendererFactory.createRenderer(out);
+		long n = 0;
+		try {
+			if (isFirst) {
+				for (String comment : headerComments) {
+					renderer.printComment(comment);
+				}
+			}
+			int size = individuals.size();
+			for (int r=chunk[0]; r<chunk[1]; r++) {
+				OWLNamedIndividual i = individuals.get(r);
+				if (isComparable(i, i)) {
+					n += compareAndRender(i, i, renderer);
+				}
+				for (int c=r+1; c<size; c++) {
+					OWLNamedIndividual j = individuals.get(c);
+					if (isComparable(i, j)) {
+						n += compareAndRender(i, j, renderer);
+					}
+					if (isComparable(j, i)) {
+						n += compareAndRender(j, i, renderer);
+					}
+				}
+			}
+		}
+		finally {
+			renderer.dispose();
+			IOUtils.closeQuietly(out);
+		}
+		File outFile = getOutputFile(dir, chunkName);
+		FileUtils.deleteQuietly(outFile);
+		FileUtils.moveFile(tmp, outFile);
+		FileUtils.touch(getMarkerFile(dir, chunkName));
+		LOG.info("Completed "+chunkName+" pairs="+n);
+		return n;
+	}
+
+	// returns the number of pairs written
+	private int compareAndRender(OWLNamedIndividual i, OWLNamedIndividual j,
+			SimResultRenderer renderer) {
+		ElementPairScores scores = compare(i, j);
+		if (scores == null)
+			return 0;
+		renderer.printPairScores(scores);
+		return 1;
+	}
+
+	private boolean isComparable(OWLNamedIndividual i, OWLNamedIndividual j) {
+		if (pairFilter == null)
+			return true;
+		return pairFilter.isComparable(i, j);
+	}
+
+	private ElementPairScores compare(OWLNamedIndividual i, OWLNamedIndividual j) {
+		try {
+			return owlsim.getGroupwiseSimilarity(i, j, minSimJ, minMaxIC);
+		} catch (Exception e) {
+			// e.g. CutoffException
+			LOG.debug(e.getMessage());
+			return null;
+		}
+	}
+
+	// -----
+	// MERGE
+	// -----
+
+	/**
+	 * Concatenates all chunk files for all shards, in order.
+	 *
+	 * For line-based formats, the header line written at the start of
+	 * each chunk is only retained for the first chunk.
+	 *
+	 * @param dir
+	 * @param numShards
+	 * @param out
+	 * @throws IOException if any shard or chunk is incomplete, or
+	 *     if the chunks were written in the binary format
+	 */
+	public static void merge(File dir, int numShards, PrintStream out) throws IOException {
+		// check all shards are complete before writing anything
+		List<String> chunkNames = new ArrayList<String>();
+		String signature = null;
+		for (int shard=1; shard<=numShards; shard++) {
+			File manifest = getManifestFile(dir, shard, numShards);
+			if (!manifest.exists()) {
+				throw new IOException("Missing manifest for "+getShardName(shard, numShards)+": "+manifest);
+			}
+			List<String> lines = FileUtils.readLines(manifest, StandardCharsets.UTF_8.name());
+			if (signature == null) {
+				signature = lines.get(0);
+			}
+			else if (!signature.equals(lines.get(0))) {
+				throw new IOException("Shards were run over different individuals: "+manifest);
+			}
+			for (String chunkName : lines.subList(1, lines.size())) {
+				if (!getMarkerFile(dir, chunkName).exists()) {
+					throw new IOException("Incomplete chunk: "+chunkName);
+				}
+				if (BinaryResultReader.isBinaryResultFile(getOutputFile(dir, chunkName))) {
+					throw new IOException("Cannot merge chunks in the binary format: "+chunkName);
+				}
+				chunkNames.add(chunkName);
+			}
+		}
+
+		String header = null;
+		for (String chunkName : chunkNames) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(getOutputFile(dir, chunkName)), StandardCharsets.UTF_8));
+			try {
+				boolean isFirstLine = true;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					boolean isComment = line.startsWith("#");
+					if (isFirstLine && !isComment) {
+						isFirstLine = false;
+						if (header == null) {
+							header = line;
+						}
+						else if (header.equals(line)) {
+							continue;
+						}
+					}
+					out.println(line);
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		out.flush();
+	}
+}
@@ -181,7 +181,7 @@ public class SimpleOwlSim extends AbstractOwlSim implements OwlSim{
 	 * configurable parameter.
 	 */
 	public enum OutputFormat {
-		TXT, CSV, ROW, JSON, OWL, FORMATTED;
+		TXT, CSV, ROW, JSON, OWL, FORMATTED, BINARY;
 	}
 
 
@@ -0,0 +1,279 @@
+package owltools.sim2.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.OWLPrettyPrinter;
+import owltools.sim2.scores.AttributePairScores;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * Writes {@link ElementPairScores} in a compact columnar binary format,
+ * intended for all by all runs producing very large numbers of pairs.
+ *
+ * Rows are buffered and written in blocks; each block is deflate-compressed
+ * and contains:
+ * <ul>
+ * <li>strings added to the dictionary since the previous block
+ * (identifiers, labels and MaxIC terms are stored as dictionary indices)
+ * <li>comments
+ * <li>one column per field; integer columns for the dictionary indices,
+ * annotation counts and rank, and float columns for SimJ, MaxIC, SimGIC,
+ * AsymBMA_IC, BMA_IC and Combined. Missing values are stored as -1 / NaN.
+ * </ul>
+ *
+ * Use {@link BinaryResultReader} to read the file, or to convert it to
+ * the layout written by {@link TabularRenderer}.
+ *
+ * Only {@link #printPairScores(ElementPairScores)} and {@link #printComment(CharSequence)}
+ * are supported; all other output methods are ignored.
+ */
+public class BinaryRenderer extends AbstractRenderer implements SimResultRenderer {
+
+	static final byte[] MAGIC = "OWLSIMB1".getBytes();
+	static final int VERSION = 1;
+	static final int DEFAULT_BLOCK_SIZE = 65536;
+
+	private final WritableByteChannel channel;
+	private final int blockSize;
+	private boolean isHeaderWritten = false;
+
+	// string dictionary
+	private final Map<String,Integer> stringIndex = new HashMap<String,Integer>();
+	private final List<String> newStrings = new ArrayList<String>();
+	private final List<String> comments = new ArrayList<String>();
+
+	// columns for the current block
+	private int numRows = 0;
+	private final int[] aIds;
+	private final int[] aLabels;
+	private final int[] bIds;
+	private final int[] bLabels;
+	private final int[] numAnnotsA;
+	private final int[] numAnnotsB;
+	private final int[] ranks;
+	private final int[] maxICTerms;
+	private final float[] combined;
+	private final float[] simJ;
+	private final float[] maxIC;
+	private final float[] simGIC;
+	private final float[] bmaAsymIC;
+	private final float[] bmaSymIC;
+
+	/**
+	 * @param channel
+	 * @param blockSize - number of rows per block
+	 */
+	public BinaryRenderer(WritableByteChannel channel, int blockSize) {
+		this.channel = channel;
+		this.blockSize = blockSize;
+		aIds = new int[blockSize];
+		aLabels = new int[blockSize];
+		bIds = new int[blockSize];
+		bLabels = new int[blockSize];
+		numAnnotsA = new int[blockSize];
+		numAnnotsB = new int[blockSize];
+		ranks = new int[blockSize];
+		maxICTerms = new int[blockSize];
+		combined = new float[blockSize];
+		simJ = new float[blockSize];
+		maxIC = new float[blockSize];
+		simGIC = new float[blockSize];
+		bmaAsymIC = new float[blockSize];
+		bmaSymIC = new float[blockSize];
+	}
+
+	public BinaryRenderer(WritableByteChannel channel) {
+		this(channel, DEFAULT_BLOCK_SIZE);
+	}
+
+	public BinaryRenderer(OutputStream out) {
+		this(Channels.newChannel(out));
+		if (out instanceof PrintStream) {
+			resultOutStream = (PrintStream) out;
+		}
+	}
+
+	@Override
+	public void printComment(CharSequence comment) {
+		comments.add(comment.toString());
+	}
+
+	@Override
+	public void printAttributeSim(AttributesSimScores simScores,
+			OWLGraphWrapper graph) {
+		// not supported
+	}
+
+	@Override
+	public void printAttributeSim(AttributesSimScores simScores,
+			OWLGraphWrapper graph, OWLPrettyPrinter owlpp) {
+		// not supported
+	}
+
+	@Override
+	public void printAttributeSimWithIndividuals(AttributesSimScores simScores,
+			OWLPrettyPrinter owlpp, OWLGraphWrapper g, OWLNamedIndividual i,
+			OWLNamedIndividual j) {
+		// not supported
+	}
+
+	@Override
+	public void printIndividualPairSim(IndividualSimScores scores,
+			OWLPrettyPrinter owlpp, OWLGraphWrapper graph) {
+		// not supported
+	}
+
+	@Override
+	public void printPairScores(AttributePairScores scores) {
+		// not supported
+	}
+
+	@Override
+	public void printPairScores(ElementPairScores scores) {
+		int r = numRows;
+		aIds[r] = getStringIndex(graph.getIdentifier(scores.i));
+		aLabels[r] = getStringIndex(graph.getLabel(scores.i));
+		bIds[r] = getStringIndex(graph.getIdentifier(scores.j));
+		bLabels[r] = getStringIndex(graph.getLabel(scores.j));
+		numAnnotsA[r] = scores.cs == null ? -1 : scores.cs.size();
+		numAnnotsB[r] = scores.ds == null ? -1 : scores.ds.size();
+		ranks[r] = scores.rank == null ? -1 : scores.rank;
+		combined[r] = scores.combinedScore == null ? Float.NaN : scores.combinedScore.floatValue();
+		simJ[r] = toFloat(scores.simjScore);
+		maxIC[r] = toFloat(scores.maxIC);
+		if (scores.maxIC != null && scores.maxICwitness != null) {
+			// matches the MaxIC Term column of TabularRenderer
+			StringBuilder sb = new StringBuilder();
+			for (OWLClass c : scores.maxICwitness) {
+				sb.append(owlpp.render(c)).append('\t');
+			}
+			maxICTerms[r] = getStringIndex(sb.toString());
+		}
+		else {
+			maxICTerms[r] = -1;
+		}
+		simGIC[r] = toFloat(scores.simGIC);
+		bmaAsymIC[r] = toFloat(scores.bmaAsymIC);
+		bmaSymIC[r] = toFloat(scores.bmaSymIC);
+		numRows++;
+		if (numRows == blockSize) {
+			flushBlock();
+		}
+	}
+
+	private static float toFloat(Double v) {
+		return v == null ? Float.NaN : v.floatValue();
+	}
+
+	private int getStringIndex(String s) {
+		if (s == null)
+			return -1;
+		Integer ix = stringIndex.get(s);
+		if (ix == null) {
+			ix = stringIndex.size();
+			stringIndex.put(s, ix);
+			newStrings.add(s);
+		}
+		return ix;
+	}
+
+	private void write(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(MAGIC.length + 4);
+		buf.put(MAGIC);
+		buf.putInt(VERSION);
+		buf.flip();
+		write(buf);
+		isHeaderWritten = true;
+	}
+
+	private void flushBlock() {
+		try {
+			if (!isHeaderWritten) {
+				writeHeader();
+			}
+			if (numRows == 0 && newStrings.isEmpty() && comments.isEmpty()) {
+				return;
+			}
+			ByteArrayOutputStream raw = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(raw);
+			dos.writeInt(newStrings.size());
+			for (String s : newStrings) {
+				dos.writeUTF(s);
+			}
+			dos.writeInt(comments.size());
+			for (String s : comments) {
+				dos.writeUTF(s);
+			}
+			dos.writeInt(numRows);
+			for (int[] col : Arrays.asList(aIds, aLabels, bIds, bLabels,
+					numAnnotsA, numAnnotsB, ranks, maxICTerms)) {
+				for (int r=0; r<numRows; r++) {
+					dos.writeInt(col[r]);
+				}
+			}
+			for (float[] col : Arrays.asList(combined, simJ, maxIC, simGIC, bmaAsymIC, bmaSymIC)) {
+				for (int r=0; r<numRows; r++) {
+					dos.writeFloat(col[r]);
+				}
+			}
+			dos.flush();
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 4 + 64);
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			DeflaterOutputStream zos = new DeflaterOutputStream(compressed, deflater);
+			raw.writeTo(zos);
+			zos.finish();
+			deflater.end();
+
+			ByteBuffer lengths = ByteBuffer.allocate(8);
+			lengths.putInt(raw.size());
+			lengths.putInt(compressed.size());
+			lengths.flip();
+			write(lengths);
+			write(ByteBuffer.wrap(compressed.toByteArray()));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write block", e);
+		}
+		newStrings.clear();
+		comments.clear();
+		numRows = 0;
+	}
+
+	@Override
+	public void dispose() {
+		flushBlock();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		if (resultOutStream != null) {
+			super.dispose();
+		}
+	}
+
+}
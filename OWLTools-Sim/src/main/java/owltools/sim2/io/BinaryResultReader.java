@@ -0,0 +1,312 @@
+package owltools.sim2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads files written by {@link BinaryRenderer}.
+ *
+ * Usage:
+ * <pre>
+ * BinaryResultReader r = new BinaryResultReader(channel);
+ * while (r.next()) {
+ *    String a = r.getAId();
+ *    float simJ = r.getSimJ();
+ *    ...
+ * }
+ * r.close();
+ * </pre>
+ *
+ * Missing values are returned as null (strings), -1 (ints) or NaN (floats).
+ */
+public class BinaryResultReader implements Closeable {
+
+	private static NumberFormat doubleRenderer = new DecimalFormat("#.##########");
+
+	private final ReadableByteChannel channel;
+
+	private final List<String> dictionary = new ArrayList<String>();
+	private final List<String> comments = new ArrayList<String>();
+
+	// current block
+	private int numRows = 0;
+	private int row = -1;
+	private int[] aIds, aLabels, bIds, bLabels, numAnnotsA, numAnnotsB, ranks, maxICTerms;
+	private float[] combined, simJ, maxIC, simGIC, bmaAsymIC, bmaSymIC;
+
+	/**
+	 * @param channel
+	 * @throws IOException if the channel does not contain a file in the expected format
+	 */
+	public BinaryResultReader(ReadableByteChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer header = ByteBuffer.allocate(BinaryRenderer.MAGIC.length + 4);
+		if (!readFully(header)) {
+			throw new IOException("Empty file");
+		}
+		byte[] magic = new byte[BinaryRenderer.MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, BinaryRenderer.MAGIC)) {
+			throw new IOException("Not an OwlSim binary result file");
+		}
+		int version = header.getInt();
+		if (version != BinaryRenderer.VERSION) {
+			throw new IOException("Unsupported version: "+version);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file starts with the header written by {@link BinaryRenderer}
+	 * @throws IOException
+	 */
+	public static boolean isBinaryResultFile(File file) throws IOException {
+		byte[] magic = new byte[BinaryRenderer.MAGIC.length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(magic);
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+		return Arrays.equals(magic, BinaryRenderer.MAGIC);
+	}
+
+	// returns false if at EOF before any bytes are read
+	private boolean readFully(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf);
+			if (n < 0) {
+				if (buf.position() == 0)
+					return false;
+				throw new EOFException("Truncated file");
+			}
+		}
+		buf.flip();
+		return true;
+	}
+
+	private boolean readBlock() throws IOException {
+		ByteBuffer lengths = ByteBuffer.allocate(8);
+		if (!readFully(lengths)) {
+			return false;
+		}
+		lengths.getInt(); // uncompressed length
+		int compressedLength = lengths.getInt();
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+		if (!readFully(compressed)) {
+			throw new EOFException("Truncated block");
+		}
+		DataInputStream dis = new DataInputStream(new InflaterInputStream(
+				new ByteArrayInputStream(compressed.array(), 0, compressedLength)));
+		try {
+			int numStrings = dis.readInt();
+			for (int i=0; i<numStrings; i++) {
+				dictionary.add(dis.readUTF());
+			}
+			int numComments = dis.readInt();
+			for (int i=0; i<numComments; i++) {
+				comments.add(dis.readUTF());
+			}
+			numRows = dis.readInt();
+			aIds = readInts(dis);
+			aLabels = readInts(dis);
+			bIds = readInts(dis);
+			bLabels = readInts(dis);
+			numAnnotsA = readInts(dis);
+			numAnnotsB = readInts(dis);
+			ranks = readInts(dis);
+			maxICTerms = readInts(dis);
+			combined = readFloats(dis);
+			simJ = readFloats(dis);
+			maxIC = readFloats(dis);
+			simGIC = readFloats(dis);
+			bmaAsymIC = readFloats(dis);
+			bmaSymIC = readFloats(dis);
+		}
+		finally {
+			dis.close();
+		}
+		row = -1;
+		return true;
+	}
+
+	private int[] readInts(DataInputStream dis) throws IOException {
+		int[] col = new int[numRows];
+		for (int r=0; r<numRows; r++) {
+			col[r] = dis.readInt();
+		}
+		return col;
+	}
+
+	private float[] readFloats(DataInputStream dis) throws IOException {
+		float[] col = new float[numRows];
+		for (int r=0; r<numRows; r++) {
+			col[r] = dis.readFloat();
+		}
+		return col;
+	}
+
+	/**
+	 * Advance to the next row
+	 *
+	 * @return false if there are no more rows
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		while (row + 1 >= numRows) {
+			if (!readBlock()) {
+				return false;
+			}
+		}
+		row++;
+		return true;
+	}
+
+	/**
+	 * Comments read so far; these precede the rows of the current block
+	 *
+	 * @return comments
+	 */
+	public List<String> getComments() {
+		return comments;
+	}
+
+	private String lookup(int ix) {
+		return ix < 0 ? null : dictionary.get(ix);
+	}
+
+	public String getAId() {
+		return lookup(aIds[row]);
+	}
+	public String getALabel() {
+		return lookup(aLabels[row]);
+	}
+	public String getBId() {
+		return lookup(bIds[row]);
+	}
+	public String getBLabel() {
+		return lookup(bLabels[row]);
+	}
+	public int getNumAnnotsA() {
+		return numAnnotsA[row];
+	}
+	public int getNumAnnotsB() {
+		return numAnnotsB[row];
+	}
+	public int getRank() {
+		return ranks[row];
+	}
+	public String getMaxICTerm() {
+		return lookup(maxICTerms[row]);
+	}
+	public float getCombinedScore() {
+		return combined[row];
+	}
+	public float getSimJ() {
+		return simJ[row];
+	}
+	public float getMaxIC() {
+		return maxIC[row];
+	}
+	public float getSimGIC() {
+		return simGIC[row];
+	}
+	public float getBmaAsymIC() {
+		return bmaAsymIC[row];
+	}
+	public float getBmaSymIC() {
+		return bmaSymIC[row];
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// ---------
+	// CONVERTER
+	// ---------
+
+	private static String format(float v) {
+		return Float.isNaN(v) ? "" : doubleRenderer.format(v);
+	}
+
+	private static String format(String v) {
+		return v == null ? "" : v;
+	}
+
+	/**
+	 * Writes all remaining rows using the same columns as
+	 * {@link TabularRenderer#printPairScores(owltools.sim2.scores.ElementPairScores)}.
+	 *
+	 * Scores are stored as floats, so values may differ from the original in
+	 * the last decimal places. The AsymBMC_IC Terms column is left empty, as
+	 * best matches for individual classes are not stored.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTabular(PrintStream out) throws IOException {
+		String sep = "\t";
+		boolean isHeaderLine = true;
+		int numCommentsWritten = 0;
+		StringBuilder sb = new StringBuilder();
+		while (next()) {
+			for (; numCommentsWritten < comments.size(); numCommentsWritten++) {
+				out.print("# ");
+				out.println(comments.get(numCommentsWritten));
+			}
+			if (isHeaderLine) {
+				out.println("A\tA_Label\tB_ID\tB_Label\tNumAnnots A\tNumAnnots B\tRank_of_B\t"+
+						"Combined\tSimJ\tMaxIC\tMaxIC Term\tAsymBMA_IC\tAsymBMC_IC Terms");
+				isHeaderLine = false;
+			}
+			sb.setLength(0);
+			sb.append(format(getAId())).append(sep);
+			sb.append(format(getALabel())).append(sep);
+			sb.append(format(getBId())).append(sep);
+			sb.append(format(getBLabel())).append(sep);
+			sb.append(getNumAnnotsA()).append(sep);
+			sb.append(getNumAnnotsB()).append(sep);
+			if (getRank() >= 0)
+				sb.append(getRank());
+			sb.append(sep);
+			if (!Float.isNaN(getCombinedScore()))
+				sb.append((int) getCombinedScore());
+			sb.append(sep);
+			sb.append(format(getSimJ())).append(sep);
+			if (!Float.isNaN(getMaxIC())) {
+				sb.append(format(getMaxIC())).append(sep);
+				sb.append(format(getMaxICTerm())).append(sep);
+			}
+			else {
+				sb.append(sep).append(sep);
+			}
+			sb.append(format(getBmaAsymIC())).append(sep);
+			sb.append(sep);
+			sb.append(format(getBmaSymIC()));
+			out.println(sb);
+		}
+		for (; numCommentsWritten < comments.size(); numCommentsWritten++) {
+			out.print("# ");
+			out.println(comments.get(numCommentsWritten));
+		}
+		out.flush();
+	}
+}
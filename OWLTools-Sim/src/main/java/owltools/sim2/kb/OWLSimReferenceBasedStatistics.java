@@ -1,6 +1,7 @@
 package owltools.sim2.kb;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -16,8 +17,10 @@ import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLOntology;
 
 import owltools.graph.OWLGraphWrapper;
+import owltools.sim2.AnnotationICStatistics;
 import owltools.sim2.OwlSim;
 import owltools.sim2.UnknownOWLClassException;
+import owltools.sim2.scores.ElementPairScores;
 
 public class OWLSimReferenceBasedStatistics {
 
@@ -28,6 +31,8 @@ public class OWLSimReferenceBasedStatistics {
 	private OWLGraphWrapper ontologyGraph;
 	
 	private Map<IRI, DescriptiveStatistics> referenceStats;
+	private final Map<Set<OWLClass>, ReferenceICDistributions> referenceDistributions =
+			new HashMap<Set<OWLClass>, ReferenceICDistributions>();
 
 	/**
 	 * Assuming owlsim, ontologyGraph and sourceOntology objects already initialized
@@ -45,9 +50,19 @@ public class OWLSimReferenceBasedStatistics {
 	private void computeReferenceStats() throws UnknownOWLClassException {
 		LOG.info("Computing variance for reference entities ...");
 
+		// use the attribute ICs precomputed by the sim, if available
+		AnnotationICStatistics icStats = owlsim.getAnnotationICStatistics();
+
 		// Compute and cache raw stats for all possible reference entities / disorders
 		for (OWLNamedIndividual reference : sourceOntology.getIndividualsInSignature()) {
-			DescriptiveStatistics stats = this.computeDescriptiveStatistics(reference);
+			double[] ics = icStats == null ? null : icStats.getAttributeICs(reference);
+			DescriptiveStatistics stats;
+			if (ics != null) {
+				stats = new DescriptiveStatistics(ics);
+			}
+			else {
+				stats = this.computeDescriptiveStatistics(reference);
+			}
 			referenceStats.put(reference.getIRI(), stats);
 		}
 	}
@@ -93,6 +108,31 @@ public class OWLSimReferenceBasedStatistics {
 		return referenceStats;
 	}
 
+	/**
+	 * @return sorted IC distributions of all reference entities, computed once
+	 * @throws UnknownOWLClassException
+	 */
+	public ReferenceICDistributions getReferenceDistributions() throws UnknownOWLClassException {
+		return getReferenceDistributions(Collections.<OWLClass>emptySet());
+	}
+
+	/**
+	 * @param topLevelReferenceEntities
+	 * @return sorted IC distributions of all reference entities, overall and
+	 * for each subgraph; computed once for each set of top level entities
+	 * @throws UnknownOWLClassException
+	 */
+	public synchronized ReferenceICDistributions getReferenceDistributions(Set<OWLClass> topLevelReferenceEntities) throws UnknownOWLClassException {
+		ReferenceICDistributions d = referenceDistributions.get(topLevelReferenceEntities);
+		if (d == null) {
+			LOG.info("Computing reference distributions for "+topLevelReferenceEntities.size()+" subgraphs");
+			Set<OWLClass> key = new HashSet<OWLClass>(topLevelReferenceEntities);
+			d = new ReferenceICDistributions(this, key);
+			referenceDistributions.put(key, d);
+		}
+		return d;
+	}
+
 	protected double[] retrieveCandidatesIC(Set<OWLClass> candidates) {
 		List<Double> icList = new ArrayList<Double>();
 
@@ -153,6 +193,10 @@ public class OWLSimReferenceBasedStatistics {
 		return new OwlSimPValue(this).getPValue(candidates, referenceEntity, topLevelReferenceEntities);
 	}
 
+	public List<PValue> getPValues(Set<OWLClass> candidates, List<ElementPairScores> matches) throws UnknownOWLClassException {
+		return new OwlSimPValue(this).getPValues(candidates, matches);
+	}
+
 	//Sampling rate in IC values - e.g., 0.05
 	public ICDistribution getICDistribution(Set<OWLClass> candidates, IRI referenceEntity, double samplingRate) throws OwlSimVarianceEntityReferenceNotFoundException {
 		if (!referenceStats.containsKey(referenceEntity)) {
@@ -170,24 +214,12 @@ public class OWLSimReferenceBasedStatistics {
 		}
 		
 		Map<IRI, ICDistribution> result = new HashMap<IRI, ICDistribution>();
-		Map<IRI, Map<IRI, OWLClass>> subClasses = this.getDescendants(topLevelReferenceEntities);
+		ReferenceICDistributions dists = getReferenceDistributions(topLevelReferenceEntities);
 		Set<OWLClass> attributes = this.getAttributes(referenceEntity);
 
-		for (IRI topLevelIRI : subClasses.keySet()) {
-			Map<IRI, OWLClass> actualSubClasses = subClasses.get(topLevelIRI);
-			Set<OWLClass> candidateSubset = new HashSet<OWLClass>();
-			for (OWLClass cls : candidates) {
-				if (actualSubClasses.containsKey(cls.getIRI())) {
-					candidateSubset.add(cls);
-				}
-			}
-			
-			Set<OWLClass> referenceSubset = new HashSet<OWLClass>();
-			for (OWLClass cls : attributes) {
-				if (actualSubClasses.containsKey(cls.getIRI())) {
-					referenceSubset.add(cls);
-				}
-			}
+		for (IRI topLevelIRI : dists.getTopLevelReferenceEntities()) {
+			Set<OWLClass> candidateSubset = dists.restrict(candidates, topLevelIRI);
+			Set<OWLClass> referenceSubset = dists.restrict(attributes, topLevelIRI);
 			
 			if (!candidateSubset.isEmpty() && !referenceSubset.isEmpty()) {
 				double[] icData = this.retrieveCandidatesIC(candidateSubset);
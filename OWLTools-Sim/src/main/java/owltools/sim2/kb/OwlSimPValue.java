@@ -2,18 +2,29 @@ package owltools.sim2.kb;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math3.stat.inference.TestUtils;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLClass;
 
 import owltools.sim2.UnknownOWLClassException;
+import owltools.sim2.kb.ReferenceICDistributions.CandidateSummary;
+import owltools.sim2.kb.ReferenceICDistributions.Distribution;
+import owltools.sim2.scores.ElementPairScores;
 
+/**
+ * Compares the ICs of a set of candidate classes with the ICs of the
+ * attributes of a reference entity, using a t-test against the reference
+ * mean, a one way ANOVA, and the Kolmogorov-Smirnov statistic.
+ *
+ * Reference distributions are precomputed as sorted arrays (see
+ * {@link ReferenceICDistributions}), and the candidate ICs are summarized
+ * once per call, so scoring a whole list of matches with
+ * {@link #getPValues(Set, List)} costs little more than scoring one.
+ *
+ */
 public class OwlSimPValue {
 
 	private OWLSimReferenceBasedStatistics refBasedStats;
@@ -22,62 +33,89 @@ public class OwlSimPValue {
 		this.refBasedStats = refBasedStats;
 	}
 
-	public PValue getPValue(Set<OWLClass> candidates, IRI referenceEntity) throws OwlSimVarianceEntityReferenceNotFoundException {
-		if (!refBasedStats.getReferenceStats().containsKey(referenceEntity)) {
+	public PValue getPValue(Set<OWLClass> candidates, IRI referenceEntity) throws OwlSimVarianceEntityReferenceNotFoundException, UnknownOWLClassException {
+		ReferenceICDistributions dists = refBasedStats.getReferenceDistributions();
+		if (!dists.hasReference(referenceEntity)) {
 			throw new OwlSimVarianceEntityReferenceNotFoundException(referenceEntity);
 		}
 
 		// Create IC list for candidates provided
-		double[] icData = refBasedStats.retrieveCandidatesIC(candidates);
-		List<double[]> sets = new ArrayList<double[]>();
-		sets.add(icData);
-		sets.add(refBasedStats.getReferenceStats().get(referenceEntity).getValues());
-
-		return new PValue(TestUtils.tTest(refBasedStats.getReferenceStats().get(referenceEntity).getMean(), icData),
-				TestUtils.oneWayAnovaPValue(sets), 
-				TestUtils.kolmogorovSmirnovStatistic(icData, refBasedStats.getReferenceStats().get(referenceEntity).getValues()));
+		CandidateSummary c = ReferenceICDistributions.summarize(refBasedStats.retrieveCandidatesIC(candidates));
+		return ReferenceICDistributions.getPValue(c, dists.getDistribution(referenceEntity));
 	}
 
 	public Map<IRI, PValue> getPValue(Set<OWLClass> candidates,
 			IRI referenceEntity, Set<OWLClass> topLevelReferenceEntities) throws OwlSimVarianceEntityReferenceNotFoundException, UnknownOWLClassException {
-		Map<IRI, PValue> pValueResult = new HashMap<IRI, PValue>();
-		
-		if (!refBasedStats.getReferenceStats().containsKey(referenceEntity)) {
+		ReferenceICDistributions dists = refBasedStats.getReferenceDistributions(topLevelReferenceEntities);
+		if (!dists.hasReference(referenceEntity)) {
 			throw new OwlSimVarianceEntityReferenceNotFoundException(referenceEntity);
 		}
-		Map<IRI, Map<IRI, OWLClass>> subClasses = refBasedStats.getDescendants(topLevelReferenceEntities);
-		Set<OWLClass> attributes = refBasedStats.getAttributes(referenceEntity);
+		return getPValue(getCandidateSummaries(candidates, dists), referenceEntity, dists);
+	}
 
-		for (IRI topLevelIRI : subClasses.keySet()) {
-			Map<IRI, OWLClass> actualSubClasses = subClasses.get(topLevelIRI);
-			Set<OWLClass> candidateSubset = new HashSet<OWLClass>();
-			for (OWLClass cls : candidates) {
-				if (actualSubClasses.containsKey(cls.getIRI())) {
-					candidateSubset.add(cls);
-				}
-			}
-			
-			Set<OWLClass> referenceSubset = new HashSet<OWLClass>();
-			for (OWLClass cls : attributes) {
-				if (actualSubClasses.containsKey(cls.getIRI())) {
-					referenceSubset.add(cls);
-				}
+	/**
+	 * Scores each match against the query; the matched element (j) of
+	 * each {@link ElementPairScores} is used as the reference entity.
+	 *
+	 * @param candidates - query classes
+	 * @param matches
+	 * @return p-values in the same order as the matches; null for matches
+	 * whose element is not a reference entity
+	 * @throws UnknownOWLClassException
+	 */
+	public List<PValue> getPValues(Set<OWLClass> candidates, List<ElementPairScores> matches) throws UnknownOWLClassException {
+		ReferenceICDistributions dists = refBasedStats.getReferenceDistributions();
+		CandidateSummary c = ReferenceICDistributions.summarize(refBasedStats.retrieveCandidatesIC(candidates));
+		List<PValue> pValues = new ArrayList<PValue>(matches.size());
+		for (ElementPairScores m : matches) {
+			Distribution ref = dists.getDistribution(m.j.getIRI());
+			pValues.add(ref == null ? null : ReferenceICDistributions.getPValue(c, ref));
+		}
+		return pValues;
+	}
+
+	/**
+	 * As {@link #getPValues(Set, List)}, for each top level subgraph
+	 *
+	 * @param candidates - query classes
+	 * @param matches
+	 * @param topLevelReferenceEntities
+	 * @return p-values by subgraph, in the same order as the matches
+	 * @throws UnknownOWLClassException
+	 */
+	public List<Map<IRI, PValue>> getPValues(Set<OWLClass> candidates, List<ElementPairScores> matches,
+			Set<OWLClass> topLevelReferenceEntities) throws UnknownOWLClassException {
+		ReferenceICDistributions dists = refBasedStats.getReferenceDistributions(topLevelReferenceEntities);
+		Map<IRI, CandidateSummary> summaries = getCandidateSummaries(candidates, dists);
+		List<Map<IRI, PValue>> pValues = new ArrayList<Map<IRI, PValue>>(matches.size());
+		for (ElementPairScores m : matches) {
+			pValues.add(getPValue(summaries, m.j.getIRI(), dists));
+		}
+		return pValues;
+	}
+
+	private Map<IRI, CandidateSummary> getCandidateSummaries(Set<OWLClass> candidates,
+			ReferenceICDistributions dists) {
+		Map<IRI, CandidateSummary> summaries = new HashMap<IRI, CandidateSummary>();
+		for (IRI topLevelIRI : dists.getTopLevelReferenceEntities()) {
+			Set<OWLClass> candidateSubset = dists.restrict(candidates, topLevelIRI);
+			if (!candidateSubset.isEmpty()) {
+				summaries.put(topLevelIRI, 
+						ReferenceICDistributions.summarize(refBasedStats.retrieveCandidatesIC(candidateSubset)));
 			}
-			
-			if (!candidateSubset.isEmpty() && !referenceSubset.isEmpty()) {
-				double[] icData = refBasedStats.retrieveCandidatesIC(candidateSubset);
-				DescriptiveStatistics stats = refBasedStats.computeDescriptiveStatistics(referenceSubset);
-				
-				List<double[]> sets = new ArrayList<double[]>();
-				sets.add(icData);
-				sets.add(stats.getValues());
+		}
+		return summaries;
+	}
 
-				pValueResult.put(topLevelIRI, new PValue(TestUtils.tTest(stats.getMean(), icData),
-						TestUtils.oneWayAnovaPValue(sets), 
-						TestUtils.kolmogorovSmirnovStatistic(icData, stats.getValues())));
+	private Map<IRI, PValue> getPValue(Map<IRI, CandidateSummary> summaries,
+			IRI referenceEntity, ReferenceICDistributions dists) {
+		Map<IRI, PValue> pValueResult = new HashMap<IRI, PValue>();
+		for (Map.Entry<IRI, CandidateSummary> e : summaries.entrySet()) {
+			Distribution ref = dists.getDistribution(referenceEntity, e.getKey());
+			if (ref != null) {
+				pValueResult.put(e.getKey(), ReferenceICDistributions.getPValue(e.getValue(), ref));
 			}
 		}
-		
 		return pValueResult;
 	}
 
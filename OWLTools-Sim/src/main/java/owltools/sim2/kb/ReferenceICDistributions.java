@@ -0,0 +1,219 @@
+package owltools.sim2.kb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.math3.distribution.FDistribution;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.util.FastMath;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+
+import owltools.sim2.UnknownOWLClassException;
+
+/**
+ * Precomputed IC distributions of all reference entities, overall and
+ * for each of a set of top level subgraphs.
+ *
+ * Each distribution is a sorted array of ICs together with its sum and sum of
+ * squares. The statistics computed by {@link OwlSimPValue} then need no
+ * per-reference work beyond a binary search per value for the
+ * Kolmogorov-Smirnov statistic; the t-test and ANOVA p-values are computed
+ * from the sums. The candidate side is summarized once per query with
+ * {@link #summarize(double[])}, and can be reused for any number of references.
+ *
+ * @see OWLSimReferenceBasedStatistics#getReferenceDistributions(Set)
+ */
+public class ReferenceICDistributions {
+
+	/**
+	 * Sorted values, with sums
+	 */
+	static class Distribution {
+		final double[] sorted;
+		final double sum;
+		final double sumSq;
+
+		Distribution(double[] values) {
+			sorted = values.clone();
+			Arrays.sort(sorted);
+			double s = 0.0;
+			double ss = 0.0;
+			for (double v : sorted) {
+				s += v;
+				ss += v * v;
+			}
+			sum = s;
+			sumSq = ss;
+		}
+
+		int size() {
+			return sorted.length;
+		}
+
+		double mean() {
+			return sum / sorted.length;
+		}
+	}
+
+	/**
+	 * Candidate ICs, summarized once per query
+	 */
+	static class CandidateSummary extends Distribution {
+		final double variance;
+		final TDistribution tDistribution;
+
+		CandidateSummary(double[] values) {
+			super(values);
+			int n = size();
+			variance = n > 1 ? (sumSq - sum * sum / n) / (n - 1) : Double.NaN;
+			tDistribution = n > 1 ? new TDistribution(null, n - 1) : null;
+		}
+	}
+
+	private final Map<IRI, Distribution> overall = new HashMap<IRI, Distribution>();
+	private final Map<IRI, Map<IRI, Distribution>> bySubgraph = new HashMap<IRI, Map<IRI, Distribution>>();
+	private final Map<IRI, Set<IRI>> subgraphMembers = new HashMap<IRI, Set<IRI>>();
+
+	/**
+	 * @param stats
+	 * @param topLevelReferenceEntities - roots of the subgraphs; may be empty
+	 * @throws UnknownOWLClassException
+	 */
+	public ReferenceICDistributions(OWLSimReferenceBasedStatistics stats,
+			Set<OWLClass> topLevelReferenceEntities) throws UnknownOWLClassException {
+		Map<IRI, Map<IRI, OWLClass>> descendants = stats.getDescendants(topLevelReferenceEntities);
+		for (Map.Entry<IRI, Map<IRI, OWLClass>> e : descendants.entrySet()) {
+			subgraphMembers.put(e.getKey(), new HashSet<IRI>(e.getValue().keySet()));
+			bySubgraph.put(e.getKey(), new HashMap<IRI, Distribution>());
+		}
+		for (IRI reference : stats.getReferenceStats().keySet()) {
+			overall.put(reference, new Distribution(stats.getReferenceStats().get(reference).getValues()));
+			if (subgraphMembers.isEmpty())
+				continue;
+			Set<OWLClass> attributes = stats.getAttributes(reference);
+			for (IRI topLevel : subgraphMembers.keySet()) {
+				Set<OWLClass> subset = restrict(attributes, topLevel);
+				if (!subset.isEmpty()) {
+					double[] ics = stats.computeDescriptiveStatistics(subset).getValues();
+					bySubgraph.get(topLevel).put(reference, new Distribution(ics));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param classes
+	 * @param topLevel
+	 * @return members of classes that are in the subgraph
+	 */
+	public Set<OWLClass> restrict(Set<OWLClass> classes, IRI topLevel) {
+		Set<IRI> members = subgraphMembers.get(topLevel);
+		if (members == null) {
+			return Collections.emptySet();
+		}
+		Set<OWLClass> subset = new HashSet<OWLClass>();
+		for (OWLClass c : classes) {
+			if (members.contains(c.getIRI())) {
+				subset.add(c);
+			}
+		}
+		return subset;
+	}
+
+	/**
+	 * @return roots of the precomputed subgraphs
+	 */
+	public Set<IRI> getTopLevelReferenceEntities() {
+		return subgraphMembers.keySet();
+	}
+
+	public boolean hasReference(IRI reference) {
+		return overall.containsKey(reference);
+	}
+
+	Distribution getDistribution(IRI reference) {
+		return overall.get(reference);
+	}
+
+	Distribution getDistribution(IRI reference, IRI topLevel) {
+		Map<IRI, Distribution> m = bySubgraph.get(topLevel);
+		return m == null ? null : m.get(reference);
+	}
+
+	static CandidateSummary summarize(double[] candidateICs) {
+		return new CandidateSummary(candidateICs);
+	}
+
+	/**
+	 * Same as {@link org.apache.commons.math3.stat.inference.TestUtils#tTest(double, double[])},
+	 * comparing the candidates with the reference mean
+	 *
+	 * @return two sided p-value, or NaN if there are fewer than two candidates
+	 */
+	static double tTest(CandidateSummary c, Distribution ref) {
+		if (c.tDistribution == null) {
+			return Double.NaN;
+		}
+		double t = FastMath.abs((c.mean() - ref.mean()) / FastMath.sqrt(c.variance / c.size()));
+		return 2.0 * c.tDistribution.cumulativeProbability(-t);
+	}
+
+	/**
+	 * Same as {@link org.apache.commons.math3.stat.inference.TestUtils#oneWayAnovaPValue(java.util.Collection)}
+	 * for the two groups
+	 *
+	 * @return p-value, or NaN if either group has fewer than two values
+	 */
+	static double anovaPValue(Distribution a, Distribution b) {
+		if (a.size() < 2 || b.size() < 2) {
+			return Double.NaN;
+		}
+		int totNum = a.size() + b.size();
+		double totSum = a.sum + b.sum;
+		double totSumSq = a.sumSq + b.sumSq;
+		double sswg = (a.sumSq - a.sum * a.sum / a.size()) + (b.sumSq - b.sum * b.sum / b.size());
+		double sstot = totSumSq - totSum * totSum / totNum;
+		double ssbg = sstot - sswg;
+		int dfbg = 1;
+		int dfwg = totNum - 2;
+		double f = (ssbg / dfbg) / (sswg / dfwg);
+		FDistribution fdist = new FDistribution(null, dfbg, dfwg);
+		return 1.0 - fdist.cumulativeProbability(f);
+	}
+
+	/**
+	 * Same as {@link org.apache.commons.math3.stat.inference.TestUtils#kolmogorovSmirnovStatistic(double[], double[])},
+	 * using the presorted arrays
+	 *
+	 * @return two sample Kolmogorov-Smirnov statistic
+	 */
+	static double kolmogorovSmirnovStatistic(Distribution x, Distribution y) {
+		double[] sx = x.sorted;
+		double[] sy = y.sorted;
+		int n = sx.length;
+		int m = sy.length;
+		double supD = 0.0;
+		for (int i = 0; i < n; i++) {
+			double cdfX = (i + 1.0) / n;
+			int yIndex = Arrays.binarySearch(sy, sx[i]);
+			double cdfY = yIndex >= 0 ? (yIndex + 1.0) / m : (-yIndex - 1.0) / m;
+			supD = FastMath.max(supD, FastMath.abs(cdfX - cdfY));
+		}
+		for (int i = 0; i < m; i++) {
+			double cdfY = (i + 1.0) / m;
+			int xIndex = Arrays.binarySearch(sx, sy[i]);
+			double cdfX = xIndex >= 0 ? (xIndex + 1.0) / n : (-xIndex - 1.0) / n;
+			supD = FastMath.max(supD, FastMath.abs(cdfX - cdfY));
+		}
+		return supD;
+	}
+
+	static PValue getPValue(CandidateSummary c, Distribution ref) {
+		return new PValue(tTest(c, ref), anovaPValue(c, ref), kolmogorovSmirnovStatistic(c, ref));
+	}
+}
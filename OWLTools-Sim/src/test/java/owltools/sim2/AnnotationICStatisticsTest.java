@@ -0,0 +1,82 @@
+package owltools.sim2;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+import owltools.sim2.OwlSim.Stat;
+import owltools.sim2.OwlSim.StatsPerIndividual;
+
+/**
+ * Compares the precomputed statistics in {@link AnnotationICStatistics}
+ * with statistics computed directly from the reasoner
+ */
+public class AnnotationICStatisticsTest extends AbstractOWLSimTest {
+
+	@Test
+	public void testSubgraphStats() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOBO(getResource("sim/mp-subset-1.obo").getAbsolutePath());
+		g =  new OWLGraphWrapper(sourceOntol);
+		parseAssociations(getResource("sim/mgi-gene2mp-subset-1.tbl"), g);
+		this.createOwlSim();
+		owlsim.createElementAttributeMapFromOntology();
+		owlsim.computeSystemStats();
+		AnnotationICStatistics icStats = owlsim.getAnnotationICStatistics();
+		assertNotNull(icStats);
+
+		List<String> ids = Arrays.asList("MP:0000001", "MP:0000003", "MP:0001544", "MP:0003631");
+		OWLReasoner reasoner = owlsim.getReasoner();
+		double maxIC = owlsim.getSummaryStatistics().max.getMax();
+		for (String id : ids) {
+			OWLClass root = g.getOWLClassByIdentifier(id);
+			StatsPerIndividual expected = new StatsPerIndividual();
+			for (OWLNamedIndividual i : owlsim.getAllElements()) {
+				SummaryStatistics s = new SummaryStatistics();
+				for (OWLClass c : owlsim.getAttributesForElement(i)) {
+					if (reasoner.getSuperClasses(c, false).containsEntity(root) ||
+							reasoner.getEquivalentClasses(c).contains(root)) {
+						Double ic = owlsim.getInformationContentForAttribute(c);
+						s.addValue(ic == null || ic.isInfinite() ? maxIC : ic);
+					}
+				}
+				if (s.getN() > 0) {
+					expected.mean.addValue(s.getMean());
+					expected.max.addValue(s.getMax());
+					expected.sum.addValue(s.getSum());
+					expected.n.addValue(s.getN());
+				}
+			}
+			StatsPerIndividual actual = owlsim.getSummaryStatistics(root);
+			assertEquals(id, expected.n.getN(), actual.n.getN());
+			assertEquals(id, expected.mean.getMean(), actual.mean.getMean(), 1e-9);
+			assertEquals(id, expected.max.getMax(), actual.max.getMax(), 1e-9);
+			assertEquals(id, expected.sum.getMean(), actual.sum.getMean(), 1e-9);
+		}
+
+		// quantiles over all elements
+		double median = icStats.getQuantile(Stat.MAX, 0.5);
+		assertTrue(median <= owlsim.getSummaryStatistics().max.getMax());
+		assertEquals(1.0, icStats.getPercentileRank(Stat.MAX, owlsim.getSummaryStatistics().max.getMax()), 1e-9);
+
+		// round trip
+		File f = new File("target/annotation-ic-stats.bin");
+		icStats.save(f);
+		AnnotationICStatistics loaded = AnnotationICStatistics.load(f, sourceOntol.getOWLOntologyManager().getOWLDataFactory());
+		assertEquals(icStats.getStatsPerIndividual().mean.getMean(),
+				loaded.getStatsPerIndividual().mean.getMean(), 1e-9);
+		OWLClass root = g.getOWLClassByIdentifier("MP:0000003");
+		assertEquals(icStats.getStatsPerIndividual(root).sum.getMean(),
+				loaded.getStatsPerIndividual(root).sum.getMean(), 1e-9);
+	}
+}
@@ -0,0 +1,78 @@
+package owltools.sim2;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+import owltools.sim2.OwlSim.ScoreAttributeSetPair;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * Compares the best match average scores from the int-indexed kernel in
+ * {@link FastOwlSim} with scores computed pair by pair from
+ * {@link OwlSim#getLowestCommonSubsumerWithIC(OWLClass, OWLClass)}
+ */
+public class BestMatchAverageTest extends AbstractOWLSimTest {
+
+	@Test
+	public void testBestMatchAverage() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOBO(getResource("sim/mp-subset-1.obo").getAbsolutePath());
+		g =  new OWLGraphWrapper(sourceOntol);
+		parseAssociations(getResource("sim/mgi-gene2mp-subset-1.tbl"), g);
+		this.createOwlSim();
+		owlsim.createElementAttributeMapFromOntology();
+
+		List<OWLNamedIndividual> elements = new ArrayList<OWLNamedIndividual>(owlsim.getAllElements());
+		Collections.sort(elements);
+		elements = elements.subList(0, Math.min(elements.size(), 10));
+		for (OWLNamedIndividual i : elements) {
+			for (OWLNamedIndividual j : elements) {
+				// run twice: the first fills the LCS cache, the second reads from it
+				for (int n=0; n<2; n++) {
+					ElementPairScores s = owlsim.getGroupwiseSimilarity(i, j, -1, -1);
+					assertBestMatches(owlsim.getAttributesForElement(i), owlsim.getAttributesForElement(j), s);
+				}
+			}
+		}
+	}
+
+	private void assertBestMatches(Set<OWLClass> cs, Set<OWLClass> ds, ElementPairScores s) throws Exception {
+		double maxIC = 0.0;
+		double bestForCTotal = 0.0;
+		for (OWLClass c : cs) {
+			double best = 0.0;
+			for (OWLClass d : ds) {
+				ScoreAttributeSetPair sap = owlsim.getLowestCommonSubsumerWithIC(c, d);
+				best = Math.max(best, sap.score);
+			}
+			bestForCTotal += best;
+			maxIC = Math.max(maxIC, best);
+		}
+		double bestForDTotal = 0.0;
+		for (OWLClass d : ds) {
+			double best = 0.0;
+			for (OWLClass c : cs) {
+				best = Math.max(best, owlsim.getLowestCommonSubsumerWithIC(c, d).score);
+			}
+			bestForDTotal += best;
+		}
+		// scores of tied LCSs may differ by up to 0.01
+		assertEquals(maxIC, s.maxIC, 0.01);
+		assertEquals(bestForCTotal / cs.size(), s.bmaAsymIC, 0.01);
+		assertEquals(bestForDTotal / ds.size(), s.bmaInverseAsymIC, 0.01);
+		assertEquals((bestForCTotal + bestForDTotal) / (cs.size() + ds.size()), s.bmaSymIC, 0.01);
+		assertNotNull(s.maxICwitness);
+		assertEquals(cs.size(), s.iclcsMatrix.bestForC.length);
+		assertEquals(ds.size(), s.iclcsMatrix.bestForD.length);
+	}
+}
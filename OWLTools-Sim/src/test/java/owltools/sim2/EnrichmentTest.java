@@ -3,8 +3,13 @@ package owltools.sim2;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.commons.math.MathException;
 import org.apache.log4j.Logger;
@@ -15,6 +20,7 @@ import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import owltools.graph.OWLGraphWrapper;
 import owltools.io.OWLPrettyPrinter;
@@ -37,29 +43,7 @@ public class EnrichmentTest extends AbstractOWLSimTest {
 
 	@Test
 	public void enrichmentTestGO() throws Exception, MathException {
-		ParserWrapper pw = new ParserWrapper();
-		sourceOntol = pw.parseOBO(getResourceIRIString("go-subset-t1.obo"));
-		OWLObjectProperty INVOLVED_IN = OBOUpperVocabulary.RO_involved_in.getObjectProperty(sourceOntol);
-		Map<OWLClass, OWLClass> qmap =
-				TransformationUtils.createObjectPropertyView(sourceOntol, sourceOntol,
-						INVOLVED_IN, null, true);
-		LOG.info("VIEW SIZE"+qmap.size());
-		sourceOntol.getOWLOntologyManager().saveOntology(sourceOntol, IRI.create(new File("target/foo.owl")));
-
-		g = new OWLGraphWrapper(sourceOntol);
-		//IRI vpIRI = g.getOWLObjectPropertyByIdentifier("GOTESTREL:0000001").getIRI();
-
-		TableToAxiomConverter ttac = new TableToAxiomConverter(g);
-		ttac.config.axiomType = AxiomType.CLASS_ASSERTION;
-		//ttac.config.property = vpIRI; //TODO
-		ttac.config.property = INVOLVED_IN.getIRI();
-		ttac.config.isSwitchSubjectObject = true;
-		ttac.parse("src/test/resources/simplegaf-t1.txt");
-		// assume buffering
-		//OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(sourceOntol);
-
-		g.getManager().removeAxioms(sourceOntol,
-				sourceOntol.getAxioms(AxiomType.DISJOINT_CLASSES));
+		Map<OWLClass, OWLClass> qmap = loadGoSubset();
 
 		try {
 			OWLPrettyPrinter pp = new OWLPrettyPrinter(g);
@@ -113,7 +97,123 @@ public class EnrichmentTest extends AbstractOWLSimTest {
 
 	}
 
+	/**
+	 * The bitmap-based implementation in {@link FastOwlSim} must agree with
+	 * the pairwise test of {@link AbstractOwlSim}: every result has the same
+	 * counts and p-value, and any pair passing the cutoffs that is missing
+	 * from the results is redundant with a better result for a more
+	 * specific enriched class.
+	 */
+	@Test
+	public void enrichmentTestAgainstBaseline() throws Exception, MathException {
+		Map<OWLClass, OWLClass> qmap = loadGoSubset();
+		try {
+			createOwlSim();
+			owlsim.createElementAttributeMapFromOntology();
+			OWLReasoner reasoner = owlsim.getReasoner();
 
+			OWLClass pc = g.getDataFactory().getOWLThing();
+			OWLClass vc1 = qmap.get(get("biological_process"));
+			OWLClass vc2 = qmap.get(get("cellular_component"));
+			EnrichmentConfig ec = new EnrichmentConfig();
+			ec.pValueCorrectedCutoff = 0.05;
+			ec.attributeInformationContentCutoff = 3.0;
+			ec.numThreads = 3;
+			owlsim.setEnrichmentConfig(ec);
+			List<EnrichmentResult> results = owlsim.calculateAllByAllEnrichment(pc, vc1, vc2);
+			assertFalse(results.isEmpty());
+
+			// baseline: all pairs passing the cutoffs, tested one by one
+			Map<List<OWLClass>, EnrichmentResult> baseline = new HashMap<List<OWLClass>, EnrichmentResult>();
+			OWLClass nothing = g.getDataFactory().getOWLNothing();
+			for (OWLClass s : reasoner.getSubClasses(vc1, false).getFlattened()) {
+				int sn = owlsim.getNumElementsForAttribute(s);
+				if (s.equals(nothing) || sn < 2 || sn > ec.maximumClassSize)
+					continue;
+				for (OWLClass e : reasoner.getSubClasses(vc2, false).getFlattened()) {
+					int en = owlsim.getNumElementsForAttribute(e);
+					if (e.equals(nothing) || en < 2 || en > ec.maximumClassSize)
+						continue;
+					if (s.equals(e) || isSubClassOf(reasoner, s, e) || isSubClassOf(reasoner, e, s))
+						continue;
+					if (owlsim.getInformationContentForAttribute(e) < ec.attributeInformationContentCutoff)
+						continue;
+					EnrichmentResult r = owlsim.calculatePairwiseEnrichment(pc, s, e);
+					if (r != null && r.pValueCorrected <= ec.pValueCorrectedCutoff) {
+						baseline.put(Arrays.asList(s, e), r);
+					}
+				}
+			}
 
+			Set<List<OWLClass>> found = new HashSet<List<OWLClass>>();
+			for (EnrichmentResult r : results) {
+				List<OWLClass> key = Arrays.asList(r.sampleSetClass, r.enrichedClass);
+				EnrichmentResult b = baseline.get(key);
+				assertNotNull("not in baseline: "+r, b);
+				assertEquals(b.populationClassSize, r.populationClassSize);
+				assertEquals(b.sampleSetClassSize, r.sampleSetClassSize);
+				assertEquals(b.enrichedClassSize, r.enrichedClassSize);
+				assertEquals(b.eiSetSize, r.eiSetSize);
+				assertEquals(b.pValue, r.pValue, 1e-6 * Math.max(b.pValue, 1e-300));
+				assertEquals(b.pValueCorrected, r.pValueCorrected, 1e-6 * Math.max(b.pValueCorrected, 1e-300));
+				found.add(key);
+			}
+			for (Entry<List<OWLClass>, EnrichmentResult> entry : baseline.entrySet()) {
+				if (found.contains(entry.getKey()))
+					continue;
+				EnrichmentResult b = entry.getValue();
+				boolean isRedundant = false;
+				for (EnrichmentResult r : results) {
+					if (r.sampleSetClass.equals(b.sampleSetClass)
+							&& r.pValue <= b.pValue
+							&& isSubClassOf(reasoner, r.enrichedClass, b.enrichedClass)) {
+						isRedundant = true;
+						break;
+					}
+				}
+				assertTrue("missing: "+b, isRedundant);
+			}
+
+			// same output regardless of the number of threads
+			ec.numThreads = 1;
+			assertEquals(results, owlsim.calculateAllByAllEnrichment(pc, vc1, vc2));
+		}
+		finally {
+			owlsim.getReasoner().dispose();
+		}
+	}
+
+	private static boolean isSubClassOf(OWLReasoner reasoner, OWLClass sub, OWLClass sup) {
+		return reasoner.getSuperClasses(sub, false).containsEntity(sup);
+	}
+
+	// GO subset with a property view over involved_in, and class assertions
+	// from a simple GAF; disjointness axioms are removed
+	private Map<OWLClass, OWLClass> loadGoSubset() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOBO(getResourceIRIString("go-subset-t1.obo"));
+		OWLObjectProperty INVOLVED_IN = OBOUpperVocabulary.RO_involved_in.getObjectProperty(sourceOntol);
+		Map<OWLClass, OWLClass> qmap =
+				TransformationUtils.createObjectPropertyView(sourceOntol, sourceOntol,
+						INVOLVED_IN, null, true);
+		LOG.info("VIEW SIZE"+qmap.size());
+		sourceOntol.getOWLOntologyManager().saveOntology(sourceOntol, IRI.create(new File("target/foo.owl")));
+
+		g = new OWLGraphWrapper(sourceOntol);
+		//IRI vpIRI = g.getOWLObjectPropertyByIdentifier("GOTESTREL:0000001").getIRI();
+
+		TableToAxiomConverter ttac = new TableToAxiomConverter(g);
+		ttac.config.axiomType = AxiomType.CLASS_ASSERTION;
+		//ttac.config.property = vpIRI; //TODO
+		ttac.config.property = INVOLVED_IN.getIRI();
+		ttac.config.isSwitchSubjectObject = true;
+		ttac.parse("src/test/resources/simplegaf-t1.txt");
+		// assume buffering
+		//OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(sourceOntol);
+
+		g.getManager().removeAxioms(sourceOntol,
+				sourceOntol.getAxioms(AxiomType.DISJOINT_CLASSES));
+		return qmap;
+	}
 
 }
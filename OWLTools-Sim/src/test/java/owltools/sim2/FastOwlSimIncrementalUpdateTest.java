@@ -0,0 +1,85 @@
+package owltools.sim2;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.io.ParserWrapper;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * Checks that {@link FastOwlSim#removeElement(OWLNamedIndividual)} and
+ * {@link FastOwlSim#addElementAttributes(OWLNamedIndividual, Set)} leave
+ * the same ICs and scores as a full rebuild
+ */
+public class FastOwlSimIncrementalUpdateTest extends AbstractOWLSimTest {
+
+	@Test
+	public void testRemoveAndAdd() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOBO(getResource("sim/mp-subset-1.obo").getAbsolutePath());
+		g =  new OWLGraphWrapper(sourceOntol);
+		parseAssociations(getResource("sim/mgi-gene2mp-subset-1.tbl"), g);
+		this.createOwlSim();
+		owlsim.createElementAttributeMapFromOntology();
+
+		List<OWLNamedIndividual> elements = new ArrayList<OWLNamedIndividual>(owlsim.getAllElements());
+		Collections.sort(elements);
+		OWLNamedIndividual e = elements.get(0);
+		Set<OWLClass> atts = owlsim.getAttributesForElement(e);
+		List<OWLNamedIndividual> others = elements.subList(1, Math.min(elements.size(), 12));
+
+		// fill the LCS cache, so that stale entries would show
+		compareAll(others);
+
+		owlsim.removeElement(e);
+		assertFalse(owlsim.getAllElements().contains(e));
+		assertSameAsRebuilt(others);
+
+		owlsim.addElementAttributes(e, atts);
+		assertEquals(atts, owlsim.getAttributesForElement(e));
+		List<OWLNamedIndividual> all = new ArrayList<OWLNamedIndividual>(others);
+		all.add(e);
+		assertSameAsRebuilt(all);
+	}
+
+	private void compareAll(List<OWLNamedIndividual> elements) throws Exception {
+		for (OWLNamedIndividual i : elements) {
+			for (OWLNamedIndividual j : elements) {
+				owlsim.getGroupwiseSimilarity(i, j);
+			}
+		}
+	}
+
+	private void assertSameAsRebuilt(List<OWLNamedIndividual> elements) throws Exception {
+		OwlSim rebuilt = owlSimFactory.createOwlSim(sourceOntol);
+		rebuilt.createElementAttributeMapFromOntology();
+		assertEquals(rebuilt.getAllElements(), owlsim.getAllElements());
+		assertEquals(rebuilt.getCorpusSize(), owlsim.getCorpusSize());
+		for (OWLClass c : rebuilt.getAllAttributeClasses()) {
+			assertEquals(c.toString(), rebuilt.getNumElementsForAttribute(c), owlsim.getNumElementsForAttribute(c));
+			assertEquals(c.toString(), rebuilt.getInformationContentForAttribute(c),
+					owlsim.getInformationContentForAttribute(c), 1e-6);
+		}
+		for (OWLNamedIndividual i : elements) {
+			for (OWLNamedIndividual j : elements) {
+				ElementPairScores expected = rebuilt.getGroupwiseSimilarity(i, j);
+				ElementPairScores actual = owlsim.getGroupwiseSimilarity(i, j);
+				assertEquals(expected.maxIC, actual.maxIC, 1e-6);
+				assertEquals(expected.bmaSymIC, actual.bmaSymIC, 1e-6);
+				assertEquals(expected.simGIC, actual.simGIC, 1e-6);
+			}
+		}
+		assertEquals(rebuilt.getSummaryStatistics().mean.getMean(),
+				owlsim.getSummaryStatistics().mean.getMean(), 1e-6);
+		rebuilt.dispose();
+	}
+}
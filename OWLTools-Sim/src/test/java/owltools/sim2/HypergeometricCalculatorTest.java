@@ -0,0 +1,47 @@
+package owltools.sim2;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.HypergeometricDistributionImpl;
+import org.junit.Test;
+
+/**
+ * Checks {@link HypergeometricCalculator} against the commons-math implementation
+ * used by {@link AbstractOwlSim#calculatePairwiseEnrichment}
+ *
+ */
+public class HypergeometricCalculatorTest {
+
+	@Test
+	public void testUpperTail() throws MathException {
+		HypergeometricCalculator hc = new HypergeometricCalculator(500);
+		int[][] tests = {
+				{500, 20, 30, 1},
+				{500, 20, 30, 5},
+				{500, 100, 40, 20},
+				{100, 2, 2, 2},
+				{50, 50, 10, 10},
+		};
+		for (int[] t : tests) {
+			int pop = t[0];
+			int sample = t[1];
+			int enriched = t[2];
+			int overlap = t[3];
+			HypergeometricDistributionImpl hg = new HypergeometricDistributionImpl(pop, sample, enriched);
+			double expected = hg.cumulativeProbability(overlap, Math.min(sample, enriched));
+			double p = hc.upperCumulativeProbability(pop, sample, enriched, overlap);
+			assertEquals(expected, p, Math.max(1e-12, expected * 1e-8));
+		}
+	}
+
+	@Test
+	public void testBestCase() {
+		HypergeometricCalculator hc = new HypergeometricCalculator(1000);
+		double best = hc.bestUpperCumulativeProbability(1000, 10, 50);
+		for (int k=1; k<=10; k++) {
+			assertTrue(hc.upperCumulativeProbability(1000, 10, 50, k) >= best);
+		}
+		assertEquals(best, hc.upperCumulativeProbability(1000, 10, 50, 10), 1e-15);
+	}
+}
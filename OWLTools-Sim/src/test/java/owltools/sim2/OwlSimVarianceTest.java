@@ -1,8 +1,15 @@
 package owltools.sim2;
 
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.math3.stat.StatUtils;
+import org.apache.commons.math3.stat.inference.TestUtils;
+
 import org.apache.log4j.Logger;
 import org.junit.Test;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
@@ -14,6 +21,7 @@ import owltools.graph.OWLGraphWrapper;
 import owltools.io.ParserWrapper;
 import owltools.sim2.kb.OWLSimReferenceBasedStatistics;
 import owltools.sim2.kb.PValue;
+import owltools.sim2.scores.ElementPairScores;
 
 public class OwlSimVarianceTest extends AbstractOWLSimTest {
 
@@ -103,4 +111,52 @@ public class OwlSimVarianceTest extends AbstractOWLSimTest {
 		LOG.info(pValue.getSimplePValue());
 
 	}
+
+	@Test
+	public void testBatchPValues() throws Exception {
+		ParserWrapper pw = new ParserWrapper();
+		sourceOntol = pw.parseOBO(getResource("sim/mp-subset-1.obo").getAbsolutePath());
+		g =  new OWLGraphWrapper(sourceOntol);
+		parseAssociations(getResource("sim/mgi-gene2mp-subset-1.tbl"), g);
+
+		owlsim = owlSimFactory.createOwlSim(sourceOntol);
+		owlsim.createElementAttributeMapFromOntology();
+		owlsim.computeSystemStats();
+		OWLSimReferenceBasedStatistics refBasedStats = new OWLSimReferenceBasedStatistics(owlsim, sourceOntol, g);
+
+		String[] testClasses = new String[] {"MP:0002758", "MP:0002772", "MP:0005448", "MP:0003660"};
+		Set<OWLClass> testClassesSet = new HashSet<OWLClass>();
+		for (String testClass : testClasses) {
+			testClassesSet.add(this.getOBOClass(testClass));
+		}
+		double[] candidateICs = getICs(testClassesSet);
+
+		List<ElementPairScores> matches = owlsim.findMatches(testClassesSet, "MGI");
+		assertFalse(matches.isEmpty());
+		List<PValue> pValues = refBasedStats.getPValues(testClassesSet, matches);
+		assertEquals(matches.size(), pValues.size());
+		for (int k=0; k<matches.size(); k++) {
+			// compare with the unoptimized calculation
+			double[] refICs = getICs(owlsim.getAttributesForElement(matches.get(k).j));
+			PValue p = pValues.get(k);
+			assertEquals(TestUtils.tTest(StatUtils.mean(refICs), candidateICs), p.getSimplePValue(), 1e-9);
+			assertEquals(TestUtils.kolmogorovSmirnovStatistic(candidateICs, refICs), p.getDistributionBasedPValue(), 1e-9);
+			if (refICs.length > 1) {
+				List<double[]> sets = new ArrayList<double[]>();
+				sets.add(candidateICs);
+				sets.add(refICs);
+				assertEquals(TestUtils.oneWayAnovaPValue(sets), p.getAnovaPValue(), 1e-9);
+			}
+		}
+	}
+
+	private double[] getICs(Set<OWLClass> atts) throws UnknownOWLClassException {
+		double[] ics = new double[atts.size()];
+		int n = 0;
+		for (OWLClass c : atts) {
+			Double ic = owlsim.getInformationContentForAttribute(c);
+			ics[n++] = ic == null || ic.isInfinite() ? owlsim.getSummaryStatistics().max.getMax() : ic;
+		}
+		return ics;
+	}
 }
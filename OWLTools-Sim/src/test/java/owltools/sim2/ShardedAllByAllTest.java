@@ -0,0 +1,55 @@
+package owltools.sim2;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests partitioning of the all by all pair space in {@link ShardedAllByAll}
+ */
+public class ShardedAllByAllTest {
+
+	@Test
+	public void testShardsCoverAllPairs() {
+		int[] sizes = {0, 1, 2, 7, 100, 1001};
+		int[] shardCounts = {1, 2, 3, 16};
+		for (int n : sizes) {
+			long totalPairs = ShardedAllByAll.pairsBeforeRow(n, n);
+			// includes self pairs
+			assertEquals((long) n * (n+1) / 2, totalPairs);
+			for (int numShards : shardCounts) {
+				int expectedRow = 0;
+				long pairs = 0;
+				for (int shard=1; shard<=numShards; shard++) {
+					List<int[]> chunks = ShardedAllByAll.getChunks(n, shard, numShards, 50);
+					for (int[] chunk : chunks) {
+						// chunks are contiguous and non-overlapping
+						assertEquals(expectedRow, chunk[0]);
+						assertTrue(chunk[1] > chunk[0]);
+						expectedRow = chunk[1];
+						pairs += ShardedAllByAll.pairsBeforeRow(n, chunk[1]) -
+								ShardedAllByAll.pairsBeforeRow(n, chunk[0]);
+					}
+				}
+				assertEquals(n, expectedRow);
+				assertEquals(totalPairs, pairs);
+			}
+		}
+	}
+
+	@Test
+	public void testShardsAreBalanced() {
+		int n = 10000;
+		int numShards = 8;
+		long total = ShardedAllByAll.pairsBeforeRow(n, n);
+		for (int shard=0; shard<numShards; shard++) {
+			int start = ShardedAllByAll.getShardStartRow(n, shard, numShards);
+			int end = ShardedAllByAll.getShardStartRow(n, shard+1, numShards);
+			long pairs = ShardedAllByAll.pairsBeforeRow(n, end) - ShardedAllByAll.pairsBeforeRow(n, start);
+			// within one row of the ideal size
+			assertEquals(total / (double) numShards, pairs, n);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package owltools.sim2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import owltools.graph.OWLGraphWrapper;
+import owltools.sim2.scores.ElementPairScores;
+
+/**
+ * Round trip tests for {@link BinaryRenderer} and {@link BinaryResultReader}
+ */
+public class BinaryRendererTest {
+
+	private static final String PREFIX = "http://purl.obolibrary.org/obo/";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		OWLOntologyManager m = OWLManager.createOWLOntologyManager();
+		OWLDataFactory df = m.getOWLDataFactory();
+		OWLOntology ont = m.createOntology(IRI.create(PREFIX+"test.owl"));
+		OWLGraphWrapper g = new OWLGraphWrapper(ont);
+		OWLClass c = df.getOWLClass(IRI.create(PREFIX+"X_1"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// small blocks, to test reading across block boundaries
+		BinaryRenderer renderer = new BinaryRenderer(Channels.newChannel(bytes), 2);
+		renderer.setGraph(g);
+		renderer.printComment("test run");
+		int n = 5;
+		for (int k=0; k<n; k++) {
+			OWLNamedIndividual i = df.getOWLNamedIndividual(IRI.create(PREFIX+"A_"+k));
+			OWLNamedIndividual j = df.getOWLNamedIndividual(IRI.create(PREFIX+"B_"+(k % 2)));
+			ElementPairScores s = new ElementPairScores(i, j);
+			s.cs = new Vector<OWLClass>(Collections.singleton(c));
+			s.ds = new Vector<OWLClass>();
+			s.simjScore = k / 10.0;
+			s.combinedScore = k * 10;
+			if (k > 0) {
+				s.maxIC = k + 0.5;
+				s.maxICwitness = Collections.singleton(c);
+			}
+			s.bmaSymIC = 2.0;
+			renderer.printPairScores(s);
+		}
+		renderer.dispose();
+
+		BinaryResultReader reader = new BinaryResultReader(
+				Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+		int k = 0;
+		while (reader.next()) {
+			assertEquals("A:"+k, reader.getAId());
+			assertEquals("B:"+(k % 2), reader.getBId());
+			assertEquals(1, reader.getNumAnnotsA());
+			assertEquals(0, reader.getNumAnnotsB());
+			assertEquals(-1, reader.getRank());
+			assertEquals(k * 10, (int) reader.getCombinedScore());
+			assertEquals(k / 10.0, reader.getSimJ(), 1e-6);
+			if (k > 0) {
+				assertEquals(k + 0.5, reader.getMaxIC(), 1e-6);
+				assertNotNull(reader.getMaxICTerm());
+			}
+			else {
+				assertTrue(Float.isNaN(reader.getMaxIC()));
+				assertNull(reader.getMaxICTerm());
+			}
+			assertTrue(Float.isNaN(reader.getSimGIC()));
+			assertEquals(2.0, reader.getBmaSymIC(), 1e-6);
+			k++;
+		}
+		assertEquals(n, k);
+		assertEquals(Collections.singletonList("test run"), reader.getComments());
+		reader.close();
+
+		// conversion to TSV
+		reader = new BinaryResultReader(
+				Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+		ByteArrayOutputStream tsv = new ByteArrayOutputStream();
+		reader.writeTabular(new PrintStream(tsv));
+		reader.close();
+		String[] lines = tsv.toString().split("\n");
+		assertEquals("# test run", lines[0]);
+		assertTrue(lines[1].startsWith("A\tA_Label\tB_ID"));
+		assertEquals(n + 2, lines.length);
+		assertTrue(lines[2].startsWith("A:0\t"));
+	}
+}
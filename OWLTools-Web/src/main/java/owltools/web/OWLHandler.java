@@ -14,9 +14,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -52,7 +56,7 @@ import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import owltools.frame.jsonld.ClassFrameLD;
 import owltools.frame.jsonld.FrameMakerLD;
 import owltools.frame.jsonld.OntologyFrameLD;
-import owltools.gaf.inference.TaxonConstraintsEngine;
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.gfx.GraphicsConfig;
 import owltools.gfx.OWLGraphLayoutRenderer;
 import owltools.graph.OWLGraphEdge;
@@ -559,15 +563,12 @@ public class OWLHandler {
 	 */
 	public void isClassApplicableForTaxonCommand() throws OWLOntologyCreationException, OWLOntologyStorageException, IOException {
 		headerOWL();
-		TaxonConstraintsEngine tce = new TaxonConstraintsEngine(graph);
+		TaxonConstraintIndex index = getTaxonConstraintIndex();
 		Set<OWLClass> testClsSet = resolveClassList();
 		Set<OWLClass> testTaxSet = resolveClassList(Param.taxid);
 		for (OWLClass testTax : testTaxSet) {
-			Set<OWLObject> taxAncs = graph.getAncestorsReflexive(testTax);
-			LOG.info("Tax ancs: "+taxAncs);
 			for (OWLClass testCls : testClsSet) {
-				Set<OWLGraphEdge> edges = graph.getOutgoingEdgesClosure(testCls);
-				boolean isOk = tce.isClassApplicable(testCls, testTax, edges, taxAncs);
+				boolean isOk = index.isClassApplicable(testCls, testTax);
 				// TODO - other formats
 				output(testCls);
 				print("\t");
@@ -577,15 +578,57 @@ public class OWLHandler {
 		}
 	}
 
+	private TaxonConstraintIndex getTaxonConstraintIndex() {
+		// shared by all requests; classes are indexed when first queried
+		synchronized (owlserver) {
+			if (owlserver.taxonIndex == null) {
+				LOG.info("Creating taxon constraint index");
+				owlserver.taxonIndex = TaxonConstraintIndex.create(graph, Collections.<OWLClass>emptySet());
+			}
+			return owlserver.taxonIndex;
+		}
+	}
+
 	// sim2
 
 	private OwlSim getOWLSim() throws UnknownOWLClassException {
-		if (owlserver.sos == null) {
-			LOG.info("Creating sim object"); // TODO - use factory
-			owlserver.sos = new FastOwlSim(graph.getSourceOntology());
-			owlserver.sos.createElementAttributeMapFromOntology();
+		// sim queries may run concurrently; the lazily filled caches are populated
+		// once, before the first query is handed to the SimQueryExecutor
+		synchronized (owlserver) {
+			if (owlserver.sos == null) {
+				LOG.info("Creating sim object"); // TODO - use factory
+				owlserver.sos = new FastOwlSim(graph.getSourceOntology());
+				owlserver.sos.createElementAttributeMapFromOntology();
+			}
+			if (!owlserver.isSimPrepared) {
+				if (owlserver.sos instanceof FastOwlSim) {
+					((FastOwlSim) owlserver.sos).precomputeCachesForConcurrentAccess();
+				}
+				owlserver.isSimPrepared = true;
+			}
+			return owlserver.sos;
 		}
-		return owlserver.sos;
+	}
+
+	/**
+	 * @param query
+	 * @return query holding the read lock of the sim while it runs, so that
+	 * it does not see a partial update, see {@link #assertTypeCommand()}
+	 */
+	private Callable<String> simReadLocked(final Callable<String> query) {
+		return new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				owlserver.simLock.readLock().lock();
+				try {
+					return query.call();
+				}
+				finally {
+					owlserver.simLock.readLock().unlock();
+				}
+			}
+		};
 	}
 
 	public void getOwlSimMetadataCommand() throws OWLOntologyCreationException, OWLOntologyStorageException, IOException, UnknownOWLClassException {
@@ -690,18 +733,25 @@ public class OWLHandler {
 			return;
 		}
 		headerText();
-		OwlSim sos = getOWLSim();
+		writeJSON(compareAttributeSetsQuery().call());
+	}
 
-		Set<OWLClass> objAs = this.resolveClassList(Param.a);
-		Set<OWLClass> objBs = this.resolveClassList(Param.b);
+	private Callable<String> compareAttributeSetsQuery() throws UnknownOWLClassException {
+		final OwlSim sos = getOWLSim();
+		final Set<OWLClass> objAs = this.resolveClassList(Param.a);
+		final Set<OWLClass> objBs = this.resolveClassList(Param.b);
 		LOG.info("Comparison set A:"+objAs);
 		LOG.info("Comparison set B:"+objBs);
-
-		SimJSONEngine sj = new SimJSONEngine(graph,sos);
-		String jsonStr = sj.compareAttributeSetPair(objAs, objBs, true);
-		LOG.info("Finished comparison");
-		response.setContentType("application/json");
-		response.getWriter().write(jsonStr);
+		return simReadLocked(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				SimJSONEngine sj = new SimJSONEngine(graph,sos);
+				String jsonStr = sj.compareAttributeSetPair(objAs, objBs, true);
+				LOG.info("Finished comparison");
+				return jsonStr;
+			}
+		});
 	}
 
 	public void searchByAttributeSetCommand() throws Exception {
@@ -710,100 +760,75 @@ public class OWLHandler {
 			return;
 		}
 		headerText();
-		OwlSim sos = getOWLSim();
-		Set<OWLClass> atts = this.resolveClassList(Param.a);
-
-		SimJSONEngine sj = new SimJSONEngine(graph,sos);
-		String targetIdSpace = getParam(Param.target);
-		Integer limit = getParamAsInteger(Param.limit, 1000);
-		String jsonStr = sj.search(atts, targetIdSpace, true, limit, true);
-		LOG.info("Finished comparison");
-		response.setContentType("application/json");
-		response.getWriter().write(jsonStr);
+		writeJSON(searchByAttributeSetQuery().call());
+	}
+
+	private Callable<String> searchByAttributeSetQuery() throws UnknownOWLClassException {
+		final OwlSim sos = getOWLSim();
+		final Set<OWLClass> atts = this.resolveClassList(Param.a);
+		final String targetIdSpace = getParam(Param.target);
+		final Integer limit = getParamAsInteger(Param.limit, 1000);
+		return simReadLocked(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				SimJSONEngine sj = new SimJSONEngine(graph,sos);
+				String jsonStr = sj.search(atts, targetIdSpace, true, limit, true);
+				LOG.info("Finished comparison");
+				return jsonStr;
+			}
+		});
 	}
 
-
-
-	public void getAnnotationSufficiencyScoreCommand() throws IOException, OWLOntologyCreationException, OWLOntologyStorageException, UnknownOWLClassException {
+	public void getAnnotationSufficiencyScoreCommand() throws Exception {
 		if (isHelp()) {
 			info("Specificity score for a set of annotations");
 			return;
 		}
 		headerText();
-		OwlSim sos = getOWLSim();
-		Set<OWLClass> atts = this.resolveClassList(Param.a);
-		LOG.info("Calculating AnnotationSufficiency score for "+atts.toString());
-		SimJSONEngine sj = new SimJSONEngine(graph,sos);
-		String jsonStr = sj.getAnnotationSufficiencyScore(atts);
-		LOG.info("Finished getAnnotationSufficiencyScore");
-		response.setContentType("application/json");
-		response.getWriter().write(jsonStr);
+		writeJSON(getAnnotationSufficiencyScoreQuery().call());
 	}
 
-	/*
-	 * That code is weird!!!!!
-	 * 
-	 * The idea is to guard an expensive initialization with a status.
-	 */
-	private enum InitStatus {
-		never,
-		busy,
-		done
+	private Callable<String> getAnnotationSufficiencyScoreQuery() throws UnknownOWLClassException {
+		final OwlSim sos = getOWLSim();
+		final Set<OWLClass> atts = this.resolveClassList(Param.a);
+		return simReadLocked(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				LOG.info("Calculating AnnotationSufficiency score for "+atts.toString());
+				SimJSONEngine sj = new SimJSONEngine(graph,sos);
+				String jsonStr = sj.getAnnotationSufficiencyScore(atts);
+				LOG.info("Finished getAnnotationSufficiencyScore");
+				return jsonStr;
+			}
+		});
 	}
-	private static volatile InitStatus status = InitStatus.never;
-	private static final Object MUTEX = new Object();
-	
+
 	public void getAttributeInformationProfileCommand() throws Exception {
 		if (isHelp()) {
 			info("Attribute Profile Information");
 			return;
 		}
-		OwlSim sos = getOWLSim();
-		Set<OWLClass> atts = this.resolveClassList(Param.a);
-		Set<OWLClass> roots = this.resolveClassList(Param.r);
-		SimJSONEngine sj = new SimJSONEngine(graph,sos);
-		// check for init of slow stuff
-		if (status != InitStatus.done) {
-			synchronized (MUTEX) {
-				if (status == InitStatus.busy) {
-					// option busy -> send error back, do nothing
-					response.sendError(HttpServletResponse.SC_REQUEST_TIMEOUT, "Server is currently initializing.");
-					return; // exit!!!!
-				}
-				else if (status == InitStatus.never) {
-					// option not done -> do it now, set info for busy
-					status = InitStatus.busy;
-				}
-			} // end synchronized
-		}
-		String jsonStr;
-		try {
-			// this is the normal calculation, which as a side effect also does the init
-			jsonStr = sj.getAttributeInformationProfile(atts,roots);
-		}
-		catch (Exception e) {
-			// in case of error during the init: reset
-			synchronized (MUTEX) {
-				if (status == InitStatus.busy) {
-					status = InitStatus.never;
-				}
-			}
-			throw e;
-		}
-		finally {
-			// all is well
-			synchronized (MUTEX) {
-				if (status == InitStatus.busy) {
-					status = InitStatus.done;
-				}
-			}
-			
-		}
-		// send result
+		String jsonStr = getAttributeInformationProfileQuery().call();
 		LOG.info("Finished getAttributeInformationProfileCommand");
 		headerText();
-		response.setContentType("application/json");
-		response.getWriter().write(jsonStr);
+		writeJSON(jsonStr);
+	}
+
+	private Callable<String> getAttributeInformationProfileQuery() throws UnknownOWLClassException {
+		final OwlSim sos = getOWLSim();
+		final Set<OWLClass> atts = this.resolveClassList(Param.a);
+		final Set<OWLClass> roots = this.resolveClassList(Param.r);
+		return simReadLocked(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				// system and subgraph statistics are precomputed by the sim
+				SimJSONEngine sj = new SimJSONEngine(graph,sos);
+				return sj.getAttributeInformationProfile(atts,roots);
+			}
+		});
 	}
 	
 	public void getCoAnnotatedClassesCommand() throws Exception {
@@ -812,24 +837,31 @@ public class OWLHandler {
 			return;
 		}
 		headerText();
-		OwlSim sos = getOWLSim();
-		Set<OWLClass> atts = this.resolveClassList(Param.a);
-
-		SimJSONEngine sj = new SimJSONEngine(graph,sos);
-		Integer limit = getParamAsInteger(Param.limit, 10);
-		String jsonStr = "{}";
-
-		//TODO allow user to specify a delimited list and get back multiple sets of coannotations
-		//for now,just use the first one
-		if (atts.size() > 0) {
-			jsonStr = sj.getCoAnnotationListForAttribute(atts.iterator().next(),limit);
-			LOG.info("Finished getting co-annotation list");
-		} else {
-			LOG.error("No classes specified to fetch co-annotation classes");
-		}
-		response.setContentType("application/json");
-		response.getWriter().write(jsonStr);
-		
+		writeJSON(getCoAnnotatedClassesQuery().call());
+	}
+
+	private Callable<String> getCoAnnotatedClassesQuery() throws UnknownOWLClassException {
+		final OwlSim sos = getOWLSim();
+		final Set<OWLClass> atts = this.resolveClassList(Param.a);
+		final Integer limit = getParamAsInteger(Param.limit, 10);
+		return simReadLocked(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				SimJSONEngine sj = new SimJSONEngine(graph,sos);
+				String jsonStr = "{}";
+
+				//TODO allow user to specify a delimited list and get back multiple sets of coannotations
+				//for now,just use the first one
+				if (atts.size() > 0) {
+					jsonStr = sj.getCoAnnotationListForAttribute(atts.iterator().next(),limit);
+					LOG.info("Finished getting co-annotation list");
+				} else {
+					LOG.error("No classes specified to fetch co-annotation classes");
+				}
+				return jsonStr;
+			}
+		});
 	}
 	
 	//TODO the getCoAnnotationListForAttributes when >1 supplied is not working yet
@@ -856,6 +888,110 @@ public class OWLHandler {
 	}
 	*/
 
+	// ----------------------------------------
+	// asynchronous sim queries
+	// ----------------------------------------
+
+	/**
+	 * Commands that may be run on the {@link SimQueryExecutor}, rather than
+	 * on the Jetty request thread
+	 */
+	static final Set<String> SIM_QUERY_COMMANDS = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList(
+					"compareAttributeSets",
+					"searchByAttributeSet",
+					"getAnnotationSufficiencyScore",
+					"getAttributeInformationProfile",
+					"getCoAnnotatedClasses")));
+
+	// parameters that do not affect the result
+	private static final Set<String> IGNORED_QUERY_PARAMS = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList("json.wrf", "_")));
+
+	// parameters whose values are lists of classes
+	private static final Set<String> CLASS_LIST_PARAMS = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList(
+					Param.a.toString(), Param.b.toString(), Param.r.toString())));
+
+	/**
+	 * @return true if the current command can be run as a sim query
+	 */
+	public boolean isSimQuery() {
+		return SIM_QUERY_COMMANDS.contains(commandName) && !isHelp();
+	}
+
+	/**
+	 * Parameters are resolved on the calling thread; the returned query
+	 * does not access the request.
+	 *
+	 * @return query computing the JSON result of the current command
+	 * @throws UnknownOWLClassException
+	 */
+	public Callable<String> getSimQuery() throws UnknownOWLClassException {
+		if ("compareAttributeSets".equals(commandName)) {
+			return compareAttributeSetsQuery();
+		}
+		if ("searchByAttributeSet".equals(commandName)) {
+			return searchByAttributeSetQuery();
+		}
+		if ("getAnnotationSufficiencyScore".equals(commandName)) {
+			return getAnnotationSufficiencyScoreQuery();
+		}
+		if ("getAttributeInformationProfile".equals(commandName)) {
+			return getAttributeInformationProfileQuery();
+		}
+		if ("getCoAnnotatedClasses".equals(commandName)) {
+			return getCoAnnotatedClassesQuery();
+		}
+		throw new IllegalArgumentException("Not a sim query: "+commandName);
+	}
+
+	/**
+	 * Canonical form of the current query, used for caching and for
+	 * coalescing identical queries: parameters are sorted, and class list
+	 * parameters are resolved and sorted, so that the order of the ids and
+	 * the choice of id or IRI do not matter.
+	 *
+	 * @return key
+	 */
+	public String getSimQueryKey() {
+		StringBuilder sb = new StringBuilder(commandName);
+		@SuppressWarnings("unchecked")
+		Map<String, String[]> params = new TreeMap<String, String[]>(request.getParameterMap());
+		for (Entry<String, String[]> e : params.entrySet()) {
+			String p = e.getKey();
+			if (IGNORED_QUERY_PARAMS.contains(p)) {
+				continue;
+			}
+			List<String> vals = new ArrayList<String>();
+			if (CLASS_LIST_PARAMS.contains(p)) {
+				for (OWLClass c : resolveClassList(Param.valueOf(p))) {
+					vals.add(c.getIRI().toString());
+				}
+			}
+			else {
+				vals.addAll(Arrays.asList(e.getValue()));
+			}
+			Collections.sort(vals);
+			sb.append('&').append(p).append('=');
+			for (String v : vals) {
+				sb.append(v).append(',');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a JSON result computed by a sim query
+	 *
+	 * @param jsonStr
+	 * @throws IOException
+	 */
+	public void writeJSON(String jsonStr) throws IOException {
+		response.setContentType("application/json");
+		response.getWriter().write(jsonStr);
+	}
+
 	// ----------------------------------------
 	// WRITE/UPDATE OPERATIONS
 	// ----------------------------------------
@@ -870,6 +1006,27 @@ public class OWLHandler {
 		OWLClass c = resolveClass(Param.classId);
 		OWLIndividual i = resolveIndividual(Param.individualId);
 		addAxiom(ont, graph.getDataFactory().getOWLClassAssertionAxiom(c, i));
+		synchronized (owlserver) {
+			// keep an existing owlsim in step, without rebuilding it;
+			// running sim queries are finished first
+			if (owlserver.sos != null && i.isNamed() &&
+					owlserver.sos.getSourceOntology().equals(ont)) {
+				owlserver.simLock.writeLock().lock();
+				try {
+					owlserver.sos.addElementAttributes(i.asOWLNamedIndividual(), Collections.singleton(c));
+					if (owlserver.isSimPrepared && owlserver.sos instanceof FastOwlSim) {
+						// new element and changed ICs
+						((FastOwlSim) owlserver.sos).precomputeCachesForConcurrentAccess();
+					}
+					if (owlserver.getSimQueryExecutor() != null) {
+						owlserver.getSimQueryExecutor().invalidateCache();
+					}
+				}
+				finally {
+					owlserver.simLock.writeLock().unlock();
+				}
+			}
+		}
 		String jsonStr = "";
 		response.getWriter().write(jsonStr);
 	}
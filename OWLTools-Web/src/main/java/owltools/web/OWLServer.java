@@ -5,33 +5,47 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.ServletException;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.log4j.Logger;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.util.URIUtil;
 import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyStorageException;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import owltools.gaf.inference.TaxonConstraintIndex;
 import owltools.graph.OWLGraphWrapper;
 import owltools.sim2.OwlSim;
+import owltools.sim2.UnknownOWLClassException;
 
 /**
  * 
@@ -43,6 +57,13 @@ import owltools.sim2.OwlSim;
  * 
  * see OWLHandler for details
  * 
+ * Expensive owlsim queries (see {@link OWLHandler#isSimQuery()}) are not
+ * run on the Jetty thread; the request is suspended and the query is
+ * handed to a {@link SimQueryExecutor}, which limits the number of
+ * queued queries, shares results between identical concurrent queries,
+ * and caches results. Queue and cache metrics are included in the
+ * status report.
+ * 
  * @author cjm
  *
  */
@@ -54,17 +75,66 @@ public class OWLServer extends AbstractHandler
 	OWLGraphWrapper graph;
 	Map<String,OWLReasoner> reasonerMap = new HashMap<String,OWLReasoner>();
 	OwlSim sos = null;
+	boolean isSimPrepared = false; // see OWLHandler#getOWLSim
+	// sim queries hold the read lock, updates of the sim the write lock
+	final ReadWriteLock simLock = new ReentrantReadWriteLock();
+	TaxonConstraintIndex taxonIndex = null;
+	SimQueryExecutor simQueryExecutor = new SimQueryExecutor();
+	long simQueryTimeoutMillis = DEFAULT_SIM_QUERY_TIMEOUT_MILLIS;
+
+	public static final long DEFAULT_SIM_QUERY_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	// request attribute shared by the query callback and the timeout handler
+	private static final String SIM_QUERY_DONE_ATTRIBUTE = "owltools.web.simQueryDone";
+
+	// the taxon index is derived from the axioms of the graph
+	private final OWLOntologyChangeListener taxonIndexInvalidator = new OWLOntologyChangeListener() {
+
+		@Override
+		public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+			Set<OWLOntology> ontologies = graph.getAllOntologies();
+			for (OWLOntologyChange change : changes) {
+				if (ontologies.contains(change.getOntology())) {
+					synchronized (OWLServer.this) {
+						taxonIndex = null;
+					}
+					return;
+				}
+			}
+		}
+	};
 
 	public OWLServer(OWLGraphWrapper g) {
 		super();
 		graph = g;
+		graph.getManager().addOntologyChangeListener(taxonIndexInvalidator);
 	}
 	public OWLServer(OWLGraphWrapper g, OwlSim sos2) {
-		super();
-		graph = g;
+		this(g);
 		sos = sos2;
 	}
 
+	/**
+	 * @param simQueryExecutor - if null, sim queries are run on the Jetty thread
+	 */
+	public void setSimQueryExecutor(SimQueryExecutor simQueryExecutor) {
+		if (this.simQueryExecutor != null) {
+			this.simQueryExecutor.shutdown();
+		}
+		this.simQueryExecutor = simQueryExecutor;
+	}
+
+	public SimQueryExecutor getSimQueryExecutor() {
+		return simQueryExecutor;
+	}
+
+	/**
+	 * @param millis - time after which a suspended sim query is answered with 503
+	 */
+	public void setSimQueryTimeout(long millis) {
+		this.simQueryTimeoutMillis = millis;
+	}
+
 	public void handle(String target,
 			Request baseRequest,
 			HttpServletRequest request,
@@ -74,6 +144,17 @@ public class OWLServer extends AbstractHandler
 		String path = request.getPathInfo();
 		baseRequest.setHandled(true);
 
+		Continuation continuation = ContinuationSupport.getContinuation(request);
+		if (continuation.isExpired()) {
+			// redispatched after a sim query timed out
+			AtomicBoolean isDone = (AtomicBoolean) request.getAttribute(SIM_QUERY_DONE_ATTRIBUTE);
+			if (isDone != null && isDone.compareAndSet(false, true)) {
+				LOG.warn("Timed out: "+path);
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Query timed out");
+			}
+			return;
+		}
+
 		// TODO/BUG: A real server interface that we can operate on.
 		// Check the incoming args (if any) to see if we're going to use JSONP wrapping.
 		String jsonp_callback = request.getParameter("json.wrf");
@@ -85,7 +166,6 @@ public class OWLServer extends AbstractHandler
 		// TODO: We'd like to change the header to javascript here--no longer JSON.
 		// TODO: We'll happily wrap non-JSON things here as well.
 		// The closer is later on.
-		if( jsonp_callback != null ){ response.getWriter().write(jsonp_callback + '('); }
 		
 		OWLHandler handler = new OWLHandler(this, graph, request, response);
 		if (sos != null)
@@ -106,12 +186,18 @@ public class OWLServer extends AbstractHandler
 			m = mpa[0];
 			handler.setFormat(mpa[1]);
 		}
+		handler.setCommandName(m);
+		if (simQueryExecutor != null && handler.isSimQuery()) {
+			// JSONP wrapping is done when the result is written
+			runSimQuery(handler, request, response, jsonp_callback);
+			return;
+		}
+		if( jsonp_callback != null ){ response.getWriter().write(jsonp_callback + '('); }
 		if ("status".equals(m)) {
 			// report status
 			reportStatus(baseRequest, request, response);
 		}
 		else {
-			handler.setCommandName(m);
 			Class[] mArgs = new Class[0];
 			Method method = null;
 			try {
@@ -155,6 +241,97 @@ public class OWLServer extends AbstractHandler
 		if( jsonp_callback != null ){ response.getWriter().write(')'); }			
 	}
 
+	/**
+	 * Suspends the request and runs the query on the {@link SimQueryExecutor};
+	 * cached results are written immediately.
+	 */
+	private void runSimQuery(OWLHandler handler,
+			HttpServletRequest request,
+			final HttpServletResponse response,
+			final String jsonpCallback) throws IOException {
+		final String key;
+		Callable<String> query;
+		try {
+			// resolve parameters while we still own the request
+			key = handler.getSimQueryKey();
+			query = handler.getSimQuery();
+		} catch (UnknownOWLClassException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		String cached = simQueryExecutor.getCachedResult(key);
+		if (cached != null) {
+			LOG.info("Using cached result for "+key);
+			writeSimQueryResult(response, cached, jsonpCallback);
+			return;
+		}
+
+		final AtomicBoolean isDone = new AtomicBoolean(false);
+		request.setAttribute(SIM_QUERY_DONE_ATTRIBUTE, isDone);
+		final Continuation continuation = ContinuationSupport.getContinuation(request);
+		continuation.setTimeout(simQueryTimeoutMillis);
+		continuation.suspend(response);
+		try {
+			simQueryExecutor.submit(key, query, new FutureCallback<String>() {
+
+				@Override
+				public void onSuccess(String result) {
+					if (!isDone.compareAndSet(false, true)) {
+						return; // timed out
+					}
+					try {
+						writeSimQueryResult(response, result, jsonpCallback);
+					} catch (IOException e) {
+						LOG.error("Could not write result for "+key, e);
+					}
+					finally {
+						continuation.complete();
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					if (!isDone.compareAndSet(false, true)) {
+						return; // timed out
+					}
+					LOG.error("Query failed: "+key, t);
+					try {
+						response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
+								"Query failed: "+t.getMessage());
+					} catch (IOException e) {
+						LOG.error("Could not send error message for failed query: "+key, e);
+					}
+					finally {
+						continuation.complete();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			if (isDone.compareAndSet(false, true)) {
+				response.setHeader("Retry-After", "10");
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, 
+						"Server busy, try again later");
+				continuation.complete();
+			}
+		}
+	}
+
+	private void writeSimQueryResult(HttpServletResponse response, 
+			String jsonStr, String jsonpCallback) throws IOException {
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType("application/json");
+		PrintWriter writer = response.getWriter();
+		if (jsonpCallback != null) {
+			writer.write(jsonpCallback + '(');
+		}
+		writer.write(jsonStr);
+		if (jsonpCallback != null) {
+			writer.write(')');
+		}
+		writer.flush();
+	}
+
 	private void reportStatus(Request baseRequest,
 			HttpServletRequest request,
 			HttpServletResponse response) {
@@ -178,6 +355,11 @@ public class OWLServer extends AbstractHandler
 		// offerings (optional list of values)
 		// for now empty
 
+		// sim query queue and cache
+		if (simQueryExecutor != null) {
+			jsonObj.put("sim_queries", simQueryExecutor.getMetrics());
+		}
+
 		try {
 			Gson gson = new GsonBuilder().create();
 			String js = gson.toJson(jsonObj);
@@ -257,6 +439,9 @@ public class OWLServer extends AbstractHandler
 				reasoner.dispose();
 			}
 		}
+		if (simQueryExecutor != null) {
+			simQueryExecutor.shutdown();
+		}
 		super.destroy();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,217 @@
+package owltools.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Runs expensive owlsim queries off the Jetty request threads.
+ *
+ * <ul>
+ * <li>queries run on a fixed size pool with a bounded queue; when the queue
+ * is full the query is rejected, and the server answers 503 rather than
+ * tying up a Jetty thread
+ * <li>identical queries that arrive while one is already running share
+ * the result of the running query
+ * <li>results are cached, with a maximum number of entries and a time to live
+ * </ul>
+ *
+ * Queries are identified by a key; see {@link OWLHandler#getSimQueryKey()}.
+ * Results are JSON strings.
+ *
+ */
+public class SimQueryExecutor {
+
+	private static Logger LOG = Logger.getLogger(SimQueryExecutor.class);
+
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+	public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+	public static final long DEFAULT_CACHE_TTL_SECONDS = 600;
+
+	private final ThreadPoolExecutor pool;
+	private final ListeningExecutorService executor;
+	private final Cache<String, String> cache;
+	private final ConcurrentMap<String, ListenableFuture<String>> inFlight =
+			new ConcurrentHashMap<String, ListenableFuture<String>>();
+
+	// incremented on each invalidation; results of queries started in an
+	// earlier generation are not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicLong numSubmitted = new AtomicLong();
+	private final AtomicLong numCoalesced = new AtomicLong();
+	private final AtomicLong numRejected = new AtomicLong();
+	private final AtomicLong numFailed = new AtomicLong();
+
+	public SimQueryExecutor() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUE_SIZE,
+				DEFAULT_MAX_CACHE_SIZE, DEFAULT_CACHE_TTL_SECONDS);
+	}
+
+	/**
+	 * @param numThreads
+	 * @param maxQueueSize - queries waiting beyond this are rejected
+	 * @param maxCacheSize - maximum number of cached results; 0 disables caching
+	 * @param cacheTTLSeconds
+	 */
+	public SimQueryExecutor(int numThreads, int maxQueueSize, int maxCacheSize, long cacheTTLSeconds) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		pool = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maxQueueSize),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "owlsim-query-"+threadCount.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		executor = MoreExecutors.listeningDecorator(pool);
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(cacheTTLSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @param key
+	 * @return cached result, or null
+	 */
+	public String getCachedResult(String key) {
+		return cache.getIfPresent(key);
+	}
+
+	/**
+	 * Runs the query, unless an identical query is already running, in
+	 * which case the callback is attached to the running query.
+	 *
+	 * The callback is invoked on a pool thread; it is invoked immediately
+	 * if the result is already cached.
+	 *
+	 * @param key
+	 * @param query
+	 * @param callback
+	 * @throws RejectedExecutionException if the queue is full
+	 */
+	public void submit(final String key, Callable<String> query, FutureCallback<String> callback) {
+		String cached = cache.getIfPresent(key);
+		if (cached != null) {
+			callback.onSuccess(cached);
+			return;
+		}
+		ListenableFuture<String> future = inFlight.get(key);
+		if (future != null) {
+			numCoalesced.incrementAndGet();
+		}
+		else {
+			future = submitNew(key, query);
+		}
+		Futures.addCallback(future, callback);
+	}
+
+	private synchronized ListenableFuture<String> submitNew(final String key, Callable<String> query) {
+		// re-check: another request may have started the query in the meantime
+		ListenableFuture<String> future = inFlight.get(key);
+		if (future != null) {
+			numCoalesced.incrementAndGet();
+			return future;
+		}
+		try {
+			future = executor.submit(query);
+		}
+		catch (RejectedExecutionException e) {
+			numRejected.incrementAndGet();
+			LOG.warn("Rejected query, queue is full: "+key);
+			throw e;
+		}
+		numSubmitted.incrementAndGet();
+		inFlight.put(key, future);
+		final ListenableFuture<String> submitted = future;
+		final long submittedGeneration = generation.get();
+		Futures.addCallback(future, new FutureCallback<String>() {
+
+			@Override
+			public void onSuccess(String result) {
+				synchronized (SimQueryExecutor.this) {
+					if (result != null && submittedGeneration == generation.get()) {
+						cache.put(key, result);
+					}
+					inFlight.remove(key, submitted);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				numFailed.incrementAndGet();
+				inFlight.remove(key, submitted);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @return number of queries waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * @return summary of queue and cache usage, for the status report
+	 */
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("threads", pool.getMaximumPoolSize());
+		m.put("active", pool.getActiveCount());
+		m.put("queue_depth", getQueueDepth());
+		m.put("queue_remaining_capacity", pool.getQueue().remainingCapacity());
+		m.put("in_flight", inFlight.size());
+		m.put("submitted", numSubmitted.get());
+		m.put("completed", pool.getCompletedTaskCount());
+		m.put("coalesced", numCoalesced.get());
+		m.put("rejected", numRejected.get());
+		m.put("failed", numFailed.get());
+		CacheStats stats = cache.stats();
+		m.put("cache_size", cache.size());
+		m.put("cache_hits", stats.hitCount());
+		m.put("cache_misses", stats.missCount());
+		m.put("cache_evictions", stats.evictionCount());
+		return m;
+	}
+
+	/**
+	 * Drop the cached results. Queries which are still running are detached:
+	 * their results are not cached, and new requests start a new query.
+	 */
+	public synchronized void invalidateCache() {
+		generation.incrementAndGet();
+		cache.invalidateAll();
+		inFlight.clear();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,92 @@
+package owltools.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.FutureCallback;
+
+public class SimQueryExecutorTest {
+
+	@Test
+	public void testInvalidateWhileRunning() throws Exception {
+		SimQueryExecutor executor = new SimQueryExecutor(2, 10, 10, 600);
+		try {
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final AtomicInteger runs = new AtomicInteger();
+			Callable<String> blocking = new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					runs.incrementAndGet();
+					started.countDown();
+					release.await();
+					return "old";
+				}
+			};
+			Callable<String> fresh = new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					runs.incrementAndGet();
+					return "new";
+				}
+			};
+
+			ResultCallback first = new ResultCallback();
+			executor.submit("q", blocking, first);
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			// the sim changes while the query is running
+			executor.invalidateCache();
+
+			// not attached to the running query
+			ResultCallback second = new ResultCallback();
+			executor.submit("q", fresh, second);
+			assertEquals("new", second.await());
+
+			release.countDown();
+			assertEquals("old", first.await());
+			assertEquals(2, runs.get());
+
+			// the result of the query started before the invalidation is not cached
+			assertEquals("new", executor.getCachedResult("q"));
+
+			executor.invalidateCache();
+			assertNull(executor.getCachedResult("q"));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class ResultCallback implements FutureCallback<String> {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile String result = null;
+
+		@Override
+		public void onSuccess(String result) {
+			this.result = result;
+			done.countDown();
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			done.countDown();
+		}
+
+		String await() throws InterruptedException {
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			return result;
+		}
+	}
+}